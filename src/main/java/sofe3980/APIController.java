@@ -4,18 +4,38 @@ import sofe3980.Flight;
 import sofe3980.Booking;
 import sofe3980.BookingManager;
 import sofe3980.FlightManager;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 // this class will be used to serve the API using RESTful requests
 // this will make testing easier
@@ -23,19 +43,209 @@ import java.util.Optional;
 @RequestMapping("/api")
 public class APIController {
 
+    static final int MAX_FLEXIBLE_DAYS = 15; // Widest +/- window of a flexible-date search
+    static final int MAX_ITINERARY_LIMIT = 100; // Largest page of ranked itineraries
+    static final int MAX_ITINERARY_LEGS = 4;
+    static final long MAX_HOLD_SECONDS = 30 * 60; // Longest seat hold a client can ask for
+    static final int BATCH_CHUNK_SIZE = 512; // Bookings of a batch request created and committed together
+
     private final BookingManager bookingManager;
     private final FlightManager flightManager;
+    private final ObjectMapper objectMapper;
+    // JSON of the last weekly flights list served, see getAvailableFlights
+    private volatile RenderedFlights renderedWeeklyFlights;
 
     @Autowired
-    public APIController(BookingManager bookingManager, FlightManager flightManager) {
+    public APIController(BookingManager bookingManager, FlightManager flightManager, ObjectMapper objectMapper) {
         this.bookingManager = bookingManager;
         this.flightManager = flightManager;
+        this.objectMapper = objectMapper;
     }
 
     // endpoint for retrieving all flights
+    // FlightManager returns the same list until the week's flights change, so the
+    // JSON is only rendered again when a different list comes back
     @GetMapping("/flights")
-    public List<Flight> getAvailableFlights() {
-        return flightManager.getWeeklyFlights();
+    public ResponseEntity<byte[]> getAvailableFlights() throws JsonProcessingException {
+        List<Flight> weeklyFlights = flightManager.getWeeklyFlights();
+        RenderedFlights rendered = renderedWeeklyFlights;
+        if (rendered == null || rendered.flights != weeklyFlights) {
+            rendered = new RenderedFlights(weeklyFlights, objectMapper.writeValueAsBytes(weeklyFlights));
+            renderedWeeklyFlights = rendered;
+        }
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(rendered.json);
+    }
+
+    // endpoint for location autocomplete, matching the start of a name or of a
+    // word in it
+    @GetMapping("/airports")
+    public ResponseEntity<?> suggestAirports(@RequestParam String prefix,
+            @RequestParam(defaultValue = "10") int limit) {
+        if (limit < 1 || limit > FlightManager.MAX_LOCATION_SUGGESTIONS) {
+            return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .body("Error: limit must be between 1 and " + FlightManager.MAX_LOCATION_SUGGESTIONS + ".");
+        }
+        return ResponseEntity.ok(flightManager.suggestLocations(prefix, limit));
+    }
+
+    // endpoint for searching flights on a route, optionally with a return date
+    // dates use the ISO format (YYYY-MM-DD); with seats, only flights with that
+    // many free seats are returned
+    @GetMapping("/flights/search")
+    public List<Flight> searchFlights(@RequestParam String from, @RequestParam String to,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate departureDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate returnDate,
+            @RequestParam(required = false) Integer seats) {
+        if (seats != null) {
+            return flightManager.searchFlights(from, to, departureDate, returnDate, seats);
+        }
+        return flightManager.searchFlights(from, to, departureDate, returnDate);
+    }
+
+    // endpoint for the number of free seats on a flight
+    @GetMapping("/flights/{id}/seats")
+    public ResponseEntity<?> getAvailableSeats(@PathVariable int id) {
+        if (!flightManager.getFlightById(id).isPresent()) {
+            return ResponseEntity
+                    .status(HttpStatus.NOT_FOUND)
+                    .body("Error: Flight with ID " + id + " not found.");
+        }
+        Map<String, Integer> seats = new LinkedHashMap<>();
+        seats.put("flightId", id);
+        seats.put("availableSeats", flightManager.getAvailableSeats(id));
+        return ResponseEntity.ok(seats);
+    }
+
+    // endpoint for ranked (outbound, return) pairs, sortBy is PRICE or DURATION
+    @GetMapping("/flights/round-trips")
+    public ResponseEntity<?> searchRoundTrips(@RequestParam String from, @RequestParam String to,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate departureDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate returnDate,
+            @RequestParam(defaultValue = "PRICE") ItinerarySortKey sortBy,
+            @RequestParam(defaultValue = "20") int limit) {
+        if (sortBy != ItinerarySortKey.PRICE && sortBy != ItinerarySortKey.DURATION) {
+            return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .body("Error: round trips can be sorted by PRICE or DURATION.");
+        }
+        if (limit < 1 || limit > MAX_ITINERARY_LIMIT) {
+            return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .body("Error: limit must be between 1 and " + MAX_ITINERARY_LIMIT + ".");
+        }
+        return ResponseEntity.ok(flightManager.searchRoundTrips(from, to, departureDate, returnDate, sortBy, limit));
+    }
+
+    // endpoint for the cheapest fare of each day of a month on a route
+    // the month uses the format YYYY-MM
+    @GetMapping("/flights/calendar")
+    public Map<LocalDate, Double> getLowFareCalendar(@RequestParam String from, @RequestParam String to,
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM") YearMonth month) {
+        return flightManager.getLowFareCalendar(from, to, month.atDay(1), month.atEndOfMonth());
+    }
+
+    // endpoint for searching a route within +/- days of a date
+    @GetMapping("/flights/flexible")
+    public ResponseEntity<?> searchFlexibleDates(@RequestParam String from, @RequestParam String to,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            @RequestParam(defaultValue = "3") int days) {
+        if (days < 0 || days > MAX_FLEXIBLE_DAYS) {
+            return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .body("Error: days must be between 0 and " + MAX_FLEXIBLE_DAYS + ".");
+        }
+        return ResponseEntity.ok(flightManager.searchFlexibleDates(from, to, date, days));
+    }
+
+    // endpoint for ranked itineraries of up to maxLegs flights, one page at a time
+    // sortBy is one of ARRIVAL_TIME, PRICE, DURATION, DEPARTURE_TIME or STOPS;
+    // pass the nextCursor of a response as cursor to get the following page;
+    // truncated is true when the search hit its expansion limit, so the page may
+    // be incomplete
+    @GetMapping("/itineraries")
+    public ResponseEntity<?> searchItineraries(@RequestParam String from, @RequestParam String to,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            @RequestParam(defaultValue = "PRICE") ItinerarySortKey sortBy,
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestParam(defaultValue = "3") int maxLegs,
+            @RequestParam(required = false) String cursor) {
+        if (limit < 1 || limit > MAX_ITINERARY_LIMIT || maxLegs < 1 || maxLegs > MAX_ITINERARY_LEGS) {
+            return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .body("Error: limit must be between 1 and " + MAX_ITINERARY_LIMIT + " and maxLegs between 1 and "
+                            + MAX_ITINERARY_LEGS + ".");
+        }
+
+        ItinerarySearch search = new ItinerarySearch(from, to, date);
+        search.setSortBy(sortBy);
+        search.setPageSize(limit);
+        search.setMaxLegs(maxLegs);
+        if (cursor != null) {
+            try {
+                search.setAfter(ItineraryPage.decodeCursor(search, cursor));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Error: " + e.getMessage());
+            }
+        }
+
+        ItinerarySearchResult result = flightManager.searchItineraries(search);
+        List<List<Flight>> itineraries = result.getItineraries();
+        // A full page may be followed by more results
+        String nextCursor = itineraries.size() == limit && result.getNext() != null
+                ? ItineraryPage.encodeCursor(search, result.getNext())
+                : null;
+        return ResponseEntity.ok(new ItineraryPage(itineraries, nextCursor, result.isTruncated()));
+    }
+
+    // endpoint for the search cache and request coalescing counters
+    @GetMapping("/metrics/search")
+    public Map<String, Number> getSearchMetrics() {
+        return flightManager.getSearchMetrics();
+    }
+
+    // endpoint for the booking journal statistics (commit rate and latency)
+    @GetMapping("/metrics/journal")
+    public Map<String, Number> getJournalMetrics() {
+        return bookingManager.getJournalMetrics();
+    }
+
+    // endpoint for all bookings of a user, including canceled ones
+    @GetMapping("/users/{userId}/bookings")
+    public List<Booking> getBookingsByUser(@PathVariable int userId) {
+        return bookingManager.getBookingsByUser(userId);
+    }
+
+    // endpoint for the active bookings on a flight (its passenger list)
+    @GetMapping("/flights/{id}/bookings")
+    public List<Booking> getBookingsByFlight(@PathVariable int id) {
+        return bookingManager.getActiveBookingsByFlight(id);
+    }
+
+    // endpoint for cancelling or rebooking every active booking on a disrupted
+    // flight; answers at once with a handle to follow the operation
+    @PostMapping("/flights/{id}/disruptions")
+    public ResponseEntity<?> disruptFlight(@PathVariable int id, @RequestParam String action) {
+        BulkFlightOperation operation;
+        if (BulkFlightOperation.CANCEL.equals(action)) {
+            operation = bookingManager.cancelFlightBookings(id);
+        } else if (BulkFlightOperation.REBOOK.equals(action)) {
+            operation = bookingManager.rebookFlightBookings(id);
+        } else {
+            return ResponseEntity.badRequest().body("Error: action must be cancel or rebook.");
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .location(URI.create("/api/bulk-operations/" + operation.getOperationId())).body(operation);
+    }
+
+    // endpoint for the progress of a bulk cancellation or rebooking
+    @GetMapping("/bulk-operations/{id}")
+    public ResponseEntity<?> getBulkOperation(@PathVariable int id) {
+        Optional<BulkFlightOperation> operation = bookingManager.getBulkOperation(id);
+        if (operation.isPresent()) {
+            return ResponseEntity.ok(operation.get());
+        }
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Error: Bulk operation with ID " + id + " not found.");
     }
 
     // endpoint for creating a new booking
@@ -44,6 +254,107 @@ public class APIController {
         return bookingManager.createBooking(booking.getUser(), booking.getFlights(), booking.getBookingType());
     }
 
+    // endpoint for creating many bookings in one request, for travel agents. The
+    // body is a JSON array of bookings; it is read and answered as a stream, a
+    // chunk at a time, so large batches never sit in memory at once. Each chunk
+    // is validated in parallel and committed to the journal together. The
+    // response is an array with one result per booking, in the same order:
+    // {"index": 0, "status": "created", "booking": {...}} or
+    // {"index": 1, "status": "rejected", "error": "..."}. An element that is not
+    // an object gets {"index": 2, "status": "error", ...} and the batch goes on;
+    // malformed JSON ends the batch with such an error
+    @PostMapping(value = "/bookings/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public void createBookings(InputStream body, HttpServletResponse response) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                response.setStatus(HttpStatus.BAD_REQUEST.value());
+                response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+                response.getWriter().write("Error: Expected a JSON array of bookings.");
+                return;
+            }
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+                generator.writeStartArray();
+                List<Booking> chunk = new ArrayList<>(BATCH_CHUNK_SIZE);
+                int index = 0;
+                JsonToken token;
+                while ((token = nextElement(parser)) != JsonToken.END_ARRAY) {
+                    if (token == null) {
+                        // Earlier bookings are already created, so they are still reported
+                        index = writeBatchResults(generator, index, chunk);
+                        writeBatchError(generator, index, "Malformed booking batch.");
+                        break;
+                    }
+                    if (token != JsonToken.START_OBJECT) {
+                        // The element is skipped as a whole so the rest of the batch still
+                        // lines up; bookings before it keep their indexes
+                        index = writeBatchResults(generator, index, chunk);
+                        writeBatchError(generator, index++, "Expected a booking object.");
+                        parser.skipChildren();
+                        continue;
+                    }
+                    try {
+                        chunk.add(parser.readValueAs(Booking.class));
+                    } catch (JsonProcessingException e) {
+                        // The parser cannot find the next element after a bad one, so the
+                        // batch ends here; earlier bookings are still reported
+                        index = writeBatchResults(generator, index, chunk);
+                        writeBatchError(generator, index, "Malformed booking: " + e.getOriginalMessage());
+                        break;
+                    }
+                    if (chunk.size() == BATCH_CHUNK_SIZE) {
+                        index = writeBatchResults(generator, index, chunk);
+                    }
+                }
+                writeBatchResults(generator, index, chunk);
+                generator.writeEndArray();
+            }
+        }
+    }
+
+    // Returns the token starting the next array element, END_ARRAY at the end,
+    // or null if the body is not valid JSON
+    private static JsonToken nextElement(JsonParser parser) throws IOException {
+        try {
+            return parser.nextToken();
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+
+    private static void writeBatchError(JsonGenerator generator, int index, String error) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("index", index);
+        generator.writeStringField("status", "error");
+        generator.writeStringField("error", error);
+        generator.writeEndObject();
+    }
+
+    // Creates the bookings of a chunk and writes their results; returns the index
+    // of the next booking
+    private int writeBatchResults(JsonGenerator generator, int index, List<Booking> chunk) throws IOException {
+        if (chunk.isEmpty()) {
+            return index;
+        }
+        List<Booking> created = bookingManager.createBookings(chunk);
+        for (int i = 0; i < chunk.size(); i++) {
+            generator.writeStartObject();
+            generator.writeNumberField("index", index++);
+            Booking booking = created.get(i);
+            if (booking != null) {
+                generator.writeStringField("status", "created");
+                generator.writeObjectField("booking", booking);
+            } else {
+                generator.writeStringField("status", "rejected");
+                generator.writeStringField("error", "Incomplete or cyclic itinerary.");
+            }
+            generator.writeEndObject();
+        }
+        generator.flush(); // Results reach the client while later chunks are still read
+        chunk.clear();
+        return index;
+    }
+
     // endpoint for retrieving a booking by ID
     // ResponseEntity<?> allows the method to return an error HTTP Response with am
     // message if a Booking is not found
@@ -61,4 +372,63 @@ public class APIController {
         }
     }
 
+    // endpoint for holding one seat on each of the given flights during checkout
+    // the body is a JSON array of flight IDs; seconds defaults to 10 minutes
+    @PostMapping("/holds")
+    public ResponseEntity<?> holdSeats(@RequestBody List<Integer> flightIds,
+            @RequestParam(required = false) Long seconds) {
+        if (flightIds == null || flightIds.isEmpty() || flightIds.contains(null)) {
+            return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .body("Error: a hold needs a list of one or more flight IDs.");
+        }
+        // Checked before converting, so a huge value cannot overflow into a valid one
+        if (seconds != null && (seconds <= 0 || seconds > MAX_HOLD_SECONDS)) {
+            return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .body("Error: a hold lasts between 1 and " + MAX_HOLD_SECONDS + " seconds.");
+        }
+        long holdMillis = seconds == null ? BookingManager.DEFAULT_HOLD_MILLIS : TimeUnit.SECONDS.toMillis(seconds);
+        SeatHold hold = bookingManager.holdSeats(flightIds, holdMillis);
+        if (hold == null) {
+            return ResponseEntity
+                    .status(HttpStatus.CONFLICT)
+                    .body("Error: no seat is left on one of the flights.");
+        }
+        return ResponseEntity.status(HttpStatus.CREATED).body(hold);
+    }
+
+    // endpoint for retrieving an outstanding seat hold
+    @GetMapping("/holds/{id}")
+    public ResponseEntity<?> getHold(@PathVariable int id) {
+        Optional<SeatHold> hold = bookingManager.getHold(id);
+        if (hold.isPresent()) {
+            return ResponseEntity.ok(hold.get());
+        }
+        return ResponseEntity
+                .status(HttpStatus.NOT_FOUND)
+                .body("Error: Hold with ID " + id + " not found or expired.");
+    }
+
+    // endpoint for giving up a seat hold
+    @DeleteMapping("/holds/{id}")
+    public ResponseEntity<?> releaseHold(@PathVariable int id) {
+        if (bookingManager.releaseHold(id)) {
+            return ResponseEntity.noContent().build();
+        }
+        return ResponseEntity
+                .status(HttpStatus.NOT_FOUND)
+                .body("Error: Hold with ID " + id + " not found or expired.");
+    }
+
+    // A flights list and its serialized JSON
+    private static class RenderedFlights {
+        final List<Flight> flights;
+        final byte[] json;
+
+        RenderedFlights(List<Flight> flights, byte[] json) {
+            this.flights = flights;
+            this.json = json;
+        }
+    }
 }
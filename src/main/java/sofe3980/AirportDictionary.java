@@ -0,0 +1,58 @@
+package sofe3980;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns airport (location) names to dense int codes. Names are matched the
+ * same way as FlightManager searches them (trimmed and case-insensitive); the
+ * spelling first seen is kept as the canonical name.
+ */
+public class AirportDictionary {
+
+    public static final int UNKNOWN = -1;
+
+    private final Map<String, Integer> codesByName = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+    /**
+     * Returns the code of an airport, assigning the next free code to a new one.
+     *
+     * @param name The airport name.
+     * @return The airport's code.
+     */
+    public int intern(String name) {
+        String key = FlightManager.normalizeLocation(name);
+        Integer code = codesByName.get(key);
+        if (code == null) {
+            code = names.size();
+            codesByName.put(key, code);
+            names.add(name.trim());
+        }
+        return code;
+    }
+
+    /**
+     * Looks up the code of an airport without assigning one.
+     *
+     * @param name The airport name.
+     * @return The airport's code, or UNKNOWN if it has never been interned.
+     */
+    public int codeOf(String name) {
+        if (name == null) {
+            return UNKNOWN;
+        }
+        Integer code = codesByName.get(FlightManager.normalizeLocation(name));
+        return code == null ? UNKNOWN : code;
+    }
+
+    public String nameOf(int code) {
+        return names.get(code);
+    }
+
+    public int size() {
+        return names.size();
+    }
+}
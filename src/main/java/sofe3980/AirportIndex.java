@@ -0,0 +1,148 @@
+package sofe3980;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Sorted prefix index of the locations served, for autocomplete and for
+ * mapping what a user typed to the spelling the inventory uses.
+ *
+ * Every normalized name is indexed from its start and from the start of each
+ * later word, so "york" finds "New York". A lookup is a binary search for the
+ * first key at or after the prefix followed by a scan over the keys that start
+ * with it. Instances never change; with() builds a new one.
+ */
+public class AirportIndex {
+
+    public static final AirportIndex EMPTY = new AirportIndex(Collections.<String, String>emptyMap());
+
+    private final Map<String, String> canonicalNames; // By normalized name
+    private final String[] keys; // Sorted normalized names and word suffixes
+    private final String[] names; // Canonical name of each key
+
+    private AirportIndex(Map<String, String> canonicalNames) {
+        this.canonicalNames = canonicalNames;
+        List<String[]> entries = new ArrayList<>();
+        for (Map.Entry<String, String> name : canonicalNames.entrySet()) {
+            String key = name.getKey();
+            for (int i = 0; i < key.length(); i++) {
+                boolean wordStart = i == 0
+                        || !Character.isLetterOrDigit(key.charAt(i - 1)) && Character.isLetterOrDigit(key.charAt(i));
+                if (wordStart) {
+                    entries.add(new String[] { key.substring(i), name.getValue() });
+                }
+            }
+        }
+        // A location whose whole name is the key comes before ones that only
+        // have it as a later word
+        entries.sort((a, b) -> {
+            int byKey = a[0].compareTo(b[0]);
+            return byKey != 0 ? byKey : Integer.compare(a[1].length(), b[1].length());
+        });
+        keys = new String[entries.size()];
+        names = new String[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            keys[i] = entries.get(i)[0];
+            names[i] = entries.get(i)[1];
+        }
+    }
+
+    /**
+     * Builds an index with more locations. Locations already in this index keep
+     * their spelling.
+     *
+     * @param locations The locations to add.
+     * @return The new index, or this one if every location is already indexed.
+     */
+    public AirportIndex with(Collection<String> locations) {
+        Map<String, String> next = null;
+        for (String location : locations) {
+            if (location == null || location.trim().isEmpty()) {
+                continue;
+            }
+            String key = FlightManager.normalizeLocation(location);
+            if (!canonicalNames.containsKey(key) && (next == null || !next.containsKey(key))) {
+                if (next == null) {
+                    next = new HashMap<>(canonicalNames);
+                }
+                next.put(key, location.trim());
+            }
+        }
+        return next == null ? this : new AirportIndex(next);
+    }
+
+    /**
+     * @param location A location as typed (case-insensitive).
+     * @return true if the location is indexed.
+     */
+    public boolean contains(String location) {
+        return location != null && canonicalNames.containsKey(FlightManager.normalizeLocation(location));
+    }
+
+    /**
+     * Returns the locations with a name or word starting with a prefix. Only
+     * the keys starting with the prefix are visited, and the scan stops after
+     * limit locations.
+     *
+     * @param prefix The typed prefix (case-insensitive).
+     * @param limit  The maximum number of locations.
+     * @return The canonical names of the matching locations, in alphabetical
+     *         order of the matching name or word.
+     */
+    public List<String> complete(String prefix, int limit) {
+        Set<String> matches = new LinkedHashSet<>();
+        String key = prefix == null ? "" : FlightManager.normalizeLocation(prefix);
+        if (key.isEmpty() || limit < 1) {
+            return new ArrayList<>(matches);
+        }
+        // Binary search for the first key not before the prefix
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int i = low; i < keys.length && keys[i].startsWith(key) && matches.size() < limit; i++) {
+            matches.add(names[i]);
+        }
+        return new ArrayList<>(matches);
+    }
+
+    /**
+     * Maps a typed location to the spelling used by the inventory: an exact
+     * match (ignoring case and surrounding spaces), or else the only location
+     * the text is a prefix of.
+     *
+     * @param query The typed location.
+     * @return The canonical name, or null if the query matches no location or
+     *         several.
+     */
+    public String resolve(String query) {
+        if (query == null) {
+            return null;
+        }
+        String exact = canonicalNames.get(FlightManager.normalizeLocation(query));
+        if (exact != null) {
+            return exact;
+        }
+        List<String> matches = complete(query, 2);
+        return matches.size() == 1 ? matches.get(0) : null;
+    }
+
+    /**
+     * @return The number of locations.
+     */
+    public int size() {
+        return canonicalNames.size();
+    }
+}
@@ -24,11 +24,13 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.builder.SpringApplicationBuilder;
 import org.springframework.boot.web.servlet.support.SpringBootServletInitializer;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * App Entry Point
  */
 @SpringBootApplication
+@EnableScheduling
 public class App extends SpringBootServletInitializer {
 
     @Override
@@ -13,7 +13,7 @@ public class Booking {
     private LocalDateTime bookingTime;
     private double totalPrice;
     private List<Ticket> tickets;
-    private String status;
+    private volatile String status; // Changed through BookingManager, read without locking
 
     /**
      * Constructs a new Booking object with the given user, flights, and booking
@@ -0,0 +1,239 @@
+package sofe3980;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Compact binary form of bookings, users and flights, shared by the booking
+ * journal and snapshots. Optional values are written as a presence flag
+ * followed by the value. Times are stored as UTC-based epoch seconds plus
+ * nanoseconds, so they read back exactly as they were written.
+ */
+public final class BookingCodec {
+
+    private BookingCodec() {
+    }
+
+    /**
+     * Writes a booking with its user and flights. Tickets and the total price
+     * are not written; they are derived from the flights when needed.
+     *
+     * @param out     The output.
+     * @param booking The booking.
+     * @throws IOException If the output fails.
+     */
+    public static void writeBooking(DataOutput out, Booking booking) throws IOException {
+        out.writeInt(booking.getBookingId());
+        writeUser(out, booking.getUser(), false);
+        List<Flight> flights = booking.getFlights();
+        out.writeInt(flights == null ? -1 : flights.size());
+        if (flights != null) {
+            for (Flight flight : flights) {
+                writeFlight(out, flight);
+            }
+        }
+        writeString(out, booking.getBookingType());
+        writeDateTime(out, booking.getBookingTime());
+        writeString(out, booking.getStatus());
+    }
+
+    /**
+     * Reads a booking written by writeBooking.
+     *
+     * @param in The input.
+     * @return The booking.
+     * @throws IOException If the input fails or ends early.
+     */
+    public static Booking readBooking(DataInput in) throws IOException {
+        return readBooking(in, null);
+    }
+
+    /**
+     * Reads a booking written by writeBooking, sharing equal users, flights and
+     * strings with the bookings read before it.
+     *
+     * @param in     The input.
+     * @param shared The objects to share, or null to share nothing.
+     * @return The booking.
+     * @throws IOException If the input fails or ends early.
+     */
+    public static Booking readBooking(DataInput in, SharedObjects shared) throws IOException {
+        int bookingId = in.readInt();
+        User user = readUser(in);
+        int flightCount = in.readInt();
+        List<Flight> flights = null;
+        if (flightCount >= 0) {
+            flights = new ArrayList<>(flightCount);
+            for (int i = 0; i < flightCount; i++) {
+                Flight flight = readFlight(in);
+                flights.add(shared == null ? flight : shared.flight(flight));
+            }
+        }
+        String bookingType = readString(in);
+        Booking booking = new Booking(bookingId, shared == null ? user : shared.user(user),
+                flights, shared == null ? bookingType : shared.string(bookingType));
+        booking.setBookingTime(readDateTime(in));
+        String status = readString(in);
+        booking.setStatus(shared == null ? status : shared.string(status));
+        return booking;
+    }
+
+    /**
+     * Writes a user.
+     *
+     * @param out             The output.
+     * @param user            The user, or null.
+     * @param includePassword Whether the password (a hash for registered users,
+     *                        see UserManager) is written; if not, it reads back
+     *                        as null.
+     * @throws IOException If the output fails.
+     */
+    public static void writeUser(DataOutput out, User user, boolean includePassword) throws IOException {
+        out.writeBoolean(user != null);
+        if (user == null) {
+            return;
+        }
+        out.writeInt(user.getUserId());
+        writeString(out, user.getName());
+        writeString(out, user.getEmail());
+        writeString(out, includePassword ? user.getPassword() : null);
+        LocalDate dob = user.getDob();
+        out.writeBoolean(dob != null);
+        if (dob != null) {
+            out.writeLong(dob.toEpochDay());
+        }
+        writeString(out, user.getPassportNumber());
+    }
+
+    /**
+     * Reads a user written by writeUser.
+     *
+     * @param in The input.
+     * @return The user, or null.
+     * @throws IOException If the input fails or ends early.
+     */
+    public static User readUser(DataInput in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        int userId = in.readInt();
+        String name = readString(in);
+        String email = readString(in);
+        String password = readString(in);
+        LocalDate dob = in.readBoolean() ? LocalDate.ofEpochDay(in.readLong()) : null;
+        return new User(userId, name, email, password, dob, readString(in));
+    }
+
+    public static void writeFlight(DataOutput out, Flight flight) throws IOException {
+        out.writeInt(flight.getFlightId());
+        writeDateTime(out, flight.getDepartureTime());
+        writeDateTime(out, flight.getArrivalTime());
+        writeString(out, flight.getOrigin());
+        writeString(out, flight.getDestination());
+        out.writeDouble(flight.getPrice());
+        Integer correspondingFlightId = flight.getCorrespondingFlightId();
+        out.writeBoolean(correspondingFlightId != null);
+        if (correspondingFlightId != null) {
+            out.writeInt(correspondingFlightId);
+        }
+    }
+
+    public static Flight readFlight(DataInput in) throws IOException {
+        Flight flight = new Flight(in.readInt(), readDateTime(in), readDateTime(in), readString(in), readString(in),
+                in.readDouble());
+        if (in.readBoolean()) {
+            flight.setCorrespondingFlightId(in.readInt());
+        }
+        return flight;
+    }
+
+    public static void writeString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    public static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * Canonical copies of the users, flights and strings of decoded bookings.
+     * Most bookings repeat a few users, flights and status strings, so sharing
+     * them cuts the objects a large recovery allocates, and the garbage
+     * collection work of keeping them, several times over. Not thread-safe;
+     * each decoding thread uses its own.
+     */
+    public static final class SharedObjects {
+        private final Map<String, String> strings = new HashMap<>();
+        private final Map<Integer, Flight> flights = new HashMap<>();
+        private final Map<Integer, User> users = new HashMap<>();
+
+        String string(String value) {
+            if (value == null) {
+                return null;
+            }
+            String shared = strings.putIfAbsent(value, value);
+            return shared == null ? value : shared;
+        }
+
+        // Flights and users are only shared if every field matches
+        Flight flight(Flight flight) {
+            Flight shared = flights.get(flight.getFlightId());
+            if (shared != null && sameFlight(shared, flight)) {
+                return shared;
+            }
+            flight.setOrigin(string(flight.getOrigin()));
+            flight.setDestination(string(flight.getDestination()));
+            flights.put(flight.getFlightId(), flight);
+            return flight;
+        }
+
+        User user(User user) {
+            if (user == null) {
+                return null;
+            }
+            User shared = users.get(user.getUserId());
+            if (shared != null && Objects.equals(shared.getName(), user.getName())
+                    && Objects.equals(shared.getEmail(), user.getEmail())
+                    && Objects.equals(shared.getPassword(), user.getPassword())
+                    && Objects.equals(shared.getDob(), user.getDob())
+                    && Objects.equals(shared.getPassportNumber(), user.getPassportNumber())) {
+                return shared;
+            }
+            users.put(user.getUserId(), user);
+            return user;
+        }
+
+        private static boolean sameFlight(Flight a, Flight b) {
+            return Objects.equals(a.getDepartureTime(), b.getDepartureTime())
+                    && Objects.equals(a.getArrivalTime(), b.getArrivalTime())
+                    && Objects.equals(a.getOrigin(), b.getOrigin())
+                    && Objects.equals(a.getDestination(), b.getDestination())
+                    && Double.compare(a.getPrice(), b.getPrice()) == 0
+                    && Objects.equals(a.getCorrespondingFlightId(), b.getCorrespondingFlightId());
+        }
+    }
+
+    private static void writeDateTime(DataOutput out, LocalDateTime time) throws IOException {
+        out.writeBoolean(time != null);
+        if (time != null) {
+            out.writeLong(time.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(time.getNano());
+        }
+    }
+
+    private static LocalDateTime readDateTime(DataInput in) throws IOException {
+        return in.readBoolean() ? LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC) : null;
+    }
+}
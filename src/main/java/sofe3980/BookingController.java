@@ -6,7 +6,6 @@ import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 import java.util.Random;
 
 import javax.servlet.http.HttpSession;
@@ -28,6 +27,8 @@ public class BookingController {
     private final FlightManager flightManager;
     private final UserManager userManager;
 
+    private static final int ROUND_TRIP_SUGGESTIONS = 5;
+
     private Random random = new Random();
 
     private String generateTicketNumber() {
@@ -35,13 +36,6 @@ public class BookingController {
         return "TKT" + (1000000 + random.nextInt(9000000));
     }
 
-    private String generateSeatNumber() {
-        // Generates a realistic seat number, assuming rows 1-30 and seats A-F
-        int row = 1 + random.nextInt(30);
-        char seat = (char) ('A' + random.nextInt(6));
-        return row + "" + seat;
-    }
-
     @Autowired
     public BookingController(BookingManager bookingManager, FlightManager flightManager, UserManager userManager) {
         this.bookingManager = bookingManager;
@@ -103,8 +97,11 @@ public class BookingController {
             @RequestParam("departureDate") String departureDate,
             @RequestParam(value = "returnDate", required = false) String returnDate,
             HttpSession session, RedirectAttributes redirectAttributes) {
-        session.setAttribute("searchFrom", searchFrom);
-        session.setAttribute("searchTo", searchTo);
+        // Search with the inventory's spelling of the locations when they are known
+        String from = flightManager.resolveLocation(searchFrom);
+        String to = flightManager.resolveLocation(searchTo);
+        session.setAttribute("searchFrom", from != null ? from : searchFrom);
+        session.setAttribute("searchTo", to != null ? to : searchTo);
         session.setAttribute("tripType", tripType);
         session.setAttribute("departureDate", departureDate);
         if (tripType.equals("Round Trip")) {
@@ -147,21 +144,24 @@ public class BookingController {
                 returnDate = null;
             }
 
-            List<Flight> flights = flightManager.searchFlights(from, to, departureDate, returnDate);
-            System.out.println("Number of flights found: " + flights.size());
-
-            List<Flight> departureFlights = flights.stream()
-                    .filter(flight -> departureDate != null
-                            && flight.getDepartureTime().toLocalDate().equals(departureDate))
-                    .collect(Collectors.toList());
-
-            List<Flight> returnFlights = flights.stream()
-                    .filter(flight -> returnDate != null && flight.getDepartureTime().toLocalDate().equals(returnDate))
-                    .collect(Collectors.toList());
+            // The search keeps outbound and return flights apart
+            List<Flight> departureFlights = new ArrayList<>();
+            List<Flight> returnFlights = new ArrayList<>();
+            if (from != null && to != null && departureDate != null) {
+                FlightSearchResult result = flightManager.searchFlightOptions(from, to, departureDate, returnDate);
+                departureFlights = result.getDepartureFlights();
+                returnFlights = result.getReturnFlights();
+            }
+            System.out.println("Number of flights found: " + (departureFlights.size() + returnFlights.size()));
 
             model.addAttribute("departureFlights", departureFlights);
             model.addAttribute("returnFlights", returnFlights);
             model.addAttribute("tripType", tripType);
+            if (returnDate != null) {
+                // Cheapest outbound/return combinations
+                model.addAttribute("roundTrips", RoundTripPairer.topPairs(departureFlights, returnFlights,
+                        ItinerarySortKey.PRICE, ROUND_TRIP_SUGGESTIONS));
+            }
 
         } catch (DateTimeParseException e) {
             System.out.println("Date parsing error: " + e.getMessage());
@@ -191,29 +191,53 @@ public class BookingController {
 
     @PostMapping("/book-and-generate-tickets")
     public String bookAndGenerateTickets(@RequestParam("depId") int depId,
-            @RequestParam(value = "retId", required = false) Integer retId, Model model) {
+            @RequestParam(value = "retId", required = false) Integer retId,
+            @RequestParam(value = "holdId", required = false) Integer holdId, Model model) {
         List<Ticket> tickets = new ArrayList<>();
+        List<Flight> flights = new ArrayList<>();
 
         // Process departure flight
-        Optional<Flight> depFlightOpt = flightManager.getFlightById(depId);
-        depFlightOpt.ifPresent(flight -> {
+        flightManager.getFlightById(depId).ifPresent(flights::add);
+
+        // Process return flight only if retId is provided
+        if (retId != null && retId > 0) { // Check if retId is provided and valid
+            flightManager.getFlightById(retId).ifPresent(flights::add);
+        }
+
+        // Use the seats held while the flights were chosen, if the hold still
+        // covers exactly these flights
+        List<String> heldSeats = null;
+        if (holdId != null) {
+            List<Integer> flightIds = new ArrayList<>();
+            for (Flight flight : flights) {
+                flightIds.add(flight.getFlightId());
+            }
+            Optional<SeatHold> hold = bookingManager.getHold(holdId);
+            if (hold.isPresent() && hold.get().getFlightIds().equals(flightIds)) {
+                SeatHold confirmed = bookingManager.confirmHold(holdId);
+                heldSeats = confirmed == null ? null : confirmed.getSeatNumbers();
+            } else {
+                bookingManager.releaseHold(holdId);
+            }
+        }
+
+        // Reserve a seat on every flight, or on none of them
+        for (Flight flight : flights) {
+            Optional<String> seatNumber = heldSeats != null ? Optional.of(heldSeats.get(tickets.size()))
+                    : flightManager.reserveSeat(flight.getFlightId());
+            if (!seatNumber.isPresent()) {
+                for (Ticket ticket : tickets) {
+                    flightManager.releaseSeat(ticket.getFlight().getFlightId(), ticket.getSeatNumber());
+                }
+                tickets.clear();
+                model.addAttribute("seatError", "Flight " + flight.getFlightId() + " is sold out.");
+                break;
+            }
             Ticket ticket = new Ticket();
             ticket.setFlight(flight);
             ticket.setTicketNumber(generateTicketNumber());
-            ticket.setSeatNumber(generateSeatNumber());
+            ticket.setSeatNumber(seatNumber.get());
             tickets.add(ticket);
-        });
-
-        // Process return flight only if retId is provided
-        if (retId != null && retId > 0) { // Check if retId is provided and valid
-            Optional<Flight> retFlightOpt = flightManager.getFlightById(retId);
-            retFlightOpt.ifPresent(flight -> {
-                Ticket ticket = new Ticket();
-                ticket.setFlight(flight);
-                ticket.setTicketNumber(generateTicketNumber());
-                ticket.setSeatNumber(generateSeatNumber());
-                tickets.add(ticket);
-            });
         }
 
         model.addAttribute("tickets", tickets);
@@ -0,0 +1,624 @@
+package sofe3980;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Append-only write-ahead journal of booking and user events, so bookings and
+ * users survive a restart.
+ *
+ * Each record is framed as its length, a CRC32 of the payload, and the
+ * payload. Writers only queue their record; a single committer thread writes
+ * everything queued since its last write with one gathering write and one
+ * fsync (group commit), then wakes the writers whose records are now durable.
+ * The more writers there are, the more records share an fsync.
+ *
+ * Durability and latency are traded off with two settings:
+ * <ul>
+ * <li>booking.journal.fsync (default true): force each group to disk. When
+ * false, records are durable against a process crash but not against a power
+ * failure.</li>
+ * <li>booking.journal.commit-delay-micros (default 0): how long the committer
+ * waits for more records before writing a group. A delay makes groups larger
+ * and fsyncs rarer at the cost of that much extra latency per commit.</li>
+ * </ul>
+ *
+ * A record is queued together with its in-memory effect, which the committer
+ * runs once the record is durable, in the order the records were queued and
+ * before their writers are woken. So nothing becomes visible that a failed
+ * write could lose, and the effects of all records before a checkpoint
+ * position are in memory (see checkpoint). Snapshots rely on this. If a write
+ * or an effect fails, the journal stops: the group's writers and every later
+ * one get the failure, and the file is cut back to the last durable record so
+ * that recovery does not replay records their writers saw fail.
+ *
+ * The journal is disabled unless booking.journal.path is set. It must be
+ * recovered (see recover) before records are appended; recovery replays the
+ * records and cuts off a torn record left by a crash mid-write.
+ */
+@Component
+public class BookingJournal {
+
+    static final byte BOOKING_CREATED = 1;
+    static final byte STATUS_CHANGED = 2;
+    static final byte USER_REGISTERED = 3;
+    static final int HEADER_BYTES = 2 * Integer.BYTES; // Length and CRC
+    static final int MAX_RECORD_BYTES = 1 << 20;
+    private static final int MAX_GROUP_RECORDS = 4096;
+
+    // Commit latency histogram: 16 exact buckets below 16 us, then 8 per power of two
+    private static final int LATENCY_SUB_BUCKETS = 8;
+    private static final int LATENCY_BUCKETS = 16 + 40 * LATENCY_SUB_BUCKETS;
+
+    private final Path path; // null when disabled
+    private final boolean fsync;
+    private final long commitDelayNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition recordsQueued = lock.newCondition();
+    private final Condition recordsDurable = lock.newCondition();
+    // Guarded by lock
+    private List<PendingRecord> queue = new ArrayList<>();
+    private long appendedRecords; // Sequence number of the last queued record
+    private long appendedPosition; // End of the last queued record in the file
+    private long durableRecords; // Sequence number of the last durable record
+    private long durablePosition; // End of the last durable record in the file
+    private long groupCommits;
+    private final long[] latencyCounts = new long[LATENCY_BUCKETS];
+    private IOException failure;
+    private boolean closed;
+
+    private FileChannel channel;
+    private Thread committer;
+    private long openedNanos;
+
+    @Autowired
+    public BookingJournal(@Value("${booking.journal.path:}") String path,
+            @Value("${booking.journal.fsync:true}") boolean fsync,
+            @Value("${booking.journal.commit-delay-micros:0}") long commitDelayMicros) {
+        this(path == null || path.isEmpty() ? null : Paths.get(path), fsync, commitDelayMicros);
+    }
+
+    /**
+     * Creates a journal. Nothing is opened until recover is called.
+     *
+     * @param path              The journal file, or null to disable journaling.
+     * @param fsync             Whether each group commit is forced to disk.
+     * @param commitDelayMicros How long to wait for more records before a group
+     *                          commit.
+     */
+    public BookingJournal(Path path, boolean fsync, long commitDelayMicros) {
+        this.path = path;
+        this.fsync = fsync;
+        this.commitDelayNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(0, commitDelayMicros));
+    }
+
+    /**
+     * @return true if a journal file is configured.
+     */
+    public boolean isEnabled() {
+        return path != null;
+    }
+
+    /**
+     * Replays the journal and opens it for appending. Replay stops at the first
+     * incomplete or corrupt record, which is what a crash in the middle of a
+     * write leaves behind; the file is truncated there.
+     *
+     * @param fromPosition The file position to replay from (0 for the whole
+     *                     journal); must be the start of a record.
+     * @param replay       Receives the records in the order they were appended.
+     * @return The number of records replayed.
+     * @throws IOException If the file cannot be read or opened.
+     */
+    public long recover(long fromPosition, Replay replay) throws IOException {
+        if (path == null) {
+            throw new IllegalStateException("The booking journal is disabled");
+        }
+        if (channel != null) {
+            throw new IllegalStateException("The booking journal is already open");
+        }
+        FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long records = 0;
+        long position = Math.min(fromPosition, file.size());
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            CRC32 crc = new CRC32();
+            while (true) {
+                header.clear();
+                if (readFully(file, header, position) < HEADER_BYTES) {
+                    break;
+                }
+                int length = header.getInt(0);
+                if (length < 1 || length > MAX_RECORD_BYTES) {
+                    break;
+                }
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                if (readFully(file, payload, position + HEADER_BYTES) < length) {
+                    break;
+                }
+                crc.reset();
+                crc.update(payload.array(), 0, length);
+                if ((int) crc.getValue() != header.getInt(Integer.BYTES)) {
+                    break;
+                }
+                apply(payload.array(), replay);
+                position += HEADER_BYTES + length;
+                records++;
+            }
+            if (file.size() > position) {
+                System.out.println("Booking journal: discarding " + (file.size() - position)
+                        + " bytes of incomplete records at position " + position);
+                file.truncate(position);
+                file.force(true);
+            }
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+
+        file.position(position);
+        lock.lock();
+        try {
+            channel = file;
+            appendedPosition = position;
+            durablePosition = position;
+            openedNanos = System.nanoTime();
+        } finally {
+            lock.unlock();
+        }
+        committer = new Thread(this::commitLoop, "booking-journal");
+        committer.setDaemon(true);
+        committer.start();
+        return records;
+    }
+
+    /**
+     * Queues a record of a new booking.
+     *
+     * @param booking The booking as created.
+     * @param apply   Makes the booking visible in memory; run on the committer
+     *                thread once the record is durable, after the effects of
+     *                earlier records. Never run if the write fails.
+     * @return The sequence number to wait for with awaitDurable.
+     */
+    public long logCreated(Booking booking, Runnable apply) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(BOOKING_CREATED);
+            BookingCodec.writeBooking(out, booking);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Not thrown by an in-memory stream
+        }
+        return append(bytes.toByteArray(), apply);
+    }
+
+    /**
+     * Queues a record of a booking status change.
+     *
+     * @param bookingId The ID of the booking.
+     * @param status    The new status.
+     * @param apply     Sets the status in memory (see logCreated).
+     * @return The sequence number to wait for with awaitDurable.
+     */
+    public long logStatus(int bookingId, String status, Runnable apply) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(STATUS_CHANGED);
+            out.writeInt(bookingId);
+            BookingCodec.writeString(out, status);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return append(bytes.toByteArray(), apply);
+    }
+
+    /**
+     * Queues a record of a new user, including the password hash so the user
+     * can still log in after a restart.
+     *
+     * @param user  The user as registered.
+     * @param apply Makes the user visible in memory (see logCreated).
+     * @return The sequence number to wait for with awaitDurable.
+     */
+    public long logUser(User user, Runnable apply) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(USER_REGISTERED);
+            BookingCodec.writeUser(out, user, true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return append(bytes.toByteArray(), apply);
+    }
+
+    /**
+     * Waits until a record and every record queued before it are durable.
+     *
+     * @param sequence The sequence number returned when the record was queued.
+     * @throws UncheckedIOException If the journal could not be written.
+     */
+    public void awaitDurable(long sequence) {
+        lock.lock();
+        try {
+            while (durableRecords < sequence && failure == null) {
+                recordsDurable.awaitUninterruptibly();
+            }
+            if (durableRecords < sequence) {
+                throw new UncheckedIOException("Booking journal write failed", failure);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a position for a fuzzy snapshot. Every record before it is durable
+     * and its effect is in memory, so a snapshot of the in-memory state taken
+     * after this call, plus the records from the position on, gives the current
+     * state. Replaying a record whose effect the snapshot already has does no
+     * harm: records carry the new state, not a change to it. Writers are only
+     * blocked while the position is read.
+     *
+     * @return The checkpoint position.
+     */
+    public long checkpoint() {
+        long position;
+        long sequence;
+        lock.lock();
+        try {
+            position = appendedPosition;
+            sequence = appendedRecords;
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(sequence);
+        return position;
+    }
+
+    /**
+     * @return The file position up to which every record is durable.
+     */
+    public long getDurablePosition() {
+        lock.lock();
+        try {
+            return durablePosition;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the journal statistics: records and group commits so far, the
+     * average group size, commits per second since the journal was opened, and
+     * commit latency percentiles (from queueing a record to it being durable,
+     * rounded up to the histogram bucket, at most 12.5% high).
+     *
+     * @return The statistics by name.
+     */
+    public Map<String, Number> getMetrics() {
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            double seconds = channel == null ? 0 : (System.nanoTime() - openedNanos) / 1e9;
+            metrics.put("journalRecords", durableRecords);
+            metrics.put("journalGroupCommits", groupCommits);
+            metrics.put("journalRecordsPerGroup", groupCommits == 0 ? 0.0 : (double) durableRecords / groupCommits);
+            metrics.put("journalCommitsPerSecond", seconds == 0 ? 0.0 : durableRecords / seconds);
+            metrics.put("journalP50LatencyMicros", latencyPercentile(0.50));
+            metrics.put("journalP99LatencyMicros", latencyPercentile(0.99));
+            metrics.put("journalBytes", durablePosition);
+        } finally {
+            lock.unlock();
+        }
+        return metrics;
+    }
+
+    /**
+     * Writes out the queued records and closes the file. Records queued later
+     * fail.
+     *
+     * @throws IOException If the file cannot be closed.
+     */
+    @PreDestroy
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+            recordsQueued.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (committer != null) {
+            try {
+                committer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private long append(byte[] payload, Runnable apply) {
+        if (payload.length > MAX_RECORD_BYTES) {
+            throw new IllegalArgumentException("Journal record of " + payload.length + " bytes is too large");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        record.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+
+        lock.lock();
+        try {
+            if (channel == null || closed) {
+                throw new IllegalStateException("The booking journal is not open");
+            }
+            if (failure != null) {
+                throw new UncheckedIOException("Booking journal write failed", failure);
+            }
+            queue.add(new PendingRecord(record, apply, System.nanoTime()));
+            if (queue.size() == 1 || queue.size() >= MAX_GROUP_RECORDS) {
+                recordsQueued.signal();
+            }
+            appendedPosition += record.remaining();
+            return ++appendedRecords;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Runs on the committer thread, which alone moves durablePosition and uses
+    // the channel after recovery. Whatever ends it abnormally stops the journal,
+    // so writers waiting in awaitDurable are woken with the failure instead of
+    // waiting forever.
+    private void commitLoop() {
+        try {
+            commitGroups();
+        } catch (RuntimeException | Error e) {
+            stop(new IOException("Booking journal committer failed", e));
+            throw e;
+        }
+    }
+
+    // Takes everything queued and writes it as one group, until closed or failed
+    private void commitGroups() {
+        List<PendingRecord> group = new ArrayList<>();
+        while (true) {
+            lock.lock();
+            try {
+                while (queue.isEmpty() && !closed) {
+                    recordsQueued.awaitUninterruptibly();
+                }
+                if (queue.isEmpty()) {
+                    return; // Closed and drained
+                }
+                long deadline = System.nanoTime() + commitDelayNanos;
+                long remaining = commitDelayNanos;
+                while (remaining > 0 && !closed && queue.size() < MAX_GROUP_RECORDS) {
+                    try {
+                        remaining = recordsQueued.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                    remaining = Math.min(remaining, deadline - System.nanoTime());
+                }
+                List<PendingRecord> taken = queue;
+                queue = group;
+                group = taken;
+            } finally {
+                lock.unlock();
+            }
+
+            long bytes = 0;
+            IOException error = null;
+            try {
+                ByteBuffer[] buffers = new ByteBuffer[group.size()];
+                for (int i = 0; i < buffers.length; i++) {
+                    buffers[i] = group.get(i).record;
+                    bytes += buffers[i].remaining();
+                }
+                write(buffers, bytes);
+            } catch (IOException e) {
+                error = e;
+            }
+            if (error == null) {
+                // Outside the lock: effects take the callers' own locks, which they
+                // may hold while queueing
+                try {
+                    for (PendingRecord record : group) {
+                        if (record.apply != null) {
+                            record.apply.run();
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    // Memory no longer matches the journal, so nothing more is accepted
+                    error = new IOException("Applying a booking journal record failed", e);
+                }
+            }
+            if (error != null) {
+                // Later records must not be written after a gap, so the journal stops here
+                stop(error);
+                return;
+            }
+
+            long now = System.nanoTime();
+            lock.lock();
+            try {
+                durableRecords += group.size();
+                durablePosition += bytes;
+                groupCommits++;
+                for (PendingRecord record : group) {
+                    latencyCounts[latencyBucket(TimeUnit.NANOSECONDS.toMicros(now - record.queuedNanos))]++;
+                }
+                recordsDurable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            group.clear();
+        }
+    }
+
+    // Fails every queued and later record; the records of the group in progress
+    // are not counted as durable, so their writers see the failure too. Those
+    // records may already be in the file, so it is cut back to the last durable
+    // record first: recovery must not bring back what writers were told failed.
+    private void stop(IOException error) {
+        System.out.println("Booking journal stopped: " + error);
+        try {
+            channel.truncate(durablePosition);
+            channel.position(durablePosition);
+            if (fsync) {
+                channel.force(true);
+            }
+        } catch (IOException e) {
+            System.out.println("Booking journal could not be cut back to " + durablePosition
+                    + "; failed records may be recovered: " + e);
+            error.addSuppressed(e);
+        }
+        lock.lock();
+        try {
+            if (failure == null) {
+                failure = error;
+            }
+            queue.clear();
+            recordsDurable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Writes a group of records and forces it to disk if configured; tests
+    // override it to simulate a failing disk
+    void write(ByteBuffer[] buffers, long bytes) throws IOException {
+        long written = 0;
+        while (written < bytes) {
+            written += channel.write(buffers);
+        }
+        if (fsync) {
+            channel.force(false);
+        }
+    }
+
+    private static void apply(byte[] payload, Replay replay) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = in.readByte();
+        switch (type) {
+            case BOOKING_CREATED:
+                replay.bookingCreated(BookingCodec.readBooking(in));
+                break;
+            case STATUS_CHANGED:
+                replay.statusChanged(in.readInt(), BookingCodec.readString(in));
+                break;
+            case USER_REGISTERED:
+                replay.userRegistered(BookingCodec.readUser(in));
+                break;
+            default:
+                throw new IOException("Unknown booking journal record type " + type);
+        }
+    }
+
+    // Reads until the buffer is full or the file ends; returns the bytes read
+    private static int readFully(FileChannel file, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = file.read(buffer, position + total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    static int latencyBucket(long micros) {
+        if (micros < 16) {
+            return (int) Math.max(0, micros);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros); // At least 4
+        int subBucket = (int) (micros >>> (exponent - 3)) & (LATENCY_SUB_BUCKETS - 1);
+        return Math.min(LATENCY_BUCKETS - 1, 16 + (exponent - 4) * LATENCY_SUB_BUCKETS + subBucket);
+    }
+
+    // Largest latency that falls in a bucket
+    static long latencyBucketLimit(int bucket) {
+        if (bucket < 16) {
+            return bucket;
+        }
+        int exponent = (bucket - 16) / LATENCY_SUB_BUCKETS + 4;
+        int subBucket = (bucket - 16) % LATENCY_SUB_BUCKETS;
+        return ((long) (LATENCY_SUB_BUCKETS + subBucket + 1) << (exponent - 3)) - 1;
+    }
+
+    // Called with the lock held
+    private long latencyPercentile(double fraction) {
+        long total = 0;
+        for (long count : latencyCounts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(fraction * total);
+        long seen = 0;
+        for (int bucket = 0; bucket < latencyCounts.length; bucket++) {
+            seen += latencyCounts[bucket];
+            if (seen >= rank) {
+                return latencyBucketLimit(bucket);
+            }
+        }
+        return latencyBucketLimit(LATENCY_BUCKETS - 1);
+    }
+
+    /**
+     * Receives the records of a journal being replayed.
+     */
+    public interface Replay {
+        void bookingCreated(Booking booking);
+
+        void statusChanged(int bookingId, String status);
+
+        default void userRegistered(User user) {
+        }
+    }
+
+    private static final class PendingRecord {
+        final ByteBuffer record;
+        final Runnable apply; // null if the record has no in-memory effect
+        final long queuedNanos;
+
+        PendingRecord(ByteBuffer record, Runnable apply, long queuedNanos) {
+            this.record = record;
+            this.apply = apply;
+            this.queuedNanos = queuedNanos;
+        }
+    }
+}
@@ -1,22 +1,176 @@
 package sofe3980;
 
-import java.util.HashMap;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+/**
+ * Stores bookings. This is a singleton shared by all request threads: IDs are
+ * handed out atomically, bookings live in a concurrent map, and every change to
+ * an existing booking is made under the lock stripe of its ID, so changes to
+ * different bookings rarely wait for each other.
+ *
+ * Bookings are also indexed by user (all bookings) and by flight (active
+ * bookings only), so "my bookings" and "who is on this flight" cost time in
+ * proportion to the answer, not to the number of bookings. A booking is
+ * indexed before it is published, and a status change updates the flight
+ * index under the same stripe lock, so the indexes never miss a booking and
+ * never keep a canceled one for longer than the change itself takes.
+ *
+ * When a flight is disrupted, all of its bookings can be canceled or rebooked
+ * at once in the background (see cancelFlightBookings and
+ * rebookFlightBookings).
+ *
+ * It also holds seats for checkouts in progress (see holdSeats). Holds expire
+ * through a hashed timing wheel that is advanced by the hold operations
+ * themselves, so no timer or thread is needed per hold.
+ *
+ * With a BookingJournal, every new booking and status change is written to the
+ * journal before the call returns. SnapshotManager rebuilds the bookings from
+ * the latest snapshot and the journal at startup.
+ */
 @Service
 public class BookingManager {
 
-    private Map<Integer, Booking> bookingsMap; // HashMap to store bookings by their ID
-    private int nextBookingId;
+    static final int LOCK_STRIPES = 64; // A power of two
+    // Which ticket seats a status change gives back: every leg, or none
+    private static final int ALL_LEGS = -1;
+    private static final int NO_LEGS = Integer.MIN_VALUE;
+
+    private final ConcurrentMap<Integer, Booking> bookingsMap; // Bookings by their ID
+    private final AtomicInteger nextBookingId;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final ConcurrentMap<Integer, Set<Integer>> bookingsByUser = new ConcurrentHashMap<>(); // Booking IDs
+    private final ConcurrentMap<Integer, Set<Integer>> activeBookingsByFlight = new ConcurrentHashMap<>();
+    // Bookings with a journaled status change that is not durable yet, so not
+    // applied; guarded by the booking's stripe lock
+    private final Set<Integer> pendingTransitions = ConcurrentHashMap.newKeySet();
+
+    public static final long DEFAULT_HOLD_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    static final long HOLD_TICK_MILLIS = 1000;
+    static final int HOLD_WHEEL_SIZE = 1024; // About 17 minutes per turn
+
+    private final FlightManager flightManager; // Seat inventory for holds, null if holds are not used
+    private final Clock clock;
+    private final ConcurrentMap<Integer, SeatHold> holds = new ConcurrentHashMap<>();
+    private final AtomicInteger nextHoldId = new AtomicInteger(1);
+    // Expiry of the outstanding holds, guarded by its own monitor
+    private final HashedTimingWheel<SeatHold> holdExpiry;
+
+    private final BookingJournal journal; // null if bookings are only kept in memory
+
+    static final int BULK_BATCH_SIZE = 64;
+    // Batch workers mostly wait for journal commits, so there are a few even on one core
+    static final int BULK_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+    public static final int REBOOK_SEARCH_DAYS = 3;
+    private final ConcurrentMap<Integer, BulkFlightOperation> bulkOperations = new ConcurrentHashMap<>();
+    private final AtomicInteger nextOperationId = new AtomicInteger(1);
+    private ExecutorService bulkExecutor; // Started on first use, guarded by bulkOperations
 
     public BookingManager() {
-        this.bookingsMap = new HashMap<>();
-        this.nextBookingId = 1; // Start with booking ID 1 then increment from here
+        this(null, Clock.systemDefaultZone());
+    }
+
+    public BookingManager(FlightManager flightManager) {
+        this(flightManager, Clock.systemDefaultZone());
+    }
+
+    @Autowired
+    public BookingManager(FlightManager flightManager, BookingJournal journal) {
+        this(flightManager, Clock.systemDefaultZone(), journal);
+    }
+
+    public BookingManager(FlightManager flightManager, Clock clock) {
+        this(flightManager, clock, null);
+    }
+
+    /**
+     * Creates a booking manager.
+     * 
+     * @param flightManager The seat inventory for holds, or null.
+     * @param clock         The clock for hold expiry.
+     * @param journal       The journal to write to, or null (or a disabled
+     *                      journal) to keep bookings in memory only. It must be
+     *                      recovered before bookings are changed.
+     */
+    public BookingManager(FlightManager flightManager, Clock clock, BookingJournal journal) {
+        this.flightManager = flightManager;
+        this.journal = journal != null && journal.isEnabled() ? journal : null;
+        this.clock = clock;
+        this.holdExpiry = new HashedTimingWheel<>(HOLD_TICK_MILLIS, HOLD_WHEEL_SIZE, clock.millis());
+        this.bookingsMap = new ConcurrentHashMap<>();
+        this.nextBookingId = new AtomicInteger(1); // Start with booking ID 1 then increment from here
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Puts back a booking read from a snapshot or the journal, replacing any
+     * booking with the same ID. Only for recovery (see SnapshotManager), before
+     * the manager is in use; resumeIds must be called afterwards.
+     * 
+     * @param booking The booking.
+     */
+    void restoreBooking(Booking booking) {
+        synchronized (lockFor(booking.getBookingId())) {
+            indexBooking(booking);
+            bookingsMap.put(booking.getBookingId(), booking);
+            updateFlightIndex(booking);
+        }
+    }
+
+    /**
+     * Sets the status of a recovered booking. Only for recovery.
+     * 
+     * @param bookingId The ID of the booking.
+     * @param status    The status.
+     */
+    void restoreStatus(int bookingId, String status) {
+        Booking booking = bookingsMap.get(bookingId);
+        if (booking != null) {
+            synchronized (lockFor(bookingId)) {
+                booking.setStatus(status);
+                updateFlightIndex(booking);
+            }
+        }
+    }
+
+    // Continues the ID sequence after the recovered bookings
+    void resumeIds() {
+        int maxBookingId = 0;
+        for (int bookingId : bookingsMap.keySet()) {
+            maxBookingId = Math.max(maxBookingId, bookingId);
+        }
+        nextBookingId.set(maxBookingId + 1);
+    }
+
+    /**
+     * @return A weakly consistent view of all bookings, for snapshots. Bookings
+     *         created or changed while it is iterated may or may not show up.
+     */
+    Collection<Booking> getAllBookings() {
+        return Collections.unmodifiableCollection(bookingsMap.values());
     }
 
     /**
@@ -26,36 +180,684 @@ public class BookingManager {
      * @param user        The user making the booking.
      * @param flights     The list of flights included in the booking.
      * @param bookingType The type of booking (one-way, round-trip).
-     * @return The created Booking object.
+     * @return The created Booking object, or null if the request is incomplete or
+     *         the itinerary is cyclic (the rule of isValidRequest).
      */
     public Booking createBooking(User user, List<Flight> flights, String bookingType) {
-        // Check if the itinerary is cyclic
-        if (isCyclicItinerary(flights)) {
-            // Handle the cyclic itinerary case. Options include returning null, throwing an exception, or other handling.
-            System.out.println("Cannot create booking: Itinerary is cyclic.");
-            return null; // Example: return null if the itinerary is cyclic.
+        return createBooking(user, flights, bookingType, null);
+    }
+
+    /**
+     * Creates a new booking for seats that are already reserved, for example
+     * through a confirmed hold. The booking gets a ticket with its seat for each
+     * flight; the seats are released when the booking is canceled, and the seat
+     * of the disrupted leg when it is rebooked.
+     * 
+     * @param user        The user making the booking.
+     * @param flights     The list of flights included in the booking.
+     * @param bookingType The type of booking (one-way, round-trip).
+     * @param seatNumbers The reserved seat on each flight, in the same order, or
+     *                    null for a booking without seats.
+     * @return The created Booking object, or null if the request is incomplete or
+     *         the itinerary is cyclic (the rule of isValidRequest).
+     */
+    public Booking createBooking(User user, List<Flight> flights, String bookingType, List<String> seatNumbers) {
+        // Check the request the same way a batch is checked
+        if (!isValidRequest(user, flights, bookingType)) {
+            System.out.println("Cannot create booking: Incomplete or cyclic itinerary.");
+            return null;
+        }
+        if (seatNumbers != null && seatNumbers.size() != flights.size()) {
+            throw new IllegalArgumentException("Expected one seat per flight, got " + seatNumbers.size());
         }
     
-        // If the itinerary is not cyclic, proceed to create the booking
-        int bookingId = nextBookingId++; // Auto increment ID value
+        // If the request is valid, proceed to create the booking
+        int bookingId = nextBookingId.getAndIncrement(); // Unique even under concurrent calls
         Booking newBooking = new Booking(bookingId, user, flights, bookingType);
-        bookingsMap.put(bookingId, newBooking); // Store the new booking in the map
+        if (seatNumbers != null) {
+            for (int i = 0; i < flights.size(); i++) {
+                newBooking.getTickets().add(new Ticket(bookingId, flights.get(i), user.getName(), "",
+                        seatNumbers.get(i)));
+            }
+        }
+        long sequence = queueBooking(newBooking);
+        if (journal != null) {
+            journal.awaitDurable(sequence);
+        }
         return newBooking;
     }
+
+    /**
+     * Creates several bookings at once, for example for a travel agent posting
+     * a batch. The itineraries are validated in parallel, then all valid
+     * bookings are queued and the journal is waited for once, so the whole
+     * batch shares group commits instead of paying one commit per booking.
+     *
+     * @param requests The bookings to create; only the user, flights and booking
+     *                 type of each are used.
+     * @return The created bookings in the order of the requests, with null for
+     *         each request that is incomplete or has a cyclic itinerary.
+     */
+    public List<Booking> createBookings(List<Booking> requests) {
+        boolean[] valid = new boolean[requests.size()];
+        IntStream.range(0, requests.size()).parallel().forEach(i -> valid[i] = isValidRequest(requests.get(i)));
+
+        List<Booking> created = new ArrayList<>(requests.size());
+        long sequence = 0;
+        for (int i = 0; i < requests.size(); i++) {
+            if (!valid[i]) {
+                created.add(null);
+                continue;
+            }
+            Booking request = requests.get(i);
+            Booking newBooking = new Booking(nextBookingId.getAndIncrement(), request.getUser(), request.getFlights(),
+                    request.getBookingType());
+            sequence = Math.max(sequence, queueBooking(newBooking));
+            created.add(newBooking);
+        }
+        if (journal != null) {
+            journal.awaitDurable(sequence);
+        }
+        return created;
+    }
+
+    /**
+     * @param request A booking to create.
+     * @return true if it has a user, a booking type and a non-cyclic itinerary
+     *         of at least one flight.
+     */
+    public boolean isValidRequest(Booking request) {
+        return isValidRequest(request.getUser(), request.getFlights(), request.getBookingType());
+    }
+
+    private boolean isValidRequest(User user, List<Flight> flights, String bookingType) {
+        return user != null && bookingType != null && flights != null && !flights.isEmpty()
+                && !flights.contains(null) && !isCyclicItinerary(flights);
+    }
+
+    // Indexes and stores a new booking without waiting for the journal; returns
+    // the journal sequence to wait for (0 without a journal). With a journal the
+    // booking is only published once its record is durable, so no status change
+    // can be journaled ahead of it and a failed write leaves nothing behind.
+    private long queueBooking(Booking newBooking) {
+        if (journal == null) {
+            publishBooking(newBooking);
+            return 0;
+        }
+        return journal.logCreated(newBooking, () -> publishBooking(newBooking));
+    }
+
+    private void publishBooking(Booking newBooking) {
+        indexBooking(newBooking); // Queries skip IDs that are not published yet
+        bookingsMap.put(newBooking.getBookingId(), newBooking); // Store the new booking in the map
+    }
     
     /**
-     * Cancels an existing booking by removing it from the list of bookings.
+     * Cancels an active booking. When several threads cancel the same booking at
+     * once, exactly one of them succeeds.
      * 
      * @param bookingId The ID of the booking to cancel.
      * @return true if the booking was successfully canceled, false otherwise.
      */
     public boolean cancelBooking(int bookingId) {
+        return transitionStatus(bookingId, "active", "canceled");
+    }
+
+    /**
+     * Changes the status of a booking if it currently has the expected status,
+     * as one atomic step. With a journal, the change is queued to it under the
+     * same lock, so the journal has the changes of a booking in the order they
+     * were made, and the call returns once it is durable. The new status is only
+     * visible once durable; until then other changes to the booking fail as if
+     * it no longer had the expected status. Canceling a booking releases the
+     * seats of its tickets in the same step.
+     * 
+     * @param bookingId      The ID of the booking.
+     * @param expectedStatus The status the booking must have.
+     * @param newStatus      The status to set.
+     * @return true if the booking was found with the expected status and changed.
+     */
+    public boolean transitionStatus(int bookingId, String expectedStatus, String newStatus) {
+        long sequence = queueTransition(bookingId, expectedStatus, newStatus,
+                "canceled".equals(newStatus) ? ALL_LEGS : NO_LEGS);
+        if (sequence < 0) {
+            return false;
+        }
+        if (journal != null) {
+            try {
+                journal.awaitDurable(sequence); // Outside the lock, so the stripe is not held for an fsync
+            } catch (RuntimeException e) {
+                synchronized (lockFor(bookingId)) {
+                    pendingTransitions.remove(bookingId); // The change was never applied
+                }
+                throw e;
+            }
+        }
+        return true;
+    }
+
+    // Changes a status without waiting for the journal; returns the journal
+    // sequence to wait for (0 without a journal), or -1 if nothing changed. The
+    // ticket seats on releasedFlightId (or ALL_LEGS, or NO_LEGS) are released
+    // when the change is applied.
+    private long queueTransition(int bookingId, String expectedStatus, String newStatus, int releasedFlightId) {
         Booking booking = bookingsMap.get(bookingId);
-        if (booking != null && "active".equals(booking.getStatus())) {
-            booking.cancel(); // This should set the booking status to "canceled"
-            return true;
+        if (booking == null) {
+            return -1;
+        }
+        synchronized (lockFor(bookingId)) {
+            if (!expectedStatus.equals(booking.getStatus()) || pendingTransitions.contains(bookingId)) {
+                return -1;
+            }
+            if (journal == null) {
+                applyStatus(booking, newStatus, releasedFlightId);
+                return 0;
+            }
+            long sequence = journal.logStatus(bookingId, newStatus,
+                    () -> applyStatus(booking, newStatus, releasedFlightId));
+            // The effect needs this lock, so it cannot run before the marker is set
+            pendingTransitions.add(bookingId);
+            return sequence;
+        }
+    }
+
+    private void applyStatus(Booking booking, String newStatus, int releasedFlightId) {
+        synchronized (lockFor(booking.getBookingId())) {
+            booking.setStatus(newStatus);
+            updateFlightIndex(booking);
+            pendingTransitions.remove(booking.getBookingId());
+        }
+        if (flightManager == null || releasedFlightId == NO_LEGS) {
+            return;
+        }
+        // Only once: a booking leaves "active" a single time
+        for (Ticket ticket : booking.getTickets()) {
+            int flightId = ticket.getFlight().getFlightId();
+            if (ticket.getSeatNumber() != null && (releasedFlightId == ALL_LEGS || flightId == releasedFlightId)) {
+                flightManager.releaseSeat(flightId, ticket.getSeatNumber());
+            }
+        }
+    }
+
+    /**
+     * Returns the lock guarding changes to a booking. Bookings share a fixed set
+     * of locks, so holding one may briefly block changes to other bookings.
+     * 
+     * @param bookingId The ID of the booking.
+     * @return The lock of the booking's stripe.
+     */
+    Object lockFor(int bookingId) {
+        return locks[bookingId & (LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * Cancels every active booking on a flight, for example when its aircraft
+     * goes out of service. The bookings come from the flight index and are
+     * canceled in parallel batches in the background; each batch waits for
+     * the journal once, so its records share group commits.
+     * 
+     * @param flightId The ID of the flight.
+     * @return The handle to follow the operation with.
+     */
+    public BulkFlightOperation cancelFlightBookings(int flightId) {
+        return startBulkOperation(flightId, BulkFlightOperation.CANCEL);
+    }
+
+    /**
+     * Moves every active booking on a flight to another flight on the same
+     * route. Alternatives are searched once for the whole flight: direct
+     * flights departing no earlier than the disrupted one, within
+     * REBOOK_SEARCH_DAYS days. Each booking gets the earliest alternative that
+     * still connects with its other legs and has a free seat; the old booking
+     * becomes "rebooked" and a new booking is created for the same user. A
+     * booking with no alternative is canceled.
+     * 
+     * @param flightId The ID of the flight.
+     * @return The handle to follow the operation with.
+     */
+    public BulkFlightOperation rebookFlightBookings(int flightId) {
+        if (flightManager == null) {
+            throw new IllegalStateException("Rebooking needs a FlightManager");
+        }
+        return startBulkOperation(flightId, BulkFlightOperation.REBOOK);
+    }
+
+    /**
+     * @param operationId The ID of a bulk operation.
+     * @return The operation, or empty if there is none with that ID.
+     */
+    public Optional<BulkFlightOperation> getBulkOperation(int operationId) {
+        return Optional.ofNullable(bulkOperations.get(operationId));
+    }
+
+    private BulkFlightOperation startBulkOperation(int flightId, String action) {
+        List<Booking> affected = getActiveBookingsByFlight(flightId);
+        List<Flight> alternatives = BulkFlightOperation.REBOOK.equals(action)
+                ? findAlternatives(flightId, affected) : Collections.<Flight>emptyList();
+        List<Integer> alternativeIds = new ArrayList<>(alternatives.size());
+        for (Flight alternative : alternatives) {
+            alternativeIds.add(alternative.getFlightId());
+        }
+        BulkFlightOperation operation = new BulkFlightOperation(nextOperationId.getAndIncrement(), flightId, action,
+                affected.size(), alternativeIds);
+        bulkOperations.put(operation.getOperationId(), operation);
+
+        List<CompletableFuture<Void>> batches = new ArrayList<>();
+        for (int from = 0; from < affected.size(); from += BULK_BATCH_SIZE) {
+            List<Booking> batch = affected.subList(from, Math.min(affected.size(), from + BULK_BATCH_SIZE));
+            batches.add(CompletableFuture.runAsync(() -> processBatch(operation, flightId, batch, alternatives),
+                    bulkExecutor()));
+        }
+        CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0]))
+                .whenComplete((result, failure) -> operation.finish(failure));
+        return operation;
+    }
+
+    // Cancels or rebooks a batch, then waits for the journal once for all of it.
+    // If the journal fails, the changes that did not become durable are undone
+    // as in transitionStatus and counted as failed on the operation.
+    private void processBatch(BulkFlightOperation operation, int flightId, List<Booking> batch,
+            List<Flight> alternatives) {
+        long sequence = 0;
+        List<BatchItem> items = new ArrayList<>(batch.size());
+        boolean rebook = BulkFlightOperation.REBOOK.equals(operation.getAction());
+        RuntimeException failure = null;
+        try {
+            for (Booking booking : batch) {
+                BatchItem item = new BatchItem(booking.getBookingId());
+                items.add(item);
+                item.replacement = rebook ? replacementFor(booking, flightId, alternatives) : null;
+                long changed = item.replacement == null
+                        ? queueTransition(item.bookingId, "active", "canceled", ALL_LEGS)
+                        : queueTransition(item.bookingId, "active", "rebooked", flightId);
+                if (changed < 0) {
+                    item.skipped = true;
+                    continue;
+                }
+                item.queued = true;
+                sequence = Math.max(sequence, changed);
+                if (item.replacement != null) {
+                    // The ID is only taken once the old booking is rebooked, so a skipped
+                    // booking leaves no gap in the IDs
+                    item.newBooking = rebooked(booking, flightId, item.replacement);
+                    sequence = Math.max(sequence, queueBooking(item.newBooking));
+                }
+            }
+            if (journal != null) {
+                journal.awaitDurable(sequence);
+            }
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+
+        int failed = batch.size() - items.size(); // Never reached
+        for (BatchItem item : items) {
+            boolean applied = item.queued;
+            if (failure != null && item.queued) {
+                synchronized (lockFor(item.bookingId)) {
+                    // Still pending means the change was never applied
+                    applied = !pendingTransitions.remove(item.bookingId);
+                }
+            }
+            boolean published = item.newBooking != null && bookingsMap.containsKey(item.newBooking.getBookingId());
+            if (item.replacement != null && !published) {
+                flightManager.releaseSeat(item.replacement.flightId, item.replacement.seatNumber);
+            }
+            if (item.skipped) {
+                operation.recordSkipped();
+            } else if (!applied || (item.replacement != null && !published)) {
+                failed++;
+            } else if (item.replacement == null) {
+                operation.recordCanceled();
+            } else {
+                operation.recordRebooked(item.bookingId, item.newBooking.getBookingId());
+            }
+        }
+        if (failure != null) {
+            operation.recordFailed(failed, failure);
+        }
+    }
+
+    // The progress of one booking of a bulk operation batch
+    private static final class BatchItem {
+        final int bookingId;
+        Replacement replacement; // Seat reserved for rebooking, null when canceling
+        boolean skipped; // Changed by someone else first
+        boolean queued; // Its status change was queued
+        Booking newBooking; // The rebooked booking, once queued
+
+        BatchItem(int bookingId) {
+            this.bookingId = bookingId;
+        }
+    }
+
+    // The new booking for a rebooked one. It keeps the tickets of the other legs,
+    // whose seats it takes over, and gets a ticket for the replacement seat.
+    private Booking rebooked(Booking booking, int flightId, Replacement replacement) {
+        Booking newBooking = new Booking(nextBookingId.getAndIncrement(), booking.getUser(), replacement.flights,
+                booking.getBookingType());
+        String ticketNumber = "";
+        for (Ticket ticket : booking.getTickets()) {
+            if (ticket.getFlight().getFlightId() == flightId) {
+                ticketNumber = ticket.getTicketNumber();
+            } else {
+                newBooking.getTickets().add(new Ticket(newBooking.getBookingId(), ticket.getFlight(),
+                        ticket.getPassengerName(), ticket.getTicketNumber(), ticket.getSeatNumber()));
+            }
+        }
+        Flight replacementFlight = replacement.flights.get(replacement.leg);
+        newBooking.getTickets().add(new Ticket(newBooking.getBookingId(), replacementFlight,
+                booking.getUser() == null ? null : booking.getUser().getName(), ticketNumber,
+                replacement.seatNumber));
+        return newBooking;
+    }
+
+    // Direct flights on the disrupted flight's route, earliest first, with seats left
+    private List<Flight> findAlternatives(int flightId, List<Booking> affected) {
+        Flight disrupted = flightManager.getFlightById(flightId).orElse(null);
+        if (disrupted == null) {
+            // Retired from the inventory; the bookings still have a copy
+            for (Booking booking : affected) {
+                for (Flight flight : booking.getFlights()) {
+                    if (flight.getFlightId() == flightId) {
+                        disrupted = flight;
+                    }
+                }
+            }
+        }
+        List<Flight> alternatives = new ArrayList<>();
+        if (disrupted == null) {
+            return alternatives;
+        }
+        LocalDate date = disrupted.getDepartureTime().toLocalDate();
+        for (int day = 0; day <= REBOOK_SEARCH_DAYS; day++) {
+            for (Flight flight : flightManager.searchDirectFlights(disrupted.getOrigin(),
+                    disrupted.getDestination(), date.plusDays(day))) {
+                if (flight.getFlightId() != flightId
+                        && !flight.getDepartureTime().isBefore(disrupted.getDepartureTime())
+                        && flightManager.getAvailableSeats(flight.getFlightId()) > 0) {
+                    alternatives.add(flight);
+                }
+            }
+        }
+        alternatives.sort(Comparator.comparing(Flight::getDepartureTime));
+        return alternatives;
+    }
+
+    // Builds the itinerary for a rebooked booking, with a seat reserved on the
+    // first alternative that connects with the other legs; null if there is none
+    private Replacement replacementFor(Booking booking, int flightId, List<Flight> alternatives) {
+        List<Flight> flights = booking.getFlights();
+        int leg = -1;
+        for (int i = 0; i < flights.size(); i++) {
+            if (flights.get(i).getFlightId() == flightId) {
+                leg = i;
+            }
+        }
+        if (leg < 0) {
+            return null;
+        }
+        for (Flight alternative : alternatives) {
+            boolean connects = (leg == 0
+                    || !alternative.getDepartureTime().isBefore(flights.get(leg - 1).getArrivalTime()))
+                    && (leg == flights.size() - 1
+                            || !alternative.getArrivalTime().isAfter(flights.get(leg + 1).getDepartureTime()));
+            Optional<String> seatNumber = connects ? flightManager.reserveSeat(alternative.getFlightId())
+                    : Optional.<String>empty();
+            if (seatNumber.isPresent()) {
+                List<Flight> newFlights = new ArrayList<>(flights);
+                newFlights.set(leg, new Flight(alternative));
+                return new Replacement(newFlights, leg, alternative.getFlightId(), seatNumber.get());
+            }
+        }
+        return null;
+    }
+
+    // The itinerary of a new booking for a rebooked one and the seat reserved for it
+    private static final class Replacement {
+        final List<Flight> flights;
+        final int leg; // Index of the replaced flight
+        final int flightId;
+        final String seatNumber;
+
+        Replacement(List<Flight> flights, int leg, int flightId, String seatNumber) {
+            this.flights = flights;
+            this.leg = leg;
+            this.flightId = flightId;
+            this.seatNumber = seatNumber;
+        }
+    }
+
+    private ExecutorService bulkExecutor() {
+        synchronized (bulkOperations) {
+            if (bulkExecutor == null) {
+                bulkExecutor = Executors.newFixedThreadPool(BULK_THREADS, task -> {
+                    Thread thread = new Thread(task, "bulk-booking");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            return bulkExecutor;
+        }
+    }
+
+    /**
+     * Retrieves all bookings of a user, including canceled ones.
+     * 
+     * @param userId The ID of the user.
+     * @return The user's bookings in booking ID order.
+     */
+    public List<Booking> getBookingsByUser(int userId) {
+        return resolve(bookingsByUser.get(userId), false);
+    }
+
+    /**
+     * Retrieves the active bookings that include a flight.
+     * 
+     * @param flightId The ID of the flight.
+     * @return The active bookings in booking ID order.
+     */
+    public List<Booking> getActiveBookingsByFlight(int flightId) {
+        return resolve(activeBookingsByFlight.get(flightId), true);
+    }
+
+    // Adds a booking to the user index and, if active, the flight index
+    private void indexBooking(Booking booking) {
+        if (booking.getUser() != null) {
+            bookingsByUser.computeIfAbsent(booking.getUser().getUserId(), id -> ConcurrentHashMap.newKeySet())
+                    .add(booking.getBookingId());
+        }
+        updateFlightIndex(booking);
+    }
+
+    // Puts a booking in or takes it out of the flight index to match its status;
+    // called under the booking's stripe lock, or before the booking is published
+    private void updateFlightIndex(Booking booking) {
+        if (booking.getFlights() == null) {
+            return;
+        }
+        boolean active = "active".equals(booking.getStatus());
+        for (Flight flight : booking.getFlights()) {
+            if (active) {
+                activeBookingsByFlight.computeIfAbsent(flight.getFlightId(), id -> ConcurrentHashMap.newKeySet())
+                        .add(booking.getBookingId());
+            } else {
+                Set<Integer> bookingIds = activeBookingsByFlight.get(flight.getFlightId());
+                if (bookingIds != null) {
+                    bookingIds.remove(booking.getBookingId());
+                }
+            }
+        }
+    }
+
+    // Looks up indexed booking IDs; IDs of bookings still being created are skipped
+    private List<Booking> resolve(Set<Integer> bookingIds, boolean activeOnly) {
+        if (bookingIds == null) {
+            return new ArrayList<>();
+        }
+        List<Booking> bookings = new ArrayList<>(bookingIds.size());
+        for (int bookingId : bookingIds) {
+            Booking booking = bookingsMap.get(bookingId);
+            // A booking canceled at this moment may still be in the flight index
+            if (booking != null && (!activeOnly || "active".equals(booking.getStatus()))) {
+                bookings.add(booking);
+            }
+        }
+        bookings.sort(Comparator.comparingInt(Booking::getBookingId));
+        return bookings;
+    }
+
+    /**
+     * @return The number of bookings stored, including canceled ones.
+     */
+    public int getBookingCount() {
+        return bookingsMap.size();
+    }
+
+    /**
+     * @return The journal statistics (see BookingJournal.getMetrics), or an empty
+     *         map if bookings are not journaled.
+     */
+    public Map<String, Number> getJournalMetrics() {
+        return journal == null ? Collections.<String, Number>emptyMap() : journal.getMetrics();
+    }
+
+    /**
+     * Holds a seat on each of the given flights for a limited time, so the
+     * checkout that follows cannot fail for lack of seats. Either every seat is
+     * held or none.
+     * 
+     * @param flightIds  The flights of the trip.
+     * @param holdMillis How long the seats are held.
+     * @return The hold, or null if a flight does not exist or is full.
+     */
+    public SeatHold holdSeats(List<Integer> flightIds, long holdMillis) {
+        if (flightManager == null) {
+            throw new IllegalStateException("Seat holds need a FlightManager");
+        }
+        if (flightIds == null || flightIds.isEmpty() || holdMillis <= 0) {
+            throw new IllegalArgumentException("A hold needs at least one flight and a positive duration");
+        }
+        expireHolds();
+
+        List<String> seatNumbers = new ArrayList<>(flightIds.size());
+        for (int flightId : flightIds) {
+            Optional<String> seatNumber = flightManager.reserveSeat(flightId);
+            if (!seatNumber.isPresent()) {
+                releaseSeats(flightIds, seatNumbers);
+                return null;
+            }
+            seatNumbers.add(seatNumber.get());
+        }
+
+        long expiresAtMillis = clock.millis() + holdMillis;
+        SeatHold hold = new SeatHold(nextHoldId.getAndIncrement(),
+                Collections.unmodifiableList(new ArrayList<>(flightIds)), Collections.unmodifiableList(seatNumbers),
+                LocalDateTime.ofInstant(Instant.ofEpochMilli(expiresAtMillis), clock.getZone()), expiresAtMillis);
+        // Visible before it can expire, so expiry always finds it
+        holds.put(hold.getHoldId(), hold);
+        synchronized (holdExpiry) {
+            hold.timeout = holdExpiry.schedule(hold, expiresAtMillis);
+        }
+        return hold;
+    }
+
+    /**
+     * Retrieves an outstanding hold.
+     * 
+     * @param holdId The ID of the hold.
+     * @return The hold, or empty if it is unknown, expired, confirmed or
+     *         released.
+     */
+    public Optional<SeatHold> getHold(int holdId) {
+        expireHolds();
+        SeatHold hold = holds.get(holdId);
+        return hold == null || clock.millis() >= hold.expiresAtMillis ? Optional.<SeatHold>empty()
+                : Optional.of(hold);
+    }
+
+    /**
+     * Ends a hold for checkout: its seats stay reserved and now belong to the
+     * caller, who turns them into tickets.
+     * 
+     * @param holdId The ID of the hold.
+     * @return The hold, or null if it is unknown or expired (its seats are then
+     *         released).
+     */
+    public SeatHold confirmHold(int holdId) {
+        expireHolds();
+        SeatHold hold = takeHold(holdId);
+        if (hold != null && clock.millis() >= hold.expiresAtMillis) {
+            // Expired within the current tick of the wheel
+            releaseSeats(hold.getFlightIds(), hold.getSeatNumbers());
+            return null;
+        }
+        return hold;
+    }
+
+    /**
+     * Ends a hold and frees its seats.
+     * 
+     * @param holdId The ID of the hold.
+     * @return true if the hold was outstanding.
+     */
+    public boolean releaseHold(int holdId) {
+        SeatHold hold = takeHold(holdId);
+        if (hold == null) {
+            return false;
+        }
+        releaseSeats(hold.getFlightIds(), hold.getSeatNumbers());
+        expireHolds();
+        return true;
+    }
+
+    /**
+     * Releases the seats of every hold whose time is up. Hold operations call
+     * this themselves; it only visits the wheel buckets of the ticks that
+     * passed since the last call.
+     * 
+     * @return The number of holds that expired.
+     */
+    public int expireHolds() {
+        List<SeatHold> expired = new ArrayList<>();
+        synchronized (holdExpiry) {
+            holdExpiry.advance(clock.millis(), expired::add);
+        }
+        int count = 0;
+        for (SeatHold hold : expired) {
+            // A hold confirmed or released at the same moment is not expired again
+            if (holds.remove(hold.getHoldId(), hold)) {
+                releaseSeats(hold.getFlightIds(), hold.getSeatNumbers());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return The number of holds not yet confirmed, released or expired.
+     */
+    public int getOutstandingHoldCount() {
+        return holds.size();
+    }
+
+    // Removes a hold and its timeout; only one caller can take a given hold
+    private SeatHold takeHold(int holdId) {
+        SeatHold hold = holds.remove(holdId);
+        if (hold != null) {
+            synchronized (holdExpiry) {
+                if (hold.timeout != null) {
+                    holdExpiry.cancel(hold.timeout);
+                }
+            }
+        }
+        return hold;
+    }
+
+    private void releaseSeats(List<Integer> flightIds, List<String> seatNumbers) {
+        for (int i = 0; i < seatNumbers.size(); i++) {
+            flightManager.releaseSeat(flightIds.get(i), seatNumbers.get(i));
         }
-        return false;
     }
 
     /**
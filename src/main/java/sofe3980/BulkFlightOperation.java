@@ -0,0 +1,198 @@
+package sofe3980;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Progress handle of a bulk cancellation or rebooking of every active booking
+ * on a flight (see BookingManager.cancelFlightBookings and
+ * rebookFlightBookings). The work runs in the background; the counters are
+ * updated as batches finish and can be read at any time.
+ */
+public class BulkFlightOperation {
+
+    public static final String CANCEL = "cancel";
+    public static final String REBOOK = "rebook";
+
+    private final int operationId;
+    private final int flightId;
+    private final String action;
+    private final int totalBookings;
+    private final List<Integer> alternativeFlightIds; // Candidates offered for rebooking, earliest first
+    private final LocalDateTime startedAt;
+    private volatile LocalDateTime finishedAt;
+    private volatile String state = "running";
+    private volatile String error;
+    private final AtomicInteger processedBookings = new AtomicInteger();
+    private final AtomicInteger canceledBookings = new AtomicInteger();
+    private final AtomicInteger rebookedBookings = new AtomicInteger();
+    private final AtomicInteger skippedBookings = new AtomicInteger();
+    private final AtomicInteger failedBookings = new AtomicInteger();
+    private final ConcurrentMap<Integer, Integer> rebookings = new ConcurrentHashMap<>(); // New booking by old
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    public BulkFlightOperation(int operationId, int flightId, String action, int totalBookings,
+            List<Integer> alternativeFlightIds) {
+        this.operationId = operationId;
+        this.flightId = flightId;
+        this.action = action;
+        this.totalBookings = totalBookings;
+        this.alternativeFlightIds = Collections.unmodifiableList(alternativeFlightIds);
+        this.startedAt = LocalDateTime.now();
+    }
+
+    void recordCanceled() {
+        canceledBookings.incrementAndGet();
+        processedBookings.incrementAndGet();
+    }
+
+    void recordRebooked(int oldBookingId, int newBookingId) {
+        rebookings.put(oldBookingId, newBookingId);
+        rebookedBookings.incrementAndGet();
+        processedBookings.incrementAndGet();
+    }
+
+    // The booking was canceled or changed by someone else first
+    void recordSkipped() {
+        skippedBookings.incrementAndGet();
+        processedBookings.incrementAndGet();
+    }
+
+    // Bookings left unchanged because their batch failed, for example when the
+    // journal could not be written
+    void recordFailed(int bookings, Throwable failure) {
+        failedBookings.addAndGet(bookings);
+        processedBookings.addAndGet(bookings);
+        setError(failure);
+    }
+
+    void finish(Throwable failure) {
+        if (failure != null) {
+            setError(failure instanceof CompletionException && failure.getCause() != null ? failure.getCause()
+                    : failure);
+        }
+        state = error != null ? "failed" : "completed";
+        finishedAt = LocalDateTime.now();
+        done.countDown();
+    }
+
+    // Keeps the first error
+    private synchronized void setError(Throwable failure) {
+        if (error == null) {
+            Throwable cause = failure.getCause();
+            error = failure.getMessage() + (cause != null ? ": " + cause.getMessage() : "");
+        }
+    }
+
+    /**
+     * Waits for the operation to finish.
+     *
+     * @param timeout The longest time to wait.
+     * @param unit    The unit of the timeout.
+     * @return true if the operation finished, false if the time ran out.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+        return done.await(timeout, unit);
+    }
+
+    public int getOperationId() {
+        return operationId;
+    }
+
+    public int getFlightId() {
+        return flightId;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    /**
+     * @return "running", "completed" or "failed".
+     */
+    public String getState() {
+        return state;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public int getTotalBookings() {
+        return totalBookings;
+    }
+
+    public int getProcessedBookings() {
+        return processedBookings.get();
+    }
+
+    public int getCanceledBookings() {
+        return canceledBookings.get();
+    }
+
+    public int getRebookedBookings() {
+        return rebookedBookings.get();
+    }
+
+    public int getSkippedBookings() {
+        return skippedBookings.get();
+    }
+
+    /**
+     * @return The bookings left unchanged because their batch failed.
+     */
+    public int getFailedBookings() {
+        return failedBookings.get();
+    }
+
+    /**
+     * @return The share of the bookings processed so far, from 0 to 1.
+     */
+    public double getProgress() {
+        return totalBookings == 0 ? 1.0 : (double) processedBookings.get() / totalBookings;
+    }
+
+    public List<Integer> getAlternativeFlightIds() {
+        return alternativeFlightIds;
+    }
+
+    /**
+     * @return The ID of the new booking made for each rebooked booking, by the
+     *         ID of the old one.
+     */
+    public Map<Integer, Integer> getRebookings() {
+        return Collections.unmodifiableMap(rebookings);
+    }
+
+    @Override
+    public String toString() {
+        return "BulkFlightOperation{" +
+                "operationId=" + operationId +
+                ", flightId=" + flightId +
+                ", action='" + action + '\'' +
+                ", state='" + state + '\'' +
+                ", processed=" + processedBookings + "/" + totalBookings +
+                ", canceled=" + canceledBookings +
+                ", rebooked=" + rebookedBookings +
+                ", skipped=" + skippedBookings +
+                ", failed=" + failedBookings +
+                '}';
+    }
+}
@@ -0,0 +1,439 @@
+package sofe3980;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Compact flight storage that keeps one primitive array per flight field
+ * instead of one Flight object per flight. Airports are interned to int codes,
+ * times are stored as epoch minutes (UTC, like the zone-less LocalDateTime they
+ * come from) and prices as whole cents, so a flight costs about 32 bytes.
+ *
+ * Rows are grouped by route and sorted by departure in a route index that is
+ * rebuilt after rows are added. Searches through the primitive overloads read
+ * the columns directly and do not allocate; Flight objects are only created by
+ * toFlight and the List-returning methods at the API boundary.
+ *
+ * It is the format schedules are imported into (see ScheduleImporter) and the
+ * archive of departed flights in FlightManager. The live inventory is not kept
+ * here: replaceSchedule turns the imported rows into Flight objects, and
+ * inventory searches run on those.
+ *
+ * Rows may be added by a single writer thread; searches may run concurrently
+ * with each other once all rows are added.
+ */
+public class ColumnarFlightStore {
+
+    public static final int NO_FLIGHT = Integer.MIN_VALUE; // Missing corresponding flight
+    private static final long EMPTY_ROUTE = -1L;
+
+    private final AirportDictionary airports;
+    private int size;
+    private int[] flightIds;
+    private int[] origins;
+    private int[] destinations;
+    private int[] departureMinutes;
+    private int[] arrivalMinutes;
+    private int[] priceCents;
+    private int[] correspondingIds;
+
+    // Route index: open-addressing table from route key to dense route number,
+    // and the rows of each route as a departure-sorted range of "order"
+    private boolean indexed;
+    private long[] routeKeys;
+    private int[] routeNumbers;
+    private int[] routeStarts;
+    private int[] order;
+    // ID index: open-addressing table from flight ID to the first row with it
+    private int[] idKeys;
+    private int[] idRows;
+
+    public ColumnarFlightStore() {
+        this(new AirportDictionary(), 1024);
+    }
+
+    public ColumnarFlightStore(AirportDictionary airports, int expectedSize) {
+        this.airports = airports;
+        int capacity = Math.max(16, expectedSize);
+        flightIds = new int[capacity];
+        origins = new int[capacity];
+        destinations = new int[capacity];
+        departureMinutes = new int[capacity];
+        arrivalMinutes = new int[capacity];
+        priceCents = new int[capacity];
+        correspondingIds = new int[capacity];
+    }
+
+    /**
+     * Creates a store holding the given flights.
+     *
+     * @param flights The flights to store.
+     * @return The new store.
+     */
+    public static ColumnarFlightStore of(Collection<Flight> flights) {
+        ColumnarFlightStore store = new ColumnarFlightStore(new AirportDictionary(), flights.size());
+        for (Flight flight : flights) {
+            store.add(flight);
+        }
+        return store;
+    }
+
+    /**
+     * Appends a flight to the store.
+     *
+     * @param flight The flight to add.
+     * @return The row number of the flight.
+     */
+    public int add(Flight flight) {
+        Integer correspondingFlightId = flight.getCorrespondingFlightId();
+        return addRow(flight.getFlightId(), airports.intern(flight.getOrigin()),
+                airports.intern(flight.getDestination()), toEpochMinute(flight.getDepartureTime()),
+                toEpochMinute(flight.getArrivalTime()), toCents(flight.getPrice()),
+                correspondingFlightId == null ? NO_FLIGHT : correspondingFlightId);
+    }
+
+    /**
+     * Appends a flight from already encoded values.
+     *
+     * @param flightId        The flight ID.
+     * @param origin          The origin's code in this store's airport dictionary.
+     * @param destination     The destination's code in the airport dictionary.
+     * @param departureMinute The departure time in epoch minutes.
+     * @param arrivalMinute   The arrival time in epoch minutes.
+     * @param cents           The price in cents.
+     * @param correspondingId The corresponding flight ID, or NO_FLIGHT.
+     * @return The row number of the flight.
+     */
+    public int addRow(int flightId, int origin, int destination, int departureMinute, int arrivalMinute, int cents,
+            int correspondingId) {
+        if (size == flightIds.length) {
+            grow();
+        }
+        int row = size++;
+        flightIds[row] = flightId;
+        origins[row] = origin;
+        destinations[row] = destination;
+        departureMinutes[row] = departureMinute;
+        arrivalMinutes[row] = arrivalMinute;
+        priceCents[row] = cents;
+        correspondingIds[row] = correspondingId;
+        indexed = false;
+        return row;
+    }
+
+    /**
+     * Appends every row of another store, re-encoding its airport codes.
+     *
+     * @param other The store to copy rows from.
+     */
+    public void addAll(ColumnarFlightStore other) {
+        int[] codes = new int[other.airports.size()];
+        for (int code = 0; code < codes.length; code++) {
+            codes[code] = airports.intern(other.airports.nameOf(code));
+        }
+        for (int row = 0; row < other.size; row++) {
+            addRow(other.flightIds[row], codes[other.origins[row]], codes[other.destinations[row]],
+                    other.departureMinutes[row], other.arrivalMinutes[row], other.priceCents[row],
+                    other.correspondingIds[row]);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Finds the row of a flight by its ID.
+     *
+     * @param flightId The ID of the flight.
+     * @return The first row with this ID, or -1 if there is none.
+     */
+    public int findRow(int flightId) {
+        ensureIndexed();
+        if (flightId == NO_FLIGHT) {
+            return -1;
+        }
+        int slot = idSlot(flightId, idKeys.length - 1, idKeys);
+        return idKeys[slot] == flightId ? idRows[slot] : -1;
+    }
+
+    public AirportDictionary getAirports() {
+        return airports;
+    }
+
+    // Column accessors
+
+    public int flightId(int row) {
+        return flightIds[row];
+    }
+
+    public int origin(int row) {
+        return origins[row];
+    }
+
+    public int destination(int row) {
+        return destinations[row];
+    }
+
+    public int departureMinute(int row) {
+        return departureMinutes[row];
+    }
+
+    public int arrivalMinute(int row) {
+        return arrivalMinutes[row];
+    }
+
+    public int priceCents(int row) {
+        return priceCents[row];
+    }
+
+    public int correspondingId(int row) {
+        return correspondingIds[row];
+    }
+
+    /**
+     * Creates a Flight object for a row.
+     *
+     * @param row The row number.
+     * @return A new Flight holding the row's values.
+     */
+    public Flight toFlight(int row) {
+        Flight flight = new Flight(flightIds[row], fromEpochMinute(departureMinutes[row]),
+                fromEpochMinute(arrivalMinutes[row]), airports.nameOf(origins[row]),
+                airports.nameOf(destinations[row]), priceCents[row] / 100.0);
+        if (correspondingIds[row] != NO_FLIGHT) {
+            flight.setCorrespondingFlightId(correspondingIds[row]);
+        }
+        return flight;
+    }
+
+    /**
+     * Finds the flights on a route departing in [fromMinute, toMinute). The
+     * matching rows are order positions start (inclusive) to end (exclusive), and
+     * rowAt maps a position to its row.
+     *
+     * @return The positions packed as (start << 32) | end; start == end if none
+     *         match.
+     */
+    public long findRange(int origin, int destination, int fromMinute, int toMinute) {
+        ensureIndexed();
+        int route = routeNumber(origin, destination);
+        if (route < 0) {
+            return 0L;
+        }
+        int start = lowerBound(routeStarts[route], routeStarts[route + 1], fromMinute);
+        int end = lowerBound(start, routeStarts[route + 1], toMinute);
+        return ((long) start << 32) | end;
+    }
+
+    public static int rangeStart(long range) {
+        return (int) (range >>> 32);
+    }
+
+    public static int rangeEnd(long range) {
+        return (int) range;
+    }
+
+    public int rowAt(int position) {
+        return order[position];
+    }
+
+    /**
+     * Counts the flights on a route departing on a date.
+     *
+     * @return The number of matching flights.
+     */
+    public int countFlights(String from, String to, LocalDate date) {
+        long range = findDay(from, to, date);
+        return rangeEnd(range) - rangeStart(range);
+    }
+
+    /**
+     * Finds the lowest price on a route for flights departing in [fromMinute,
+     * toMinute).
+     *
+     * @return The lowest price in cents, or -1 if no flight matches.
+     */
+    public int cheapestPriceCents(int origin, int destination, int fromMinute, int toMinute) {
+        long range = findRange(origin, destination, fromMinute, toMinute);
+        int cheapest = -1;
+        for (int position = rangeStart(range); position < rangeEnd(range); position++) {
+            int cents = priceCents[order[position]];
+            if (cheapest < 0 || cents < cheapest) {
+                cheapest = cents;
+            }
+        }
+        return cheapest;
+    }
+
+    /**
+     * Searches for the flights on a route departing on a date, matching
+     * locations like FlightManager.searchFlights does.
+     *
+     * @return New Flight objects for the matching rows, ordered by departure.
+     */
+    public List<Flight> searchFlights(String from, String to, LocalDate date) {
+        long range = findDay(from, to, date);
+        List<Flight> matchingFlights = new ArrayList<>(rangeEnd(range) - rangeStart(range));
+        for (int position = rangeStart(range); position < rangeEnd(range); position++) {
+            matchingFlights.add(toFlight(order[position]));
+        }
+        return matchingFlights;
+    }
+
+    private long findDay(String from, String to, LocalDate date) {
+        int origin = airports.codeOf(from);
+        int destination = airports.codeOf(to);
+        if (origin == AirportDictionary.UNKNOWN || destination == AirportDictionary.UNKNOWN || date == null) {
+            return 0L;
+        }
+        int dayStart = toEpochMinute(date.atStartOfDay());
+        return findRange(origin, destination, dayStart, dayStart + 24 * 60);
+    }
+
+    // Encoding helpers
+
+    public static int toEpochMinute(LocalDateTime time) {
+        return (int) Math.floorDiv(time.toEpochSecond(ZoneOffset.UTC), 60);
+    }
+
+    public static LocalDateTime fromEpochMinute(int minute) {
+        return LocalDateTime.ofEpochSecond(minute * 60L, 0, ZoneOffset.UTC);
+    }
+
+    public static int toCents(double price) {
+        return (int) Math.round(price * 100);
+    }
+
+    // Route index
+
+    private synchronized void ensureIndexed() {
+        if (indexed) {
+            return;
+        }
+
+        // Assign a dense number to each route
+        int capacity = Integer.highestOneBit(Math.max(8, size * 2) - 1) << 1;
+        long[] keys = new long[capacity];
+        int[] numbers = new int[capacity];
+        Arrays.fill(keys, EMPTY_ROUTE);
+        int[] rowRoutes = new int[size];
+        int routeCount = 0;
+        for (int row = 0; row < size; row++) {
+            long key = routeKey(origins[row], destinations[row]);
+            int slot = slot(key, capacity - 1, keys);
+            if (keys[slot] == EMPTY_ROUTE) {
+                keys[slot] = key;
+                numbers[slot] = routeCount++;
+            }
+            rowRoutes[row] = numbers[slot];
+        }
+
+        // Counting sort of rows by route
+        int[] starts = new int[routeCount + 1];
+        for (int row = 0; row < size; row++) {
+            starts[rowRoutes[row] + 1]++;
+        }
+        for (int route = 0; route < routeCount; route++) {
+            starts[route + 1] += starts[route];
+        }
+        int[] next = Arrays.copyOf(starts, routeCount);
+        int[] sorted = new int[size];
+        for (int row = 0; row < size; row++) {
+            sorted[next[rowRoutes[row]]++] = row;
+        }
+
+        // Sort each route's rows by departure
+        long[] scratch = new long[size];
+        for (int route = 0; route < routeCount; route++) {
+            int from = starts[route];
+            int to = starts[route + 1];
+            for (int position = from; position < to; position++) {
+                int row = sorted[position];
+                scratch[position] = ((long) departureMinutes[row] << 32) | row;
+            }
+            Arrays.sort(scratch, from, to);
+            for (int position = from; position < to; position++) {
+                sorted[position] = (int) scratch[position];
+            }
+        }
+
+        // Index rows by flight ID, keeping the first row for a repeated ID
+        int[] ids = new int[capacity];
+        int[] idRowNumbers = new int[capacity];
+        Arrays.fill(ids, NO_FLIGHT);
+        for (int row = 0; row < size; row++) {
+            int slot = idSlot(flightIds[row], capacity - 1, ids);
+            if (ids[slot] == NO_FLIGHT) {
+                ids[slot] = flightIds[row];
+                idRowNumbers[slot] = row;
+            }
+        }
+
+        routeKeys = keys;
+        routeNumbers = numbers;
+        routeStarts = starts;
+        order = sorted;
+        idKeys = ids;
+        idRows = idRowNumbers;
+        indexed = true;
+    }
+
+    private static int idSlot(int flightId, int mask, int[] keys) {
+        int h = flightId * 0x9E3779B9;
+        int slot = (h ^ (h >>> 16)) & mask;
+        while (keys[slot] != NO_FLIGHT && keys[slot] != flightId) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private int routeNumber(int origin, int destination) {
+        long key = routeKey(origin, destination);
+        int slot = slot(key, routeKeys.length - 1, routeKeys);
+        return routeKeys[slot] == key ? routeNumbers[slot] : -1;
+    }
+
+    // Finds the slot holding the key, or the empty slot where it belongs
+    private static int slot(long key, int mask, long[] keys) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        int slot = (int) (h ^ (h >>> 32)) & mask;
+        while (keys[slot] != EMPTY_ROUTE && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static long routeKey(int origin, int destination) {
+        return ((long) origin << 32) | destination;
+    }
+
+    // First position in [from, to) whose departure is at or after minute
+    private int lowerBound(int from, int to, int minute) {
+        while (from < to) {
+            int middle = (from + to) >>> 1;
+            if (departureMinutes[order[middle]] < minute) {
+                from = middle + 1;
+            } else {
+                to = middle;
+            }
+        }
+        return from;
+    }
+
+    private void grow() {
+        int capacity = flightIds.length * 2;
+        flightIds = Arrays.copyOf(flightIds, capacity);
+        origins = Arrays.copyOf(origins, capacity);
+        destinations = Arrays.copyOf(destinations, capacity);
+        departureMinutes = Arrays.copyOf(departureMinutes, capacity);
+        arrivalMinutes = Arrays.copyOf(arrivalMinutes, capacity);
+        priceCents = Arrays.copyOf(priceCents, capacity);
+        correspondingIds = Arrays.copyOf(correspondingIds, capacity);
+    }
+}
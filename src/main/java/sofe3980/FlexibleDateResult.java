@@ -0,0 +1,85 @@
+package sofe3980;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The result of a flexible-date search: every flight on a route within a
+ * window of days around the requested date, and the lowest fare of each day
+ * in the window.
+ */
+public class FlexibleDateResult {
+
+    private String from;
+    private String to;
+    private LocalDate firstDate;
+    private LocalDate lastDate;
+    private Map<LocalDate, Double> lowestFares;
+    private List<Flight> flights;
+
+    public FlexibleDateResult(String from, String to, LocalDate firstDate, LocalDate lastDate,
+            Map<LocalDate, Double> lowestFares, List<Flight> flights) {
+        this.from = from;
+        this.to = to;
+        this.firstDate = firstDate;
+        this.lastDate = lastDate;
+        this.lowestFares = lowestFares;
+        this.flights = flights;
+    }
+
+    public String getFrom() {
+        return from;
+    }
+
+    public void setFrom(String from) {
+        this.from = from;
+    }
+
+    public String getTo() {
+        return to;
+    }
+
+    public void setTo(String to) {
+        this.to = to;
+    }
+
+    public LocalDate getFirstDate() {
+        return firstDate;
+    }
+
+    public void setFirstDate(LocalDate firstDate) {
+        this.firstDate = firstDate;
+    }
+
+    public LocalDate getLastDate() {
+        return lastDate;
+    }
+
+    public void setLastDate(LocalDate lastDate) {
+        this.lastDate = lastDate;
+    }
+
+    /**
+     * @return The lowest fare of each day in the window that has a flight, in
+     *         date order.
+     */
+    public Map<LocalDate, Double> getLowestFares() {
+        return lowestFares;
+    }
+
+    public void setLowestFares(Map<LocalDate, Double> lowestFares) {
+        this.lowestFares = lowestFares;
+    }
+
+    /**
+     * @return The flights in the window, ordered by departure time.
+     */
+    public List<Flight> getFlights() {
+        return flights;
+    }
+
+    public void setFlights(List<Flight> flights) {
+        this.flights = flights;
+    }
+}
@@ -27,6 +27,16 @@ public class Flight {
         this.price = price;
     }
 
+    /**
+     * Constructs a copy of another flight, including its corresponding flight ID.
+     * 
+     * @param other The flight to copy.
+     */
+    public Flight(Flight other) {
+        this(other.flightId, other.departureTime, other.arrivalTime, other.origin, other.destination, other.price);
+        this.correspondingFlightId = other.correspondingFlightId;
+    }
+
     /**
      * Calculates and returns the duration of the flight in the format "H:MM".
      * 
@@ -0,0 +1,256 @@
+package sofe3980;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from primitive int flight IDs to flights. Keys are
+ * stored in an int[] so lookups do not box the ID or walk a list of entries.
+ *
+ * The table is split into segments of at most a few thousand slots, chosen by
+ * the high bits of the hashed ID. A copy shares every segment with the original
+ * and copies a segment only when it first changes it, so deriving the next
+ * version of the inventory costs the segment table plus the touched segments,
+ * not the whole index.
+ */
+public class FlightIdIndex {
+
+    private static final int EMPTY = Integer.MIN_VALUE; // Flight IDs never use this value
+    private static final float LOAD_FACTOR = 0.5f;
+    static final int MAX_SEGMENT_FLIGHTS = 1024; // The segment table doubles beyond this average
+
+    // Segments as parallel key and value tables, so a lookup loads no segment
+    // object; their number is a power of two
+    private int[][] segmentKeys;
+    private Flight[][] segmentValues;
+    private int[] segmentSizes;
+    private int segmentShift; // 32 minus the number of segment bits
+    private boolean[] owned; // Segments this index made and may change; a copy owns none
+    private int size;
+
+    public FlightIdIndex() {
+        this(16);
+    }
+
+    public FlightIdIndex(int expectedSize) {
+        initSegments(segmentsFor(expectedSize), expectedSize);
+    }
+
+    private FlightIdIndex(FlightIdIndex original) {
+        segmentKeys = original.segmentKeys.clone();
+        segmentValues = original.segmentValues.clone();
+        segmentSizes = original.segmentSizes.clone();
+        segmentShift = original.segmentShift;
+        owned = new boolean[segmentKeys.length];
+        size = original.size;
+    }
+
+    /**
+     * Retrieves the flight stored for an ID.
+     *
+     * @param flightId The ID of the flight.
+     * @return The flight, or null if no flight has this ID.
+     */
+    public Flight get(int flightId) {
+        if (flightId == EMPTY) {
+            return null;
+        }
+        int hash = mix(flightId);
+        int segment = segmentOf(hash);
+        int[] keys = segmentKeys[segment];
+        int mask = keys.length - 1;
+        for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+            int key = keys[slot];
+            if (key == flightId) {
+                return segmentValues[segment][slot];
+            }
+            if (key == EMPTY) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Stores a flight under its ID unless a flight with the same ID is already
+     * present, so the first flight added keeps the ID (like a list search would).
+     *
+     * @param flight The flight to add.
+     * @return true if the flight was stored, false if the ID was already taken.
+     */
+    public boolean putIfAbsent(Flight flight) {
+        int flightId = flight.getFlightId();
+        if (flightId == EMPTY) {
+            throw new IllegalArgumentException("Unsupported flight ID: " + flightId);
+        }
+        if (size + 1 > (long) segmentKeys.length * MAX_SEGMENT_FLIGHTS) {
+            resegment(segmentKeys.length << 1);
+        }
+        if (get(flightId) != null) {
+            return false; // Checked first so a rejected ID copies nothing
+        }
+        int hash = mix(flightId);
+        int segment = segmentOf(hash);
+        ownSegment(segment);
+        insert(segment, flight, hash);
+        size++;
+        return true;
+    }
+
+    /**
+     * Removes the flight stored for an ID.
+     *
+     * @param flightId The ID of the flight.
+     * @return The removed flight, or null if no flight had this ID.
+     */
+    public Flight remove(int flightId) {
+        if (flightId == EMPTY) {
+            return null;
+        }
+        if (get(flightId) == null) {
+            return null;
+        }
+        int hash = mix(flightId);
+        int segment = segmentOf(hash);
+        ownSegment(segment);
+        int[] keys = segmentKeys[segment];
+        Flight[] values = segmentValues[segment];
+        int mask = keys.length - 1;
+        int slot = hash & mask;
+        while (keys[slot] != flightId) {
+            slot = (slot + 1) & mask;
+        }
+        Flight removed = values[slot];
+
+        // Shift later entries of the probe sequence back so lookups never stop
+        // early at the freed slot
+        int free = slot;
+        for (int next = (free + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+            int home = mix(keys[next]) & mask;
+            boolean movable = free <= next ? (home <= free || home > next) : (home <= free && home > next);
+            if (movable) {
+                keys[free] = keys[next];
+                values[free] = values[next];
+                free = next;
+            }
+        }
+        keys[free] = EMPTY;
+        values[free] = null;
+        segmentSizes[segment]--;
+        size--;
+        return removed;
+    }
+
+    /**
+     * Creates a copy of this index with room for the given number of flights.
+     * The copy shares the segments with this index until either changes them,
+     * so neither sees the other's changes.
+     *
+     * @param expectedSize The number of flights the copy should hold.
+     * @return The copy.
+     */
+    public FlightIdIndex copy(int expectedSize) {
+        FlightIdIndex copy = new FlightIdIndex(this);
+        int needed = segmentsFor(Math.max(expectedSize, size));
+        if (needed > segmentKeys.length) {
+            copy.resegment(needed);
+        }
+        // The original must not change shared segments either
+        Arrays.fill(owned, false);
+        return copy;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void ownSegment(int segment) {
+        if (!owned[segment]) {
+            segmentKeys[segment] = segmentKeys[segment].clone();
+            segmentValues[segment] = segmentValues[segment].clone();
+            owned[segment] = true;
+        }
+    }
+
+    // Puts a flight whose ID is not present into an owned segment
+    private void insert(int segment, Flight flight, int hash) {
+        if (segmentSizes[segment] + 1 > segmentKeys[segment].length * LOAD_FACTOR) {
+            growSegment(segment);
+        }
+        int[] keys = segmentKeys[segment];
+        int mask = keys.length - 1;
+        int slot = hash & mask;
+        while (keys[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = flight.getFlightId();
+        segmentValues[segment][slot] = flight;
+        segmentSizes[segment]++;
+    }
+
+    private void growSegment(int segment) {
+        int[] oldKeys = segmentKeys[segment];
+        Flight[] oldValues = segmentValues[segment];
+        segmentKeys[segment] = emptyKeys(oldKeys.length << 1);
+        segmentValues[segment] = new Flight[oldKeys.length << 1];
+        segmentSizes[segment] = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                insert(segment, oldValues[i], mix(oldKeys[i]));
+            }
+        }
+    }
+
+    private static int[] emptyKeys(int capacity) {
+        int[] keys = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        return keys;
+    }
+
+    private static int segmentsFor(int expectedSize) {
+        int segments = 1;
+        while ((long) segments * MAX_SEGMENT_FLIGHTS < expectedSize) {
+            segments <<= 1;
+        }
+        return segments;
+    }
+
+    private void initSegments(int count, int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / count / LOAD_FACTOR)) - 1) << 1;
+        segmentKeys = new int[count][];
+        segmentValues = new Flight[count][];
+        segmentSizes = new int[count];
+        owned = new boolean[count];
+        segmentShift = 32 - Integer.numberOfTrailingZeros(count);
+        for (int i = 0; i < count; i++) {
+            segmentKeys[i] = emptyKeys(capacity);
+            segmentValues[i] = new Flight[capacity];
+            owned[i] = true;
+        }
+    }
+
+    // Rebuilds the segment table with more segments; copies every entry, but
+    // only when the index doubles, so it adds O(1) per flight
+    private void resegment(int count) {
+        int[][] oldKeys = segmentKeys;
+        Flight[][] oldValues = segmentValues;
+        initSegments(count, size);
+        for (int segment = 0; segment < oldKeys.length; segment++) {
+            for (int i = 0; i < oldKeys[segment].length; i++) {
+                if (oldKeys[segment][i] != EMPTY) {
+                    int hash = mix(oldKeys[segment][i]);
+                    insert(segmentOf(hash), oldValues[segment][i], hash);
+                }
+            }
+        }
+    }
+
+    // The high bits pick the segment, the low bits the slot within it
+    private int segmentOf(int hash) {
+        return segmentShift == 32 ? 0 : hash >>> segmentShift;
+    }
+
+    // Sequential IDs would otherwise cluster in neighbouring slots
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,714 @@
+package sofe3980;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * One immutable version of the flight inventory and its search indexes.
+ *
+ * FlightManager never changes a published version. A write builds the next
+ * version and publishes it with a single volatile write. Readers take one
+ * version and run their whole search against it without locks, so they always
+ * see a consistent set of indexes.
+ *
+ * Versions share structure: the date, route and departure indexes are
+ * PersistentTreeMaps, of which a write copies only the tree nodes on the paths
+ * to the keys it changes, and the ID index copies only the segments it
+ * touches (see FlightIdIndex). The flight lists a write adds to or removes
+ * from are copied whole, as are the origins-by-destination map when a new
+ * route appears and the few recurring schedules when one is added. So adding
+ * one flight costs O(log n) plus the size of the lists it lands in, not O(n).
+ */
+public class FlightIndex {
+
+    private final long version;
+    // Stored flights partitioned by departure date, so date-bounded scans and
+    // writes only touch the days involved
+    private final PersistentTreeMap<LocalDate, List<Flight>> flightsByDay;
+    private final int flightCount;
+    // Whether some flight ever lost its ID to an earlier flight, which removals
+    // then have to look for
+    private final boolean duplicateIds;
+    // Flights grouped by normalized "origin|destination" and then by departure
+    // date, so a route/date search only touches the flights that can match
+    private final PersistentTreeMap<String, PersistentTreeMap<LocalDate, List<Flight>>> routeIndex;
+    // Lowest stored fare per normalized "origin|destination" and departure date,
+    // kept up to date by every write for the low-fare calendar
+    private final PersistentTreeMap<String, PersistentTreeMap<LocalDate, Double>> lowestFares;
+    private final FlightIdIndex flightsById; // Primary key index used by getFlightById
+    // Flights grouped by normalized origin and sorted by departure time, so
+    // "flights from X departing after T" is a range query
+    private final PersistentTreeMap<String, PersistentTreeMap<LocalDateTime, List<Flight>>> departuresByOrigin;
+    // Normalized origins with at least one flight into each normalized destination
+    private final Map<String, Set<String>> originsByDestination;
+    // Recurring schedules, expanded into flights only for the dates a query asks for
+    private final Schedules schedules;
+    // Route/date pairs with a stored or scheduled flight. Shared with the
+    // following versions: writers only ever add to it, before publishing.
+    private final RouteDayFilter routeDays;
+    // Built on first use and shared by every version with the same
+    // originsByDestination map
+    private final AtomicReference<ReachabilityMatrix> reachability;
+
+    private FlightIndex(long version, PersistentTreeMap<LocalDate, List<Flight>> flightsByDay, int flightCount,
+            boolean duplicateIds, PersistentTreeMap<String, PersistentTreeMap<LocalDate, List<Flight>>> routeIndex,
+            PersistentTreeMap<String, PersistentTreeMap<LocalDate, Double>> lowestFares, FlightIdIndex flightsById,
+            PersistentTreeMap<String, PersistentTreeMap<LocalDateTime, List<Flight>>> departuresByOrigin,
+            Map<String, Set<String>> originsByDestination, Schedules schedules, RouteDayFilter routeDays,
+            AtomicReference<ReachabilityMatrix> reachability) {
+        this.version = version;
+        this.flightsByDay = flightsByDay;
+        this.flightCount = flightCount;
+        this.duplicateIds = duplicateIds;
+        this.routeIndex = routeIndex;
+        this.lowestFares = lowestFares;
+        this.flightsById = flightsById;
+        this.departuresByOrigin = departuresByOrigin;
+        this.originsByDestination = originsByDestination;
+        this.schedules = schedules;
+        this.routeDays = routeDays;
+        this.reachability = reachability;
+    }
+
+    public static FlightIndex empty() {
+        return new FlightIndex(0, PersistentTreeMap.empty(), 0, false, PersistentTreeMap.empty(),
+                PersistentTreeMap.empty(), new FlightIdIndex(), PersistentTreeMap.empty(), new HashMap<>(),
+                Schedules.EMPTY, new RouteDayFilter(0), new AtomicReference<>());
+    }
+
+    /**
+     * Builds the next version holding only the given flights, for writes that
+     * replace the whole inventory. The indexes are built from scratch in one
+     * pass instead of by removing and re-adding flights. Recurring schedules are
+     * dropped as well.
+     *
+     * @param replacement The complete new inventory.
+     * @return The new version.
+     */
+    public FlightIndex replacedBy(Collection<Flight> replacement) {
+        FlightIndex cleared = new FlightIndex(version, PersistentTreeMap.empty(), 0, false, PersistentTreeMap.empty(),
+                PersistentTreeMap.empty(), new FlightIdIndex(replacement.size()), PersistentTreeMap.empty(),
+                new HashMap<>(), Schedules.EMPTY, new RouteDayFilter(2 * replacement.size()), new AtomicReference<>());
+        return cleared.withFlights(replacement);
+    }
+
+    /**
+     * Builds the next version with the given flights added. This version is left
+     * unchanged.
+     *
+     * @param added The flights to add.
+     * @return The new version.
+     */
+    public FlightIndex withFlights(Collection<Flight> added) {
+        FlightIdIndex nextById = flightsById.copy(flightCount + added.size());
+        boolean nextDuplicateIds = duplicateIds;
+        PersistentTreeMap.Editor<LocalDate, List<Flight>> nextDays = flightsByDay.edit();
+        NestedEditor<LocalDate, List<Flight>> nextRoutes = new NestedEditor<>(routeIndex);
+        NestedEditor<LocalDate, Double> nextFares = new NestedEditor<>(lowestFares);
+        NestedEditor<LocalDateTime, List<Flight>> nextDepartures = new NestedEditor<>(departuresByOrigin);
+        Map<String, Set<String>> nextOrigins = originsByDestination; // Copied on the first new route
+        RouteDayFilter nextRouteDays = filterWithRoom(added.size());
+
+        // Lists already copied for this version, so a batch copies each once
+        Set<List<Flight>> copied = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        for (Flight flight : added) {
+            nextDuplicateIds |= !nextById.putIfAbsent(flight);
+            LocalDate date = flight.getDepartureTime().toLocalDate();
+            append(nextDays, date, flight, copied);
+
+            String route = FlightManager.routeKey(flight.getOrigin(), flight.getDestination());
+            append(nextRoutes.edit(route), date, flight, copied);
+            nextRouteDays.add(route, date);
+
+            PersistentTreeMap.Editor<LocalDate, Double> fares = nextFares.edit(route);
+            Double lowestFare = fares.get(date);
+            if (lowestFare == null || flight.getPrice() < lowestFare) {
+                fares.put(date, flight.getPrice());
+            }
+
+            String origin = FlightManager.normalizeLocation(flight.getOrigin());
+            append(nextDepartures.edit(origin), flight.getDepartureTime(), flight, copied);
+
+            String destination = FlightManager.normalizeLocation(flight.getDestination());
+            Set<String> origins = nextOrigins.get(destination);
+            if (origins == null || !origins.contains(origin)) {
+                if (nextOrigins == originsByDestination) {
+                    nextOrigins = new HashMap<>(originsByDestination);
+                }
+                origins = origins == null ? new HashSet<>() : new HashSet<>(origins);
+                origins.add(origin);
+                nextOrigins.put(destination, origins);
+            }
+        }
+
+        return new FlightIndex(version + 1, nextDays.done(), flightCount + added.size(), nextDuplicateIds,
+                nextRoutes.done(), nextFares.done(), nextById, nextDepartures.done(), nextOrigins, schedules,
+                nextRouteDays, nextOrigins == originsByDestination ? reachability : new AtomicReference<>());
+    }
+
+    /**
+     * Builds the next version with the given flights removed (matched by
+     * identity). This version is left unchanged.
+     *
+     * Locations stay in the origins-by-destination index after their last flight
+     * is removed; that index is only used as a reachability bound, so a stale
+     * entry costs some pruning but never hides a result.
+     *
+     * @param removed The flights to remove.
+     * @return The new version.
+     */
+    public FlightIndex withoutFlights(Collection<Flight> removed) {
+        Set<Flight> removedSet = Collections.newSetFromMap(new IdentityHashMap<>());
+        removedSet.addAll(removed);
+
+        FlightIdIndex nextById = flightsById.copy(flightCount);
+        PersistentTreeMap.Editor<LocalDate, List<Flight>> nextDays = flightsByDay.edit();
+        NestedEditor<LocalDate, List<Flight>> nextRoutes = new NestedEditor<>(routeIndex);
+        NestedEditor<LocalDate, Double> nextFares = new NestedEditor<>(lowestFares);
+        NestedEditor<LocalDateTime, List<Flight>> nextDepartures = new NestedEditor<>(departuresByOrigin);
+        Set<List<Flight>> copied = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<Integer> removedIds = new HashSet<>();
+        int nextCount = flightCount;
+
+        for (Flight flight : removedSet) {
+            LocalDate date = flight.getDepartureTime().toLocalDate();
+            List<Flight> storedFlights = nextDays.get(date);
+            if (storedFlights == null || !containsByIdentity(storedFlights, flight)) {
+                continue; // Not a stored flight
+            }
+            storedFlights = copyOf(storedFlights, copied);
+            removeByIdentity(storedFlights, flight);
+            putOrRemove(nextDays, date, storedFlights);
+            nextCount--;
+
+            if (nextById.get(flight.getFlightId()) == flight) {
+                nextById.remove(flight.getFlightId());
+                removedIds.add(flight.getFlightId());
+            }
+
+            String route = FlightManager.routeKey(flight.getOrigin(), flight.getDestination());
+            PersistentTreeMap.Editor<LocalDate, List<Flight>> byDate = nextRoutes.edit(route);
+            List<Flight> dayFlights = byDate.get(date);
+            if (dayFlights != null) {
+                dayFlights = copyOf(dayFlights, copied);
+                removeByIdentity(dayFlights, flight);
+                putOrRemove(byDate, date, dayFlights);
+
+                // The removed flight may have been the cheapest of the day
+                PersistentTreeMap.Editor<LocalDate, Double> fares = nextFares.edit(route);
+                fares.remove(date);
+                for (Flight remaining : dayFlights) {
+                    Double lowestFare = fares.get(date);
+                    if (lowestFare == null || remaining.getPrice() < lowestFare) {
+                        fares.put(date, remaining.getPrice());
+                    }
+                }
+            }
+
+            String origin = FlightManager.normalizeLocation(flight.getOrigin());
+            LocalDateTime time = flight.getDepartureTime();
+            PersistentTreeMap.Editor<LocalDateTime, List<Flight>> byTime = nextDepartures.edit(origin);
+            List<Flight> departures = byTime.get(time);
+            if (departures != null) {
+                departures = copyOf(departures, copied);
+                removeByIdentity(departures, flight);
+                putOrRemove(byTime, time, departures);
+            }
+        }
+
+        PersistentTreeMap<LocalDate, List<Flight>> days = nextDays.done();
+        // A remaining flight that shared a removed ID now owns it
+        if (duplicateIds && !removedIds.isEmpty()) {
+            days.forEach((date, storedFlights) -> {
+                for (Flight flight : storedFlights) {
+                    if (removedIds.contains(flight.getFlightId())) {
+                        nextById.putIfAbsent(flight);
+                    }
+                }
+            });
+        }
+
+        return new FlightIndex(version + 1, days, nextCount, duplicateIds, nextRoutes.done(), nextFares.done(),
+                nextById, nextDepartures.done(), originsByDestination, schedules, routeDays, reachability);
+    }
+
+    /**
+     * Builds the next version with a recurring schedule added. This version is
+     * left unchanged.
+     *
+     * @param schedule The schedule to add. Its flight IDs must not overlap those
+     *                 of another schedule.
+     * @return The new version.
+     */
+    public FlightIndex withSchedule(RecurringSchedule schedule) {
+        Map<String, Set<String>> nextOrigins = originsByDestination;
+        String origin = FlightManager.normalizeLocation(schedule.getOrigin());
+        String destination = FlightManager.normalizeLocation(schedule.getDestination());
+        Set<String> origins = originsByDestination.get(destination);
+        if (origins == null || !origins.contains(origin)) {
+            nextOrigins = new HashMap<>(originsByDestination);
+            origins = origins == null ? new HashSet<>() : new HashSet<>(origins);
+            origins.add(origin);
+            nextOrigins.put(destination, origins);
+        }
+        RouteDayFilter nextRouteDays = filterWithRoom(schedule.getDayCount());
+        addScheduleDays(nextRouteDays, schedule);
+        return new FlightIndex(version + 1, flightsByDay, flightCount, duplicateIds, routeIndex, lowestFares,
+                flightsById, departuresByOrigin, nextOrigins, schedules.with(schedule), nextRouteDays,
+                nextOrigins == originsByDestination ? reachability : new AtomicReference<>());
+    }
+
+    // Returns the route/date filter if it can take more entries, or a filter
+    // twice the size holding everything in this version
+    private RouteDayFilter filterWithRoom(int more) {
+        if (routeDays.hasRoomFor(more)) {
+            return routeDays;
+        }
+        RouteDayFilter larger = new RouteDayFilter(2 * (routeDays.size() + 2 * more));
+        routeIndex.forEach((route, byDate) -> byDate.forEach((date, dayFlights) -> larger.add(route, date)));
+        for (RecurringSchedule schedule : schedules.all) {
+            addScheduleDays(larger, schedule);
+        }
+        return larger;
+    }
+
+    private static void addScheduleDays(RouteDayFilter filter, RecurringSchedule schedule) {
+        String route = FlightManager.routeKey(schedule.getOrigin(), schedule.getDestination());
+        for (LocalDate date = schedule.getFirstDate(); !date.isAfter(schedule.getLastDate());
+                date = date.plusDays(1)) {
+            if (schedule.operatesOn(date)) {
+                filter.add(route, date);
+            }
+        }
+    }
+
+    private static boolean containsByIdentity(List<Flight> list, Flight flight) {
+        for (Flight stored : list) {
+            if (stored == flight) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void removeByIdentity(List<Flight> list, Flight flight) {
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) == flight) {
+                list.remove(i);
+                return;
+            }
+        }
+    }
+
+    private static <K extends Comparable<? super K>> void append(PersistentTreeMap.Editor<K, List<Flight>> map,
+            K key, Flight flight, Set<List<Flight>> copied) {
+        List<Flight> flights = copyOf(map.get(key), copied);
+        flights.add(flight);
+        map.put(key, flights);
+    }
+
+    private static <K extends Comparable<? super K>> void putOrRemove(PersistentTreeMap.Editor<K, List<Flight>> map,
+            K key, List<Flight> flights) {
+        if (flights.isEmpty()) {
+            map.remove(key);
+        } else {
+            map.put(key, flights);
+        }
+    }
+
+    // Returns a private copy of a list (or a new list), copying it only once
+    private static List<Flight> copyOf(List<Flight> list, Set<List<Flight>> copied) {
+        if (list != null && copied.contains(list)) {
+            return list;
+        }
+        List<Flight> copy = list == null ? new ArrayList<>(1) : new ArrayList<>(list);
+        copied.add(copy);
+        return copy;
+    }
+
+    // Edits a map of maps in one batch: each inner map gets one editor, and
+    // inner maps left empty are removed when the batch is done
+    private static final class NestedEditor<K extends Comparable<? super K>, V> {
+        private final PersistentTreeMap.Editor<String, PersistentTreeMap<K, V>> outer;
+        private final Map<String, PersistentTreeMap.Editor<K, V>> inner = new HashMap<>();
+
+        NestedEditor(PersistentTreeMap<String, PersistentTreeMap<K, V>> map) {
+            outer = map.edit();
+        }
+
+        PersistentTreeMap.Editor<K, V> edit(String key) {
+            PersistentTreeMap.Editor<K, V> editor = inner.get(key);
+            if (editor == null) {
+                PersistentTreeMap<K, V> map = outer.get(key);
+                editor = (map == null ? PersistentTreeMap.<K, V>empty() : map).edit();
+                inner.put(key, editor);
+            }
+            return editor;
+        }
+
+        PersistentTreeMap<String, PersistentTreeMap<K, V>> done() {
+            for (Map.Entry<String, PersistentTreeMap.Editor<K, V>> entry : inner.entrySet()) {
+                PersistentTreeMap<K, V> map = entry.getValue().done();
+                if (map.isEmpty()) {
+                    outer.remove(entry.getKey());
+                } else {
+                    outer.put(entry.getKey(), map);
+                }
+            }
+            return outer.done();
+        }
+    }
+
+    /**
+     * @return The number of writes that led to this version.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return Every stored flight in this version, by departure date and then in
+     *         insertion order (read-only). Flights of recurring schedules are not
+     *         included.
+     */
+    public List<Flight> getFlights() {
+        return findStoredFlights(LocalDate.MIN, LocalDate.MAX);
+    }
+
+    /**
+     * @return The number of stored flights in this version.
+     */
+    public int getFlightCount() {
+        return flightCount;
+    }
+
+    /**
+     * Returns the stored flights departing between two dates. Only the day
+     * partitions in the range are visited.
+     *
+     * @param firstDate The first departure date.
+     * @param lastDate  The last departure date (inclusive).
+     * @return The flights by departure date and then in insertion order
+     *         (read-only).
+     */
+    public List<Flight> findStoredFlights(LocalDate firstDate, LocalDate lastDate) {
+        List<Flight> storedFlights = new ArrayList<>();
+        if (!lastDate.isBefore(firstDate)) {
+            flightsByDay.forEachInRange(firstDate, true, lastDate, true,
+                    (date, dayFlights) -> storedFlights.addAll(dayFlights));
+        }
+        return Collections.unmodifiableList(storedFlights);
+    }
+
+    /**
+     * @return The first departure date with a stored flight, or null if there is
+     *         none.
+     */
+    public LocalDate getFirstDepartureDate() {
+        return flightsByDay.firstKey();
+    }
+
+    /**
+     * @return Every recurring schedule in this version, in insertion order
+     *         (read-only).
+     */
+    public List<RecurringSchedule> getSchedules() {
+        return schedules.all;
+    }
+
+    /**
+     * Retrieves a flight by its ID. A stored flight takes precedence over the
+     * scheduled flight with the same ID, which is how a single departure of a
+     * schedule is changed.
+     *
+     * @param flightId The ID of the flight.
+     * @return The first flight added with this ID, the scheduled flight with this
+     *         ID, or null if there is none.
+     */
+    public Flight getFlightById(int flightId) {
+        Flight flight = flightsById.get(flightId);
+        if (flight != null) {
+            return flight;
+        }
+        Map.Entry<Integer, RecurringSchedule> entry = schedules.byFirstId.floorEntry(flightId);
+        return entry == null ? null : entry.getValue().instanceById(flightId);
+    }
+
+    /**
+     * Returns the scheduled flights departing between two dates, skipping those
+     * replaced by a stored flight with the same ID.
+     *
+     * @param firstDate The first departure date.
+     * @param lastDate  The last departure date (inclusive).
+     * @return A new list of the scheduled flights.
+     */
+    public List<Flight> findScheduledFlights(LocalDate firstDate, LocalDate lastDate) {
+        List<Flight> scheduledFlights = new ArrayList<>();
+        LocalDateTime after = firstDate.atStartOfDay().minusNanos(1);
+        LocalDateTime before = lastDate.plusDays(1).atStartOfDay();
+        for (RecurringSchedule schedule : schedules.all) {
+            addScheduledFlights(schedule, after, before, scheduledFlights);
+        }
+        return scheduledFlights;
+    }
+
+    // Expands a schedule over a time range, leaving out departures that a
+    // stored flight replaces
+    private void addScheduledFlights(RecurringSchedule schedule, LocalDateTime after, LocalDateTime before,
+            List<Flight> out) {
+        int start = out.size();
+        schedule.addInstancesDeparting(after, before, out);
+        if (flightsById.size() > 0) {
+            for (int i = out.size() - 1; i >= start; i--) {
+                if (flightsById.get(out.get(i).getFlightId()) != null) {
+                    out.remove(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the flights on a route departing on the given date, or on any date
+     * when departureDate is null. Only the matching index buckets are visited.
+     *
+     * @param from          The departure location (case-insensitive).
+     * @param to            The destination location (case-insensitive).
+     * @param departureDate The departure date, or null for all dates.
+     * @return A new list of the matching flights in insertion order per date,
+     *         followed by the matching scheduled flights.
+     */
+    public List<Flight> findRouteFlights(String from, String to, LocalDate departureDate) {
+        String key = FlightManager.routeKey(from, to);
+        PersistentTreeMap<LocalDate, List<Flight>> byDate = key == null ? null : routeIndex.get(key);
+        List<Flight> matchingFlights = new ArrayList<>();
+
+        if (byDate != null && departureDate == null) {
+            byDate.forEach((date, dayFlights) -> matchingFlights.addAll(dayFlights));
+        } else if (byDate != null) {
+            List<Flight> dayFlights = byDate.get(departureDate);
+            if (dayFlights != null) {
+                matchingFlights.addAll(dayFlights);
+            }
+        }
+
+        List<RecurringSchedule> routeSchedules = key == null ? null : schedules.byRoute.get(key);
+        if (routeSchedules != null) {
+            LocalDateTime after = departureDate == null ? LocalDateTime.MIN
+                    : departureDate.atStartOfDay().minusNanos(1);
+            LocalDateTime before = departureDate == null ? null : departureDate.plusDays(1).atStartOfDay();
+            for (RecurringSchedule schedule : routeSchedules) {
+                addScheduledFlights(schedule, after, before, matchingFlights);
+            }
+        }
+        return matchingFlights;
+    }
+
+    /**
+     * Returns the flights on a route departing between two dates.
+     *
+     * @param from      The departure location (case-insensitive).
+     * @param to        The destination location (case-insensitive).
+     * @param firstDate The first departure date.
+     * @param lastDate  The last departure date (inclusive).
+     * @return A new list of the matching stored and scheduled flights, ordered by
+     *         departure time.
+     */
+    public List<Flight> findRouteFlights(String from, String to, LocalDate firstDate, LocalDate lastDate) {
+        String key = FlightManager.routeKey(from, to);
+        List<Flight> matchingFlights = new ArrayList<>();
+        if (key == null || lastDate.isBefore(firstDate)) {
+            return matchingFlights;
+        }
+
+        PersistentTreeMap<LocalDate, List<Flight>> byDate = routeIndex.get(key);
+        if (byDate != null) {
+            byDate.forEachInRange(firstDate, true, lastDate, true,
+                    (date, dayFlights) -> matchingFlights.addAll(dayFlights));
+        }
+        List<RecurringSchedule> routeSchedules = schedules.byRoute.get(key);
+        if (routeSchedules != null) {
+            for (RecurringSchedule schedule : routeSchedules) {
+                addScheduledFlights(schedule, firstDate.atStartOfDay().minusNanos(1),
+                        lastDate.plusDays(1).atStartOfDay(), matchingFlights);
+            }
+        }
+        matchingFlights.sort(Comparator.comparing(Flight::getDepartureTime));
+        return matchingFlights;
+    }
+
+    /**
+     * Returns the lowest fare of each departure date in a range on a route. Stored
+     * flights are covered by per-route, per-day aggregates maintained on every
+     * write, so only scheduled flights are looked at individually.
+     *
+     * @param from      The departure location (case-insensitive).
+     * @param to        The destination location (case-insensitive).
+     * @param firstDate The first departure date.
+     * @param lastDate  The last departure date (inclusive).
+     * @return The lowest fare by departure date; dates without flights are left
+     *         out.
+     */
+    public NavigableMap<LocalDate, Double> findLowestFares(String from, String to, LocalDate firstDate,
+            LocalDate lastDate) {
+        String key = FlightManager.routeKey(from, to);
+        NavigableMap<LocalDate, Double> calendar = new TreeMap<>();
+        if (key == null || lastDate.isBefore(firstDate)) {
+            return calendar;
+        }
+
+        PersistentTreeMap<LocalDate, Double> fares = lowestFares.get(key);
+        if (fares != null) {
+            fares.forEachInRange(firstDate, true, lastDate, true, calendar::put);
+        }
+        List<RecurringSchedule> routeSchedules = schedules.byRoute.get(key);
+        if (routeSchedules != null) {
+            List<Flight> scheduledFlights = new ArrayList<>();
+            for (RecurringSchedule schedule : routeSchedules) {
+                addScheduledFlights(schedule, firstDate.atStartOfDay().minusNanos(1),
+                        lastDate.plusDays(1).atStartOfDay(), scheduledFlights);
+            }
+            for (Flight flight : scheduledFlights) {
+                calendar.merge(flight.getDepartureTime().toLocalDate(), flight.getPrice(), Math::min);
+            }
+        }
+        return calendar;
+    }
+
+    /**
+     * Returns the flights leaving a location within a departure time range,
+     * ordered by departure time. Only the origin's time index is visited.
+     *
+     * @param origin The departure location (case-insensitive).
+     * @param after  Flights must depart strictly after this time.
+     * @param before Flights must depart strictly before this time, or null for no
+     *               upper bound.
+     * @return A new list of the matching flights.
+     */
+    public List<Flight> findDepartures(String origin, LocalDateTime after, LocalDateTime before) {
+        List<Flight> matchingFlights = new ArrayList<>();
+        String normalizedOrigin = origin == null ? null : FlightManager.normalizeLocation(origin);
+        PersistentTreeMap<LocalDateTime, List<Flight>> byTime = origin == null ? null
+                : departuresByOrigin.get(normalizedOrigin);
+        if (byTime != null) {
+            // No upper bound when before is null
+            byTime.forEachInRange(after, false, before, false,
+                    (time, departures) -> matchingFlights.addAll(departures));
+        }
+
+        List<RecurringSchedule> originSchedules = origin == null ? null : schedules.byOrigin.get(normalizedOrigin);
+        if (originSchedules != null) {
+            int stored = matchingFlights.size();
+            for (RecurringSchedule schedule : originSchedules) {
+                addScheduledFlights(schedule, after, before, matchingFlights);
+            }
+            if (matchingFlights.size() > stored) {
+                matchingFlights.sort(Comparator.comparing(Flight::getDepartureTime)); // Stable
+            }
+        }
+        return matchingFlights;
+    }
+
+    /**
+     * Checks in constant time whether a route may have flights on a date. Used
+     * to answer searches for routes and dates without service before looking at
+     * any index bucket.
+     *
+     * @param from          The departure location (case-insensitive).
+     * @param to            The destination location (case-insensitive).
+     * @param departureDate The departure date, or null for any date.
+     * @return false if this version certainly has no such flight.
+     */
+    public boolean mayHaveRouteFlights(String from, String to, LocalDate departureDate) {
+        return routeDays.mightContain(FlightManager.routeKey(from, to), departureDate);
+    }
+
+    /**
+     * Checks whether a destination can be reached from an origin through at
+     * most maxLegs routes of this version, regardless of dates. The matrix is
+     * built on the first call after a new route appears.
+     *
+     * @param from    The departure location (case-insensitive).
+     * @param to      The destination location (case-insensitive).
+     * @param maxLegs The maximum number of flights.
+     * @return false if no itinerary of at most maxLegs flights can exist.
+     */
+    public boolean isReachable(String from, String to, int maxLegs) {
+        ReachabilityMatrix matrix = reachability.get();
+        if (matrix == null) {
+            // Concurrent first calls may both build it; the results are equal
+            matrix = new ReachabilityMatrix(originsByDestination);
+            if (!reachability.compareAndSet(null, matrix)) {
+                matrix = reachability.get();
+            }
+        }
+        return matrix.isReachable(from, to, maxLegs);
+    }
+
+    /**
+     * Returns the normalized origins that have at least one flight to the given
+     * normalized destination (read-only).
+     */
+    public Set<String> findOriginsServing(String destination) {
+        Set<String> origins = originsByDestination.get(destination);
+        return origins == null ? Collections.<String>emptySet() : origins;
+    }
+
+    // Recurring schedules of one version, indexed like the stored flights.
+    // There are few of them, so they are copied whole on write.
+    private static final class Schedules {
+        static final Schedules EMPTY = new Schedules(Collections.<RecurringSchedule>emptyList(),
+                Collections.<String, List<RecurringSchedule>>emptyMap(),
+                Collections.<String, List<RecurringSchedule>>emptyMap(), new TreeMap<>());
+
+        final List<RecurringSchedule> all;
+        final Map<String, List<RecurringSchedule>> byRoute; // By normalized "origin|destination"
+        final Map<String, List<RecurringSchedule>> byOrigin; // By normalized origin
+        final NavigableMap<Integer, RecurringSchedule> byFirstId; // For ID lookups with floorEntry
+
+        Schedules(List<RecurringSchedule> all, Map<String, List<RecurringSchedule>> byRoute,
+                Map<String, List<RecurringSchedule>> byOrigin, NavigableMap<Integer, RecurringSchedule> byFirstId) {
+            this.all = all;
+            this.byRoute = byRoute;
+            this.byOrigin = byOrigin;
+            this.byFirstId = byFirstId;
+        }
+
+        Schedules with(RecurringSchedule schedule) {
+            Map.Entry<Integer, RecurringSchedule> previous = byFirstId.floorEntry(schedule.getLastFlightId());
+            if (previous != null && previous.getValue().getLastFlightId() >= schedule.getFirstFlightId()) {
+                throw new IllegalArgumentException("Flight IDs of " + schedule + " overlap " + previous.getValue());
+            }
+
+            List<RecurringSchedule> nextAll = new ArrayList<>(all);
+            nextAll.add(schedule);
+            Map<String, List<RecurringSchedule>> nextByRoute = new HashMap<>(byRoute);
+            add(nextByRoute, FlightManager.routeKey(schedule.getOrigin(), schedule.getDestination()), schedule);
+            Map<String, List<RecurringSchedule>> nextByOrigin = new HashMap<>(byOrigin);
+            add(nextByOrigin, FlightManager.normalizeLocation(schedule.getOrigin()), schedule);
+            NavigableMap<Integer, RecurringSchedule> nextByFirstId = new TreeMap<>(byFirstId);
+            nextByFirstId.put(schedule.getFirstFlightId(), schedule);
+            return new Schedules(Collections.unmodifiableList(nextAll), nextByRoute, nextByOrigin, nextByFirstId);
+        }
+
+        private static void add(Map<String, List<RecurringSchedule>> map, String key, RecurringSchedule schedule) {
+            List<RecurringSchedule> list = map.get(key);
+            list = list == null ? new ArrayList<>(1) : new ArrayList<>(list);
+            list.add(schedule);
+            map.put(key, list);
+        }
+    }
+}
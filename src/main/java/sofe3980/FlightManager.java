@@ -1,26 +1,72 @@
 package sofe3980;
 
+import java.time.Clock;
 import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.ZoneId;
+import java.time.LocalTime;
 import java.time.temporal.TemporalAdjusters;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+/**
+ * Holds the flight inventory. This is a singleton shared by all request
+ * threads: searches read an immutable FlightIndex version without locking, and
+ * writes build and publish the next version one at a time.
+ */
 @Service
 public class FlightManager {
 
-    private List<Flight> flights;
-    private int flightIdCounter = 1;
+    // Current version of the inventory and its indexes. Readers use whichever
+    // version they read here for their whole search; writers publish a new one.
+    private volatile FlightIndex index = FlightIndex.empty();
+    private final Object writeLock = new Object(); // Serializes writers only
+    private final ItineraryRouter itineraryRouter = new ItineraryRouter();
+    // Results of the searches behind the /flights page, see searchFlights
+    private final SearchResultCache<FlightSearchResult> searchCache = new SearchResultCache<>();
+    private final SearchCoalescer<SearchResultCache.Key, FlightSearchResult> searchCoalescer = new SearchCoalescer<>();
+    private final LongAdder filteredSearches = new LongAdder(); // Answered by the route/date filter alone
+    public static final int MAX_CALENDAR_DAYS = 366; // Longest range of a fare calendar query
+
+    private final AtomicInteger flightIdCounter = new AtomicInteger(1);
+    private final Clock clock; // Decides which week getWeeklyFlights returns
+    // Flights of the current week, kept up to date by every write. Null until the
+    // first call to getWeeklyFlights and after a whole-inventory replacement.
+    private volatile WeeklyView weeklyView;
+    // Departed flights moved out of the inventory by retireFlightsBefore, kept
+    // compactly for lookups by ID. Guarded by its own monitor.
+    private final ColumnarFlightStore archive = new ColumnarFlightStore();
+    // Locations for autocomplete and for resolving typed locations. Replaced
+    // under the write lock when a write brings in a new location.
+    private volatile AirportIndex airports = AirportIndex.EMPTY;
+    public static final int MAX_LOCATION_SUGGESTIONS = 20;
+    // Seat inventory by flight ID, created on the first reservation; a flight
+    // without one has every seat free
+    private final ConcurrentMap<Integer, SeatMap> seatMaps = new ConcurrentHashMap<>();
     String[] departureLocations = { "New York", "Los Angeles", "Chicago", "Miami", "Dallas" };
     String[] destinationLocations = { "Los Angeles", "Chicago", "Miami", "Dallas", "New York" };
 
     public FlightManager() {
-        flights = new ArrayList<>();
+        this(Clock.systemDefaultZone());
+    }
+
+    public FlightManager(Clock clock) {
+        this.clock = clock;
+        airports = airports.with(Arrays.asList(departureLocations)).with(Arrays.asList(destinationLocations));
         initializeFlights();
     }
 
@@ -34,97 +80,495 @@ public class FlightManager {
         departureFlight.setCorrespondingFlightId(returnFlight.getFlightId());
         returnFlight.setCorrespondingFlightId(departureFlight.getFlightId());
 
-        addFlight(departureFlight);
-        addFlight(returnFlight);
+        addFlights(Arrays.asList(departureFlight, returnFlight));
     }
 
     private Flight generateFlight(int dayOffset, String departure, String destination, LocalDateTime start) {
         LocalDateTime departureTime = start.plusDays(dayOffset);
         LocalDateTime arrivalTime = departureTime.plusHours(5); // Assuming a 5-hour flight for simplicity
-        int flightId = flightIdCounter++; // Use the counter for flight ID and increment it
+        int flightId = flightIdCounter.getAndIncrement(); // Use the counter for flight ID and increment it
 
         return new Flight(flightId, departureTime, arrivalTime, departure, destination, 300.00);
     }
 
     public List<Flight> searchFlights(String from, String to, LocalDate departureDate) {
         List<Flight> resultFlights = new ArrayList<>();
+        FlightIndex current = index;
+        if (departureDate != null && !current.mayHaveRouteFlights(from, to, departureDate)) {
+            return resultFlights;
+        }
 
-        // Filter for departure flights
-        List<Flight> departureFlights = flights.stream()
-                .filter(flight -> flight.getOrigin().equalsIgnoreCase(from) &&
-                        flight.getDestination().equalsIgnoreCase(to) &&
-                        (departureDate == null || flight.getDepartureTime().toLocalDate().isEqual(departureDate)))
-                .collect(Collectors.toList());
+        // Look up departure flights through the route/date index
+        List<Flight> departureFlights = current.findRouteFlights(from, to, departureDate);
 
         for (Flight depFlight : departureFlights) {
             resultFlights.add(depFlight); // Add the departure flight
 
             // Find and add the corresponding return flight, if any
-            flights.stream()
-                    .filter(flight -> flight.getFlightId() == depFlight.getCorrespondingFlightId()) // Corrected this
-                                                                                                    // line
-                    .findFirst()
-                    .ifPresent(resultFlights::add);
+            Integer correspondingFlightId = depFlight.getCorrespondingFlightId();
+            Flight correspondingFlight = correspondingFlightId == null ? null
+                    : current.getFlightById(correspondingFlightId);
+            if (correspondingFlight != null) {
+                resultFlights.add(correspondingFlight);
+            }
         }
 
         return resultFlights;
     }
 
     public List<Flight> searchFlights(String from, String to, LocalDate departureDate, LocalDate returnDate) {
+        return searchFlightOptions(from, to, departureDate, returnDate).getAllFlights();
+    }
+
+    /**
+     * Searches like searchFlights(from, to, departureDate, returnDate), keeping
+     * only flights with enough free seats. Seat counts are read at the time of
+     * the call, so cached searches stay valid as seats sell.
+     * 
+     * @param seats The number of seats needed on each flight.
+     * @return The outbound flights followed by the return flights.
+     */
+    public List<Flight> searchFlights(String from, String to, LocalDate departureDate, LocalDate returnDate,
+            int seats) {
+        List<Flight> available = new ArrayList<>();
+        for (Flight flight : searchFlights(from, to, departureDate, returnDate)) {
+            if (getAvailableSeats(flight.getFlightId()) >= seats) {
+                available.add(flight);
+            }
+        }
+        return available;
+    }
+
+    /**
+     * Searches a route for outbound flights and, if a return date is given,
+     * return flights. Searches the route/date filter rules out are answered
+     * right away; other results are cached and identical concurrent searches
+     * share one lookup.
+     * 
+     * @param from          The departure location (case-insensitive).
+     * @param to            The destination location (case-insensitive).
+     * @param departureDate The outbound departure date, or null for all dates.
+     * @param returnDate    The return departure date, or null for a one-way
+     *                      search.
+     * @return The outbound and return flights, kept apart.
+     */
+    public FlightSearchResult searchFlightOptions(String from, String to, LocalDate departureDate,
+            LocalDate returnDate) {
         System.out.println("Starting flight search...");
         System.out.println("From: " + from + ", To: " + to + ", Departure Date: " + departureDate + ", Return Date: "
                 + returnDate);
 
-        List<Flight> resultFlights = new ArrayList<>();
+        SearchResultCache.Key cacheKey = SearchResultCache.key(from, to, departureDate, returnDate);
+        if (cacheKey == null) {
+            // No route to look up
+            return new FlightSearchResult(Collections.<Flight>emptyList(), Collections.<Flight>emptyList());
+        }
 
-        // Filter for departure flights
-        List<Flight> departureFlights = flights.stream()
-                .filter(flight -> {
-                    boolean matches = flight.getOrigin().equalsIgnoreCase(from) &&
-                            flight.getDestination().equalsIgnoreCase(to) &&
-                            (departureDate == null || flight.getDepartureTime().toLocalDate().isEqual(departureDate));
-                    if (matches) {
-                        System.out.println("Matching departure flight found: " + flight);
-                    }
-                    return matches;
-                })
-                .collect(Collectors.toList());
+        FlightIndex current = index;
+        if (!current.mayHaveRouteFlights(from, to, departureDate)
+                && (returnDate == null || !current.mayHaveRouteFlights(to, from, returnDate))) {
+            // No service on the route on those dates
+            filteredSearches.increment();
+            System.out.println("No flights on this route and date");
+            return new FlightSearchResult(Collections.<Flight>emptyList(), Collections.<Flight>emptyList());
+        }
+
+        FlightSearchResult cachedResult = searchCache.get(cacheKey);
+        if (cachedResult != null) {
+            System.out.println("Returning cached flights: " + (cachedResult.getDepartureFlights().size()
+                    + cachedResult.getReturnFlights().size()));
+            return cachedResult;
+        }
+
+        // Identical searches that miss the cache at the same time share one lookup
+        return searchCoalescer.execute(cacheKey, () -> findFlights(cacheKey, from, to, departureDate, returnDate));
+    }
+
+    // Runs an uncached search and stores its result in the search cache
+    private FlightSearchResult findFlights(SearchResultCache.Key cacheKey, String from, String to,
+            LocalDate departureDate, LocalDate returnDate) {
+        FlightIndex current = index;
+
+        // Look up departure flights through the route/date index
+        List<Flight> departureFlights = current.findRouteFlights(from, to, departureDate);
 
         System.out.println("Departure flights found: " + departureFlights.size());
 
         // If a return date is provided, find the corresponding return flights
+        List<Flight> returnFlights = Collections.emptyList();
         if (returnDate != null) {
-            List<Flight> returnFlights = flights.stream()
-                    .filter(flight -> {
-                        boolean matches = flight.getOrigin().equalsIgnoreCase(to) &&
-                                flight.getDestination().equalsIgnoreCase(from) &&
-                                flight.getDepartureTime().toLocalDate().isEqual(returnDate);
-                        if (matches) {
-                            System.out.println("Matching return flight found: " + flight);
-                        }
-                        return matches;
-                    })
-                    .collect(Collectors.toList());
+            returnFlights = current.findRouteFlights(to, from, returnDate);
 
             System.out.println("Return flights found: " + returnFlights.size());
-
-            // Combine departure and return flights
-            resultFlights.addAll(departureFlights);
-            resultFlights.addAll(returnFlights);
-        } else {
-            // If no return date is provided, just add the departure flights
-            resultFlights.addAll(departureFlights);
         }
 
-        System.out.println("Total flights found: " + resultFlights.size());
+        System.out.println("Total flights found: " + (departureFlights.size() + returnFlights.size()));
 
-        return resultFlights;
+        FlightSearchResult result = new FlightSearchResult(departureFlights, returnFlights);
+        searchCache.put(cacheKey, result, current.getVersion());
+        return result;
+    }
+
+    /**
+     * Pairs outbound and return flights into round trips ranked by combined
+     * price or flight time. Only the requested number of pairs is built, never
+     * the full cross product (see RoundTripPairer).
+     * 
+     * @param from          The departure location (case-insensitive).
+     * @param to            The destination location (case-insensitive).
+     * @param departureDate The outbound departure date.
+     * @param returnDate    The return departure date.
+     * @param sortBy        PRICE or DURATION.
+     * @param limit         The maximum number of pairs.
+     * @return At most limit round trips, best first.
+     */
+    public List<RoundTripOption> searchRoundTrips(String from, String to, LocalDate departureDate,
+            LocalDate returnDate, ItinerarySortKey sortBy, int limit) {
+        if (departureDate == null || returnDate == null) {
+            return new ArrayList<>();
+        }
+        FlightSearchResult result = searchFlightOptions(from, to, departureDate, returnDate);
+        return RoundTripPairer.topPairs(result.getDepartureFlights(), result.getReturnFlights(), sortBy, limit);
     }
 
     // for adding flights to the list of all flights (used for adding dummy flights
     // for testing)
     public void addFlight(Flight flight) {
-        this.flights.add(flight);
+        addFlights(Collections.singletonList(flight));
+    }
+
+    /**
+     * Adds several flights as a single write. Every write copies the index
+     * buckets it touches, so loading many flights in one call is much cheaper
+     * than calling addFlight for each of them.
+     * 
+     * @param newFlights The flights to add. They must not be modified afterwards.
+     */
+    public void addFlights(Collection<Flight> newFlights) {
+        synchronized (writeLock) {
+            index = index.withFlights(newFlights);
+            addLocations(newFlights);
+            invalidateSearches(newFlights);
+            updateWeeklyView(Collections.<Flight>emptyList(), newFlights);
+            // IDs handed out later (generated flights, schedules) must not be taken
+            for (Flight flight : newFlights) {
+                flightIdCounter.accumulateAndGet(flight.getFlightId() + 1, Math::max);
+            }
+        }
+    }
+
+    /**
+     * Adds a recurring schedule. Only the pattern is stored; searches create the
+     * flight for each operating day they cover. One flight ID per day of the date
+     * range is reserved for the schedule, and a single departure can be changed
+     * by passing a copy with the same ID to updateFlight.
+     * 
+     * @param origin          The departure location.
+     * @param destination     The destination location.
+     * @param departureTime   The local departure time on each operating day.
+     * @param durationMinutes The flight time in minutes.
+     * @param price           The price of each flight.
+     * @param operatingDays   The days of the week the flight operates.
+     * @param firstDate       The first date of the schedule.
+     * @param lastDate        The last date of the schedule (inclusive).
+     * @return The added schedule.
+     */
+    public RecurringSchedule addSchedule(String origin, String destination, LocalTime departureTime,
+            int durationMinutes, double price, Set<DayOfWeek> operatingDays, LocalDate firstDate,
+            LocalDate lastDate) {
+        synchronized (writeLock) {
+            RecurringSchedule schedule = new RecurringSchedule(flightIdCounter.get(), origin, destination,
+                    departureTime, durationMinutes, price, operatingDays, firstDate, lastDate);
+            flightIdCounter.addAndGet(schedule.getDayCount()); // Reserve the schedule's IDs
+            index = index.withSchedule(schedule);
+            airports = airports.with(Arrays.asList(origin, destination));
+            searchCache.invalidate(origin, destination, null, index.getVersion());
+            WeeklyView view = weeklyView;
+            if (view != null) {
+                List<Flight> added = new ArrayList<>();
+                schedule.addInstancesDeparting(view.weekStart.atStartOfDay().minusNanos(1),
+                        view.weekStart.plusDays(7).atStartOfDay(), added);
+                updateWeeklyView(Collections.<Flight>emptyList(), added);
+            }
+            return schedule;
+        }
+    }
+
+    /**
+     * @return The recurring schedules in the inventory, in insertion order.
+     */
+    public List<RecurringSchedule> getSchedules() {
+        return index.getSchedules();
+    }
+
+    /**
+     * Replaces the whole inventory with an imported schedule in one atomic swap:
+     * concurrent searches see either the old or the new schedule, never a mix.
+     * Every cached search is dropped. The inventory keeps Flight objects, so the
+     * rows are converted; the columns are not used after the import.
+     * 
+     * @param schedule The complete new schedule.
+     */
+    public void replaceSchedule(ColumnarFlightStore schedule) {
+        List<Flight> replacement = new ArrayList<>(schedule.size());
+        int maxFlightId = 0;
+        for (int row = 0; row < schedule.size(); row++) {
+            replacement.add(schedule.toFlight(row));
+            maxFlightId = Math.max(maxFlightId, schedule.flightId(row));
+        }
+        replaceSchedule(replacement, maxFlightId);
+    }
+
+    /**
+     * Replaces the whole inventory with the given flights in one atomic swap.
+     * 
+     * @param flights The complete new schedule. The flights must not be modified
+     *                afterwards.
+     */
+    public void replaceSchedule(Collection<Flight> flights) {
+        int maxFlightId = 0;
+        for (Flight flight : flights) {
+            maxFlightId = Math.max(maxFlightId, flight.getFlightId());
+        }
+        replaceSchedule(flights, maxFlightId);
+    }
+
+    private void replaceSchedule(Collection<Flight> flights, int maxFlightId) {
+        FlightIndex current;
+        AirportIndex replacementAirports = AirportIndex.EMPTY.with(Arrays.asList(departureLocations))
+                .with(Arrays.asList(destinationLocations)).with(locationsOf(flights));
+        // Build the indexes outside the lock; retry if another write got in first
+        do {
+            current = index;
+            FlightIndex replacement = current.replacedBy(flights);
+            synchronized (writeLock) {
+                if (index == current) {
+                    index = replacement;
+                    airports = replacementAirports;
+                    searchCache.invalidateAll(replacement.getVersion());
+                    weeklyView = null; // Rebuilt by the next getWeeklyFlights
+                    // Generated flights must not reuse imported IDs
+                    flightIdCounter.accumulateAndGet(maxFlightId + 1, Math::max);
+                    return;
+                }
+            }
+        } while (true);
+    }
+
+    /**
+     * Replaces the flight that has the same ID as the given flight. Published
+     * Flight objects are shared with concurrent readers, so changes must be made
+     * on a copy (see Flight(Flight)) and applied through this method.
+     * 
+     * @param updatedFlight The new version of the flight.
+     * @return true if a flight with that ID was found and replaced.
+     */
+    public boolean updateFlight(Flight updatedFlight) {
+        synchronized (writeLock) {
+            Flight currentFlight = index.getFlightById(updatedFlight.getFlightId());
+            if (currentFlight == null) {
+                return false;
+            }
+            index = index.withoutFlights(Collections.singletonList(currentFlight))
+                    .withFlights(Collections.singletonList(updatedFlight));
+            addLocations(Collections.singletonList(updatedFlight));
+            invalidateSearches(Arrays.asList(currentFlight, updatedFlight));
+            updateWeeklyView(Collections.singletonList(currentFlight), Collections.singletonList(updatedFlight));
+            return true;
+        }
+    }
+
+    /**
+     * Changes the price of a flight.
+     * 
+     * @param flightId The ID of the flight.
+     * @param price    The new price.
+     * @return true if the flight was found and repriced.
+     */
+    public boolean repriceFlight(int flightId, double price) {
+        synchronized (writeLock) {
+            Flight currentFlight = index.getFlightById(flightId);
+            if (currentFlight == null) {
+                return false;
+            }
+            Flight repricedFlight = new Flight(currentFlight);
+            repricedFlight.setPrice(price);
+            return updateFlight(repricedFlight);
+        }
+    }
+
+    // Adds the locations of new flights to the airport index. Called under the
+    // write lock.
+    private void addLocations(Collection<Flight> flights) {
+        AirportIndex current = airports;
+        for (Flight flight : flights) {
+            if (!current.contains(flight.getOrigin()) || !current.contains(flight.getDestination())) {
+                airports = current.with(locationsOf(flights));
+                return;
+            }
+        }
+    }
+
+    private static List<String> locationsOf(Collection<Flight> flights) {
+        List<String> locations = new ArrayList<>(2 * flights.size());
+        for (Flight flight : flights) {
+            locations.add(flight.getOrigin());
+            locations.add(flight.getDestination());
+        }
+        return locations;
+    }
+
+    /**
+     * Suggests locations for a partly typed name, matching the start of the
+     * name or of any word in it.
+     * 
+     * @param prefix The typed text (case-insensitive).
+     * @param limit  The maximum number of suggestions.
+     * @return The matching locations as spelled in the inventory.
+     */
+    public List<String> suggestLocations(String prefix, int limit) {
+        return airports.complete(prefix, Math.min(limit, MAX_LOCATION_SUGGESTIONS));
+    }
+
+    /**
+     * Maps a typed location to the spelling used by the inventory, so that
+     * searches run on a known location.
+     * 
+     * @param query The typed location.
+     * @return The location as spelled in the inventory if the query names
+     *         exactly one (or is the start of exactly one), otherwise null.
+     */
+    public String resolveLocation(String query) {
+        return airports.resolve(query);
+    }
+
+    // Drops the cached searches that the changed flights could appear in. Called
+    // under the write lock after the new index version is published.
+    private void invalidateSearches(Collection<Flight> changedFlights) {
+        long version = index.getVersion();
+        for (Flight flight : changedFlights) {
+            searchCache.invalidate(flight.getOrigin(), flight.getDestination(),
+                    flight.getDepartureTime().toLocalDate(), version);
+        }
+    }
+
+    /**
+     * @return The cache behind searchFlightOptions, for its counters.
+     */
+    public SearchResultCache<FlightSearchResult> getSearchCache() {
+        return searchCache;
+    }
+
+    /**
+     * Reports the search cache and request coalescing counters.
+     * 
+     * @return The counters by name, in a stable order.
+     */
+    public Map<String, Number> getSearchMetrics() {
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        metrics.put("cacheSize", searchCache.size());
+        metrics.put("cacheHits", searchCache.getHits());
+        metrics.put("cacheMisses", searchCache.getMisses());
+        metrics.put("cacheEvictions", searchCache.getEvictions());
+        metrics.put("cacheInvalidations", searchCache.getInvalidations());
+        metrics.put("searchRequests", searchCoalescer.getRequests());
+        metrics.put("searchExecutions", searchCoalescer.getExecutions());
+        metrics.put("coalescedSearches", searchCoalescer.getCoalescedRequests());
+        metrics.put("coalescingRatio", searchCoalescer.getCoalescingRatio());
+        metrics.put("filteredSearches", filteredSearches.sum());
+        return metrics;
+    }
+
+    /**
+     * @return The current version of the inventory and its indexes.
+     */
+    FlightIndex currentIndex() {
+        return index;
+    }
+
+    /**
+     * Builds the route index key for an origin/destination pair. Locations are
+     * matched case-insensitively, so both sides are normalized here once instead
+     * of calling equalsIgnoreCase on every flight.
+     * 
+     * @param from The departure location.
+     * @param to   The destination location.
+     * @return The normalized route key, or null if either location is missing.
+     */
+    static String routeKey(String from, String to) {
+        if (from == null || to == null) {
+            return null;
+        }
+        return normalizeLocation(from) + "|" + normalizeLocation(to);
+    }
+
+    static String normalizeLocation(String location) {
+        return location.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Searches for itineraries of up to search.getMaxLegs() flights whose first leg
+     * departs on the search date. Connections respect the minimum connection time
+     * and maximum layover of the search, and itineraries never revisit a location
+     * except to end a round trip at the origin.
+     * 
+     * @param search The search parameters, including sort key and page.
+     * @return The requested page of itineraries, each a list of flights in travel
+     *         order, and whether the search was cut short.
+     */
+    public ItinerarySearchResult searchItineraries(ItinerarySearch search) {
+        return itineraryRouter.search(index, search);
+    }
+
+    /**
+     * Returns the lowest fare of each day in a date range on a route, such as the
+     * cheapest fare each day of a month, from per-route, per-day aggregates
+     * instead of a search per day.
+     * 
+     * @param from      The departure location (case-insensitive).
+     * @param to        The destination location (case-insensitive).
+     * @param firstDate The first departure date.
+     * @param lastDate  The last departure date (inclusive); at most
+     *                  MAX_CALENDAR_DAYS after firstDate.
+     * @return The lowest fare by date, in date order; dates without flights are
+     *         left out.
+     */
+    public Map<LocalDate, Double> getLowFareCalendar(String from, String to, LocalDate firstDate,
+            LocalDate lastDate) {
+        checkDateRange(firstDate, lastDate);
+        return index.findLowestFares(from, to, firstDate, lastDate);
+    }
+
+    /**
+     * Searches a route within +/- flexDays of a date, returning the flights and
+     * the lowest fare of each day of the window from one inventory version.
+     * 
+     * @param from     The departure location (case-insensitive).
+     * @param to       The destination location (case-insensitive).
+     * @param date     The preferred departure date.
+     * @param flexDays How many days before and after the date to include.
+     * @return The flights and fare calendar of the window.
+     */
+    public FlexibleDateResult searchFlexibleDates(String from, String to, LocalDate date, int flexDays) {
+        if (date == null || flexDays < 0) {
+            throw new IllegalArgumentException("A date and a non-negative number of flexible days are required");
+        }
+        LocalDate firstDate = date.minusDays(flexDays);
+        LocalDate lastDate = date.plusDays(flexDays);
+        checkDateRange(firstDate, lastDate);
+        FlightIndex current = index;
+        return new FlexibleDateResult(from, to, firstDate, lastDate,
+                current.findLowestFares(from, to, firstDate, lastDate),
+                current.findRouteFlights(from, to, firstDate, lastDate));
+    }
+
+    // Bounds the work of a calendar query
+    private static void checkDateRange(LocalDate firstDate, LocalDate lastDate) {
+        if (firstDate == null || lastDate == null || lastDate.isBefore(firstDate)
+                || firstDate.plusDays(MAX_CALENDAR_DAYS).isBefore(lastDate)) {
+            throw new IllegalArgumentException("Invalid date range " + firstDate + " to " + lastDate
+                    + ", at most " + MAX_CALENDAR_DAYS + " days are allowed");
+        }
     }
 
     /**
@@ -137,10 +581,13 @@ public class FlightManager {
      */
     public List<Flight> searchDirectFlights(String from, String to, LocalDate date) {
         List<Flight> matchingFlights = new ArrayList<>();
-        for (Flight flight : flights) {
-            if (flight.getOrigin().equals(from) &&
-                    flight.getDestination().equals(to) &&
-                    flight.getDepartureTime().toLocalDate().equals(date)) {
+        FlightIndex current = index;
+        if (date == null || !current.mayHaveRouteFlights(from, to, date)) {
+            return matchingFlights;
+        }
+        // The index is case-insensitive, direct search keeps its exact match
+        for (Flight flight : current.findRouteFlights(from, to, date)) {
+            if (flight.getOrigin().equals(from) && flight.getDestination().equals(to)) {
                 matchingFlights.add(flight);
             }
         }
@@ -158,20 +605,31 @@ public class FlightManager {
      */
     public List<List<Flight>> searchMultiStopFlights(String from, String to, LocalDate date) {
         List<List<Flight>> multiStopFlights = new ArrayList<>();
+        FlightIndex current = index;
+
+        // Nothing to expand if no two routes connect the locations
+        if (date == null || from == null || to == null || !current.isReachable(from, to, 2)) {
+            return multiStopFlights;
+        }
 
         // First, find all flights departing from the origin on the specified date
-        List<Flight> departingFlights = flights.stream()
-                .filter(f -> f.getOrigin().equals(from) && f.getDepartureTime().toLocalDate().equals(date))
-                .collect(Collectors.toList());
+        List<Flight> departingFlights = new ArrayList<>();
+        for (Flight flight : current.findDepartures(from, date.atStartOfDay().minusNanos(1),
+                date.plusDays(1).atStartOfDay())) {
+            if (flight.getOrigin().equals(from)) {
+                departingFlights.add(flight);
+            }
+        }
 
         // Then, for each departing flight, find connecting flights from the arrival
-        // location to the final destination
+        // location to the final destination with a range query on departure time
         for (Flight firstLeg : departingFlights) {
-            List<Flight> connectingFlights = flights.stream()
-                    .filter(f -> f.getOrigin().equals(firstLeg.getDestination()) &&
-                            f.getDestination().equals(to) &&
-                            f.getDepartureTime().isAfter(firstLeg.getArrivalTime()))
-                    .collect(Collectors.toList());
+            List<Flight> connectingFlights = new ArrayList<>();
+            for (Flight flight : current.findDepartures(firstLeg.getDestination(), firstLeg.getArrivalTime(), null)) {
+                if (flight.getOrigin().equals(firstLeg.getDestination()) && flight.getDestination().equals(to)) {
+                    connectingFlights.add(flight);
+                }
+            }
 
             // For each connecting flight found, add a new list containing the first leg and
             // the connecting flight to the results
@@ -187,21 +645,88 @@ public class FlightManager {
     }
 
     /**
-     * Retrieves the list of weekly flights.
+     * Retrieves the list of weekly flights. The list is maintained as flights are
+     * written and is only rebuilt from the whole inventory when the week rolls
+     * over, so repeated calls are cheap. Until the next change the same list
+     * instance is returned, which lets callers cache work derived from it.
      * 
-     * @return A list of weekly flights.
+     * @return A list of weekly flights (read-only).
      */
     public List<Flight> getWeeklyFlights() {
-        LocalDate today = LocalDate.now(ZoneId.systemDefault());
-        LocalDate startOfWeek = today.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
-        LocalDate endOfWeek = today.with(TemporalAdjusters.nextOrSame(DayOfWeek.SUNDAY));
+        LocalDate startOfWeek = LocalDate.now(clock).with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        WeeklyView view = weeklyView;
+        if (view != null && view.weekStart.equals(startOfWeek)) {
+            return view.flights;
+        }
+        synchronized (writeLock) {
+            view = weeklyView;
+            if (view == null || !view.weekStart.equals(startOfWeek)) {
+                view = buildWeeklyView(startOfWeek);
+                weeklyView = view;
+            }
+            return view.flights;
+        }
+    }
+
+    /**
+     * Rolls the weekly view over at the start of each week, so the first request
+     * of the week does not pay for the rebuild.
+     */
+    @Scheduled(cron = "0 0 0 * * MON")
+    public void rollOverWeeklyView() {
+        getWeeklyFlights();
+    }
+
+    // Filters the whole inventory for one week. Called under the write lock.
+    private WeeklyView buildWeeklyView(LocalDate startOfWeek) {
+        LocalDate endOfWeek = startOfWeek.plusDays(6);
+        FlightIndex current = index;
+        List<Flight> weeklyFlights = new ArrayList<>(current.findStoredFlights(startOfWeek, endOfWeek));
+        weeklyFlights.addAll(current.findScheduledFlights(startOfWeek, endOfWeek));
+        return new WeeklyView(startOfWeek, weeklyFlights);
+    }
+
+    // Applies a write to the weekly view, copying only the week's flights.
+    // Called under the write lock after the new index version is published.
+    private void updateWeeklyView(Collection<Flight> removed, Collection<Flight> added) {
+        WeeklyView view = weeklyView;
+        if (view == null) {
+            return;
+        }
+        boolean changed = false;
+        List<Flight> weeklyFlights = new ArrayList<>(view.flights);
+        for (Flight flight : removed) {
+            changed |= view.contains(flight) && removeFromWeek(weeklyFlights, flight);
+        }
+        for (Flight flight : added) {
+            if (view.contains(flight)) {
+                weeklyFlights.add(flight);
+                changed = true;
+            }
+        }
+        if (changed) {
+            weeklyView = new WeeklyView(view.weekStart, weeklyFlights);
+        }
+    }
 
-        return flights.stream()
-                .filter(flight -> {
-                    LocalDate flightDate = flight.getDepartureTime().toLocalDate();
-                    return (!flightDate.isBefore(startOfWeek)) && (!flightDate.isAfter(endOfWeek));
-                })
-                .collect(Collectors.toList());
+    // Stored flights are matched by identity; scheduled flights are created per
+    // lookup, so they are matched by ID and departure time
+    private static boolean removeFromWeek(List<Flight> weeklyFlights, Flight flight) {
+        for (int i = 0; i < weeklyFlights.size(); i++) {
+            if (weeklyFlights.get(i) == flight) {
+                weeklyFlights.remove(i);
+                return true;
+            }
+        }
+        for (int i = 0; i < weeklyFlights.size(); i++) {
+            Flight candidate = weeklyFlights.get(i);
+            if (candidate.getFlightId() == flight.getFlightId()
+                    && candidate.getDepartureTime().equals(flight.getDepartureTime())) {
+                weeklyFlights.remove(i);
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -211,9 +736,135 @@ public class FlightManager {
      * @return The Flight object if found, or null otherwise.
      */
     public Optional<Flight> getFlightById(int flightId) {
-        return flights.stream()
-                .filter(flight -> flight.getFlightId() == flightId)
-                .findFirst();
+        Flight flight = index.getFlightById(flightId);
+        if (flight == null) {
+            synchronized (archive) {
+                int row = archive.findRow(flightId);
+                flight = row < 0 ? null : archive.toFlight(row);
+            }
+        }
+        return Optional.ofNullable(flight);
+    }
+
+    /**
+     * Reserves any free seat on a flight. Reservations on the same flight do not
+     * lock each other out (see SeatMap).
+     * 
+     * @param flightId The ID of the flight.
+     * @return The reserved seat number, or empty if the flight does not exist or
+     *         is full.
+     */
+    public Optional<String> reserveSeat(int flightId) {
+        SeatMap seatMap = seatMapOf(flightId);
+        int seat = seatMap == null ? -1 : seatMap.reserveAny();
+        return seat < 0 ? Optional.<String>empty() : Optional.of(seatMap.seatNumber(seat));
+    }
+
+    /**
+     * Reserves a given seat on a flight.
+     * 
+     * @param flightId   The ID of the flight.
+     * @param seatNumber The seat number, such as "12C".
+     * @return true if the seat exists, was free and is now reserved.
+     */
+    public boolean reserveSeat(int flightId, String seatNumber) {
+        SeatMap seatMap = seatMapOf(flightId);
+        int seat = seatMap == null ? -1 : seatMap.seatIndex(seatNumber);
+        return seat >= 0 && seatMap.reserve(seat);
+    }
+
+    /**
+     * Frees a reserved seat on a flight.
+     * 
+     * @param flightId   The ID of the flight.
+     * @param seatNumber The seat number.
+     * @return true if the seat was reserved and is now free.
+     */
+    public boolean releaseSeat(int flightId, String seatNumber) {
+        SeatMap seatMap = seatMaps.get(flightId);
+        int seat = seatMap == null ? -1 : seatMap.seatIndex(seatNumber);
+        return seat >= 0 && seatMap.release(seat);
+    }
+
+    /**
+     * Returns the number of free seats on a flight in constant time.
+     * 
+     * @param flightId The ID of the flight.
+     * @return The number of free seats, or 0 if the flight does not exist.
+     */
+    public int getAvailableSeats(int flightId) {
+        SeatMap seatMap = seatMaps.get(flightId);
+        if (seatMap != null) {
+            return seatMap.getAvailableSeats();
+        }
+        return index.getFlightById(flightId) == null ? 0 : SeatMap.DEFAULT_ROWS * SeatMap.DEFAULT_SEATS_PER_ROW;
+    }
+
+    // Returns the seat map of a flight in the inventory, creating it if needed
+    private SeatMap seatMapOf(int flightId) {
+        SeatMap seatMap = seatMaps.get(flightId);
+        if (seatMap == null && index.getFlightById(flightId) != null) {
+            seatMap = seatMaps.computeIfAbsent(flightId, id -> new SeatMap());
+        }
+        return seatMap;
+    }
+
+    /**
+     * Moves every stored flight departing before a date out of the inventory, so
+     * searches and writes only deal with the active window. Readers are never
+     * blocked: they keep using the version they started with.
+     * 
+     * @param cutoff         Flights departing before this date are retired.
+     * @param archiveFlights Whether to keep the retired flights in the archive,
+     *                       where getFlightById still finds them.
+     * @return The number of flights retired.
+     */
+    public int retireFlightsBefore(LocalDate cutoff, boolean archiveFlights) {
+        synchronized (writeLock) {
+            FlightIndex current = index;
+            List<Flight> departedFlights = current.findStoredFlights(LocalDate.MIN, cutoff.minusDays(1));
+            if (departedFlights.isEmpty()) {
+                return 0;
+            }
+            if (archiveFlights) {
+                // Archive first, so a lookup by ID finds the flight in one place or the other
+                synchronized (archive) {
+                    for (Flight flight : departedFlights) {
+                        archive.add(flight);
+                    }
+                }
+            }
+            index = current.withoutFlights(departedFlights);
+            invalidateSearches(departedFlights);
+            updateWeeklyView(departedFlights, Collections.<Flight>emptyList());
+            for (Flight flight : departedFlights) {
+                seatMaps.remove(flight.getFlightId()); // Nothing left to sell
+            }
+            return departedFlights.size();
+        }
+    }
+
+    /**
+     * Retention task: archives the flights of past weeks. The current week stays
+     * in the inventory because the weekly flights view covers all of it.
+     *
+     * Off unless flights.retention.cron is set (see application.properties), so
+     * a default run keeps the seeded demo flights searchable.
+     */
+    @Scheduled(cron = "${flights.retention.cron:-}")
+    public void retireDepartedFlights() {
+        LocalDate startOfWeek = LocalDate.now(clock).with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        int retired = retireFlightsBefore(startOfWeek, true);
+        System.out.println("Archived " + retired + " departed flights, " + index.getFlightCount() + " active");
+    }
+
+    /**
+     * @return The number of flights in the archive.
+     */
+    public int getArchivedFlightCount() {
+        synchronized (archive) {
+            return archive.size();
+        }
     }
 
     /**
@@ -240,4 +891,20 @@ public class FlightManager {
 
         return String.format("%d:%02d", totalHours, remainingMinutes);
     }
+
+    // The flights of one week, replaced as a whole on every change
+    private static class WeeklyView {
+        final LocalDate weekStart;
+        final List<Flight> flights;
+
+        WeeklyView(LocalDate weekStart, List<Flight> flights) {
+            this.weekStart = weekStart;
+            this.flights = Collections.unmodifiableList(flights);
+        }
+
+        boolean contains(Flight flight) {
+            LocalDate flightDate = flight.getDepartureTime().toLocalDate();
+            return !flightDate.isBefore(weekStart) && flightDate.isBefore(weekStart.plusDays(7));
+        }
+    }
 }
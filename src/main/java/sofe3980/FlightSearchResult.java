@@ -0,0 +1,42 @@
+package sofe3980;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The flights found by a route search, kept apart by direction so callers do
+ * not have to split a combined list again.
+ */
+public class FlightSearchResult {
+
+    private final List<Flight> departureFlights;
+    private final List<Flight> returnFlights;
+
+    /**
+     * @param departureFlights The outbound flights.
+     * @param returnFlights    The return flights; empty for a one-way search.
+     */
+    public FlightSearchResult(List<Flight> departureFlights, List<Flight> returnFlights) {
+        this.departureFlights = Collections.unmodifiableList(departureFlights);
+        this.returnFlights = Collections.unmodifiableList(returnFlights);
+    }
+
+    public List<Flight> getDepartureFlights() {
+        return departureFlights;
+    }
+
+    public List<Flight> getReturnFlights() {
+        return returnFlights;
+    }
+
+    /**
+     * @return A new list of the departure flights followed by the return flights.
+     */
+    public List<Flight> getAllFlights() {
+        List<Flight> allFlights = new ArrayList<>(departureFlights.size() + returnFlights.size());
+        allFlights.addAll(departureFlights);
+        allFlights.addAll(returnFlights);
+        return allFlights;
+    }
+}
@@ -0,0 +1,166 @@
+package sofe3980;
+
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel for deadlines of a fixed granularity (Varghese and
+ * Lauck's scheme 6). Time is cut into ticks; a deadline goes into the bucket of
+ * its tick modulo the wheel size, in a doubly linked list, so scheduling and
+ * cancelling are O(1) however many timeouts are outstanding. Advancing the
+ * wheel only visits the buckets of the ticks that passed.
+ *
+ * Nothing runs on its own: the owner calls advance with the current time, for
+ * example on each operation. Not thread-safe; callers synchronize on the wheel.
+ */
+public class HashedTimingWheel<T> {
+
+    private final long tickMillis;
+    private final Timeout<T>[] buckets; // Head of each bucket's list
+    private final int mask;
+    private long currentTick; // First tick not yet processed
+    private int size;
+
+    /**
+     * Creates an empty wheel.
+     *
+     * @param tickMillis  The length of a tick; deadlines are rounded up to it.
+     * @param wheelSize   The number of buckets, a power of two. Deadlines further
+     *                    away than wheelSize ticks share buckets with nearer
+     *                    ones and are skipped until their round comes.
+     * @param startMillis The current time.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public HashedTimingWheel(long tickMillis, int wheelSize, long startMillis) {
+        if (tickMillis < 1 || wheelSize < 1 || Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("Invalid timing wheel of " + wheelSize + " x " + tickMillis + " ms");
+        }
+        this.tickMillis = tickMillis;
+        this.buckets = (Timeout<T>[]) new Timeout[wheelSize];
+        this.mask = wheelSize - 1;
+        this.currentTick = startMillis / tickMillis + 1;
+    }
+
+    /**
+     * Schedules an item to expire at a deadline.
+     *
+     * @param item           The item.
+     * @param deadlineMillis The time from which the item counts as expired.
+     * @return The handle to cancel the timeout with.
+     */
+    public Timeout<T> schedule(T item, long deadlineMillis) {
+        long tick = Math.max(Math.floorDiv(deadlineMillis + tickMillis - 1, tickMillis), currentTick);
+        Timeout<T> timeout = new Timeout<>(item, tick);
+        int bucket = (int) (tick & mask);
+        timeout.bucket = bucket;
+        timeout.next = buckets[bucket];
+        if (timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        buckets[bucket] = timeout;
+        size++;
+        return timeout;
+    }
+
+    /**
+     * Cancels a timeout.
+     *
+     * @param timeout The handle returned by schedule.
+     * @return true if the timeout was pending and is now cancelled.
+     */
+    public boolean cancel(Timeout<T> timeout) {
+        if (timeout.bucket < 0) {
+            return false;
+        }
+        unlink(timeout);
+        return true;
+    }
+
+    /**
+     * Expires every item whose deadline has been reached.
+     *
+     * @param nowMillis The current time.
+     * @param expired   Called with each expired item, after it left the wheel.
+     * @return The number of expired items.
+     */
+    public int advance(long nowMillis, Consumer<T> expired) {
+        long nowTick = nowMillis / tickMillis;
+        if (nowTick < currentTick) {
+            return 0;
+        }
+        int count = 0;
+        if (nowTick - currentTick >= buckets.length) {
+            // A full turn or more passed: every bucket is due once
+            for (int bucket = 0; bucket < buckets.length; bucket++) {
+                count += expireBucket(bucket, nowTick, expired);
+            }
+        } else {
+            for (long tick = currentTick; tick <= nowTick; tick++) {
+                count += expireBucket((int) (tick & mask), nowTick, expired);
+            }
+        }
+        currentTick = nowTick + 1;
+        return count;
+    }
+
+    // Expires the timeouts of a bucket that are due by nowTick; later rounds stay
+    private int expireBucket(int bucket, long nowTick, Consumer<T> expired) {
+        int count = 0;
+        Timeout<T> timeout = buckets[bucket];
+        while (timeout != null) {
+            Timeout<T> next = timeout.next;
+            if (timeout.tick <= nowTick) {
+                unlink(timeout);
+                expired.accept(timeout.item);
+                count++;
+            }
+            timeout = next;
+        }
+        return count;
+    }
+
+    private void unlink(Timeout<T> timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            buckets[timeout.bucket] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.bucket = -1;
+        size--;
+    }
+
+    /**
+     * @return The number of pending timeouts.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * A pending deadline, linked into its bucket.
+     */
+    public static final class Timeout<T> {
+        private final T item;
+        private final long tick;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+        private int bucket = -1; // -1 once expired or cancelled
+
+        private Timeout(T item, long tick) {
+            this.item = item;
+            this.tick = tick;
+        }
+
+        public T getItem() {
+            return item;
+        }
+
+        public boolean isPending() {
+            return bucket >= 0;
+        }
+    }
+}
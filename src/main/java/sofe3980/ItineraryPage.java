@@ -0,0 +1,118 @@
+package sofe3980;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * One page of ranked itineraries, with an opaque cursor for the next page and
+ * a flag telling whether the search was cut short.
+ *
+ * A cursor records the position where the page ended (see ItineraryPosition)
+ * and a SHA-256 digest of the search it belongs to, so it can only be used to
+ * continue the same search.
+ */
+public class ItineraryPage {
+
+    private static final int DIGEST_BYTES = 16; // Enough to tell searches apart
+
+    private List<List<Flight>> itineraries;
+    private String nextCursor;
+    private boolean truncated;
+
+    public ItineraryPage(List<List<Flight>> itineraries, String nextCursor, boolean truncated) {
+        this.itineraries = itineraries;
+        this.nextCursor = nextCursor;
+        this.truncated = truncated;
+    }
+
+    public List<List<Flight>> getItineraries() {
+        return itineraries;
+    }
+
+    public void setItineraries(List<List<Flight>> itineraries) {
+        this.itineraries = itineraries;
+    }
+
+    /**
+     * @return The cursor of the next page, or null if this is the last page.
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * @return true if the search stopped at its expansion limit, so this page may
+     *         be missing itineraries or be short although more exist.
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public void setTruncated(boolean truncated) {
+        this.truncated = truncated;
+    }
+
+    /**
+     * Creates the cursor that continues a search after the given position.
+     *
+     * @param search   The search.
+     * @param position The position the page ended at.
+     * @return The opaque cursor.
+     */
+    public static String encodeCursor(ItinerarySearch search, ItineraryPosition position) {
+        StringBuilder flightIds = new StringBuilder();
+        for (int flightId : position.getFlightIds()) {
+            flightIds.append(flightIds.length() == 0 ? "" : ",").append(flightId);
+        }
+        String cursor = fingerprint(search) + ":" + Long.toHexString(Double.doubleToLongBits(position.getCost()))
+                + ":" + position.getLegs() + ":" + flightIds + ":" + position.getContinuation();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads the position of a cursor.
+     *
+     * @param search The search the cursor is used with.
+     * @param cursor The cursor from a previous page.
+     * @return The position the next page continues after.
+     * @throws IllegalArgumentException If the cursor is malformed or belongs to a
+     *                                  different search.
+     */
+    public static ItineraryPosition decodeCursor(ItinerarySearch search, String cursor) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] fields = decoded.split(":", -1);
+            if (fields.length != 5 || !fields[0].equals(fingerprint(search))) {
+                throw new IllegalArgumentException("Cursor does not belong to this search");
+            }
+            double cost = Double.longBitsToDouble(Long.parseUnsignedLong(fields[1], 16));
+            int legs = Integer.parseInt(fields[2]);
+            int[] flightIds = Arrays.stream(fields[3].split(",")).mapToInt(Integer::parseInt).toArray();
+            if (legs < 1 || flightIds.length != legs) {
+                throw new IllegalArgumentException("Cursor does not name an itinerary");
+            }
+            return new ItineraryPosition(cost, legs, flightIds, Long.parseLong(fields[4]));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+
+    // Digest of every search parameter except the page and position
+    private static String fingerprint(ItinerarySearch search) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(search.queryKey().getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, DIGEST_BYTES));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e); // Every JRE has it
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package sofe3980;
+
+import java.util.Arrays;
+
+/**
+ * The place in a ranked itinerary search where a page ended: the sort key of
+ * the page's last itinerary, with its flight IDs as the tie-breaker, so the
+ * next page can start right after it. It may also name a continuation, the
+ * paused search the router kept for this position.
+ */
+public final class ItineraryPosition {
+
+    private final double cost;
+    private final int legs;
+    private final int[] flightIds;
+    private final long continuation;
+
+    /**
+     * @param cost         The ranking cost of the last itinerary.
+     * @param legs         Its number of legs.
+     * @param flightIds    Its flight IDs in travel order.
+     * @param continuation The ID of the saved search to resume, or 0 for none.
+     */
+    public ItineraryPosition(double cost, int legs, int[] flightIds, long continuation) {
+        this.cost = cost;
+        this.legs = legs;
+        this.flightIds = flightIds.clone();
+        this.continuation = continuation;
+    }
+
+    public double getCost() {
+        return cost;
+    }
+
+    public int getLegs() {
+        return legs;
+    }
+
+    public int[] getFlightIds() {
+        return flightIds.clone();
+    }
+
+    public long getContinuation() {
+        return continuation;
+    }
+
+    /**
+     * Compares an itinerary with this position in ranking order: by cost, then
+     * by number of legs, then by flight IDs.
+     *
+     * @return A negative number, zero or a positive number if the itinerary ranks
+     *         before, at or after this position.
+     */
+    int compareItinerary(double otherCost, int otherLegs, int[] otherFlightIds) {
+        return compare(otherCost, otherLegs, otherFlightIds, cost, legs, flightIds);
+    }
+
+    static int compare(double cost, int legs, int[] flightIds, double otherCost, int otherLegs,
+            int[] otherFlightIds) {
+        int result = Double.compare(cost, otherCost);
+        if (result != 0) {
+            return result;
+        }
+        result = Integer.compare(legs, otherLegs);
+        for (int i = 0; result == 0 && i < Math.min(flightIds.length, otherFlightIds.length); i++) {
+            result = Integer.compare(flightIds[i], otherFlightIds[i]);
+        }
+        return result != 0 ? result : Integer.compare(flightIds.length, otherFlightIds.length);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof ItineraryPosition)) {
+            return false;
+        }
+        ItineraryPosition position = (ItineraryPosition) other;
+        return Double.compare(cost, position.cost) == 0 && legs == position.legs
+                && Arrays.equals(flightIds, position.flightIds) && continuation == position.continuation;
+    }
+
+    @Override
+    public int hashCode() {
+        return (Double.hashCode(cost) * 31 + legs) * 31 + Arrays.hashCode(flightIds);
+    }
+}
@@ -0,0 +1,326 @@
+package sofe3980;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Finds itineraries of up to K legs over a version of the FlightManager
+ * inventory.
+ *
+ * The search is a best-first (Dijkstra-style) traversal of the time-expanded
+ * flight graph: each queue entry is a partial itinerary ending with a flight,
+ * and it is extended with the departures from its arrival location that fall
+ * inside the [minimum connection, maximum layover] window. Every sort key only
+ * grows as legs are added, so complete itineraries leave the queue already in
+ * ranked order and the search stops as soon as the requested page is filled.
+ *
+ * Partial itineraries are pruned when they revisit a location (the rule of
+ * BookingManager.isCyclicItinerary) or when the destination cannot be reached
+ * from their arrival location within the remaining number of legs.
+ *
+ * Ties are broken by flight IDs, so the order is total and a page can end at
+ * an ItineraryPosition. When a full page ends, the paused queue is kept as a
+ * continuation, and the next page resumes it with a fresh expansion budget.
+ * If the continuation is gone, or the inventory changed in between, the next
+ * page runs the search again and skips every itinerary up to the position.
+ */
+public class ItineraryRouter {
+
+    // Default upper bound on expanded partial itineraries, so a query on a dense
+    // network with a large page number cannot run away
+    static final int MAX_EXPANSIONS = 500_000;
+    static final int MAX_CONTINUATIONS = 64; // Paused searches kept for their next page
+    static final int MAX_CONTINUATION_LABELS = 100_000; // Larger queues are not kept
+
+    private final int maxExpansions;
+    private final AtomicLong continuationIds = new AtomicLong();
+    // Access-ordered, so the eldest entry is the least recently used one. Guarded
+    // by its own monitor.
+    private final LinkedHashMap<Long, Run> continuations = new LinkedHashMap<Long, Run>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Run> eldest) {
+            return size() > MAX_CONTINUATIONS;
+        }
+    };
+
+    public ItineraryRouter() {
+        this(MAX_EXPANSIONS);
+    }
+
+    /**
+     * @param maxExpansions The most partial itineraries a search may expand
+     *                      before it stops and reports a truncated result.
+     */
+    public ItineraryRouter(int maxExpansions) {
+        this.maxExpansions = maxExpansions;
+    }
+
+    /**
+     * Searches for itineraries matching the given parameters. A search with a
+     * position continues after it; the page number then counts from there.
+     *
+     * @param index  The inventory version to search.
+     * @param search The search parameters.
+     * @return The requested page of itineraries, each a list of flights in travel
+     *         order, ranked by the search's sort key, whether the expansion limit
+     *         cut the page short, and the position the page ends at.
+     */
+    public ItinerarySearchResult search(FlightIndex index, ItinerarySearch search) {
+        List<List<Flight>> results = new ArrayList<>();
+        if (search.getFrom() == null || search.getTo() == null || search.getDate() == null
+                || search.getMaxLegs() < 1 || search.getPageSize() < 1 || search.getPage() < 0) {
+            return new ItinerarySearchResult(results, false);
+        }
+
+        ItineraryPosition after = search.getAfter();
+        Run run = after == null ? null : resume(index, search, after);
+        if (run == null) {
+            run = start(index, search);
+            if (run == null) {
+                return new ItinerarySearchResult(results, false); // No sequence of routes connects them
+            }
+        }
+
+        long toSkip = (long) search.getPage() * search.getPageSize();
+        int expansions = 0;
+        Label last = null;
+        while (!run.queue.isEmpty() && results.size() < search.getPageSize()) {
+            Label label = run.queue.peek();
+            boolean complete = label.location.equals(run.destination);
+            if (!complete && expansions == maxExpansions) {
+                // Stopped with partial itineraries left, so the page may be missing some
+                return new ItinerarySearchResult(results, true, position(last, 0));
+            }
+            run.queue.poll();
+            if (complete) {
+                if (after != null && after.compareItinerary(label.cost, label.legs, label.flightIds) <= 0) {
+                    continue; // On an earlier page
+                }
+                if (toSkip > 0) {
+                    toSkip--;
+                } else {
+                    results.add(label.toItinerary());
+                    last = label;
+                }
+                continue;
+            }
+
+            expansions++;
+            LocalDateTime arrival = label.flight.getArrivalTime();
+            LocalDateTime earliest = arrival.plusMinutes(search.getMinConnectionMinutes()).minusNanos(1);
+            LocalDateTime latest = arrival.plusMinutes(search.getMaxLayoverMinutes()).plusNanos(1);
+            for (Flight flight : index.findDepartures(label.location, earliest, latest)) {
+                Label next = extend(label, flight, run, search);
+                if (next != null) {
+                    run.queue.add(next);
+                }
+            }
+        }
+
+        if (last == null) {
+            return new ItinerarySearchResult(results, false);
+        }
+        if (results.size() < search.getPageSize() || run.queue.isEmpty()
+                || run.queue.size() > MAX_CONTINUATION_LABELS) {
+            return new ItinerarySearchResult(results, false, position(last, 0));
+        }
+        long continuation = continuationIds.incrementAndGet();
+        run.position = position(last, continuation);
+        synchronized (continuations) {
+            continuations.put(continuation, run);
+        }
+        return new ItinerarySearchResult(results, false, run.position);
+    }
+
+    // Sets up a search from the departures of the search date, or returns null if
+    // no sequence of routes connects the locations
+    private Run start(FlightIndex index, ItinerarySearch search) {
+        String origin = FlightManager.normalizeLocation(search.getFrom());
+        String destination = FlightManager.normalizeLocation(search.getTo());
+        if (!origin.equals(destination) && !index.isReachable(origin, destination, search.getMaxLegs())) {
+            return null;
+        }
+        Run run = new Run(index, search.queryKey(), origin, destination,
+                minimumLegs(index, destination, search.getMaxLegs()));
+
+        LocalDateTime dayStart = search.getDate().atStartOfDay();
+        Label start = new Label(null, null, origin, 0, 0, 0, new int[0]);
+        for (Flight flight : index.findDepartures(search.getFrom(), dayStart.minusNanos(1),
+                dayStart.plusDays(1))) {
+            Label label = extend(start, flight, run, search);
+            if (label != null) {
+                run.queue.add(label);
+            }
+        }
+        return run;
+    }
+
+    // Takes the continuation a position names, if it paused this search on this
+    // inventory version. Taking it out means two requests with one cursor never
+    // share a queue; the later one seeks instead.
+    private Run resume(FlightIndex index, ItinerarySearch search, ItineraryPosition after) {
+        if (after.getContinuation() == 0) {
+            return null;
+        }
+        Run run;
+        synchronized (continuations) {
+            run = continuations.remove(after.getContinuation());
+        }
+        if (run == null || run.index != index || !run.queryKey.equals(search.queryKey())
+                || !after.equals(run.position)) {
+            return null;
+        }
+        return run;
+    }
+
+    private static ItineraryPosition position(Label label, long continuation) {
+        return label == null ? null : new ItineraryPosition(label.cost, label.legs, label.flightIds, continuation);
+    }
+
+    /**
+     * Extends a partial itinerary with a flight, or returns null if the result
+     * would be cyclic or could no longer reach the destination in time.
+     */
+    private Label extend(Label parent, Flight flight, Run run, ItinerarySearch search) {
+        String origin = run.origin;
+        String destination = run.destination;
+        String location = FlightManager.normalizeLocation(flight.getDestination());
+        int legs = parent.legs + 1;
+
+        if (parent.visits(location)) {
+            // Returning to a visited location is only allowed as the final leg of a
+            // round trip back to the origin
+            if (!(location.equals(destination) && destination.equals(origin))) {
+                return null;
+            }
+        } else if (!location.equals(destination)) {
+            Integer remaining = run.legsToDestination.get(location);
+            if (remaining == null || legs + remaining > search.getMaxLegs()) {
+                return null;
+            }
+        }
+
+        long departure = parent.flight == null ? flight.getDepartureTime().toEpochSecond(ZoneOffset.UTC)
+                : parent.departure;
+        int[] flightIds = Arrays.copyOf(parent.flightIds, legs);
+        flightIds[legs - 1] = flight.getFlightId();
+        return new Label(parent, flight, location, legs, cost(search.getSortBy(), parent, flight, legs, departure),
+                departure, flightIds);
+    }
+
+    // The ranking cost of an itinerary ending with the given flight. It must never
+    // decrease when a leg is added, so complete itineraries leave the queue in order.
+    private static double cost(ItinerarySortKey sortBy, Label parent, Flight flight, int legs, long departure) {
+        long arrival = flight.getArrivalTime().toEpochSecond(ZoneOffset.UTC);
+        switch (sortBy) {
+            case PRICE:
+                return parent.cost + flight.getPrice();
+            case DURATION:
+                return arrival - departure;
+            case DEPARTURE_TIME:
+                return departure;
+            case STOPS:
+                // Legs dominate; arrival times are far below 1e10 seconds
+                return legs * 1e10 + arrival;
+            default:
+                return arrival;
+        }
+    }
+
+    /**
+     * Computes the minimum number of legs from each location to the destination,
+     * ignoring departure times, with a breadth-first search over the reversed
+     * route graph.
+     */
+    private Map<String, Integer> minimumLegs(FlightIndex index, String destination, int maxLegs) {
+        Map<String, Integer> legs = new HashMap<>();
+        Deque<String> queue = new ArrayDeque<>();
+        legs.put(destination, 0);
+        queue.add(destination);
+        while (!queue.isEmpty()) {
+            String location = queue.poll();
+            int distance = legs.get(location);
+            if (distance >= maxLegs) {
+                continue;
+            }
+            for (String previous : index.findOriginsServing(location)) {
+                if (!legs.containsKey(previous)) {
+                    legs.put(previous, distance + 1);
+                    queue.add(previous);
+                }
+            }
+        }
+        return legs;
+    }
+
+    // A search paused between pages, or one in progress
+    private static class Run {
+        final FlightIndex index;
+        final String queryKey; // ItinerarySearch.queryKey of the search
+        final String origin; // Normalized
+        final String destination; // Normalized
+        final Map<String, Integer> legsToDestination;
+        final PriorityQueue<Label> queue = new PriorityQueue<>((first, second) -> ItineraryPosition
+                .compare(first.cost, first.legs, first.flightIds, second.cost, second.legs, second.flightIds));
+        ItineraryPosition position; // Where the last page ended, once paused
+
+        Run(FlightIndex index, String queryKey, String origin, String destination,
+                Map<String, Integer> legsToDestination) {
+            this.index = index;
+            this.queryKey = queryKey;
+            this.origin = origin;
+            this.destination = destination;
+            this.legsToDestination = legsToDestination;
+        }
+    }
+
+    // A partial itinerary, linked to the itinerary it extends
+    private static class Label {
+        final Label parent;
+        final Flight flight;
+        final String location; // Normalized location reached by this itinerary
+        final int legs;
+        final double cost;
+        final long departure; // First departure of the itinerary, in epoch seconds
+        final int[] flightIds; // In travel order; breaks ties between equal-cost itineraries
+
+        Label(Label parent, Flight flight, String location, int legs, double cost, long departure, int[] flightIds) {
+            this.parent = parent;
+            this.flight = flight;
+            this.location = location;
+            this.legs = legs;
+            this.cost = cost;
+            this.departure = departure;
+            this.flightIds = flightIds;
+        }
+
+        boolean visits(String candidate) {
+            for (Label label = this; label != null; label = label.parent) {
+                if (label.location.equals(candidate)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        List<Flight> toItinerary() {
+            List<Flight> itinerary = new ArrayList<>(legs);
+            for (Label label = this; label.flight != null; label = label.parent) {
+                itinerary.add(label.flight);
+            }
+            Collections.reverse(itinerary);
+            return itinerary;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package sofe3980;
+
+import java.time.LocalDate;
+
+/**
+ * Parameters of a multi-leg itinerary search. Unset values fall back to the
+ * defaults below.
+ */
+public class ItinerarySearch {
+
+    public static final int DEFAULT_MAX_LEGS = 3;
+    public static final int DEFAULT_MIN_CONNECTION_MINUTES = 45;
+    public static final int DEFAULT_MAX_LAYOVER_MINUTES = 24 * 60;
+    public static final int DEFAULT_PAGE_SIZE = 20;
+
+    private String from;
+    private String to;
+    private LocalDate date;
+    private int maxLegs = DEFAULT_MAX_LEGS;
+    private int minConnectionMinutes = DEFAULT_MIN_CONNECTION_MINUTES;
+    private int maxLayoverMinutes = DEFAULT_MAX_LAYOVER_MINUTES;
+    private ItinerarySortKey sortBy = ItinerarySortKey.ARRIVAL_TIME;
+    private int page = 0;
+    private int pageSize = DEFAULT_PAGE_SIZE;
+    private ItineraryPosition after; // Where the previous page ended, if any
+
+    public ItinerarySearch() {
+    }
+
+    /**
+     * Constructs a search for itineraries whose first leg departs on the given
+     * date.
+     * 
+     * @param from The departure location.
+     * @param to   The final destination.
+     * @param date The departure date of the first leg.
+     */
+    public ItinerarySearch(String from, String to, LocalDate date) {
+        this.from = from;
+        this.to = to;
+        this.date = date;
+    }
+
+    // Getters
+
+    public String getFrom() {
+        return from;
+    }
+
+    public String getTo() {
+        return to;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public int getMaxLegs() {
+        return maxLegs;
+    }
+
+    public int getMinConnectionMinutes() {
+        return minConnectionMinutes;
+    }
+
+    public int getMaxLayoverMinutes() {
+        return maxLayoverMinutes;
+    }
+
+    public ItinerarySortKey getSortBy() {
+        return sortBy;
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public ItineraryPosition getAfter() {
+        return after;
+    }
+
+    // Setters
+
+    public void setFrom(String from) {
+        this.from = from;
+    }
+
+    public void setTo(String to) {
+        this.to = to;
+    }
+
+    public void setDate(LocalDate date) {
+        this.date = date;
+    }
+
+    public void setMaxLegs(int maxLegs) {
+        this.maxLegs = maxLegs;
+    }
+
+    public void setMinConnectionMinutes(int minConnectionMinutes) {
+        this.minConnectionMinutes = minConnectionMinutes;
+    }
+
+    public void setMaxLayoverMinutes(int maxLayoverMinutes) {
+        this.maxLayoverMinutes = maxLayoverMinutes;
+    }
+
+    public void setSortBy(ItinerarySortKey sortBy) {
+        this.sortBy = sortBy;
+    }
+
+    public void setPage(int page) {
+        this.page = page;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Continues the search after the position where an earlier page of the same
+     * search ended.
+     *
+     * @param after The position, or null to start from the best itinerary.
+     */
+    public void setAfter(ItineraryPosition after) {
+        this.after = after;
+    }
+
+    /**
+     * @return Every parameter that decides the ranked list of itineraries, that
+     *         is all of them except the page and position, as one string.
+     */
+    String queryKey() {
+        return FlightManager.routeKey(from, to) + "|" + date + "|" + maxLegs + "|" + minConnectionMinutes + "|"
+                + maxLayoverMinutes + "|" + sortBy + "|" + pageSize;
+    }
+}
@@ -0,0 +1,52 @@
+package sofe3980;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The itineraries found by an itinerary search, whether the search stopped at
+ * its expansion limit before it was done, and where the next page starts.
+ */
+public class ItinerarySearchResult {
+
+    private final List<List<Flight>> itineraries;
+    private final boolean truncated;
+    private final ItineraryPosition next;
+
+    public ItinerarySearchResult(List<List<Flight>> itineraries, boolean truncated) {
+        this(itineraries, truncated, null);
+    }
+
+    /**
+     * @param itineraries The itineraries found, in ranked order.
+     * @param truncated   Whether the search hit its expansion limit while it could
+     *                    still have found more itineraries for the page.
+     * @param next        The position of the last itinerary, or null if there is
+     *                    none.
+     */
+    public ItinerarySearchResult(List<List<Flight>> itineraries, boolean truncated, ItineraryPosition next) {
+        this.itineraries = Collections.unmodifiableList(itineraries);
+        this.truncated = truncated;
+        this.next = next;
+    }
+
+    public List<List<Flight>> getItineraries() {
+        return itineraries;
+    }
+
+    /**
+     * @return true if the page may be missing itineraries because the search was
+     *         cut short, false if it holds every itinerary that ranks there.
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * @return The position the next page continues after, or null if this page
+     *         is empty.
+     */
+    public ItineraryPosition getNext() {
+        return next;
+    }
+}
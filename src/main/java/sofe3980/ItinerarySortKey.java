@@ -0,0 +1,14 @@
+package sofe3980;
+
+/**
+ * Orders itineraries returned by the routing engine. Every key only grows as
+ * legs are added to an itinerary, which lets the engine stop as soon as the
+ * requested page is complete.
+ */
+public enum ItinerarySortKey {
+    ARRIVAL_TIME, // Earliest arrival at the final destination first
+    PRICE, // Lowest total price first
+    DURATION, // Shortest time from first departure to final arrival first
+    DEPARTURE_TIME, // Earliest first departure first
+    STOPS // Fewest legs first, then earliest arrival
+}
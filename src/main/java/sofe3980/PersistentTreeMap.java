@@ -0,0 +1,333 @@
+package sofe3980;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Immutable sorted map that shares structure between versions. It is an AVL
+ * tree; a change copies only the nodes on the path to the changed key (path
+ * copying), so deriving a new version costs O(log n) and every other node is
+ * shared with the old version.
+ *
+ * Several changes are made through an Editor, which copies each node at most
+ * once and then changes its own copies in place, so a batch of k changes
+ * copies at most k paths and usually far fewer nodes.
+ *
+ * @param <K> The key type.
+ * @param <V> The value type.
+ */
+public final class PersistentTreeMap<K extends Comparable<? super K>, V> {
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private static final PersistentTreeMap EMPTY = new PersistentTreeMap(null, 0);
+
+    private final Node<K, V> root;
+    private final int size;
+
+    private PersistentTreeMap(Node<K, V> root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K extends Comparable<? super K>, V> PersistentTreeMap<K, V> empty() {
+        return (PersistentTreeMap<K, V>) EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param key The key.
+     * @return The value of the key, or null if it is not in the map.
+     */
+    public V get(K key) {
+        Node<K, V> node = find(root, key);
+        return node == null ? null : node.value;
+    }
+
+    public boolean containsKey(K key) {
+        return find(root, key) != null;
+    }
+
+    /**
+     * @return The smallest key, or null if the map is empty.
+     */
+    public K firstKey() {
+        Node<K, V> node = root;
+        if (node == null) {
+            return null;
+        }
+        while (node.left != null) {
+            node = node.left;
+        }
+        return node.key;
+    }
+
+    /**
+     * @param key   The key.
+     * @param value The value.
+     * @return A map with the key set to the value; this map is unchanged.
+     */
+    public PersistentTreeMap<K, V> with(K key, V value) {
+        Editor<K, V> editor = edit();
+        editor.put(key, value);
+        return editor.done();
+    }
+
+    /**
+     * @param key The key.
+     * @return A map without the key; this map is unchanged.
+     */
+    public PersistentTreeMap<K, V> without(K key) {
+        Editor<K, V> editor = edit();
+        editor.remove(key);
+        return editor.done();
+    }
+
+    /**
+     * @return An editor starting from this map. This map is never changed by it.
+     */
+    public Editor<K, V> edit() {
+        return new Editor<>(root, size);
+    }
+
+    /**
+     * Visits every entry in key order.
+     *
+     * @param action Receives the keys and values.
+     */
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        forEachInRange(null, true, null, true, action);
+    }
+
+    /**
+     * Visits the entries with keys in a range, in key order. Only the subtrees
+     * that overlap the range are visited.
+     *
+     * @param from          The lower bound, or null for none.
+     * @param fromInclusive Whether a key equal to from is included.
+     * @param to            The upper bound, or null for none.
+     * @param toInclusive   Whether a key equal to to is included.
+     * @param action        Receives the keys and values.
+     */
+    public void forEachInRange(K from, boolean fromInclusive, K to, boolean toInclusive,
+            BiConsumer<? super K, ? super V> action) {
+        visit(root, from, fromInclusive, to, toInclusive, action);
+    }
+
+    private static <K extends Comparable<? super K>, V> void visit(Node<K, V> node, K from, boolean fromInclusive,
+            K to, boolean toInclusive, BiConsumer<? super K, ? super V> action) {
+        while (node != null) {
+            int low = from == null ? 1 : node.key.compareTo(from);
+            int high = to == null ? -1 : node.key.compareTo(to);
+            boolean aboveFrom = low > 0 || (low == 0 && fromInclusive);
+            boolean belowTo = high < 0 || (high == 0 && toInclusive);
+            if (low > 0) {
+                visit(node.left, from, fromInclusive, to, toInclusive, action);
+            }
+            if (aboveFrom && belowTo) {
+                action.accept(node.key, node.value);
+            }
+            if (high >= 0) {
+                return; // Everything to the right is above the range
+            }
+            node = node.right; // Loop instead of recursing to the right
+        }
+    }
+
+    private static <K extends Comparable<? super K>, V> Node<K, V> find(Node<K, V> node, K key) {
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0) {
+                return node;
+            }
+            node = cmp < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    /**
+     * Makes a batch of changes and then publishes them as a new map with done.
+     * Not thread-safe, and not usable after done.
+     */
+    public static final class Editor<K extends Comparable<? super K>, V> {
+        private Node<K, V> root;
+        private int size;
+        private boolean finished;
+
+        private Editor(Node<K, V> root, int size) {
+            this.root = root;
+            this.size = size;
+        }
+
+        public V get(K key) {
+            Node<K, V> node = find(root, key);
+            return node == null ? null : node.value;
+        }
+
+        public boolean containsKey(K key) {
+            return find(root, key) != null;
+        }
+
+        public void put(K key, V value) {
+            checkOpen();
+            root = insert(root, key, value);
+        }
+
+        public void remove(K key) {
+            checkOpen();
+            if (find(root, key) != null) { // Otherwise nothing is copied
+                root = delete(root, key);
+                size--;
+            }
+        }
+
+        /**
+         * @return The map with the changes made so far. The editor cannot be used
+         *         afterwards, since the map now shares its nodes.
+         */
+        public PersistentTreeMap<K, V> done() {
+            checkOpen();
+            finished = true;
+            return size == 0 ? PersistentTreeMap.<K, V>empty() : new PersistentTreeMap<>(root, size);
+        }
+
+        private void checkOpen() {
+            if (finished) {
+                throw new IllegalStateException("The editor has already published its map");
+            }
+        }
+
+        // Returns a node this editor may change: the node itself if the editor
+        // made it, otherwise a copy
+        private Node<K, V> own(Node<K, V> node) {
+            return node.owner == this ? node : new Node<>(node, this);
+        }
+
+        private Node<K, V> insert(Node<K, V> node, K key, V value) {
+            if (node == null) {
+                size++;
+                return new Node<>(key, value, this);
+            }
+            int cmp = key.compareTo(node.key);
+            node = own(node);
+            if (cmp < 0) {
+                node.left = insert(node.left, key, value);
+            } else if (cmp > 0) {
+                node.right = insert(node.right, key, value);
+            } else {
+                node.value = value;
+                return node;
+            }
+            return balance(node);
+        }
+
+        private Node<K, V> delete(Node<K, V> node, K key) {
+            int cmp = key.compareTo(node.key);
+            node = own(node);
+            if (cmp < 0) {
+                node.left = delete(node.left, key);
+            } else if (cmp > 0) {
+                node.right = delete(node.right, key);
+            } else if (node.left == null) {
+                return node.right;
+            } else if (node.right == null) {
+                return node.left;
+            } else {
+                Node<K, V> successor = node.right;
+                while (successor.left != null) {
+                    successor = successor.left;
+                }
+                node.key = successor.key;
+                node.value = successor.value;
+                node.right = deleteFirst(node.right);
+            }
+            return balance(node);
+        }
+
+        private Node<K, V> deleteFirst(Node<K, V> node) {
+            if (node.left == null) {
+                return node.right;
+            }
+            node = own(node);
+            node.left = deleteFirst(node.left);
+            return balance(node);
+        }
+
+        // Restores the AVL balance of an owned node whose subtrees are balanced
+        private Node<K, V> balance(Node<K, V> node) {
+            int difference = height(node.left) - height(node.right);
+            if (difference > 1) {
+                if (height(node.left.left) < height(node.left.right)) {
+                    node.left = rotateLeft(own(node.left));
+                }
+                return rotateRight(node);
+            }
+            if (difference < -1) {
+                if (height(node.right.right) < height(node.right.left)) {
+                    node.right = rotateRight(own(node.right));
+                }
+                return rotateLeft(node);
+            }
+            node.updateHeight();
+            return node;
+        }
+
+        private Node<K, V> rotateRight(Node<K, V> node) {
+            Node<K, V> left = own(node.left);
+            node.left = left.right;
+            left.right = node;
+            node.updateHeight();
+            left.updateHeight();
+            return left;
+        }
+
+        private Node<K, V> rotateLeft(Node<K, V> node) {
+            Node<K, V> right = own(node.right);
+            node.right = right.left;
+            right.left = node;
+            node.updateHeight();
+            right.updateHeight();
+            return right;
+        }
+    }
+
+    private static int height(Node<?, ?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    // Fields only change while the node's owner editor is open
+    private static final class Node<K, V> {
+        K key;
+        V value;
+        Node<K, V> left;
+        Node<K, V> right;
+        int height;
+        final Object owner;
+
+        Node(K key, V value, Object owner) {
+            this.key = key;
+            this.value = value;
+            this.height = 1;
+            this.owner = owner;
+        }
+
+        Node(Node<K, V> other, Object owner) {
+            this.key = other.key;
+            this.value = other.value;
+            this.left = other.left;
+            this.right = other.right;
+            this.height = other.height;
+            this.owner = owner;
+        }
+
+        void updateHeight() {
+            height = Math.max(height(left), height(right)) + 1;
+        }
+    }
+}
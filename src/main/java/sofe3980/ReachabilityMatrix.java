@@ -0,0 +1,100 @@
+package sofe3980;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Precomputed answers to "can B be reached from A in at most k flights" over
+ * the route network, ignoring dates and connection times. A "no" means no
+ * itinerary search for that pair can succeed, so searches use it to stop before
+ * expanding any flight; a "yes" still needs the search.
+ *
+ * Row a of level k is a bitset of the airports reachable from a in at most k
+ * legs, for k up to MAX_LEGS; longer searches use the transitive closure. The
+ * matrix needs (MAX_LEGS + 1) * n^2 bits for n airports.
+ */
+public class ReachabilityMatrix {
+
+    public static final int MAX_LEGS = 4;
+
+    private final AirportDictionary airports = new AirportDictionary();
+    private final BitSet[][] levels; // levels[k - 1][a], then the closure
+
+    /**
+     * Builds the matrix of a route network.
+     *
+     * @param originsByDestination The normalized origins with a flight into each
+     *                             normalized destination.
+     */
+    public ReachabilityMatrix(Map<String, Set<String>> originsByDestination) {
+        for (Map.Entry<String, Set<String>> entry : originsByDestination.entrySet()) {
+            airports.intern(entry.getKey());
+            for (String origin : entry.getValue()) {
+                airports.intern(origin);
+            }
+        }
+        int n = airports.size();
+        BitSet[] direct = new BitSet[n];
+        for (int a = 0; a < n; a++) {
+            direct[a] = new BitSet(n);
+        }
+        for (Map.Entry<String, Set<String>> entry : originsByDestination.entrySet()) {
+            int destination = airports.codeOf(entry.getKey());
+            for (String origin : entry.getValue()) {
+                direct[airports.codeOf(origin)].set(destination);
+            }
+        }
+
+        levels = new BitSet[MAX_LEGS + 1][];
+        levels[0] = direct;
+        BitSet[] previous = direct;
+        boolean changed = true;
+        for (int k = 1; changed; k++) {
+            // Reachable in k + 1 legs: one leg, then k legs from there
+            BitSet[] next = new BitSet[n];
+            changed = false;
+            for (int a = 0; a < n; a++) {
+                next[a] = (BitSet) direct[a].clone();
+                for (int b = direct[a].nextSetBit(0); b >= 0; b = direct[a].nextSetBit(b + 1)) {
+                    next[a].or(previous[b]);
+                }
+                changed |= !next[a].equals(previous[a]);
+            }
+            if (k < MAX_LEGS) {
+                levels[k] = next;
+            }
+            previous = next;
+        }
+        for (int k = 1; k < MAX_LEGS; k++) {
+            if (levels[k] == null) {
+                levels[k] = previous; // Reached the closure early
+            }
+        }
+        levels[MAX_LEGS] = previous;
+    }
+
+    /**
+     * Checks whether a location can be reached from another.
+     *
+     * @param from    The departure location (case-insensitive).
+     * @param to      The destination location (case-insensitive).
+     * @param maxLegs The maximum number of flights.
+     * @return false if no sequence of at most maxLegs routes connects them.
+     */
+    public boolean isReachable(String from, String to, int maxLegs) {
+        int origin = airports.codeOf(from);
+        int destination = airports.codeOf(to);
+        if (origin == AirportDictionary.UNKNOWN || destination == AirportDictionary.UNKNOWN || maxLegs < 1) {
+            return false;
+        }
+        return levels[Math.min(maxLegs, MAX_LEGS + 1) - 1][origin].get(destination);
+    }
+
+    /**
+     * @return The number of locations in the route network.
+     */
+    public int getAirportCount() {
+        return airports.size();
+    }
+}
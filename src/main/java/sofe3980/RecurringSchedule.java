@@ -0,0 +1,206 @@
+package sofe3980;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A flight that repeats on some days of the week between two dates, such as
+ * "New York to Los Angeles daily at 08:00 except Sunday, April to October".
+ *
+ * Only the pattern is stored; the Flight for a given day is created when a
+ * search asks for it. Each schedule owns a reserved range of flight IDs with
+ * one ID per day of its date range, so the flight departing on day n of the
+ * range always has ID getFirstFlightId() + n. Schedules never change once
+ * created.
+ */
+public class RecurringSchedule {
+
+    private final int firstFlightId;
+    private final String origin;
+    private final String destination;
+    private final LocalTime departureTime;
+    private final int durationMinutes;
+    private final double price;
+    private final int dayMask; // Bit (DayOfWeek.getValue() - 1) is set for each operating day
+    private final LocalDate firstDate;
+    private final LocalDate lastDate;
+
+    /**
+     * Creates a schedule.
+     *
+     * @param firstFlightId   The ID of the flight on firstDate; IDs up to
+     *                        firstFlightId + getDayCount() - 1 are reserved.
+     * @param origin          The departure location.
+     * @param destination     The destination location.
+     * @param departureTime   The local departure time on each operating day.
+     * @param durationMinutes The flight time in minutes.
+     * @param price           The price of each flight.
+     * @param operatingDays   The days of the week the flight operates.
+     * @param firstDate       The first date of the schedule.
+     * @param lastDate        The last date of the schedule (inclusive).
+     */
+    public RecurringSchedule(int firstFlightId, String origin, String destination, LocalTime departureTime,
+            int durationMinutes, double price, Set<DayOfWeek> operatingDays, LocalDate firstDate,
+            LocalDate lastDate) {
+        if (origin == null || destination == null || departureTime == null || firstDate == null
+                || lastDate == null) {
+            throw new IllegalArgumentException("A schedule needs a route, a departure time and a date range");
+        }
+        if (lastDate.isBefore(firstDate) || durationMinutes <= 0 || operatingDays.isEmpty()) {
+            throw new IllegalArgumentException("Invalid schedule " + origin + " to " + destination + " from "
+                    + firstDate + " to " + lastDate);
+        }
+        this.firstFlightId = firstFlightId;
+        this.origin = origin;
+        this.destination = destination;
+        this.departureTime = departureTime;
+        this.durationMinutes = durationMinutes;
+        this.price = price;
+        int mask = 0;
+        for (DayOfWeek day : operatingDays) {
+            mask |= 1 << (day.getValue() - 1);
+        }
+        this.dayMask = mask;
+        this.firstDate = firstDate;
+        this.lastDate = lastDate;
+    }
+
+    /**
+     * @return The number of days in the date range, which is also the number of
+     *         flight IDs reserved for this schedule.
+     */
+    public int getDayCount() {
+        return (int) ChronoUnit.DAYS.between(firstDate, lastDate) + 1;
+    }
+
+    /**
+     * @return The last flight ID reserved for this schedule.
+     */
+    public int getLastFlightId() {
+        return firstFlightId + getDayCount() - 1;
+    }
+
+    /**
+     * Checks whether the flight operates on a date.
+     *
+     * @param date The departure date.
+     * @return true if the date is in range and an operating day.
+     */
+    public boolean operatesOn(LocalDate date) {
+        return !date.isBefore(firstDate) && !date.isAfter(lastDate)
+                && (dayMask & (1 << (date.getDayOfWeek().getValue() - 1))) != 0;
+    }
+
+    /**
+     * Creates the flight departing on a date.
+     *
+     * @param date The departure date.
+     * @return The flight, or null if the schedule does not operate that day.
+     */
+    public Flight instanceOn(LocalDate date) {
+        if (!operatesOn(date)) {
+            return null;
+        }
+        int flightId = firstFlightId + (int) ChronoUnit.DAYS.between(firstDate, date);
+        LocalDateTime departure = date.atTime(departureTime);
+        return new Flight(flightId, departure, departure.plusMinutes(durationMinutes), origin, destination, price);
+    }
+
+    /**
+     * Creates the flight with the given ID.
+     *
+     * @param flightId The ID of the flight.
+     * @return The flight, or null if the ID is outside this schedule or falls on
+     *         a day it does not operate.
+     */
+    public Flight instanceById(int flightId) {
+        if (flightId < firstFlightId || flightId > getLastFlightId()) {
+            return null;
+        }
+        return instanceOn(firstDate.plusDays(flightId - firstFlightId));
+    }
+
+    /**
+     * Adds the flights departing within a time range to a list, in departure
+     * order.
+     *
+     * @param after  Flights must depart strictly after this time.
+     * @param before Flights must depart strictly before this time, or null for no
+     *               upper bound.
+     * @param out    The list to add to.
+     */
+    public void addInstancesDeparting(LocalDateTime after, LocalDateTime before, List<Flight> out) {
+        LocalDate date = after.toLocalDate().isBefore(firstDate) ? firstDate : after.toLocalDate();
+        LocalDate end = before == null || before.toLocalDate().isAfter(lastDate) ? lastDate : before.toLocalDate();
+        for (; !date.isAfter(end); date = date.plusDays(1)) {
+            LocalDateTime departure = date.atTime(departureTime);
+            if (departure.isAfter(after) && (before == null || departure.isBefore(before))) {
+                Flight flight = instanceOn(date);
+                if (flight != null) {
+                    out.add(flight);
+                }
+            }
+        }
+    }
+
+    public int getFirstFlightId() {
+        return firstFlightId;
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public LocalTime getDepartureTime() {
+        return departureTime;
+    }
+
+    public int getDurationMinutes() {
+        return durationMinutes;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    public Set<DayOfWeek> getOperatingDays() {
+        Set<DayOfWeek> days = EnumSet.noneOf(DayOfWeek.class);
+        for (DayOfWeek day : DayOfWeek.values()) {
+            if ((dayMask & (1 << (day.getValue() - 1))) != 0) {
+                days.add(day);
+            }
+        }
+        return days;
+    }
+
+    public LocalDate getFirstDate() {
+        return firstDate;
+    }
+
+    public LocalDate getLastDate() {
+        return lastDate;
+    }
+
+    @Override
+    public String toString() {
+        return "RecurringSchedule{" +
+                "flightIds=" + firstFlightId + "-" + getLastFlightId() +
+                ", origin='" + origin + '\'' +
+                ", destination='" + destination + '\'' +
+                ", departureTime=" + departureTime +
+                ", operatingDays=" + getOperatingDays() +
+                ", firstDate=" + firstDate +
+                ", lastDate=" + lastDate +
+                '}';
+    }
+}
@@ -0,0 +1,66 @@
+package sofe3980;
+
+/**
+ * An outbound flight paired with a return flight, with their combined price
+ * and flight time.
+ */
+public class RoundTripOption {
+
+    private Flight outboundFlight;
+    private Flight returnFlight;
+    private double totalPrice;
+    private long totalDurationMinutes;
+
+    public RoundTripOption(Flight outboundFlight, Flight returnFlight) {
+        this.outboundFlight = outboundFlight;
+        this.returnFlight = returnFlight;
+        this.totalPrice = outboundFlight.getPrice() + returnFlight.getPrice();
+        this.totalDurationMinutes = RoundTripPairer.durationMinutes(outboundFlight)
+                + RoundTripPairer.durationMinutes(returnFlight);
+    }
+
+    public Flight getOutboundFlight() {
+        return outboundFlight;
+    }
+
+    public void setOutboundFlight(Flight outboundFlight) {
+        this.outboundFlight = outboundFlight;
+    }
+
+    public Flight getReturnFlight() {
+        return returnFlight;
+    }
+
+    public void setReturnFlight(Flight returnFlight) {
+        this.returnFlight = returnFlight;
+    }
+
+    public double getTotalPrice() {
+        return totalPrice;
+    }
+
+    public void setTotalPrice(double totalPrice) {
+        this.totalPrice = totalPrice;
+    }
+
+    /**
+     * @return The time spent in the air on both flights, in minutes.
+     */
+    public long getTotalDurationMinutes() {
+        return totalDurationMinutes;
+    }
+
+    public void setTotalDurationMinutes(long totalDurationMinutes) {
+        this.totalDurationMinutes = totalDurationMinutes;
+    }
+
+    @Override
+    public String toString() {
+        return "RoundTripOption{" +
+                "outboundFlight=" + outboundFlight.getFlightId() +
+                ", returnFlight=" + returnFlight.getFlightId() +
+                ", totalPrice=" + totalPrice +
+                ", totalDurationMinutes=" + totalDurationMinutes +
+                '}';
+    }
+}
@@ -0,0 +1,132 @@
+package sofe3980;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Ranks (outbound, return) flight pairs by combined price or flight time
+ * without building the cross product.
+ *
+ * Both candidate lists are sorted by the metric, so the pair (i, j) always
+ * ranks no better than (i + 1, j) and (i, j + 1). Pairs are produced lazily
+ * from a priority queue seeded with (0, 0): taking a pair queues its right
+ * neighbour and, for the first column, its lower neighbour, which visits every
+ * pair exactly once in rank order. Taking the first K pairs costs
+ * O(K log K) after sorting, however many flights each direction has.
+ */
+public class RoundTripPairer {
+
+    // Shortest time between landing and the return departure
+    public static final int MIN_TURNAROUND_MINUTES = 60;
+
+    /**
+     * Returns the pairs ranked by the given key, computed as they are iterated.
+     * Pairs whose return flight departs less than MIN_TURNAROUND_MINUTES after
+     * the outbound flight lands are skipped.
+     *
+     * @param outboundFlights The outbound candidates.
+     * @param returnFlights   The return candidates.
+     * @param sortBy          PRICE or DURATION.
+     * @return A lazy iterator over the ranked pairs.
+     */
+    public static Iterator<RoundTripOption> rank(List<Flight> outboundFlights, List<Flight> returnFlights,
+            ItinerarySortKey sortBy) {
+        ToDoubleFunction<Flight> metric;
+        if (sortBy == ItinerarySortKey.PRICE) {
+            metric = Flight::getPrice;
+        } else if (sortBy == ItinerarySortKey.DURATION) {
+            metric = RoundTripPairer::durationMinutes;
+        } else {
+            throw new IllegalArgumentException("Round trips can only be ranked by PRICE or DURATION, not " + sortBy);
+        }
+        return new PairIterator(sorted(outboundFlights, metric), sorted(returnFlights, metric), metric);
+    }
+
+    /**
+     * Returns the first pairs ranked by the given key.
+     *
+     * @param limit The maximum number of pairs.
+     * @return At most limit pairs, best first.
+     */
+    public static List<RoundTripOption> topPairs(List<Flight> outboundFlights, List<Flight> returnFlights,
+            ItinerarySortKey sortBy, int limit) {
+        List<RoundTripOption> pairs = new ArrayList<>(Math.min(limit, 64));
+        Iterator<RoundTripOption> ranked = rank(outboundFlights, returnFlights, sortBy);
+        while (pairs.size() < limit && ranked.hasNext()) {
+            pairs.add(ranked.next());
+        }
+        return pairs;
+    }
+
+    static long durationMinutes(Flight flight) {
+        return Duration.between(flight.getDepartureTime(), flight.getArrivalTime()).toMinutes();
+    }
+
+    private static List<Flight> sorted(List<Flight> flights, ToDoubleFunction<Flight> metric) {
+        List<Flight> sortedFlights = new ArrayList<>(flights);
+        sortedFlights.sort(Comparator.comparingDouble(metric));
+        return sortedFlights;
+    }
+
+    private static class PairIterator implements Iterator<RoundTripOption> {
+        private final List<Flight> outbound;
+        private final List<Flight> inbound;
+        private final double[] outboundCosts;
+        private final double[] inboundCosts;
+        // Pairs packed as (i << 32 | j), ordered by combined cost
+        private final PriorityQueue<Long> frontier;
+        private RoundTripOption next;
+
+        PairIterator(List<Flight> outbound, List<Flight> inbound, ToDoubleFunction<Flight> metric) {
+            this.outbound = outbound;
+            this.inbound = inbound;
+            this.outboundCosts = outbound.stream().mapToDouble(metric).toArray();
+            this.inboundCosts = inbound.stream().mapToDouble(metric).toArray();
+            this.frontier = new PriorityQueue<>(Comparator.comparingDouble(
+                    (Long pair) -> outboundCosts[(int) (pair >>> 32)] + inboundCosts[(int) (long) pair])
+                    .thenComparingLong(pair -> pair));
+            if (!outbound.isEmpty() && !inbound.isEmpty()) {
+                frontier.add(0L);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && !frontier.isEmpty()) {
+                long pair = frontier.poll();
+                int i = (int) (pair >>> 32);
+                int j = (int) pair;
+                if (j + 1 < inbound.size()) {
+                    frontier.add(((long) i << 32) | (j + 1));
+                }
+                if (j == 0 && i + 1 < outbound.size()) {
+                    frontier.add((long) (i + 1) << 32);
+                }
+
+                Flight outboundFlight = outbound.get(i);
+                Flight returnFlight = inbound.get(j);
+                if (!returnFlight.getDepartureTime()
+                        .isBefore(outboundFlight.getArrivalTime().plusMinutes(MIN_TURNAROUND_MINUTES))) {
+                    next = new RoundTripOption(outboundFlight, returnFlight);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public RoundTripOption next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            RoundTripOption option = next;
+            next = null;
+            return option;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package sofe3980;
+
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter over (route, departure date) pairs, used to turn away searches
+ * for routes or dates without any flight before they touch the indexes.
+ *
+ * A "no" answer is exact; a "yes" is wrong with a small probability (about 1%
+ * while the filter holds no more entries than its capacity). Entries are never
+ * removed, so a cancelled flight only adds a false positive. Bits are set with
+ * atomic updates and a writer adds its entries before it publishes the flights,
+ * so one filter can be shared by every inventory version that follows it and
+ * read without locks.
+ */
+public class RouteDayFilter {
+
+    private static final int HASHES = 4;
+    private static final int BITS_PER_ENTRY = 10; // With 4 hashes, about 1% false positives
+    private static final int MIN_BITS = 1 << 16;
+    private static final long ANY_DAY = Long.MIN_VALUE; // Key of "the route on some date"
+
+    private final AtomicLongArray words;
+    private final int mask; // Number of bits - 1
+    private final int capacity;
+    private final AtomicInteger entries = new AtomicInteger();
+
+    /**
+     * Creates an empty filter.
+     *
+     * @param capacity The number of keys the filter is sized for: one per
+     *                 (route, date) pair plus one per route. More can be added
+     *                 at a higher false positive rate.
+     */
+    public RouteDayFilter(int capacity) {
+        long wanted = Math.max(MIN_BITS, (long) capacity * BITS_PER_ENTRY);
+        int bits = (int) Math.min(1L << 30, Long.highestOneBit(wanted - 1) << 1);
+        this.words = new AtomicLongArray(bits >>> 6);
+        this.mask = bits - 1;
+        this.capacity = Math.max(capacity, bits / BITS_PER_ENTRY);
+    }
+
+    /**
+     * Records that a route has a flight departing on a date.
+     *
+     * @param route The normalized route key (see FlightManager.routeKey).
+     * @param date  The departure date.
+     */
+    public void add(String route, LocalDate date) {
+        if (set(route, date.toEpochDay())) {
+            entries.incrementAndGet();
+        }
+        if (set(route, ANY_DAY)) {
+            entries.incrementAndGet();
+        }
+    }
+
+    /**
+     * Checks whether a route may have a flight departing on a date.
+     *
+     * @param route The normalized route key, or null.
+     * @param date  The departure date, or null for any date.
+     * @return false if the route certainly has no such flight.
+     */
+    public boolean mightContain(String route, LocalDate date) {
+        if (route == null) {
+            return false;
+        }
+        long hash = hash(route, date == null ? ANY_DAY : date.toEpochDay());
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (h1 + i * h2) & mask;
+            if ((words.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param more The number of (route, date) pairs about to be added.
+     * @return true if they fit without exceeding the capacity, even if each is
+     *         on a new route.
+     */
+    public boolean hasRoomFor(int more) {
+        return (long) entries.get() + 2L * more <= capacity;
+    }
+
+    /**
+     * @return The approximate number of distinct keys added.
+     */
+    public int size() {
+        return entries.get();
+    }
+
+    // Sets the bits of a key; returns true if any of them was clear
+    private boolean set(String route, long day) {
+        long hash = hash(route, day);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        boolean changed = false;
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (h1 + i * h2) & mask;
+            long flag = 1L << bit;
+            if ((words.get(bit >>> 6) & flag) == 0) {
+                changed |= (words.getAndAccumulate(bit >>> 6, flag, (word, f) -> word | f) & flag) == 0;
+            }
+        }
+        return changed;
+    }
+
+    // 64-bit mix of the route and day (the finalizer of MurmurHash3)
+    private static long hash(String route, long day) {
+        long h = route.hashCode() * 0x9E3779B97F4A7C15L ^ day;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,652 @@
+package sofe3980;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Month;
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Loads airline schedule files into FlightManager in bulk.
+ *
+ * Two formats are supported:
+ * <ul>
+ * <li>CSV, one flight per line:
+ * flightId,origin,destination,departure,arrival,price[,correspondingFlightId]
+ * with times as yyyy-MM-ddTHH:mm and an optional header line.</li>
+ * <li>A compact binary format (see writeBinary): the airport names once, then
+ * one fixed-size record of seven ints per flight.</li>
+ * </ul>
+ *
+ * Files are memory-mapped and split into chunks that are parsed in parallel
+ * straight from the mapped bytes into ColumnarFlightStore columns. Airport
+ * names are interned from the raw bytes, so a row allocates nothing unless it
+ * introduces a new airport. The parsed schedule is then converted to Flight
+ * objects and replaces the inventory in one atomic swap
+ * (FlightManager.replaceSchedule), so searches see either the old or the new
+ * schedule, never a mix.
+ *
+ * When flights.schedule.path is set, the file is loaded at startup and again
+ * on the flights.schedule.refresh-cron schedule (disabled by default).
+ */
+@Component
+public class ScheduleImporter {
+
+    static final int BINARY_MAGIC = 0x464C5331; // "FLS1"
+    static final int RECORD_BYTES = 7 * Integer.BYTES;
+    private static final int MAX_CHUNK_BYTES = Integer.MAX_VALUE - 1024; // Limit of one mapping
+
+    private final FlightManager flightManager;
+    private final String schedulePath;
+    private final int threads;
+
+    @Autowired
+    public ScheduleImporter(FlightManager flightManager, @Value("${flights.schedule.path:}") String schedulePath,
+            @Value("${flights.schedule.threads:0}") int threads) {
+        this.flightManager = flightManager;
+        this.schedulePath = schedulePath;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    public ScheduleImporter(FlightManager flightManager) {
+        this(flightManager, "", 0);
+    }
+
+    // Loads the configured schedule file at startup and on each refresh
+    @PostConstruct
+    @Scheduled(cron = "${flights.schedule.refresh-cron:-}")
+    public void loadConfiguredSchedule() throws IOException {
+        if (schedulePath == null || schedulePath.isEmpty()) {
+            return;
+        }
+        ImportResult result = importSchedule(Paths.get(schedulePath));
+        System.out.println("Imported flight schedule: " + result);
+    }
+
+    /**
+     * Parses a schedule file and swaps it in as the new flight inventory. Files
+     * ending in ".csv" are read as CSV, anything else as the binary format.
+     *
+     * @param file The schedule file.
+     * @return The import statistics.
+     * @throws IOException If the file cannot be read or is not a schedule file.
+     */
+    public ImportResult importSchedule(Path file) throws IOException {
+        long start = System.nanoTime();
+        ImportResult parsed = file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".csv") ? parseCsv(file)
+                : parseBinary(file);
+        flightManager.replaceSchedule(parsed.getStore());
+        return new ImportResult(parsed.getStore(), parsed.getRejectedRows(), System.nanoTime() - start);
+    }
+
+    /**
+     * Parses a CSV schedule file without changing the inventory.
+     *
+     * @param file The CSV file.
+     * @return The parsed flights and parse statistics.
+     * @throws IOException If the file cannot be read.
+     */
+    public ImportResult parseCsv(Path file) throws IOException {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int chunkCount = (int) Math.max(threads, (size + MAX_CHUNK_BYTES - 1) / MAX_CHUNK_BYTES);
+            long[] bounds = lineAlignedBounds(channel, size, Math.max(1, chunkCount));
+
+            List<CsvChunkParser> parsers = new ArrayList<>();
+            for (int i = 0; i + 1 < bounds.length; i++) {
+                if (bounds[i + 1] > bounds[i]) {
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, bounds[i],
+                            bounds[i + 1] - bounds[i]);
+                    parsers.add(new CsvChunkParser(buffer, i == 0));
+                }
+            }
+            runAll(parsers);
+
+            AirportDictionary airports = new AirportDictionary();
+            int rows = 0;
+            long rejected = 0;
+            for (CsvChunkParser parser : parsers) {
+                rows += parser.store.size();
+                rejected += parser.rejectedRows;
+            }
+            ColumnarFlightStore store = new ColumnarFlightStore(airports, rows);
+            for (CsvChunkParser parser : parsers) {
+                store.addAll(parser.store);
+            }
+            return new ImportResult(store, rejected, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Parses a binary schedule file without changing the inventory.
+     *
+     * @param file The binary file.
+     * @return The parsed flights and parse statistics.
+     * @throws IOException If the file cannot be read, has the wrong format or
+     *                     holds an invalid record.
+     */
+    public ImportResult parseBinary(Path file) throws IOException {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > MAX_CHUNK_BYTES) {
+                throw new IOException("Binary schedule files are limited to 2 GB: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 12 || buffer.getInt() != BINARY_MAGIC) {
+                throw new IOException("Not a binary flight schedule: " + file);
+            }
+
+            AirportDictionary airports = new AirportDictionary();
+            int rowCount;
+            try {
+                int airportCount = buffer.getInt();
+                for (int i = 0; i < airportCount; i++) {
+                    byte[] name = new byte[buffer.getShort() & 0xFFFF];
+                    buffer.get(name);
+                    if (airports.intern(new String(name, StandardCharsets.UTF_8)) != i) {
+                        throw new IOException("Duplicate airport in schedule file: " + file);
+                    }
+                }
+                rowCount = buffer.getInt();
+            } catch (BufferUnderflowException e) {
+                throw new IOException("Truncated binary flight schedule: " + file, e);
+            }
+            int dataStart = buffer.position();
+            if (rowCount < 0 || (long) rowCount * RECORD_BYTES > buffer.limit() - dataStart) {
+                throw new IOException("Truncated binary flight schedule: " + file);
+            }
+
+            // Records have a fixed size, so chunks are plain row ranges
+            List<BinaryChunkParser> parsers = new ArrayList<>();
+            int chunkRows = (rowCount + threads - 1) / Math.max(1, threads);
+            for (int first = 0; first < rowCount; first += chunkRows) {
+                ByteBuffer chunk = buffer.duplicate();
+                chunk.position(dataStart + first * RECORD_BYTES);
+                parsers.add(new BinaryChunkParser(chunk, first, Math.min(chunkRows, rowCount - first), airports));
+            }
+            runAll(parsers);
+
+            ColumnarFlightStore store = new ColumnarFlightStore(airports, rowCount);
+            for (BinaryChunkParser parser : parsers) {
+                if (parser.invalidRecord != null) {
+                    throw new IOException("Invalid binary flight schedule " + file + ": " + parser.invalidRecord);
+                }
+                store.addAll(parser.store);
+            }
+            return new ImportResult(store, 0, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Writes flights in the binary schedule format.
+     *
+     * @param store The flights to write.
+     * @param file  The file to create or overwrite.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void writeBinary(ColumnarFlightStore store, Path file) throws IOException {
+        try (OutputStream stream = Files.newOutputStream(file);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16))) {
+            AirportDictionary airports = store.getAirports();
+            out.writeInt(BINARY_MAGIC);
+            out.writeInt(airports.size());
+            for (int code = 0; code < airports.size(); code++) {
+                byte[] name = airports.nameOf(code).getBytes(StandardCharsets.UTF_8);
+                out.writeShort(name.length);
+                out.write(name);
+            }
+            out.writeInt(store.size());
+            for (int row = 0; row < store.size(); row++) {
+                out.writeInt(store.flightId(row));
+                out.writeInt(store.origin(row));
+                out.writeInt(store.destination(row));
+                out.writeInt(store.departureMinute(row));
+                out.writeInt(store.arrivalMinute(row));
+                out.writeInt(store.priceCents(row));
+                out.writeInt(store.correspondingId(row));
+            }
+        }
+    }
+
+    // Splits [0, size) into chunks that each start at the beginning of a line
+    private static long[] lineAlignedBounds(FileChannel channel, long size, int chunks) throws IOException {
+        long[] bounds = new long[chunks + 1];
+        bounds[chunks] = size;
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        for (int i = 1; i < chunks; i++) {
+            long position = Math.max(bounds[i - 1], size / chunks * i);
+            boolean found = false;
+            while (!found && position < size) {
+                probe.clear();
+                int read = channel.read(probe, position);
+                if (read <= 0) {
+                    break;
+                }
+                for (int j = 0; j < read; j++) {
+                    if (probe.get(j) == '\n') {
+                        position += j + 1;
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    position += read;
+                }
+            }
+            bounds[i] = Math.min(position, size);
+        }
+        return bounds;
+    }
+
+    private void runAll(List<? extends Runnable> tasks) throws IOException {
+        if (tasks.size() <= 1) {
+            for (Runnable task : tasks) {
+                task.run();
+            }
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, tasks.size()));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Runnable task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Schedule import interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Schedule import failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Parses one line-aligned chunk of a CSV file into its own store
+    private static final class CsvChunkParser implements Runnable {
+        private final ByteBuffer buffer;
+        private final boolean firstChunk;
+        private final ColumnarFlightStore store;
+        private final AirportInterner interner;
+        private long rejectedRows;
+
+        CsvChunkParser(ByteBuffer buffer, boolean firstChunk) {
+            this.buffer = buffer;
+            this.firstChunk = firstChunk;
+            this.store = new ColumnarFlightStore(new AirportDictionary(), Math.max(16, buffer.limit() / 64));
+            this.interner = new AirportInterner(store.getAirports());
+        }
+
+        @Override
+        public void run() {
+            int limit = buffer.limit();
+            int[] fieldStarts = new int[8];
+            int[] fieldEnds = new int[8];
+            int position = 0;
+            boolean firstLine = firstChunk;
+            while (position < limit) {
+                int lineEnd = position;
+                while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                int end = lineEnd;
+                if (end > position && buffer.get(end - 1) == '\r') {
+                    end--;
+                }
+
+                // A first line that does not start with a flight ID is a header
+                boolean header = firstLine && end > position && !isDigit(buffer.get(position))
+                        && buffer.get(position) != '-';
+                firstLine = false;
+                if (end > position && !header) {
+                    parseLine(position, end, fieldStarts, fieldEnds);
+                }
+                position = lineEnd + 1;
+            }
+        }
+
+        private void parseLine(int start, int end, int[] fieldStarts, int[] fieldEnds) {
+            int fields = 0;
+            int fieldStart = start;
+            for (int i = start; i <= end && fields < fieldStarts.length; i++) {
+                if (i == end || buffer.get(i) == ',') {
+                    fieldStarts[fields] = fieldStart;
+                    fieldEnds[fields] = i;
+                    fields++;
+                    fieldStart = i + 1;
+                }
+            }
+            if (fields < 6 || fields > 7) {
+                rejectedRows++;
+                return;
+            }
+
+            int flightId = parseInt(buffer, fieldStarts[0], fieldEnds[0]);
+            int departure = parseEpochMinute(buffer, fieldStarts[3], fieldEnds[3]);
+            int arrival = parseEpochMinute(buffer, fieldStarts[4], fieldEnds[4]);
+            int cents = parseCents(buffer, fieldStarts[5], fieldEnds[5]);
+            int corresponding = fields == 7 && fieldEnds[6] > fieldStarts[6]
+                    ? parseInt(buffer, fieldStarts[6], fieldEnds[6])
+                    : ColumnarFlightStore.NO_FLIGHT;
+            int origin = interner.intern(buffer, fieldStarts[1], fieldEnds[1]);
+            int destination = interner.intern(buffer, fieldStarts[2], fieldEnds[2]);
+            if (flightId == INVALID || departure == INVALID || arrival == INVALID || cents == INVALID
+                    || corresponding == INVALID || origin < 0 || destination < 0 || arrival < departure) {
+                rejectedRows++;
+                return;
+            }
+            store.addRow(flightId, origin, destination, departure, arrival, cents, corresponding);
+        }
+    }
+
+    // Parses a range of fixed-size binary records into its own store. Unlike a
+    // CSV row, a bad record fails the whole file: it was written by a program,
+    // so the file is corrupt or from an incompatible writer.
+    private static final class BinaryChunkParser implements Runnable {
+        private final ByteBuffer buffer;
+        private final int firstRow;
+        private final int rows;
+        private final int airportCount;
+        private final ColumnarFlightStore store;
+        private String invalidRecord; // What is wrong with the first bad record, or null
+
+        BinaryChunkParser(ByteBuffer buffer, int firstRow, int rows, AirportDictionary airports) {
+            this.buffer = buffer;
+            this.firstRow = firstRow;
+            this.rows = rows;
+            this.airportCount = airports.size();
+            this.store = new ColumnarFlightStore(airports, rows); // The dictionary is only read
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < rows; i++) {
+                int flightId = buffer.getInt();
+                int origin = buffer.getInt();
+                int destination = buffer.getInt();
+                int departure = buffer.getInt();
+                int arrival = buffer.getInt();
+                int cents = buffer.getInt();
+                int corresponding = buffer.getInt();
+                String problem = origin < 0 || origin >= airportCount || destination < 0
+                        || destination >= airportCount ? "names an unknown airport"
+                                : arrival < departure ? "arrives before it departs"
+                                        : cents < 0 ? "has a negative price" : null;
+                if (problem != null) {
+                    invalidRecord = "record " + (firstRow + i) + " (flight " + flightId + ") " + problem;
+                    return;
+                }
+                store.addRow(flightId, origin, destination, departure, arrival, cents, corresponding);
+            }
+        }
+    }
+
+    // Maps raw airport name bytes to dictionary codes, allocating only for new names
+    private static final class AirportInterner {
+        private final AirportDictionary airports;
+        private byte[][] names = new byte[64][];
+        private int[] codes = new int[64];
+        private int count;
+
+        AirportInterner(AirportDictionary airports) {
+            this.airports = airports;
+        }
+
+        int intern(ByteBuffer buffer, int start, int end) {
+            while (start < end && buffer.get(start) == ' ') {
+                start++;
+            }
+            while (end > start && buffer.get(end - 1) == ' ') {
+                end--;
+            }
+            if (start == end) {
+                return -1;
+            }
+
+            int hash = 0x811C9DC5;
+            for (int i = start; i < end; i++) {
+                hash = (hash ^ buffer.get(i)) * 0x01000193;
+            }
+            int mask = names.length - 1;
+            int slot = hash & mask;
+            while (names[slot] != null) {
+                if (matches(names[slot], buffer, start, end)) {
+                    return codes[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            byte[] name = new byte[end - start];
+            for (int i = 0; i < name.length; i++) {
+                name[i] = buffer.get(start + i);
+            }
+            int code = airports.intern(new String(name, StandardCharsets.UTF_8));
+            names[slot] = name;
+            codes[slot] = code;
+            if (++count * 2 > names.length) {
+                grow();
+            }
+            return code;
+        }
+
+        private static boolean matches(byte[] name, ByteBuffer buffer, int start, int end) {
+            if (name.length != end - start) {
+                return false;
+            }
+            for (int i = 0; i < name.length; i++) {
+                if (name[i] != buffer.get(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void grow() {
+            byte[][] oldNames = names;
+            int[] oldCodes = codes;
+            names = new byte[oldNames.length * 2][];
+            codes = new int[oldNames.length * 2];
+            int mask = names.length - 1;
+            for (int i = 0; i < oldNames.length; i++) {
+                if (oldNames[i] != null) {
+                    int hash = 0x811C9DC5;
+                    for (byte b : oldNames[i]) {
+                        hash = (hash ^ b) * 0x01000193;
+                    }
+                    int slot = hash & mask;
+                    while (names[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    names[slot] = oldNames[i];
+                    codes[slot] = oldCodes[i];
+                }
+            }
+        }
+    }
+
+    // Allocation-free field parsers; they return INVALID for malformed input
+
+    static final int INVALID = Integer.MIN_VALUE + 1;
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    static int parseInt(ByteBuffer buffer, int start, int end) {
+        while (start < end && buffer.get(start) == ' ') {
+            start++;
+        }
+        while (end > start && buffer.get(end - 1) == ' ') {
+            end--;
+        }
+        boolean negative = start < end && buffer.get(start) == '-';
+        if (negative) {
+            start++;
+        }
+        if (start == end || end - start > 10) {
+            return INVALID;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if (!isDigit(b)) {
+                return INVALID;
+            }
+            value = value * 10 + (b - '0');
+        }
+        value = negative ? -value : value;
+        return value > Integer.MAX_VALUE || value <= INVALID ? INVALID : (int) value;
+    }
+
+    // Parses a price such as "300", "300.5" or "300.50" into cents; prices are
+    // never negative
+    static int parseCents(ByteBuffer buffer, int start, int end) {
+        while (start < end && buffer.get(start) == ' ') {
+            start++;
+        }
+        if (start < end && buffer.get(start) == '-') {
+            return INVALID;
+        }
+        int dot = end;
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) == '.') {
+                dot = i;
+                break;
+            }
+        }
+        int whole = parseInt(buffer, start, dot);
+        if (whole == INVALID || whole < 0 || whole > Integer.MAX_VALUE / 100 - 1) {
+            return INVALID;
+        }
+        int fraction = 0;
+        int digits = 0;
+        for (int i = dot + 1; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b == ' ') {
+                continue;
+            }
+            if (!isDigit(b) || digits == 2) {
+                return INVALID;
+            }
+            fraction = fraction * 10 + (b - '0');
+            digits++;
+        }
+        return whole * 100 + (digits == 1 ? fraction * 10 : fraction);
+    }
+
+    // Parses yyyy-MM-ddTHH:mm (a space may replace the T; seconds are ignored)
+    static int parseEpochMinute(ByteBuffer buffer, int start, int end) {
+        while (start < end && buffer.get(start) == ' ') {
+            start++;
+        }
+        if (end - start < 16 || buffer.get(start + 4) != '-' || buffer.get(start + 7) != '-'
+                || buffer.get(start + 13) != ':') {
+            return INVALID;
+        }
+        int year = digits(buffer, start, 4);
+        int month = digits(buffer, start + 5, 2);
+        int day = digits(buffer, start + 8, 2);
+        int hour = digits(buffer, start + 11, 2);
+        int minute = digits(buffer, start + 14, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > Month.of(month).length(Year.isLeap(year))
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59) {
+            return INVALID;
+        }
+        long days = daysFromCivil(year, month, day);
+        return (int) (days * 24 * 60 + hour * 60 + minute);
+    }
+
+    private static int digits(ByteBuffer buffer, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            byte b = buffer.get(i);
+            if (!isDigit(b)) {
+                return -1;
+            }
+            value = value * 10 + (b - '0');
+        }
+        return value;
+    }
+
+    // Days since 1970-01-01 for a proleptic Gregorian date, without allocating
+    static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return (long) era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * Rows, rejected rows and throughput of a parse or import.
+     */
+    public static class ImportResult {
+        private final ColumnarFlightStore store;
+        private final long rejectedRows;
+        private final long elapsedNanos;
+
+        public ImportResult(ColumnarFlightStore store, long rejectedRows, long elapsedNanos) {
+            this.store = store;
+            this.rejectedRows = rejectedRows;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public ColumnarFlightStore getStore() {
+            return store;
+        }
+
+        public int getRows() {
+            return store.size();
+        }
+
+        public long getRejectedRows() {
+            return rejectedRows;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getRowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : getRows() * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "ImportResult{" +
+                    "rows=" + getRows() +
+                    ", rejectedRows=" + rejectedRows +
+                    ", elapsedMillis=" + elapsedNanos / 1_000_000 +
+                    ", rowsPerSecond=" + Math.round(getRowsPerSecond()) +
+                    '}';
+        }
+    }
+}
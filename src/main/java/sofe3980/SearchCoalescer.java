@@ -0,0 +1,86 @@
+package sofe3980;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight execution of identical concurrent requests: the first caller
+ * for a key runs the computation, and callers arriving while it is in flight
+ * wait for and share its result instead of repeating the work.
+ */
+public class SearchCoalescer<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder executions = new LongAdder();
+
+    /**
+     * Returns the result for a key, running the computation only if no identical
+     * request is already in flight.
+     *
+     * @param key     The request key.
+     * @param compute Computes the result; exceptions are passed to every caller
+     *                that shared the computation.
+     * @return The computed or shared result.
+     */
+    public V execute(K key, Supplier<V> compute) {
+        requests.increment();
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+
+        executions.increment();
+        try {
+            V result = compute.get();
+            mine.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * @return The number of requests received.
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * @return The number of computations actually run.
+     */
+    public long getExecutions() {
+        return executions.sum();
+    }
+
+    /**
+     * @return The number of requests that shared another request's computation.
+     */
+    public long getCoalescedRequests() {
+        return getRequests() - getExecutions();
+    }
+
+    /**
+     * @return Requests per computation run; 1.0 means nothing was coalesced.
+     */
+    public double getCoalescingRatio() {
+        long runs = getExecutions();
+        return runs == 0 ? 1.0 : (double) getRequests() / runs;
+    }
+}
@@ -0,0 +1,250 @@
+package sofe3980;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded cache of flight search results keyed by (from, to, departureDate,
+ * returnDate). Entries are evicted least-recently-used once the cache is full
+ * and expire after a fixed time to live.
+ *
+ * FlightManager invalidates entries whenever a write touches a route and date
+ * they cover. A result computed on an inventory version older than the last
+ * invalidation is never stored, so a search racing with a write cannot put a
+ * stale answer back into the cache.
+ */
+public class SearchResultCache<V> {
+
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+
+    // Access-ordered, so the eldest entry is the least recently used one
+    private final LinkedHashMap<Key, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // Cached keys by the normalized "origin|destination" of the flights they hold
+    private final Map<String, Set<Key>> keysByRoute = new HashMap<>();
+    private long invalidatedVersion = -1;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public SearchResultCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS, System::nanoTime);
+    }
+
+    public SearchResultCache(int maxEntries, long ttlMillis, LongSupplier nanoClock) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.clock = nanoClock;
+    }
+
+    /**
+     * Creates the cache key of a search. Locations are normalized the same way
+     * the route index normalizes them.
+     *
+     * @return The key, or null if the search has no origin or destination.
+     */
+    public static Key key(String from, String to, LocalDate departureDate, LocalDate returnDate) {
+        if (from == null || to == null) {
+            return null;
+        }
+        return new Key(FlightManager.normalizeLocation(from), FlightManager.normalizeLocation(to), departureDate,
+                returnDate);
+    }
+
+    /**
+     * Retrieves a cached result.
+     *
+     * @param key The search key.
+     * @return The cached result, or null on a miss or if the entry expired.
+     */
+    public synchronized V get(Key key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && clock.getAsLong() - entry.expiresAt >= 0) {
+            remove(key);
+            evictions.incrementAndGet();
+            entry = null;
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.value;
+    }
+
+    /**
+     * Stores a result computed on the given inventory version, unless a write
+     * has invalidated entries since that version.
+     *
+     * @return true if the result was stored.
+     */
+    public synchronized boolean put(Key key, V value, long version) {
+        if (version < invalidatedVersion || maxEntries <= 0) {
+            return false;
+        }
+        remove(key);
+        entries.put(key, new Entry<>(value, clock.getAsLong() + ttlNanos));
+        keysByRoute.computeIfAbsent(key.from + "|" + key.to, route -> new HashSet<>()).add(key);
+        keysByRoute.computeIfAbsent(key.to + "|" + key.from, route -> new HashSet<>()).add(key);
+
+        while (entries.size() > maxEntries) {
+            Iterator<Key> eldest = entries.keySet().iterator();
+            remove(eldest.next());
+            evictions.incrementAndGet();
+        }
+        return true;
+    }
+
+    /**
+     * Removes every entry whose result could include a flight on the given route
+     * departing on the given date: searches for the route on that date (or on
+     * any date), and round-trip searches returning on that date.
+     *
+     * @param origin        The flight's origin.
+     * @param destination   The flight's destination.
+     * @param departureDate The flight's departure date, or null for every date.
+     * @param version       The inventory version that contains the change.
+     */
+    public synchronized void invalidate(String origin, String destination, LocalDate departureDate,
+            long version) {
+        invalidatedVersion = Math.max(invalidatedVersion, version);
+        String from = FlightManager.normalizeLocation(origin);
+        String to = FlightManager.normalizeLocation(destination);
+        Set<Key> candidates = keysByRoute.get(from + "|" + to);
+        if (candidates == null) {
+            return;
+        }
+
+        List<Key> affected = new ArrayList<>();
+        for (Key key : candidates) {
+            boolean outbound = key.from.equals(from) && key.to.equals(to)
+                    && (departureDate == null || key.departureDate == null
+                            || key.departureDate.equals(departureDate));
+            boolean inbound = key.from.equals(to) && key.to.equals(from) && key.returnDate != null
+                    && (departureDate == null || key.returnDate.equals(departureDate));
+            if (outbound || inbound) {
+                affected.add(key);
+            }
+        }
+        for (Key key : affected) {
+            remove(key);
+            invalidations.incrementAndGet();
+        }
+    }
+
+    /**
+     * Removes every entry, for writes that replace the whole inventory.
+     *
+     * @param version The inventory version that contains the change.
+     */
+    public synchronized void invalidateAll(long version) {
+        invalidatedVersion = Math.max(invalidatedVersion, version);
+        invalidations.addAndGet(entries.size());
+        entries.clear();
+        keysByRoute.clear();
+    }
+
+    private void remove(Key key) {
+        if (entries.remove(key) == null) {
+            return;
+        }
+        removeRouteKey(key.from + "|" + key.to, key);
+        removeRouteKey(key.to + "|" + key.from, key);
+    }
+
+    private void removeRouteKey(String route, Key key) {
+        Set<Key> keys = keysByRoute.get(route);
+        if (keys != null && keys.remove(key) && keys.isEmpty()) {
+            keysByRoute.remove(route);
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    private static class Entry<V> {
+        final V value;
+        final long expiresAt;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * A normalized search: origin, destination, departure date and optional
+     * return date.
+     */
+    public static final class Key {
+        private final String from;
+        private final String to;
+        private final LocalDate departureDate;
+        private final LocalDate returnDate;
+
+        private Key(String from, String to, LocalDate departureDate, LocalDate returnDate) {
+            this.from = from;
+            this.to = to;
+            this.departureDate = departureDate;
+            this.returnDate = returnDate;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return from.equals(other.from) && to.equals(other.to)
+                    && Objects.equals(departureDate, other.departureDate)
+                    && Objects.equals(returnDate, other.returnDate);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(from, to, departureDate, returnDate);
+        }
+
+        @Override
+        public String toString() {
+            return from + "|" + to + "|" + departureDate + "|" + returnDate;
+        }
+    }
+}
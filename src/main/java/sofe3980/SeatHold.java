@@ -0,0 +1,53 @@
+package sofe3980;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Seats reserved for a checkout in progress: one seat on each flight of the
+ * trip, kept until the hold is confirmed, released, or expires.
+ */
+public class SeatHold {
+
+    private final int holdId;
+    private final List<Integer> flightIds;
+    private final List<String> seatNumbers; // Seat held on each flight, in the same order
+    private final LocalDateTime expiresAt;
+    final long expiresAtMillis;
+    HashedTimingWheel.Timeout<SeatHold> timeout; // Set by BookingManager when scheduled
+
+    public SeatHold(int holdId, List<Integer> flightIds, List<String> seatNumbers, LocalDateTime expiresAt,
+            long expiresAtMillis) {
+        this.holdId = holdId;
+        this.flightIds = flightIds;
+        this.seatNumbers = seatNumbers;
+        this.expiresAt = expiresAt;
+        this.expiresAtMillis = expiresAtMillis;
+    }
+
+    public int getHoldId() {
+        return holdId;
+    }
+
+    public List<Integer> getFlightIds() {
+        return flightIds;
+    }
+
+    public List<String> getSeatNumbers() {
+        return seatNumbers;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    @Override
+    public String toString() {
+        return "SeatHold{" +
+                "holdId=" + holdId +
+                ", flightIds=" + flightIds +
+                ", seatNumbers=" + seatNumbers +
+                ", expiresAt=" + expiresAt +
+                '}';
+    }
+}
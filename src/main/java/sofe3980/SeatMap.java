@@ -0,0 +1,179 @@
+package sofe3980;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Seat inventory of one flight: one bit per seat, set when the seat is taken.
+ *
+ * Seats are reserved and released with compare-and-set on the word holding
+ * their bit, so concurrent reservations never lock and two passengers can
+ * never get the same seat. The number of free seats is kept in a counter and
+ * read in constant time. Seats are numbered from 0 in row order; seat n is
+ * row n / seatsPerRow + 1, letter 'A' + n % seatsPerRow.
+ */
+public class SeatMap {
+
+    public static final int DEFAULT_ROWS = 30;
+    public static final int DEFAULT_SEATS_PER_ROW = 6; // A to F
+
+    private final int rows;
+    private final int seatsPerRow;
+    private final AtomicLongArray taken;
+    private final AtomicInteger availableSeats;
+
+    public SeatMap() {
+        this(DEFAULT_ROWS, DEFAULT_SEATS_PER_ROW);
+    }
+
+    public SeatMap(int rows, int seatsPerRow) {
+        if (rows < 1 || seatsPerRow < 1 || seatsPerRow > 26) {
+            throw new IllegalArgumentException("Invalid seat layout " + rows + " x " + seatsPerRow);
+        }
+        this.rows = rows;
+        this.seatsPerRow = seatsPerRow;
+        this.taken = new AtomicLongArray((rows * seatsPerRow + 63) >>> 6);
+        this.availableSeats = new AtomicInteger(rows * seatsPerRow);
+    }
+
+    /**
+     * Reserves a given seat.
+     *
+     * @param seat The seat index.
+     * @return true if the seat was free and is now reserved by the caller.
+     */
+    public boolean reserve(int seat) {
+        checkSeat(seat);
+        int word = seat >>> 6;
+        long bit = 1L << seat;
+        while (true) {
+            long current = taken.get(word);
+            if ((current & bit) != 0) {
+                return false;
+            }
+            if (taken.compareAndSet(word, current, current | bit)) {
+                availableSeats.decrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Reserves any free seat. The search starts at a random word so that
+     * concurrent callers on a busy flight mostly update different words.
+     *
+     * @return The reserved seat index, or -1 if the flight is full.
+     */
+    public int reserveAny() {
+        int words = taken.length();
+        int start = ThreadLocalRandom.current().nextInt(words);
+        while (availableSeats.get() > 0) {
+            for (int i = 0; i < words; i++) {
+                int word = (start + i) % words;
+                long current = taken.get(word);
+                long free = ~current & validBits(word);
+                while (free != 0) {
+                    long bit = Long.lowestOneBit(free);
+                    if (taken.compareAndSet(word, current, current | bit)) {
+                        availableSeats.decrementAndGet();
+                        return (word << 6) + Long.numberOfTrailingZeros(bit);
+                    }
+                    current = taken.get(word); // Lost a race, look at the word again
+                    free = ~current & validBits(word);
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Frees a reserved seat.
+     *
+     * @param seat The seat index.
+     * @return true if the seat was reserved and is now free.
+     */
+    public boolean release(int seat) {
+        checkSeat(seat);
+        int word = seat >>> 6;
+        long bit = 1L << seat;
+        while (true) {
+            long current = taken.get(word);
+            if ((current & bit) == 0) {
+                return false;
+            }
+            if (taken.compareAndSet(word, current, current & ~bit)) {
+                availableSeats.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @param seat The seat index.
+     * @return true if the seat is reserved.
+     */
+    public boolean isReserved(int seat) {
+        checkSeat(seat);
+        return (taken.get(seat >>> 6) & (1L << seat)) != 0;
+    }
+
+    /**
+     * @return The number of free seats.
+     */
+    public int getAvailableSeats() {
+        return availableSeats.get();
+    }
+
+    public int getCapacity() {
+        return rows * seatsPerRow;
+    }
+
+    /**
+     * Converts a seat index to a seat number such as "12C".
+     *
+     * @param seat The seat index.
+     * @return The seat number.
+     */
+    public String seatNumber(int seat) {
+        checkSeat(seat);
+        return (seat / seatsPerRow + 1) + "" + (char) ('A' + seat % seatsPerRow);
+    }
+
+    /**
+     * Converts a seat number such as "12C" to a seat index.
+     *
+     * @param seatNumber The seat number (case-insensitive).
+     * @return The seat index, or -1 if there is no such seat on this flight.
+     */
+    public int seatIndex(String seatNumber) {
+        if (seatNumber == null || seatNumber.trim().length() < 2) {
+            return -1;
+        }
+        String number = seatNumber.trim();
+        char letter = Character.toUpperCase(number.charAt(number.length() - 1));
+        int row;
+        try {
+            row = Integer.parseInt(number.substring(0, number.length() - 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+        int column = letter - 'A';
+        if (row < 1 || row > rows || column < 0 || column >= seatsPerRow) {
+            return -1;
+        }
+        return (row - 1) * seatsPerRow + column;
+    }
+
+    // Bits of a word that belong to a seat; the last word may be partly used
+    private long validBits(int word) {
+        int seatsInWord = Math.min(64, getCapacity() - (word << 6));
+        return seatsInWord == 64 ? -1L : (1L << seatsInWord) - 1;
+    }
+
+    private void checkSeat(int seat) {
+        if (seat < 0 || seat >= getCapacity()) {
+            throw new IllegalArgumentException("No seat " + seat + " on a flight with " + getCapacity() + " seats");
+        }
+    }
+}
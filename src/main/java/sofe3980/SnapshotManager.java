@@ -0,0 +1,564 @@
+package sofe3980;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Recovers bookings and users at startup and keeps restarts fast with
+ * periodic snapshots.
+ *
+ * A snapshot is a compact binary copy of every user and booking plus the
+ * journal position it is consistent with. It is written in the background
+ * while bookings keep changing (a fuzzy snapshot): the journal position is
+ * taken first (see BookingJournal.checkpoint), then the managers' maps are
+ * copied as they are. Changes made during the copy may or may not be in it,
+ * but they are all in the journal after the position, and replaying them on
+ * top of the snapshot yields the same state either way.
+ *
+ * Recovery memory-maps the latest valid snapshot, decodes its blocks in
+ * parallel (sharing the users and flights repeated within a block, see
+ * BookingCodec.SharedObjects), and replays only the journal records after its
+ * position. A
+ * snapshot that fails its checksums is skipped in favour of an older one, or
+ * of the whole journal.
+ *
+ * File layout: a header (magic, journal position, creation time), then blocks
+ * of up to about 1 MB, each framed as its length and a CRC32 and holding whole
+ * user and booking records, then an empty block and the user and booking
+ * counts. Snapshots are written to a temporary file and renamed into place;
+ * the latest two are kept.
+ *
+ * Snapshots are taken every booking.snapshot.interval-millis (default ten
+ * minutes) and at shutdown when booking.snapshot.dir is set and the journal
+ * is enabled. The journal itself is never truncated.
+ */
+@Component
+public class SnapshotManager {
+
+    static final int MAGIC = 0x424B5331; // "BKS1"
+    static final int HEADER_BYTES = Integer.BYTES + 2 * Long.BYTES;
+    static final int BLOCK_HEADER_BYTES = 2 * Integer.BYTES; // Length and CRC
+    static final int BLOCK_BYTES = 1 << 20;
+    private static final byte USER_RECORD = 1;
+    private static final byte BOOKING_RECORD = 2;
+    private static final int MAX_MAPPING_BYTES = 1 << 30;
+    private static final int SNAPSHOTS_KEPT = 2;
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".snap";
+
+    private final BookingManager bookingManager;
+    private final UserManager userManager;
+    private final BookingJournal journal;
+    private final Path directory; // null if snapshots are disabled
+    private final int threads;
+    private final Object snapshotLock = new Object(); // One snapshot at a time
+    private long lastSnapshotPosition = -1; // Guarded by snapshotLock
+    private volatile boolean recovered;
+
+    @Autowired
+    public SnapshotManager(BookingManager bookingManager, UserManager userManager, BookingJournal journal,
+            @Value("${booking.snapshot.dir:}") String directory,
+            @Value("${booking.snapshot.threads:0}") int threads) {
+        this.bookingManager = bookingManager;
+        this.userManager = userManager;
+        this.journal = journal;
+        this.directory = directory == null || directory.isEmpty() ? null : Paths.get(directory);
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * @param directory The snapshot directory, or null to replay the whole
+     *                  journal and take no snapshots.
+     */
+    public SnapshotManager(BookingManager bookingManager, UserManager userManager, BookingJournal journal,
+            Path directory) {
+        this(bookingManager, userManager, journal, directory == null ? "" : directory.toString(), 0);
+    }
+
+    // Recovers at startup, before the application serves requests
+    @PostConstruct
+    public void recoverAtStartup() throws IOException {
+        if (journal.isEnabled()) {
+            System.out.println("Recovered bookings: " + recover());
+        }
+    }
+
+    /**
+     * Loads the latest valid snapshot into the managers, replays the journal
+     * from its position (or the whole journal if there is no snapshot), and
+     * opens the journal for writing. Must run once, before the managers are
+     * used.
+     *
+     * @return The recovery statistics.
+     * @throws IOException If the journal cannot be read.
+     */
+    public Recovery recover() throws IOException {
+        long start = System.nanoTime();
+        Recovery recovery = new Recovery();
+        long position = 0;
+        if (directory != null) {
+            Files.createDirectories(directory);
+            List<Path> snapshots = listSnapshots();
+            for (int i = snapshots.size() - 1; i >= 0; i--) {
+                try {
+                    position = load(snapshots.get(i), recovery);
+                    recovery.snapshot = snapshots.get(i);
+                    break;
+                } catch (IOException e) {
+                    // Anything it restored is replaced by an older state and the longer journal tail
+                    System.out.println("Skipping snapshot " + snapshots.get(i) + ": " + e.getMessage());
+                    recovery.snapshotUsers = 0;
+                    recovery.snapshotBookings = 0;
+                }
+            }
+        }
+
+        recovery.journalRecords = journal.recover(position, new BookingJournal.Replay() {
+            @Override
+            public void bookingCreated(Booking booking) {
+                bookingManager.restoreBooking(booking);
+            }
+
+            @Override
+            public void statusChanged(int bookingId, String status) {
+                bookingManager.restoreStatus(bookingId, status);
+            }
+
+            @Override
+            public void userRegistered(User user) {
+                userManager.restoreUser(user);
+            }
+        });
+        bookingManager.resumeIds();
+        userManager.resumeIds();
+        synchronized (snapshotLock) {
+            lastSnapshotPosition = recovery.snapshot == null || recovery.journalRecords > 0 ? -1 : position;
+        }
+        recovered = true;
+        recovery.millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        return recovery;
+    }
+
+    /**
+     * Writes a snapshot of the current users and bookings. Writers are not
+     * stopped; see the class comment.
+     *
+     * @return The snapshot file, or null if nothing changed since the last one.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    public Path takeSnapshot() throws IOException {
+        if (directory == null || !recovered) {
+            throw new IllegalStateException("Snapshots need a snapshot directory and a recovered journal");
+        }
+        synchronized (snapshotLock) {
+            long position = journal.checkpoint();
+            if (position == lastSnapshotPosition) {
+                return null;
+            }
+            Path file = directory.resolve(String.format("%s%016x%s", PREFIX, position, SUFFIX));
+            Path temporary = directory.resolve(file.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                header.putInt(MAGIC).putLong(position).putLong(System.currentTimeMillis()).flip();
+                writeFully(channel, header);
+
+                BlockWriter blocks = new BlockWriter(channel);
+                long users = 0;
+                for (User user : userManager.getAllUsers()) {
+                    blocks.out.writeByte(USER_RECORD);
+                    BookingCodec.writeUser(blocks.out, user, true);
+                    blocks.endRecord();
+                    users++;
+                }
+                long bookings = 0;
+                for (Booking booking : bookingManager.getAllBookings()) {
+                    blocks.out.writeByte(BOOKING_RECORD);
+                    BookingCodec.writeBooking(blocks.out, booking);
+                    blocks.endRecord();
+                    bookings++;
+                }
+                blocks.flush();
+
+                ByteBuffer trailer = ByteBuffer.allocate(BLOCK_HEADER_BYTES + 2 * Long.BYTES);
+                trailer.putInt(0).putInt(0).putLong(users).putLong(bookings).flip();
+                writeFully(channel, trailer);
+                channel.force(true);
+            }
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            lastSnapshotPosition = position;
+
+            List<Path> snapshots = listSnapshots();
+            for (int i = 0; i < snapshots.size() - SNAPSHOTS_KEPT; i++) {
+                Files.deleteIfExists(snapshots.get(i));
+            }
+            return file;
+        }
+    }
+
+    // Takes a snapshot on the snapshot schedule, off the request threads
+    @Scheduled(fixedDelayString = "${booking.snapshot.interval-millis:600000}",
+            initialDelayString = "${booking.snapshot.interval-millis:600000}")
+    public void takeScheduledSnapshot() {
+        if (directory == null || !recovered) {
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            Path file = takeSnapshot();
+            if (file != null) {
+                System.out.println("Wrote snapshot " + file + " in "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Snapshot failed: " + e);
+        }
+    }
+
+    // A snapshot at shutdown leaves no journal tail to replay at the next start
+    @PreDestroy
+    public void takeShutdownSnapshot() {
+        takeScheduledSnapshot();
+    }
+
+    // Snapshot files, oldest first
+    private List<Path> listSnapshots() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+            }).sorted().collect(Collectors.toList());
+        }
+    }
+
+    // Restores a snapshot into the managers; returns its journal position
+    private long load(Path file, Recovery recovery) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            if (readFully(channel, header, 0) < HEADER_BYTES || header.getInt(0) != MAGIC) {
+                throw new IOException("Not a snapshot file");
+            }
+            long position = header.getLong(Integer.BYTES);
+
+            // Find the blocks from their headers, then decode them in parallel from mappings
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<long[]>> blocks = new ArrayList<>();
+                ByteBuffer blockHeader = ByteBuffer.allocate(BLOCK_HEADER_BYTES);
+                MappedByteBuffer window = null;
+                long windowStart = 0;
+                long offset = HEADER_BYTES;
+                while (true) {
+                    blockHeader.clear();
+                    if (readFully(channel, blockHeader, offset) < BLOCK_HEADER_BYTES) {
+                        throw new IOException("Snapshot is incomplete");
+                    }
+                    int length = blockHeader.getInt(0);
+                    if (length == 0) {
+                        break;
+                    }
+                    long end = offset + BLOCK_HEADER_BYTES + length;
+                    if (length < 0 || end > size) {
+                        throw new IOException("Snapshot block at " + offset + " is cut off");
+                    }
+                    if (window == null || end > windowStart + window.capacity()) {
+                        windowStart = offset;
+                        window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+                                Math.min(MAX_MAPPING_BYTES, size - windowStart));
+                    }
+                    ByteBuffer block = window.duplicate();
+                    block.position((int) (offset - windowStart)).limit((int) (end - windowStart));
+                    ByteBuffer slice = block.slice();
+                    blocks.add(executor.submit(() -> decodeBlock(slice)));
+                    offset = end;
+                }
+                ByteBuffer trailer = ByteBuffer.allocate(2 * Long.BYTES);
+                if (readFully(channel, trailer, offset + BLOCK_HEADER_BYTES) < trailer.capacity()) {
+                    throw new IOException("Snapshot trailer is cut off");
+                }
+
+                long users = 0;
+                long bookings = 0;
+                for (Future<long[]> block : blocks) {
+                    long[] counts = block.get();
+                    users += counts[0];
+                    bookings += counts[1];
+                }
+                if (users != trailer.getLong(0) || bookings != trailer.getLong(Long.BYTES)) {
+                    throw new IOException("Snapshot record counts do not match its trailer");
+                }
+                recovery.snapshotUsers = users;
+                recovery.snapshotBookings = bookings;
+                return position;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while loading a snapshot", e);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause()
+                        : new IOException("Cannot decode snapshot", e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    // Checks and decodes one block; returns the number of users and bookings in it
+    private long[] decodeBlock(ByteBuffer block) throws IOException {
+        int length = block.getInt();
+        int expectedCrc = block.getInt();
+        CRC32 crc = new CRC32();
+        crc.update(block.duplicate());
+        if ((int) crc.getValue() != expectedCrc) {
+            throw new IOException("Snapshot block checksum mismatch");
+        }
+        DataInput in = new ByteBufferDataInput(block);
+        BookingCodec.SharedObjects shared = new BookingCodec.SharedObjects();
+        long[] counts = new long[2];
+        while (block.hasRemaining()) {
+            byte type = in.readByte();
+            if (type == USER_RECORD) {
+                userManager.restoreUser(BookingCodec.readUser(in));
+                counts[0]++;
+            } else if (type == BOOKING_RECORD) {
+                bookingManager.restoreBooking(BookingCodec.readBooking(in, shared));
+                counts[1]++;
+            } else {
+                throw new IOException("Unknown snapshot record type " + type + " in a block of " + length + " bytes");
+            }
+        }
+        return counts;
+    }
+
+    private static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Collects records into blocks and writes each full block with its header.
+     */
+    private static final class BlockWriter {
+        private final FileChannel channel;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(BLOCK_BYTES + 4096);
+        final DataOutputStream out = new DataOutputStream(bytes);
+
+        BlockWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        // Records never span blocks, so a block is started only between records
+        void endRecord() throws IOException {
+            if (bytes.size() >= BLOCK_BYTES) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            if (bytes.size() == 0) {
+                return;
+            }
+            byte[] payload = bytes.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(payload, 0, payload.length);
+            ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_BYTES);
+            header.putInt(payload.length).putInt((int) crc.getValue()).flip();
+            writeFully(channel, header);
+            writeFully(channel, ByteBuffer.wrap(payload));
+            bytes.reset();
+        }
+    }
+
+    /**
+     * Reads primitives straight from a (mapped) byte buffer, without the
+     * byte-at-a-time reads of a DataInputStream over it.
+     */
+    private static final class ByteBufferDataInput implements DataInput {
+        private final ByteBuffer buffer;
+
+        ByteBufferDataInput(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void readFully(byte[] target) throws IOException {
+            readFully(target, 0, target.length);
+        }
+
+        @Override
+        public void readFully(byte[] target, int offset, int length) throws IOException {
+            if (buffer.remaining() < length) {
+                throw new EOFException();
+            }
+            buffer.get(target, offset, length);
+        }
+
+        @Override
+        public int skipBytes(int n) {
+            int skipped = Math.min(n, buffer.remaining());
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public boolean readBoolean() throws IOException {
+            return readByte() != 0;
+        }
+
+        @Override
+        public byte readByte() throws IOException {
+            if (!buffer.hasRemaining()) {
+                throw new EOFException();
+            }
+            return buffer.get();
+        }
+
+        @Override
+        public int readUnsignedByte() throws IOException {
+            return readByte() & 0xFF;
+        }
+
+        @Override
+        public short readShort() throws IOException {
+            return ensure(Short.BYTES).getShort();
+        }
+
+        @Override
+        public int readUnsignedShort() throws IOException {
+            return readShort() & 0xFFFF;
+        }
+
+        @Override
+        public char readChar() throws IOException {
+            return ensure(Character.BYTES).getChar();
+        }
+
+        @Override
+        public int readInt() throws IOException {
+            return ensure(Integer.BYTES).getInt();
+        }
+
+        @Override
+        public long readLong() throws IOException {
+            return ensure(Long.BYTES).getLong();
+        }
+
+        @Override
+        public float readFloat() throws IOException {
+            return ensure(Float.BYTES).getFloat();
+        }
+
+        @Override
+        public double readDouble() throws IOException {
+            return ensure(Double.BYTES).getDouble();
+        }
+
+        @Override
+        public String readLine() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String readUTF() throws IOException {
+            return DataInputStream.readUTF(this);
+        }
+
+        private ByteBuffer ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                throw new EOFException();
+            }
+            return buffer;
+        }
+    }
+
+    /**
+     * What a recovery restored and how long it took.
+     */
+    public static class Recovery {
+        private Path snapshot;
+        private long snapshotUsers;
+        private long snapshotBookings;
+        private long journalRecords;
+        private long millis;
+
+        /**
+         * @return The snapshot loaded, or null if the whole journal was replayed.
+         */
+        public Path getSnapshot() {
+            return snapshot;
+        }
+
+        public long getSnapshotUsers() {
+            return snapshotUsers;
+        }
+
+        public long getSnapshotBookings() {
+            return snapshotBookings;
+        }
+
+        /**
+         * @return The number of journal records replayed after the snapshot.
+         */
+        public long getJournalRecords() {
+            return journalRecords;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        @Override
+        public String toString() {
+            return "Recovery{" +
+                    "snapshot=" + snapshot +
+                    ", snapshotUsers=" + snapshotUsers +
+                    ", snapshotBookings=" + snapshotBookings +
+                    ", journalRecords=" + journalRecords +
+                    ", millis=" + millis +
+                    '}';
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package sofe3980;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import java.time.LocalDate;
 import org.springframework.format.annotation.DateTimeFormat;
 
@@ -8,11 +9,17 @@ public class User {
     private int userId;
     private String name;
     private String email;
+
+    // The password and personal details are read from requests but never
+    // written into responses, which embed the user in every booking
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
     private String password;
 
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
     @DateTimeFormat(pattern = "yyyy-MM-dd") // This line is added to specify the date format
     private LocalDate dob;
     
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
     private String passportNumber;
 
     // No-argument constructor for Spring MVC
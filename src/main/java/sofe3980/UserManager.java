@@ -1,36 +1,161 @@
 package sofe3980;
 
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
 import java.time.LocalDate;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+/**
+ * Stores registered users. Shared by all request threads, so users live in a
+ * concurrent map and IDs are handed out atomically. With a BookingJournal,
+ * registrations are journaled and recovered like bookings (see
+ * SnapshotManager).
+ *
+ * Passwords are never kept as given: a user's password field holds a salted
+ * PBKDF2 hash, so the journal and snapshots only ever contain hashes.
+ */
 @Service
 public class UserManager {
 
-    private Map<Integer, User> users; // Use HashMap to store users by their ID
-    private int nextUserId;
+    private final ConcurrentMap<Integer, User> users; // Users by their ID
+    private final AtomicInteger nextUserId;
+    private final BookingJournal journal; // null if users are only kept in memory
+
+    static final String HASH_PREFIX = "pbkdf2-sha256$";
+    static final int HASH_ITERATIONS = 210_000;
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    private static final SecureRandom RANDOM = new SecureRandom();
 
     public UserManager() {
-        this.users = new HashMap<>();
-        this.nextUserId = 1; // Start with user ID 1 then increment from here
+        this(null);
+    }
+
+    /**
+     * @param journal The journal to write registrations to, or null (or a
+     *                disabled journal) to keep users in memory only.
+     */
+    @Autowired
+    public UserManager(BookingJournal journal) {
+        this.users = new ConcurrentHashMap<>();
+        this.nextUserId = new AtomicInteger(1); // Start with user ID 1 then increment from here
+        this.journal = journal != null && journal.isEnabled() ? journal : null;
     }
 
     public User registerUser(String name, String email, String password, LocalDate dob, String passportNumber) {
-        int userId = nextUserId++; // Auto increment ID value
-        User newUser = new User(userId, name, email, password, dob, passportNumber);
-        users.put(userId, newUser); // Store user in the HashMap
+        int userId = nextUserId.getAndIncrement(); // Auto increment ID value
+        User newUser = new User(userId, name, email, hashPassword(password), dob, passportNumber);
+        if (journal != null) {
+            journal.awaitDurable(journal.logUser(newUser, () -> users.put(userId, newUser)));
+        } else {
+            users.put(userId, newUser); // Store user in the map
+        }
         return newUser;
     }
 
     public Optional<User> loginUser(String email, String password) {
         return users.values().stream()
-                    .filter(user -> user.getEmail().equals(email) && user.getPassword().equals(password))
+                    .filter(user -> user.getEmail().equals(email) && verifyPassword(password, user.getPassword()))
                     .findFirst();
     }
 
     public Optional<User> getUserById(int userId) {
         return Optional.ofNullable(users.get(userId)); // Retrieve the user by ID if it exists
     }
+
+    /**
+     * Puts back a user read from a snapshot or the journal. Only for recovery,
+     * before the manager is in use; resumeIds must be called afterwards.
+     *
+     * @param user The user.
+     */
+    void restoreUser(User user) {
+        String password = user.getPassword();
+        if (password != null && !password.startsWith(HASH_PREFIX)) {
+            user.setPassword(hashPassword(password)); // Written before passwords were hashed
+        }
+        users.put(user.getUserId(), user);
+    }
+
+    // Continues the ID sequence after the recovered users
+    void resumeIds() {
+        int maxUserId = 0;
+        for (int userId : users.keySet()) {
+            maxUserId = Math.max(maxUserId, userId);
+        }
+        nextUserId.set(maxUserId + 1);
+    }
+
+    /**
+     * @return A weakly consistent view of all users, for snapshots.
+     */
+    Collection<User> getAllUsers() {
+        return Collections.unmodifiableCollection(users.values());
+    }
+
+    /**
+     * @return The number of registered users.
+     */
+    public int getUserCount() {
+        return users.size();
+    }
+
+    /**
+     * Hashes a password with a random salt.
+     *
+     * @param password The password, or null.
+     * @return "pbkdf2-sha256$iterations$salt$hash" with the salt and hash in
+     *         Base64, or null for a null password.
+     */
+    static String hashPassword(String password) {
+        if (password == null) {
+            return null;
+        }
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        Base64.Encoder base64 = Base64.getEncoder();
+        return HASH_PREFIX + HASH_ITERATIONS + "$" + base64.encodeToString(salt) + "$"
+                + base64.encodeToString(pbkdf2(password, salt, HASH_ITERATIONS));
+    }
+
+    /**
+     * @param password The password to check, or null.
+     * @param stored   The hash made by hashPassword, or null.
+     * @return true if the password matches the hash.
+     */
+    static boolean verifyPassword(String password, String stored) {
+        if (password == null || stored == null || !stored.startsWith(HASH_PREFIX)) {
+            return false;
+        }
+        String[] parts = stored.substring(HASH_PREFIX.length()).split("\\$");
+        if (parts.length != 3) {
+            return false;
+        }
+        Base64.Decoder base64 = Base64.getDecoder();
+        byte[] expected = base64.decode(parts[2]);
+        byte[] actual = pbkdf2(password, base64.decode(parts[1]), Integer.parseInt(parts[0]));
+        return MessageDigest.isEqual(expected, actual); // Constant time
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("PBKDF2 is not available", e); // Every JRE has it
+        } finally {
+            spec.clearPassword();
+        }
+    }
 }
@@ -12,19 +12,26 @@ import org.springframework.test.web.servlet.MockMvc;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
 
 import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.hamcrest.Matchers.*;
@@ -68,6 +75,133 @@ public class APIControllerTest {
                 .andExpect(jsonPath("$[1].flightId", is(2))); // Expecting flightId 2
     }
 
+    @Test
+    public void testGetAvailableFlightsRendersNewList() throws Exception {
+        LocalDateTime departure = LocalDateTime.of(2025, 3, 12, 10, 0);
+        List<Flight> first = Collections.singletonList(
+                new Flight(1, departure, departure.plusHours(2), "New York", "Los Angeles", 300.00));
+        List<Flight> second = Arrays.asList(first.get(0),
+                new Flight(2, departure, departure.plusHours(3), "Chicago", "Miami", 200.00));
+
+        given(flightManager.getWeeklyFlights()).willReturn(first);
+        mockMvc.perform(get("/api/flights")).andExpect(jsonPath("$", hasSize(1)));
+        mockMvc.perform(get("/api/flights")).andExpect(jsonPath("$", hasSize(1)));
+
+        // A different list from FlightManager means the week changed
+        given(flightManager.getWeeklyFlights()).willReturn(second);
+        mockMvc.perform(get("/api/flights"))
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[1].flightId", is(2)));
+    }
+
+    @Test
+    public void testSuggestAirports() throws Exception {
+        given(flightManager.suggestLocations("new", 10)).willReturn(Arrays.asList("New Orleans", "New York"));
+
+        mockMvc.perform(get("/api/airports").param("prefix", "new"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[1]", is("New York")));
+
+        mockMvc.perform(get("/api/airports").param("prefix", "new").param("limit", "500"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testGetLowFareCalendar() throws Exception {
+        Map<LocalDate, Double> calendar = new TreeMap<>();
+        calendar.put(LocalDate.of(2025, 5, 10), 95.00);
+        calendar.put(LocalDate.of(2025, 5, 12), 150.00);
+        given(flightManager.getLowFareCalendar("New York", "Los Angeles", LocalDate.of(2025, 5, 1),
+                LocalDate.of(2025, 5, 31))).willReturn(calendar);
+
+        mockMvc.perform(get("/api/flights/calendar")
+                .param("from", "New York")
+                .param("to", "Los Angeles")
+                .param("month", "2025-05"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$['2025-05-10']", is(95.0)))
+                .andExpect(jsonPath("$['2025-05-12']", is(150.0)));
+    }
+
+    @Test
+    public void testSearchFlexibleDatesRejectsWideWindow() throws Exception {
+        mockMvc.perform(get("/api/flights/flexible")
+                .param("from", "New York")
+                .param("to", "Los Angeles")
+                .param("date", "2025-05-10")
+                .param("days", "60"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testSearchItinerariesWithCursor() throws Exception {
+        LocalDate date = LocalDate.of(2025, 3, 10);
+        Flight flight = new Flight(1, date.atTime(8, 0), date.atTime(10, 0), "New York", "Chicago", 150.00);
+        List<List<Flight>> fullPage = Collections.singletonList(Collections.singletonList(flight));
+        given(flightManager.searchItineraries(any(ItinerarySearch.class)))
+                .willReturn(new ItinerarySearchResult(fullPage, false,
+                        new ItineraryPosition(7200, 1, new int[] { 1 }, 0)));
+
+        String body = mockMvc.perform(get("/api/itineraries")
+                .param("from", "New York")
+                .param("to", "Chicago")
+                .param("date", "2025-03-10")
+                .param("sortBy", "DURATION")
+                .param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.itineraries", hasSize(1)))
+                .andExpect(jsonPath("$.itineraries[0][0].flightId", is(1)))
+                .andExpect(jsonPath("$.nextCursor", notNullValue()))
+                .andExpect(jsonPath("$.truncated", is(false)))
+                .andReturn().getResponse().getContentAsString();
+        String cursor = body.replaceAll(".*\"nextCursor\":\"([^\"]+)\".*", "$1");
+
+        // The cursor continues the same search after the last itinerary
+        // A search cut short at its expansion limit says so
+        given(flightManager.searchItineraries(any(ItinerarySearch.class)))
+                .willReturn(new ItinerarySearchResult(Collections.emptyList(), true));
+        mockMvc.perform(get("/api/itineraries")
+                .param("from", "New York")
+                .param("to", "Chicago")
+                .param("date", "2025-03-10")
+                .param("sortBy", "DURATION")
+                .param("limit", "1")
+                .param("cursor", cursor))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.itineraries", hasSize(0)))
+                .andExpect(jsonPath("$.nextCursor", nullValue()))
+                .andExpect(jsonPath("$.truncated", is(true)));
+        verify(flightManager).searchItineraries(argThat(search -> search.getAfter() != null
+                && Arrays.equals(search.getAfter().getFlightIds(), new int[] { 1 })));
+
+        // But not a different one
+        mockMvc.perform(get("/api/itineraries")
+                .param("from", "New York")
+                .param("to", "Chicago")
+                .param("date", "2025-03-10")
+                .param("sortBy", "PRICE")
+                .param("limit", "1")
+                .param("cursor", cursor))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testSearchFlights() throws Exception {
+        LocalDate departureDate = LocalDate.of(2024, 4, 4);
+        List<Flight> testFlights = Collections.singletonList(new Flight(1, departureDate.atTime(8, 0),
+                departureDate.atTime(13, 0), "New York", "Los Angeles", 300.00));
+        given(flightManager.searchFlights("New York", "Los Angeles", departureDate, null)).willReturn(testFlights);
+
+        mockMvc.perform(get("/api/flights/search")
+                .param("from", "New York")
+                .param("to", "Los Angeles")
+                .param("departureDate", "2024-04-04"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].flightId", is(1)));
+    }
+
     @Test
     public void testCreateBooking() throws Exception {
         // Setup test data for the booking
@@ -118,4 +252,135 @@ public class APIControllerTest {
                 .andExpect(jsonPath("$.bookingType", is(expectedBooking.getBookingType())));
     }
 
+    @Test
+    public void testGetBookingsByUserAndFlight() throws Exception {
+        User user = new User(1, "John Doe", "john.doe@example.com", "password", LocalDate.of(1990, 1, 1), "AB123456");
+        List<Flight> flights = Collections.singletonList(new Flight(42, LocalDateTime.now(),
+                LocalDateTime.now().plusHours(2), "New York", "Los Angeles", 300.00));
+        Booking booking = new Booking(7, user, flights, "one-way");
+        given(bookingManager.getBookingsByUser(1)).willReturn(Collections.singletonList(booking));
+        given(bookingManager.getActiveBookingsByFlight(42)).willReturn(Collections.singletonList(booking));
+
+        mockMvc.perform(get("/api/users/{userId}/bookings", 1))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].bookingId", is(7)));
+        mockMvc.perform(get("/api/flights/{id}/bookings", 42))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].user.userId", is(1)))
+                .andExpect(jsonPath("$[0].user.name", is("John Doe")))
+                .andExpect(jsonPath("$[0].user.password").doesNotExist())
+                .andExpect(jsonPath("$[0].user.dob").doesNotExist())
+                .andExpect(jsonPath("$[0].user.passportNumber").doesNotExist());
+        mockMvc.perform(get("/api/flights/{id}/bookings", 43))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(0)));
+    }
+
+    @Test
+    public void testDisruptFlight() throws Exception {
+        BulkFlightOperation operation = new BulkFlightOperation(5, 42, BulkFlightOperation.CANCEL, 300,
+                Collections.<Integer>emptyList());
+        given(bookingManager.cancelFlightBookings(42)).willReturn(operation);
+        given(bookingManager.getBulkOperation(5)).willReturn(Optional.of(operation));
+
+        mockMvc.perform(post("/api/flights/{id}/disruptions", 42).param("action", "cancel"))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", "/api/bulk-operations/5"))
+                .andExpect(jsonPath("$.totalBookings", is(300)))
+                .andExpect(jsonPath("$.state", is("running")));
+        mockMvc.perform(get("/api/bulk-operations/{id}", 5))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.flightId", is(42)));
+        mockMvc.perform(get("/api/bulk-operations/{id}", 6))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(post("/api/flights/{id}/disruptions", 42).param("action", "delay"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testCreateBookingsBatch() throws Exception {
+        User user = new User(1, "John Doe", "john.doe@example.com", "password", LocalDate.of(1990, 1, 1), "AB123456");
+        // Rejects requests without a user, creates the rest
+        given(bookingManager.createBookings(anyList())).willAnswer(invocation -> {
+            List<Booking> created = new ArrayList<>();
+            for (Booking request : invocation.<List<Booking>>getArgument(0)) {
+                created.add(request.getUser() == null ? null
+                        : new Booking(created.size() + 1, request.getUser(), request.getFlights(),
+                                request.getBookingType()));
+            }
+            return created;
+        });
+
+        String flight = "{ \"flightId\": 1, \"origin\": \"New York\", \"destination\": \"Los Angeles\" }";
+        String payload = "[ { \"user\": { \"userId\": 1, \"name\": \"John Doe\" }, \"flights\": [" + flight
+                + "], \"bookingType\": \"one-way\" }, { \"flights\": [" + flight
+                + "], \"bookingType\": \"one-way\" } ]";
+        mockMvc.perform(post("/api/bookings/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(payload))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].index", is(0)))
+                .andExpect(jsonPath("$[0].status", is("created")))
+                .andExpect(jsonPath("$[0].booking.bookingId", is(1)))
+                .andExpect(jsonPath("$[0].booking.user.userId", is(user.getUserId())))
+                .andExpect(jsonPath("$[1].index", is(1)))
+                .andExpect(jsonPath("$[1].status", is("rejected")));
+
+        // A malformed element ends the batch; the bookings before it are still reported
+        mockMvc.perform(post("/api/bookings/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[ { \"user\": { \"userId\": 1 }, \"flights\": [" + flight
+                        + "], \"bookingType\": \"one-way\" }, { \"flights\": 5 } ]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].status", is("created")))
+                .andExpect(jsonPath("$[1].status", is("error")));
+
+        // Elements that are not objects are reported and skipped; the rest still run
+        String booking = "{ \"user\": { \"userId\": 1 }, \"flights\": [" + flight
+                + "], \"bookingType\": \"one-way\" }";
+        mockMvc.perform(post("/api/bookings/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[ " + booking + ", 5, [ " + booking + " ], " + booking + " ]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(4)))
+                .andExpect(jsonPath("$[0].index", is(0)))
+                .andExpect(jsonPath("$[0].status", is("created")))
+                .andExpect(jsonPath("$[1].index", is(1)))
+                .andExpect(jsonPath("$[1].status", is("error")))
+                .andExpect(jsonPath("$[2].index", is(2)))
+                .andExpect(jsonPath("$[2].status", is("error")))
+                .andExpect(jsonPath("$[3].index", is(3)))
+                .andExpect(jsonPath("$[3].status", is("created")));
+
+        mockMvc.perform(post("/api/bookings/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{ \"bookingType\": \"one-way\" }"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testHoldSeatsValidatesRequest() throws Exception {
+        String[] bodies = { "[]", "[1, null]", "null" };
+        for (String body : bodies) {
+            mockMvc.perform(post("/api/holds").contentType(MediaType.APPLICATION_JSON).content(body))
+                    .andExpect(status().isBadRequest());
+        }
+        // 18446744073709552 seconds used to overflow to a valid 384 milliseconds
+        String[] durations = { "0", "-5", String.valueOf(APIController.MAX_HOLD_SECONDS + 1), "18446744073709552" };
+        for (String seconds : durations) {
+            mockMvc.perform(post("/api/holds").param("seconds", seconds)
+                    .contentType(MediaType.APPLICATION_JSON).content("[1]"))
+                    .andExpect(status().isBadRequest());
+        }
+        verify(bookingManager, never()).holdSeats(anyList(), anyLong());
+
+        mockMvc.perform(post("/api/holds").param("seconds", "60")
+                .contentType(MediaType.APPLICATION_JSON).content("[1]"))
+                .andExpect(status().isConflict());
+        verify(bookingManager).holdSeats(Arrays.asList(1), 60000L);
+    }
 }
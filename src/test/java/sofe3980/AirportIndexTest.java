@@ -0,0 +1,42 @@
+package sofe3980;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class AirportIndexTest {
+
+    private final AirportIndex airports = AirportIndex.EMPTY
+            .with(Arrays.asList("New York", "Newark", "Los Angeles", "Chicago", "New Orleans", "york"))
+            .with(Arrays.asList("NEW YORK", "Salt Lake City"));
+
+    @Test
+    public void testComplete() {
+        assertEquals(7, airports.size());
+        assertEquals(Arrays.asList("New Orleans", "New York", "Newark"), airports.complete("NEW", 10));
+        assertEquals(Arrays.asList("New York"), airports.complete(" new y", 10));
+        assertEquals(Arrays.asList("New Orleans", "New York"), airports.complete("new", 2));
+        // Later words match too, whole names first
+        assertEquals(Arrays.asList("york", "New York"), airports.complete("york", 10));
+        assertEquals(Arrays.asList("Salt Lake City"), airports.complete("lake", 10));
+        assertTrue(airports.complete("x", 10).isEmpty());
+        assertTrue(airports.complete("  ", 10).isEmpty());
+    }
+
+    @Test
+    public void testResolve() {
+        assertEquals("New York", airports.resolve("  new york "));
+        assertEquals("Chicago", airports.resolve("chic"));
+        assertNull("Ambiguous", airports.resolve("new"));
+        assertNull(airports.resolve("Boston"));
+        assertTrue(airports.contains("LOS ANGELES"));
+    }
+
+    @Test
+    public void testWithKnownLocationsKeepsIndex() {
+        List<String> known = Arrays.asList("chicago", "Los Angeles");
+        assertSame(airports, airports.with(known));
+    }
+}
@@ -0,0 +1,79 @@
+package sofe3980;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measures journaled booking commits per second and p99 commit latency for
+ * several thread counts and group commit delays, with fsync on. Not part of the
+ * unit test suite; run it after "mvn test-compile" with:
+ *
+ * java -cp target/classes:target/test-classes sofe3980.BookingJournalBenchmark [bookingsPerThread] [directory]
+ *
+ * The journal files go to a temporary directory unless one is given; use a
+ * directory on the disk the journal will live on, since fsync cost dominates.
+ */
+public class BookingJournalBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int bookings = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        Path directory = args.length > 1 ? Files.createDirectories(Paths.get(args[1]))
+                : Files.createTempDirectory("booking-journal");
+        User user = new User(1, "John Doe", "johndoe@example.com", "password", LocalDate.of(1990, 1, 1), "AB1234567");
+        List<Flight> flights = Arrays.asList(
+                new Flight(1, LocalDateTime.of(2025, 4, 10, 8, 0), LocalDateTime.of(2025, 4, 10, 10, 0), "CityA",
+                        "CityB", 200.00));
+
+        for (long delayMicros : new long[] { 0, 100, 1000 }) {
+            for (int threads = 1; threads <= 64; threads *= 4) {
+                Path path = directory.resolve("bench-" + delayMicros + "-" + threads + ".journal");
+                BookingJournal journal = new BookingJournal(path, true, delayMicros);
+                BookingManager bookingManager = new BookingManager(null, Clock.systemDefaultZone(), journal);
+                new SnapshotManager(bookingManager, new UserManager(journal), journal, null).recover();
+                double seconds = run(bookingManager, user, flights, threads, bookings);
+                Map<String, Number> metrics = journal.getMetrics();
+                System.out.printf("delay %5d us, %2d threads: %,10.0f commits/s, p99 %,8d us, %6.1f records/fsync%n",
+                        delayMicros, threads, threads * bookings / seconds, metrics.get("journalP99LatencyMicros"),
+                        metrics.get("journalRecordsPerGroup").doubleValue());
+                journal.close();
+                Files.delete(path);
+            }
+        }
+    }
+
+    private static double run(BookingManager bookingManager, User user, List<Flight> flights, int threads,
+            int bookingsPerThread) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < bookingsPerThread; i++) {
+                    bookingManager.createBooking(user, flights, "one-way");
+                }
+                return null;
+            }));
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get();
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        executor.shutdown();
+        return seconds;
+    }
+}
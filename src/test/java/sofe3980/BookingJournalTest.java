@@ -0,0 +1,345 @@
+package sofe3980;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class BookingJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final User user = new User(7, "John Doe", "johndoe@example.com", "password", LocalDate.of(1990, 1, 1),
+            "AB1234567");
+    private final List<Flight> flights = Arrays.asList(
+            new Flight(1, LocalDateTime.of(2024, 4, 10, 8, 0), LocalDateTime.of(2024, 4, 10, 10, 0), "CityA",
+                    "CityB", 200.00),
+            new Flight(2, LocalDateTime.of(2024, 4, 12, 15, 0), LocalDateTime.of(2024, 4, 12, 17, 0), "CityB",
+                    "CityA", 250.00));
+
+    private BookingManager open(BookingJournal journal) throws Exception {
+        BookingManager bookingManager = new BookingManager(null, Clock.systemDefaultZone(), journal);
+        if (journal.isEnabled()) {
+            new SnapshotManager(bookingManager, new UserManager(journal), journal, null).recover();
+        }
+        return bookingManager;
+    }
+
+    @Test
+    public void testBookingsSurviveRestart() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("bookings.journal");
+        BookingJournal journal = new BookingJournal(path, true, 0);
+        BookingManager bookingManager = open(journal);
+        Booking first = bookingManager.createBooking(user, flights, "round-trip");
+        Booking second = bookingManager.createBooking(user, flights.subList(0, 1), "one-way");
+        assertTrue(bookingManager.cancelBooking(second.getBookingId()));
+        journal.close();
+
+        BookingJournal reopened = new BookingJournal(path, true, 0);
+        BookingManager recovered = open(reopened);
+        assertEquals(2, recovered.getBookingCount());
+        Booking restored = recovered.getBookingById(first.getBookingId()).get();
+        assertEquals("round-trip", restored.getBookingType());
+        assertEquals("active", restored.getStatus());
+        assertEquals(first.getBookingTime(), restored.getBookingTime());
+        assertEquals(user.getEmail(), restored.getUser().getEmail());
+        assertNull("Passwords are not journaled", restored.getUser().getPassword());
+        assertEquals(2, restored.getFlights().size());
+        assertEquals("CityB", restored.getFlights().get(1).getOrigin());
+        assertEquals(LocalDateTime.of(2024, 4, 12, 17, 0), restored.getFlights().get(1).getArrivalTime());
+        assertEquals("canceled", recovered.getBookingById(second.getBookingId()).get().getStatus());
+
+        // New bookings continue the ID sequence
+        Booking third = recovered.createBooking(user, flights, "round-trip");
+        assertEquals(second.getBookingId() + 1, third.getBookingId());
+        reopened.close();
+    }
+
+    @Test
+    public void testTornRecordIsDiscarded() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("bookings.journal");
+        BookingJournal journal = new BookingJournal(path, false, 0);
+        BookingManager bookingManager = open(journal);
+        bookingManager.createBooking(user, flights, "round-trip");
+        journal.close();
+        long validLength = Files.size(path);
+
+        // A crash in the middle of a write leaves part of a record behind
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            file.write(ByteBuffer.wrap(new byte[] { 0, 0, 0, 40, 1, 2, 3 }));
+        }
+
+        BookingJournal reopened = new BookingJournal(path, false, 0);
+        BookingManager recovered = open(reopened);
+        assertEquals(1, recovered.getBookingCount());
+        assertEquals(validLength, Files.size(path));
+        recovered.createBooking(user, flights, "round-trip");
+        reopened.close();
+
+        BookingJournal again = new BookingJournal(path, false, 0);
+        assertEquals(2, open(again).getBookingCount());
+        again.close();
+    }
+
+    @Test
+    public void testConcurrentBookingsShareGroupCommits() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("bookings.journal");
+        BookingJournal journal = new BookingJournal(path, true, 200);
+        BookingManager bookingManager = open(journal);
+        int threads = 8;
+        int bookingsPerThread = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            results.add(executor.submit(() -> {
+                for (int i = 0; i < bookingsPerThread; i++) {
+                    Booking booking = bookingManager.createBooking(user, flights, "round-trip");
+                    if (i % 2 == 0) {
+                        assertTrue(bookingManager.cancelBooking(booking.getBookingId()));
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+        executor.shutdown();
+
+        Map<String, Number> metrics = bookingManager.getJournalMetrics();
+        long records = metrics.get("journalRecords").longValue();
+        assertEquals(threads * bookingsPerThread * 3 / 2, records);
+        assertTrue("Records should be grouped", metrics.get("journalGroupCommits").longValue() < records);
+        assertTrue(metrics.get("journalP99LatencyMicros").longValue() > 0);
+        journal.close();
+
+        BookingJournal reopened = new BookingJournal(path, true, 0);
+        BookingManager recovered = open(reopened);
+        assertEquals(threads * bookingsPerThread, recovered.getBookingCount());
+        int canceled = 0;
+        for (int id = 1; id <= threads * bookingsPerThread; id++) {
+            if ("canceled".equals(recovered.getBookingById(id).get().getStatus())) {
+                canceled++;
+            }
+        }
+        assertEquals(threads * bookingsPerThread / 2, canceled);
+        reopened.close();
+    }
+
+    @Test
+    public void testBatchSharesOneCommit() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("bookings.journal");
+        BookingJournal journal = new BookingJournal(path, true, 0);
+        BookingManager bookingManager = open(journal);
+        List<Booking> requests = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            requests.add(new Booking(0, user, flights, "round-trip"));
+        }
+        bookingManager.createBookings(requests);
+
+        Map<String, Number> metrics = bookingManager.getJournalMetrics();
+        assertEquals(500, metrics.get("journalRecords").longValue());
+        assertTrue("The batch waits for the journal once", metrics.get("journalGroupCommits").longValue() < 50);
+        journal.close();
+
+        BookingJournal reopened = new BookingJournal(path, true, 0);
+        assertEquals(500, open(reopened).getBookingCount());
+        reopened.close();
+    }
+
+    // Fails every write once failing is set, like a full or broken disk. With
+    // failAfterWrite the records reach the file first, like a failed fsync.
+    private static class FailingJournal extends BookingJournal {
+        volatile boolean failing;
+        volatile boolean failAfterWrite;
+
+        FailingJournal(Path path) {
+            super(path, false, 0);
+        }
+
+        @Override
+        void write(ByteBuffer[] buffers, long bytes) throws IOException {
+            if (failing && !failAfterWrite) {
+                throw new IOException("No space left on device");
+            }
+            super.write(buffers, bytes);
+            if (failing) {
+                throw new IOException("Input/output error");
+            }
+        }
+    }
+
+    @Test
+    public void testFailedWriteLeavesNothingVisible() throws Exception {
+        FailingJournal journal = new FailingJournal(folder.getRoot().toPath().resolve("bookings.journal"));
+        BookingManager bookingManager = open(journal);
+        Booking kept = bookingManager.createBooking(user, flights, "round-trip");
+        journal.failing = true;
+
+        try {
+            bookingManager.createBooking(user, flights, "round-trip");
+            fail("The booking should fail with the journal");
+        } catch (UncheckedIOException e) {
+            // Expected
+        }
+        assertEquals(1, bookingManager.getBookingCount());
+        assertFalse(bookingManager.getBookingById(kept.getBookingId() + 1).isPresent());
+        assertEquals(Arrays.asList(kept), bookingManager.getBookingsByUser(user.getUserId()));
+        assertEquals(Arrays.asList(kept), bookingManager.getActiveBookingsByFlight(1));
+        journal.close();
+    }
+
+    @Test
+    public void testRecordsOfFailedWriteAreNotRecovered() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("bookings.journal");
+        FailingJournal journal = new FailingJournal(path);
+        BookingManager bookingManager = open(journal);
+        Booking kept = bookingManager.createBooking(user, flights, "round-trip");
+        long durableBytes = journal.getDurablePosition();
+        journal.failing = true;
+        journal.failAfterWrite = true;
+
+        try {
+            bookingManager.createBooking(user, flights, "round-trip");
+            fail("The booking should fail with the journal");
+        } catch (UncheckedIOException e) {
+            // Expected
+        }
+        journal.close();
+        assertEquals(durableBytes, Files.size(path));
+
+        BookingJournal reopened = new BookingJournal(path, true, 0);
+        BookingManager recovered = open(reopened);
+        assertEquals(1, recovered.getBookingCount());
+        assertTrue(recovered.getBookingById(kept.getBookingId()).isPresent());
+        assertFalse(recovered.getBookingById(kept.getBookingId() + 1).isPresent());
+        reopened.close();
+    }
+
+    @Test
+    public void testFailedStatusChangeIsNotApplied() throws Exception {
+        FailingJournal journal = new FailingJournal(folder.getRoot().toPath().resolve("bookings.journal"));
+        BookingManager bookingManager = open(journal);
+        Booking booking = bookingManager.createBooking(user, flights, "round-trip");
+        journal.failing = true;
+
+        try {
+            bookingManager.cancelBooking(booking.getBookingId());
+            fail("The cancellation should fail with the journal");
+        } catch (UncheckedIOException e) {
+            // Expected
+        }
+        assertEquals("active", bookingManager.getBookingById(booking.getBookingId()).get().getStatus());
+        assertEquals(Arrays.asList(booking), bookingManager.getActiveBookingsByFlight(1));
+        journal.close();
+    }
+
+    @Test(timeout = 30000)
+    public void testFailedEffectStopsJournal() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("bookings.journal");
+        BookingJournal journal = new BookingJournal(path, false, 0);
+        BookingManager bookingManager = open(journal);
+        Booking booking = bookingManager.createBooking(user, flights, "round-trip");
+
+        long sequence = journal.logStatus(booking.getBookingId(), "canceled", () -> {
+            throw new IllegalStateException("Effect failed");
+        });
+        try {
+            journal.awaitDurable(sequence);
+            fail("The writer should see the failed effect");
+        } catch (UncheckedIOException e) {
+            assertEquals("Effect failed", e.getCause().getCause().getMessage());
+        }
+        try {
+            // Later writers fail too instead of waiting for a committer that is gone
+            bookingManager.createBooking(user, flights, "round-trip");
+            fail("The booking should fail with the journal");
+        } catch (UncheckedIOException e) {
+            // Expected
+        }
+        journal.close();
+
+        // The cancellation its writer saw fail is not recovered
+        BookingJournal reopened = new BookingJournal(path, true, 0);
+        assertEquals("active", open(reopened).getBookingById(booking.getBookingId()).get().getStatus());
+        reopened.close();
+    }
+
+    @Test
+    public void testFailedBulkRebookIsUndone() throws Exception {
+        FlightManager flightManager = new FlightManager();
+        // Preset flight 1 is New York to Los Angeles, 2024-04-04 00:00 to 05:00
+        Flight disrupted = flightManager.getFlightById(1).get();
+        flightManager.addFlight(new Flight(101, LocalDateTime.of(2024, 4, 4, 12, 0),
+                LocalDateTime.of(2024, 4, 4, 17, 0), "New York", "Los Angeles", 320.00));
+        int freeSeats = flightManager.getAvailableSeats(101);
+
+        FailingJournal journal = new FailingJournal(folder.getRoot().toPath().resolve("bookings.journal"));
+        BookingManager bookingManager = new BookingManager(flightManager, Clock.systemDefaultZone(), journal);
+        new SnapshotManager(bookingManager, new UserManager(journal), journal, null).recover();
+        List<Booking> bookings = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            bookings.add(bookingManager.createBooking(user, Arrays.asList(new Flight(disrupted)), "one-way"));
+        }
+        journal.failing = true;
+
+        BulkFlightOperation operation = bookingManager.rebookFlightBookings(1);
+        assertTrue(operation.awaitCompletion(30, TimeUnit.SECONDS));
+        assertEquals("failed", operation.getState());
+        assertEquals(3, operation.getFailedBookings());
+        assertEquals(0, operation.getRebookedBookings());
+        assertTrue(operation.getError(), operation.getError().contains("No space left on device"));
+        assertEquals("Reserved replacement seats should be released", freeSeats,
+                flightManager.getAvailableSeats(101));
+        assertEquals(bookings, bookingManager.getActiveBookingsByFlight(1));
+        try {
+            // Fails on the journal instead of returning false for a booking still
+            // marked as changing
+            bookingManager.cancelBooking(bookings.get(0).getBookingId());
+            fail("The cancellation should fail with the journal");
+        } catch (UncheckedIOException e) {
+            // Expected
+        }
+        journal.close();
+    }
+
+    @Test
+    public void testDisabledJournalKeepsBookingsInMemory() throws Exception {
+        BookingManager bookingManager = open(new BookingJournal("", true, 0));
+        assertNotNull(bookingManager.createBooking(user, flights, "round-trip"));
+        assertTrue(bookingManager.getJournalMetrics().isEmpty());
+    }
+
+    @Test
+    public void testLatencyBuckets() {
+        for (long micros : new long[] { 0, 1, 15, 16, 17, 100, 1000, 123456, 10_000_000 }) {
+            int bucket = BookingJournal.latencyBucket(micros);
+            long limit = BookingJournal.latencyBucketLimit(bucket);
+            assertTrue(micros + " <= " + limit, micros <= limit);
+            assertTrue("Buckets are at most 12.5% wide", limit <= micros + micros / 8 + 1);
+            if (bucket > 0) {
+                assertTrue(BookingJournal.latencyBucketLimit(bucket - 1) < micros);
+            }
+        }
+    }
+}
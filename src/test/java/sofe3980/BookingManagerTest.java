@@ -6,10 +6,20 @@ import static org.junit.Assert.*;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 public class BookingManagerTest {
 
@@ -73,6 +83,123 @@ public class BookingManagerTest {
         assertEquals("Canceled booking should be marked as canceled", "canceled", canceledBooking.get().getStatus());
     }
 
+    @Test
+    public void testConcurrentCreateAndCancel() throws Exception {
+        int threads = 32;
+        int bookingsPerThread = 2_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<Booking>>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                List<Booking> created = new ArrayList<>();
+                for (int i = 0; i < bookingsPerThread; i++) {
+                    created.add(bookingManager.createBooking(mockUser, mockFlights, "one-way"));
+                }
+                return created;
+            }));
+        }
+        start.countDown();
+
+        Set<Integer> ids = new HashSet<>();
+        for (Future<List<Booking>> result : results) {
+            for (Booking booking : result.get(60, TimeUnit.SECONDS)) {
+                assertTrue("Duplicate booking ID " + booking.getBookingId(), ids.add(booking.getBookingId()));
+                assertSame(booking, bookingManager.getBookingById(booking.getBookingId()).get());
+            }
+        }
+        assertEquals("No booking should be lost", threads * bookingsPerThread, bookingManager.getBookingCount());
+
+        // Every thread cancels every booking; each is canceled exactly once
+        CountDownLatch cancelStart = new CountDownLatch(1);
+        List<Future<Integer>> cancellations = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            cancellations.add(executor.submit(() -> {
+                cancelStart.await();
+                int canceled = 0;
+                for (int id : ids) {
+                    if (bookingManager.cancelBooking(id)) {
+                        canceled++;
+                    }
+                }
+                return canceled;
+            }));
+        }
+        cancelStart.countDown();
+        int canceled = 0;
+        for (Future<Integer> result : cancellations) {
+            canceled += result.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        assertEquals(ids.size(), canceled);
+        assertFalse(bookingManager.transitionStatus(ids.iterator().next(), "active", "canceled"));
+    }
+
+    @Test
+    public void testSeatHolds() {
+        MutableClock clock = new MutableClock(LocalDateTime.of(2025, 5, 1, 12, 0).toInstant(ZoneOffset.UTC));
+        FlightManager flightManager = new FlightManager();
+        BookingManager holdingManager = new BookingManager(flightManager, clock);
+        List<Integer> roundTrip = Arrays.asList(1, 2); // The preset New York/Los Angeles flights
+
+        SeatHold hold = holdingManager.holdSeats(roundTrip, 60_000);
+        assertNotNull(hold);
+        assertEquals(2, hold.getSeatNumbers().size());
+        assertEquals(LocalDateTime.of(2025, 5, 1, 12, 1), hold.getExpiresAt());
+        assertEquals(179, flightManager.getAvailableSeats(1));
+        assertTrue(holdingManager.getHold(hold.getHoldId()).isPresent());
+
+        // An expired hold gives its seats back
+        clock.instant = clock.instant.plusSeconds(61);
+        assertFalse(holdingManager.getHold(hold.getHoldId()).isPresent());
+        assertEquals(180, flightManager.getAvailableSeats(1));
+        assertNull(holdingManager.confirmHold(hold.getHoldId()));
+
+        // A confirmed hold keeps them
+        SeatHold confirmed = holdingManager.holdSeats(roundTrip, 60_000);
+        assertSame(confirmed, holdingManager.confirmHold(confirmed.getHoldId()));
+        clock.instant = clock.instant.plusSeconds(3600);
+        assertEquals(0, holdingManager.expireHolds());
+        assertEquals(179, flightManager.getAvailableSeats(2));
+
+        // A released hold frees them at once
+        SeatHold released = holdingManager.holdSeats(Arrays.asList(1), 60_000);
+        assertTrue(holdingManager.releaseHold(released.getHoldId()));
+        assertFalse(holdingManager.releaseHold(released.getHoldId()));
+        assertEquals(179, flightManager.getAvailableSeats(1));
+
+        // No partial holds when a flight is missing
+        assertNull(holdingManager.holdSeats(Arrays.asList(1, -1), 60_000));
+        assertEquals(179, flightManager.getAvailableSeats(1));
+        assertEquals(0, holdingManager.getOutstandingHoldCount());
+    }
+
+    @Test
+    public void testManyOutstandingHolds() {
+        MutableClock clock = new MutableClock(LocalDateTime.of(2025, 5, 1, 12, 0).toInstant(ZoneOffset.UTC));
+        FlightManager flightManager = new FlightManager();
+        List<Flight> flights = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            flights.add(new Flight(100 + i, LocalDateTime.of(2025, 6, 1, 9, 0), LocalDateTime.of(2025, 6, 1, 11, 0),
+                    "CityA", "CityB", 100.00));
+        }
+        flightManager.addFlights(flights);
+        BookingManager holdingManager = new BookingManager(flightManager, clock);
+
+        // 180,000 holds with deadlines spread over 20 minutes, more than a turn of the wheel
+        for (int i = 0; i < 180_000; i++) {
+            assertNotNull(holdingManager.holdSeats(Arrays.asList(100 + i % 1_000), 1_000 + (i % 1_200) * 1_000L));
+        }
+        assertEquals(0, flightManager.getAvailableSeats(100));
+        clock.instant = clock.instant.plusSeconds(600);
+        assertEquals(90_000, holdingManager.expireHolds());
+        assertEquals(90, flightManager.getAvailableSeats(100));
+        clock.instant = clock.instant.plusSeconds(600);
+        assertEquals(90_000, holdingManager.expireHolds());
+        assertEquals(180, flightManager.getAvailableSeats(100));
+    }
+
     @Test
     public void testGetBookingById() {
         // Step 1: Create a booking
@@ -95,6 +222,214 @@ public class BookingManagerTest {
                 retrievedBooking.getBookingType());
     }
 
+    @Test
+    public void testBookingsByUserAndFlight() {
+        User otherUser = new User(2, "Jane Roe", "janeroe@example.com", "secret", LocalDate.of(1992, 2, 2),
+                "CD7654321");
+        Booking first = bookingManager.createBooking(mockUser, mockFlights, "one-way");
+        Booking second = bookingManager.createBooking(mockUser, mockFlights.subList(1, 2), "one-way");
+        Booking other = bookingManager.createBooking(otherUser, mockFlights.subList(0, 1), "one-way");
+
+        assertEquals(Arrays.asList(first, second), bookingManager.getBookingsByUser(1));
+        assertEquals(Arrays.asList(other), bookingManager.getBookingsByUser(2));
+        assertTrue(bookingManager.getBookingsByUser(3).isEmpty());
+        assertEquals(Arrays.asList(first, other), bookingManager.getActiveBookingsByFlight(1));
+        assertEquals(Arrays.asList(first, second), bookingManager.getActiveBookingsByFlight(2));
+
+        // Canceled bookings leave the flight index but stay in the user's list
+        assertTrue(bookingManager.cancelBooking(first.getBookingId()));
+        assertEquals(Arrays.asList(other), bookingManager.getActiveBookingsByFlight(1));
+        assertEquals(Arrays.asList(second), bookingManager.getActiveBookingsByFlight(2));
+        assertEquals(Arrays.asList(first, second), bookingManager.getBookingsByUser(1));
+    }
+
+    @Test
+    public void testIndexesStayConsistentUnderConcurrentWrites() throws Exception {
+        int threads = 8;
+        int bookingsPerThread = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            User user = new User(100 + t, "User " + t, "user" + t + "@example.com", "password",
+                    LocalDate.of(1990, 1, 1), "P" + t);
+            results.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < bookingsPerThread; i++) {
+                    Booking booking = bookingManager.createBooking(user, mockFlights, "one-way");
+                    if (i % 2 == 0) {
+                        bookingManager.cancelBooking(booking.getBookingId());
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        for (int t = 0; t < threads; t++) {
+            assertEquals(bookingsPerThread, bookingManager.getBookingsByUser(100 + t).size());
+        }
+        List<Booking> onFlight = bookingManager.getActiveBookingsByFlight(1);
+        assertEquals(threads * bookingsPerThread / 2, onFlight.size());
+        for (Booking booking : onFlight) {
+            assertEquals("active", booking.getStatus());
+        }
+        assertEquals(onFlight, bookingManager.getActiveBookingsByFlight(2));
+    }
+
+    @Test
+    public void testCreateBookings() {
+        List<Flight> cyclic = Arrays.asList(mockFlights.get(0), mockFlights.get(1), new Flight(3,
+                LocalDateTime.of(2024, 4, 13, 8, 0), LocalDateTime.of(2024, 4, 13, 10, 0), "CityC", "CityB", 150.00));
+        List<Booking> requests = Arrays.asList(
+                new Booking(0, mockUser, mockFlights, "one-way"),
+                new Booking(0, mockUser, cyclic, "one-way"),
+                new Booking(0, null, mockFlights, "one-way"),
+                new Booking(0, mockUser, Collections.<Flight>emptyList(), "one-way"),
+                new Booking(0, mockUser, mockFlights.subList(0, 1), "one-way"));
+
+        List<Booking> created = bookingManager.createBookings(requests);
+        assertEquals(requests.size(), created.size());
+        assertEquals(1, created.get(0).getBookingId());
+        assertEquals(mockFlights, created.get(0).getFlights());
+        assertNull("Cyclic itinerary", created.get(1));
+        assertNull("No user", created.get(2));
+        assertNull("No flights", created.get(3));
+        assertEquals(2, created.get(4).getBookingId());
+        assertEquals(Arrays.asList(created.get(0), created.get(4)), bookingManager.getBookingsByUser(1));
+        assertEquals(2, bookingManager.getActiveBookingsByFlight(1).size());
+
+        // A single booking is checked by the same rule
+        for (int i = 1; i <= 3; i++) {
+            Booking request = requests.get(i);
+            assertNull(bookingManager.createBooking(request.getUser(), request.getFlights(), request.getBookingType()));
+        }
+        assertEquals(3, bookingManager.createBooking(mockUser, mockFlights, "one-way").getBookingId());
+    }
+
+    @Test
+    public void testBulkCancelFlight() throws Exception {
+        List<Integer> bookingIds = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            bookingIds.add(bookingManager.createBooking(mockUser, mockFlights, "one-way").getBookingId());
+        }
+        bookingManager.cancelBooking(bookingIds.get(0)); // Already canceled, not part of the operation
+        Booking otherFlight = bookingManager.createBooking(mockUser, mockFlights.subList(1, 2), "one-way");
+
+        BulkFlightOperation operation = bookingManager.cancelFlightBookings(1);
+        assertEquals(299, operation.getTotalBookings());
+        assertTrue(operation.awaitCompletion(30, TimeUnit.SECONDS));
+        assertEquals("completed", operation.getState());
+        assertEquals(299, operation.getCanceledBookings());
+        assertEquals(1.0, operation.getProgress(), 0.0);
+        assertSame(operation, bookingManager.getBulkOperation(operation.getOperationId()).get());
+
+        assertTrue(bookingManager.getActiveBookingsByFlight(1).isEmpty());
+        for (int bookingId : bookingIds) {
+            assertEquals("canceled", bookingManager.getBookingById(bookingId).get().getStatus());
+        }
+        assertEquals(Arrays.asList(otherFlight), bookingManager.getActiveBookingsByFlight(2));
+    }
+
+    @Test
+    public void testBulkRebookFlight() throws Exception {
+        FlightManager flightManager = new FlightManager();
+        BookingManager rebookingManager = new BookingManager(flightManager);
+        // Preset flight 1 is New York to Los Angeles, 2024-04-04 00:00 to 05:00
+        Flight disrupted = flightManager.getFlightById(1).get();
+        flightManager.addFlight(new Flight(101, LocalDateTime.of(2024, 4, 4, 12, 0), LocalDateTime.of(2024, 4, 4, 17, 0),
+                "New York", "Los Angeles", 320.00));
+        flightManager.addFlight(new Flight(102, LocalDateTime.of(2024, 4, 5, 9, 0), LocalDateTime.of(2024, 4, 5, 14, 0),
+                "New York", "Los Angeles", 310.00));
+        flightManager.addFlight(new Flight(103, LocalDateTime.of(2024, 4, 3, 9, 0), LocalDateTime.of(2024, 4, 3, 14, 0),
+                "New York", "Los Angeles", 290.00)); // Departs before the disrupted flight
+        Flight connection = new Flight(104, LocalDateTime.of(2024, 4, 4, 10, 0), LocalDateTime.of(2024, 4, 4, 14, 0),
+                "Los Angeles", "Miami", 150.00);
+
+        for (int i = 0; i < 200; i++) {
+            rebookingManager.createBooking(mockUser, Arrays.asList(new Flight(disrupted)), "one-way");
+        }
+        // No alternative arrives in time for the connection, so this one is canceled
+        Booking connecting = rebookingManager.createBooking(mockUser, Arrays.asList(new Flight(disrupted), connection),
+                "one-way");
+
+        BulkFlightOperation operation = rebookingManager.rebookFlightBookings(1);
+        assertEquals(Arrays.asList(101, 102), operation.getAlternativeFlightIds());
+        assertTrue(operation.awaitCompletion(30, TimeUnit.SECONDS));
+        assertEquals("completed", operation.getState());
+        assertEquals(200, operation.getRebookedBookings());
+        assertEquals(1, operation.getCanceledBookings());
+
+        // The earlier alternative fills up first, the rest go to the next one
+        assertEquals(180, rebookingManager.getActiveBookingsByFlight(101).size());
+        assertEquals(20, rebookingManager.getActiveBookingsByFlight(102).size());
+        assertEquals(0, flightManager.getAvailableSeats(101));
+        assertTrue(rebookingManager.getActiveBookingsByFlight(1).isEmpty());
+        assertEquals("canceled", rebookingManager.getBookingById(connecting.getBookingId()).get().getStatus());
+
+        // The new bookings take the IDs after the existing ones, with no gaps
+        assertEquals(202, (int) Collections.min(operation.getRebookings().values()));
+        assertEquals(401, (int) Collections.max(operation.getRebookings().values()));
+        for (Map.Entry<Integer, Integer> rebooking : operation.getRebookings().entrySet()) {
+            assertEquals("rebooked", rebookingManager.getBookingById(rebooking.getKey()).get().getStatus());
+            Booking newBooking = rebookingManager.getBookingById(rebooking.getValue()).get();
+            assertEquals("active", newBooking.getStatus());
+            assertEquals(mockUser, newBooking.getUser());
+        }
+    }
+
+    @Test
+    public void testCancelReleasesSeats() {
+        FlightManager flightManager = new FlightManager();
+        BookingManager seatedManager = new BookingManager(flightManager);
+        // Preset flights 1 and 2 are New York to Los Angeles and back
+        List<Flight> flights = Arrays.asList(flightManager.getFlightById(1).get(),
+                flightManager.getFlightById(2).get());
+        int capacity = flightManager.getAvailableSeats(1);
+        List<String> seats = Arrays.asList(flightManager.reserveSeat(1).get(), flightManager.reserveSeat(2).get());
+
+        Booking booking = seatedManager.createBooking(mockUser, flights, "round-trip", seats);
+        assertEquals(2, booking.getTickets().size());
+        assertEquals(seats.get(1), booking.getTickets().get(1).getSeatNumber());
+        assertEquals(capacity - 1, flightManager.getAvailableSeats(1));
+
+        assertTrue(seatedManager.cancelBooking(booking.getBookingId()));
+        assertEquals("Seats should go back on sale", capacity, flightManager.getAvailableSeats(1));
+        assertEquals(capacity, flightManager.getAvailableSeats(2));
+        assertFalse(seatedManager.cancelBooking(booking.getBookingId()));
+        assertEquals(capacity, flightManager.getAvailableSeats(1));
+    }
+
+    @Test
+    public void testRebookMovesSeats() throws Exception {
+        FlightManager flightManager = new FlightManager();
+        BookingManager seatedManager = new BookingManager(flightManager);
+        Flight disrupted = flightManager.getFlightById(1).get();
+        Flight returnFlight = flightManager.getFlightById(2).get();
+        flightManager.addFlight(new Flight(101, LocalDateTime.of(2024, 4, 4, 12, 0), LocalDateTime.of(2024, 4, 4, 17, 0),
+                "New York", "Los Angeles", 320.00));
+        int capacity = flightManager.getAvailableSeats(101);
+        List<String> seats = Arrays.asList(flightManager.reserveSeat(1).get(), flightManager.reserveSeat(2).get());
+        Booking booking = seatedManager.createBooking(mockUser, Arrays.asList(disrupted, returnFlight), "round-trip",
+                seats);
+
+        BulkFlightOperation operation = seatedManager.rebookFlightBookings(1);
+        assertTrue(operation.awaitCompletion(30, TimeUnit.SECONDS));
+        Booking newBooking = seatedManager.getBookingById(operation.getRebookings().get(booking.getBookingId())).get();
+        assertEquals("The disrupted leg's seat should be released", capacity, flightManager.getAvailableSeats(1));
+        assertEquals(capacity - 1, flightManager.getAvailableSeats(101));
+        assertEquals("The other leg keeps its seat", capacity - 1, flightManager.getAvailableSeats(2));
+        assertEquals(2, newBooking.getTickets().size());
+
+        assertTrue(seatedManager.cancelBooking(newBooking.getBookingId()));
+        assertEquals(capacity, flightManager.getAvailableSeats(101));
+        assertEquals(capacity, flightManager.getAvailableSeats(2));
+    }
+
     @Test
     public void testIsCyclicItinerary() {
         // Valid multi-stop itinerary (non-cyclic)
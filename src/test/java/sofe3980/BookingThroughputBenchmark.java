@@ -0,0 +1,70 @@
+package sofe3980;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measures booking throughput (create, look up, cancel) at 1 to 32 threads.
+ * Not part of the unit test suite (the class name does not match the surefire
+ * patterns); run it after "mvn test-compile" with:
+ *
+ * java -cp target/classes:target/test-classes sofe3980.BookingThroughputBenchmark [operationsPerThread]
+ *
+ * Throughput should grow close to linearly with the thread count up to the
+ * number of cores, so compare the printed speedups with the processor count.
+ */
+public class BookingThroughputBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        User user = new User(1, "John Doe", "johndoe@example.com", "password", LocalDate.of(1990, 1, 1), "AB1234567");
+        List<Flight> flights = Arrays.asList(
+                new Flight(1, LocalDateTime.of(2025, 4, 10, 8, 0), LocalDateTime.of(2025, 4, 10, 10, 0), "CityA",
+                        "CityB", 200.00));
+
+        run(new BookingManager(), user, flights, 4, operations); // Warm up
+        double baseline = 0;
+        for (int threads = 1; threads <= 32; threads *= 2) {
+            double perSecond = run(new BookingManager(), user, flights, threads, operations);
+            if (threads == 1) {
+                baseline = perSecond;
+            }
+            System.out.printf("%2d threads: %,12.0f bookings/s (%.1fx)%n", threads, perSecond,
+                    perSecond / baseline);
+        }
+        System.out.println("Available processors: " + Runtime.getRuntime().availableProcessors());
+    }
+
+    private static double run(BookingManager bookingManager, User user, List<Flight> flights, int threads,
+            int operationsPerThread) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < operationsPerThread; i++) {
+                    int bookingId = bookingManager.createBooking(user, flights, "one-way").getBookingId();
+                    bookingManager.getBookingById(bookingId);
+                    bookingManager.cancelBooking(bookingId);
+                }
+                return null;
+            }));
+        }
+        long startNanos = System.nanoTime();
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get();
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        executor.shutdown();
+        return (double) threads * operationsPerThread / (elapsedNanos / 1e9);
+    }
+}
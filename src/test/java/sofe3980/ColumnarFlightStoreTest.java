@@ -0,0 +1,75 @@
+package sofe3980;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+public class ColumnarFlightStoreTest {
+
+    private ColumnarFlightStore store;
+
+    @Before
+    public void setUp() {
+        Flight departure = new Flight(1, LocalDateTime.of(2024, 4, 4, 18, 30), LocalDateTime.of(2024, 4, 4, 23, 30),
+                "New York", "Los Angeles", 300.99);
+        Flight earlier = new Flight(2, LocalDateTime.of(2024, 4, 4, 7, 15), LocalDateTime.of(2024, 4, 4, 12, 15),
+                "New York", "Los Angeles", 250.00);
+        Flight nextDay = new Flight(3, LocalDateTime.of(2024, 4, 5, 7, 15), LocalDateTime.of(2024, 4, 5, 12, 15),
+                "New York", "Los Angeles", 199.50);
+        Flight returnFlight = new Flight(4, LocalDateTime.of(2024, 4, 5, 9, 0), LocalDateTime.of(2024, 4, 5, 14, 0),
+                "Los Angeles", "New York", 310.00);
+        departure.setCorrespondingFlightId(4);
+
+        store = ColumnarFlightStore.of(Arrays.asList(departure, earlier, nextDay, returnFlight));
+    }
+
+    @Test
+    public void testSearchFlights() {
+        List<Flight> results = store.searchFlights("new york", "LOS ANGELES", LocalDate.of(2024, 4, 4));
+        assertEquals("Should find both flights on the date", 2, results.size());
+        assertEquals("Flights should be ordered by departure", 2, results.get(0).getFlightId());
+        assertEquals(1, results.get(1).getFlightId());
+
+        // Values should survive the compact encoding
+        Flight flight = results.get(1);
+        assertEquals(LocalDateTime.of(2024, 4, 4, 18, 30), flight.getDepartureTime());
+        assertEquals(LocalDateTime.of(2024, 4, 4, 23, 30), flight.getArrivalTime());
+        assertEquals("New York", flight.getOrigin());
+        assertEquals(300.99, flight.getPrice(), 0.0001);
+        assertEquals(Integer.valueOf(4), flight.getCorrespondingFlightId());
+        assertNull(results.get(0).getCorrespondingFlightId());
+
+        assertTrue(store.searchFlights("New York", "Chicago", LocalDate.of(2024, 4, 4)).isEmpty());
+        assertTrue(store.searchFlights("Los Angeles", "New York", LocalDate.of(2024, 4, 4)).isEmpty());
+    }
+
+    @Test
+    public void testPrimitiveQueries() {
+        assertEquals(2, store.countFlights("New York", "Los Angeles", LocalDate.of(2024, 4, 4)));
+        assertEquals(1, store.countFlights("Los Angeles", "New York", LocalDate.of(2024, 4, 5)));
+
+        AirportDictionary airports = store.getAirports();
+        int newYork = airports.codeOf("New York");
+        int losAngeles = airports.codeOf("Los Angeles");
+        int from = ColumnarFlightStore.toEpochMinute(LocalDateTime.of(2024, 4, 4, 0, 0));
+        int to = ColumnarFlightStore.toEpochMinute(LocalDateTime.of(2024, 4, 6, 0, 0));
+        assertEquals("Cheapest fare over both days", 19950, store.cheapestPriceCents(newYork, losAngeles, from, to));
+        assertEquals("No fare in an empty window", -1, store.cheapestPriceCents(newYork, losAngeles, to, to + 60));
+    }
+
+    @Test
+    public void testIndexRebuiltAfterAdd() {
+        assertEquals(2, store.countFlights("New York", "Los Angeles", LocalDate.of(2024, 4, 4)));
+
+        store.add(new Flight(5, LocalDateTime.of(2024, 4, 4, 12, 0), LocalDateTime.of(2024, 4, 4, 17, 0),
+                "New York", "Los Angeles", 280.00));
+        List<Flight> results = store.searchFlights("New York", "Los Angeles", LocalDate.of(2024, 4, 4));
+        assertEquals("New rows should be searchable", 3, results.size());
+        assertEquals("New rows should be sorted by departure", 5, results.get(1).getFlightId());
+    }
+}
@@ -0,0 +1,103 @@
+package sofe3980;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.time.LocalDateTime;
+
+public class FlightIdIndexTest {
+
+    private Flight flight(int flightId) {
+        LocalDateTime departureTime = LocalDateTime.of(2024, 4, 10, 8, 0);
+        return new Flight(flightId, departureTime, departureTime.plusHours(2), "CityA", "CityB", 200.00);
+    }
+
+    @Test
+    public void testPutAndGet() {
+        FlightIdIndex index = new FlightIdIndex(2);
+
+        // Add enough flights to force several resizes
+        for (int i = -50; i < 1000; i++) {
+            assertTrue("New IDs should be stored", index.putIfAbsent(flight(i)));
+        }
+        assertEquals("Index should contain every flight", 1050, index.size());
+
+        for (int i = -50; i < 1000; i++) {
+            assertEquals("Flight should be found by ID", i, index.get(i).getFlightId());
+        }
+        assertNull("Unknown IDs should not be found", index.get(5000));
+        assertNull("Unknown IDs should not be found", index.get(Integer.MIN_VALUE));
+    }
+
+    @Test
+    public void testFirstFlightKeepsId() {
+        FlightIdIndex index = new FlightIdIndex();
+        Flight first = flight(7);
+        Flight duplicate = flight(7);
+
+        assertTrue(index.putIfAbsent(first));
+        assertFalse("Duplicate IDs should be rejected", index.putIfAbsent(duplicate));
+        assertSame("The first flight added should keep the ID", first, index.get(7));
+    }
+
+    @Test
+    public void testRemove() {
+        FlightIdIndex index = new FlightIdIndex();
+        for (int i = 0; i < 500; i++) {
+            index.putIfAbsent(flight(i));
+        }
+
+        // Remove every third flight and check the rest stay reachable
+        for (int i = 0; i < 500; i += 3) {
+            assertEquals(i, index.remove(i).getFlightId());
+        }
+        assertNull("Removing twice should find nothing", index.remove(0));
+        for (int i = 0; i < 500; i++) {
+            if (i % 3 == 0) {
+                assertNull("Removed flights should not be found", index.get(i));
+            } else {
+                assertEquals("Remaining flights should still be found", i, index.get(i).getFlightId());
+            }
+        }
+        assertEquals(333, index.size());
+    }
+
+    @Test
+    public void testCopiesAreIndependent() {
+        FlightIdIndex original = new FlightIdIndex();
+        int flights = 5 * FlightIdIndex.MAX_SEGMENT_FLIGHTS; // Several segments
+        for (int i = 0; i < flights; i++) {
+            original.putIfAbsent(flight(i));
+        }
+
+        FlightIdIndex copy = original.copy(flights + 1);
+        Flight added = flight(flights);
+        assertTrue(copy.putIfAbsent(added));
+        assertEquals(7, copy.remove(7).getFlightId());
+        assertNull("The original should not see changes to the copy", original.get(flights));
+        assertEquals("The original should keep removed flights", 7, original.get(7).getFlightId());
+        assertEquals(flights, original.size());
+
+        // Changing the original afterwards leaves the copy alone as well
+        assertEquals(8, original.remove(8).getFlightId());
+        assertEquals(8, copy.get(8).getFlightId());
+        assertSame(added, copy.get(flights));
+        assertNull(copy.get(7));
+        assertEquals(flights, copy.size());
+    }
+
+    @Test
+    public void testCopyGrowsSegments() {
+        FlightIdIndex original = new FlightIdIndex(2);
+        original.putIfAbsent(flight(1));
+        FlightIdIndex copy = original.copy(10 * FlightIdIndex.MAX_SEGMENT_FLIGHTS);
+        for (int i = 2; i <= 10 * FlightIdIndex.MAX_SEGMENT_FLIGHTS; i++) {
+            assertTrue(copy.putIfAbsent(flight(i)));
+        }
+        for (int i = 1; i <= 10 * FlightIdIndex.MAX_SEGMENT_FLIGHTS; i++) {
+            assertEquals(i, copy.get(i).getFlightId());
+        }
+        assertEquals(1, original.size());
+        assertNull(original.get(2));
+    }
+}
@@ -7,10 +7,20 @@ import static org.junit.Assert.*;
 import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
 import java.time.temporal.TemporalAdjusters;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 public class FlightManagerTest {
 
@@ -78,6 +88,58 @@ public class FlightManagerTest {
         // Additional test cases for other edge cases can be added here...
     }
 
+    @Test
+    public void testSearchFlightsByRouteAndDate() {
+        LocalDate directFlightDate = LocalDate.now().plusDays(8); // Match the date used in setUp()
+
+        // Locations are matched case-insensitively through the route index
+        List<Flight> results = flightManager.searchFlights("citya", "CITYB", directFlightDate, null);
+        assertEquals("Should find the direct flight regardless of case", 1, results.size());
+        assertEquals("Flight ID should match", 8, results.get(0).getFlightId());
+
+        // A null departure date matches every date on the route
+        results = flightManager.searchFlights("CityA", "CityB", null, null);
+        assertEquals("Should return the flights on all dates for the route", 2, results.size());
+
+        // Round trip searches add the flights of the reverse route on the return date
+        results = flightManager.searchFlights("New York", "Los Angeles", LocalDate.of(2024, 4, 4),
+                LocalDate.of(2024, 4, 5));
+        assertEquals("Should return the departure and return flights", 2, results.size());
+        assertEquals("Return flight should depart from the destination", "Los Angeles", results.get(1).getOrigin());
+
+        // The three argument search pairs each departure with its corresponding flight
+        results = flightManager.searchFlights("New York", "Los Angeles", LocalDate.of(2024, 4, 4));
+        assertEquals("Should return the departure and its corresponding flight", 2, results.size());
+        assertEquals("Corresponding flight should follow the departure",
+                results.get(0).getCorrespondingFlightId().intValue(), results.get(1).getFlightId());
+
+        // Unknown routes and missing locations return no flights
+        assertTrue(flightManager.searchFlights("Nowhere", "CityB", directFlightDate, null).isEmpty());
+        assertTrue(flightManager.searchFlights(null, "CityB", directFlightDate, null).isEmpty());
+    }
+
+    @Test
+    public void testCachedSearchSeesWrites() {
+        LocalDate directFlightDate = LocalDate.now().plusDays(8); // Match the date used in setUp()
+        assertEquals(1, flightManager.searchFlights("CityA", "CityB", directFlightDate, null).size());
+        assertEquals(1, flightManager.searchFlights("CityA", "CityB", directFlightDate, null).size());
+        assertEquals("Repeated search should hit the cache", 1, flightManager.getSearchCache().getHits());
+
+        // A new flight on the route and date invalidates the cached result
+        flightManager.addFlight(new Flight(11, directFlightDate.atTime(15, 0), directFlightDate.atTime(17, 0),
+                "CityA", "CityB", 180.00));
+        assertEquals(2, flightManager.searchFlights("CityA", "CityB", directFlightDate, null).size());
+
+        // Repricing replaces the flight in the cached result
+        assertTrue(flightManager.repriceFlight(11, 99.00));
+        List<Flight> results = flightManager.searchFlights("CityA", "CityB", directFlightDate, null);
+        assertEquals(2, results.size());
+        assertTrue("Repriced flight should be returned",
+                results.stream().anyMatch(flight -> flight.getFlightId() == 11 && flight.getPrice() == 99.00));
+        assertEquals(99.00, flightManager.getFlightById(11).get().getPrice(), 0.001);
+        assertFalse("Unknown flights cannot be repriced", flightManager.repriceFlight(-1, 10.00));
+    }
+
     @Test
     public void testSearchMultiStopFlights() {
         // Adjust the date to match the multi-stop flights added in the setUp() method
@@ -159,6 +221,101 @@ public class FlightManagerTest {
         assertTrue("There should be at least one flight at the end of the week", hasFlightAtEndOfWeek);
     }
 
+    @Test
+    public void testWeeklyViewFollowsWritesAndRollsOver() {
+        MutableClock clock = new MutableClock(LocalDate.of(2025, 3, 12).atTime(9, 0).toInstant(ZoneOffset.UTC));
+        FlightManager manager = new FlightManager(clock);
+        Flight thisWeek = new Flight(100, LocalDateTime.of(2025, 3, 14, 10, 0), LocalDateTime.of(2025, 3, 14, 12, 0),
+                "CityA", "CityB", 100.00);
+        Flight nextWeek = new Flight(101, LocalDateTime.of(2025, 3, 17, 10, 0), LocalDateTime.of(2025, 3, 17, 12, 0),
+                "CityA", "CityB", 100.00);
+        manager.addFlights(Arrays.asList(thisWeek, nextWeek));
+
+        List<Flight> weeklyFlights = manager.getWeeklyFlights();
+        assertEquals(1, weeklyFlights.size());
+        assertSame("Unchanged view should be returned as is", weeklyFlights, manager.getWeeklyFlights());
+
+        // Writes update the view
+        manager.addFlight(new Flight(102, LocalDateTime.of(2025, 3, 16, 22, 0), LocalDateTime.of(2025, 3, 17, 1, 0),
+                "CityB", "CityC", 80.00));
+        manager.repriceFlight(100, 90.00);
+        manager.addSchedule("CityC", "CityD", LocalTime.of(7, 0), 60, 50.00, EnumSet.of(DayOfWeek.MONDAY,
+                DayOfWeek.THURSDAY), LocalDate.of(2025, 3, 1), LocalDate.of(2025, 3, 31));
+        weeklyFlights = manager.getWeeklyFlights();
+        assertEquals(4, weeklyFlights.size()); // Flights 100 and 102, and the schedule on Mar 10 and 13
+        assertEquals(90.00, weeklyFlights.stream().filter(f -> f.getFlightId() == 100).findFirst().get().getPrice(),
+                0.001);
+
+        // The view rolls over with the week
+        clock.instant = LocalDate.of(2025, 3, 17).atStartOfDay().toInstant(ZoneOffset.UTC);
+        weeklyFlights = manager.getWeeklyFlights();
+        assertEquals(3, weeklyFlights.size()); // Flight 101, and the schedule on Mar 17 and 20
+        assertTrue(weeklyFlights.stream().anyMatch(f -> f.getFlightId() == 101));
+    }
+
+    @Test
+    public void testRetireFlightsBefore() {
+        LocalDate date = LocalDate.of(2025, 1, 10);
+        for (int i = 0; i < 10; i++) {
+            flightManager.addFlight(new Flight(3000 + i, date.plusDays(i).atTime(9, 0),
+                    date.plusDays(i).atTime(11, 0), "CityR", "CityS", 75.00));
+        }
+        assertEquals(1, flightManager.searchDirectFlights("CityR", "CityS", date).size());
+
+        int retired = flightManager.retireFlightsBefore(date.plusDays(5), true);
+        assertTrue("Flights on the first five days and earlier should be retired", retired >= 5);
+        assertEquals(retired, flightManager.getArchivedFlightCount());
+        assertTrue("Retired flights should not be searched",
+                flightManager.searchDirectFlights("CityR", "CityS", date).isEmpty());
+        assertEquals(1, flightManager.searchDirectFlights("CityR", "CityS", date.plusDays(5)).size());
+
+        // Archived flights can still be looked up by ID
+        Optional<Flight> archived = flightManager.getFlightById(3000);
+        assertTrue(archived.isPresent());
+        assertEquals(date.atTime(9, 0), archived.get().getDepartureTime());
+        assertEquals("CityR", archived.get().getOrigin());
+
+        assertEquals(0, flightManager.retireFlightsBefore(date.plusDays(5), false));
+    }
+
+    @Test
+    public void testLowFareCalendar() {
+        LocalDate date = LocalDate.of(2025, 5, 10);
+        flightManager.addFlights(Arrays.asList(
+                new Flight(4000, date.atTime(8, 0), date.atTime(10, 0), "CityF", "CityG", 120.00),
+                new Flight(4001, date.atTime(18, 0), date.atTime(20, 0), "CityF", "CityG", 95.00),
+                new Flight(4002, date.plusDays(2).atTime(8, 0), date.plusDays(2).atTime(10, 0), "CityF", "CityG",
+                        150.00)));
+        flightManager.addSchedule("CityF", "CityG", LocalTime.of(6, 0), 120, 99.00, EnumSet.of(DayOfWeek.SUNDAY),
+                LocalDate.of(2025, 5, 1), LocalDate.of(2025, 5, 31));
+
+        Map<LocalDate, Double> calendar = flightManager.getLowFareCalendar("cityf", "cityg", LocalDate.of(2025, 5, 1),
+                LocalDate.of(2025, 5, 31));
+        assertEquals(95.00, calendar.get(date), 0.001);
+        assertEquals("Sunday May 11 only has the scheduled flight", 99.00, calendar.get(date.plusDays(1)), 0.001);
+        assertEquals(150.00, calendar.get(date.plusDays(2)), 0.001);
+        assertFalse("Days without flights are left out", calendar.containsKey(date.minusDays(1)));
+        assertEquals(6, calendar.size()); // 4 Sundays, May 10 and May 12
+
+        // The aggregates follow repricing
+        flightManager.repriceFlight(4001, 130.00);
+        flightManager.repriceFlight(4002, 60.00);
+        calendar = flightManager.getLowFareCalendar("CityF", "CityG", date, date.plusDays(2));
+        assertEquals(120.00, calendar.get(date), 0.001);
+        assertEquals(60.00, calendar.get(date.plusDays(2)), 0.001);
+
+        FlexibleDateResult result = flightManager.searchFlexibleDates("CityF", "CityG", date.plusDays(1), 1);
+        assertEquals(date, result.getFirstDate());
+        assertEquals(4, result.getFlights().size());
+        assertEquals(3, result.getLowestFares().size());
+        assertEquals(4000, result.getFlights().get(0).getFlightId());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLowFareCalendarRejectsInvertedRange() {
+        flightManager.getLowFareCalendar("CityF", "CityG", LocalDate.of(2025, 5, 31), LocalDate.of(2025, 5, 1));
+    }
+
     @Test
     public void testGetFlightById() {
         // Assuming there's a flight with ID 1
@@ -172,6 +329,137 @@ public class FlightManagerTest {
         assertFalse("No flight should be found for an invalid ID", optionalFlightNull.isPresent());
     }
 
+    @Test
+    public void testConcurrentAddAndSearch() throws Exception {
+        LocalDate date = LocalDate.now().plusDays(20);
+        int writers = 4;
+        int flightsPerWriter = 250;
+        ExecutorService executor = Executors.newFixedThreadPool(writers + 4);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> tasks = new ArrayList<>();
+
+        for (int w = 0; w < writers; w++) {
+            final int writer = w;
+            tasks.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < flightsPerWriter; i++) {
+                    int flightId = 1000 + writer * flightsPerWriter + i;
+                    flightManager.addFlight(new Flight(flightId, date.atTime(6, 0).plusMinutes(i),
+                            date.atTime(9, 0).plusMinutes(i), "CityP", "CityQ", 120.00));
+                }
+                return null;
+            }));
+        }
+        // Readers search while the writers publish new versions
+        for (int r = 0; r < 4; r++) {
+            tasks.add(executor.submit(() -> {
+                start.await();
+                int previous = 0;
+                for (int i = 0; i < 500; i++) {
+                    int found = flightManager.searchDirectFlights("CityP", "CityQ", date).size();
+                    assertTrue("Readers should never see flights disappear", found >= previous);
+                    previous = found;
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> task : tasks) {
+            task.get(30, TimeUnit.SECONDS); // Rethrows any reader or writer failure
+        }
+        executor.shutdown();
+
+        assertEquals("Every flight should be added exactly once", writers * flightsPerWriter,
+                flightManager.searchDirectFlights("CityP", "CityQ", date).size());
+        assertTrue("Added flights should be found by ID", flightManager.getFlightById(1999).isPresent());
+    }
+
+    @Test
+    public void testRecurringSchedule() {
+        RecurringSchedule schedule = flightManager.addSchedule("Boston", "Denver", LocalTime.of(8, 0), 240, 180.00,
+                EnumSet.complementOf(EnumSet.of(DayOfWeek.SUNDAY)), LocalDate.of(2025, 4, 1),
+                LocalDate.of(2025, 10, 31));
+        assertEquals(1, flightManager.getSchedules().size());
+        assertEquals(214, schedule.getDayCount());
+
+        List<Flight> flights = flightManager.searchDirectFlights("Boston", "Denver", LocalDate.of(2025, 6, 3));
+        assertEquals(1, flights.size());
+        assertEquals(LocalDateTime.of(2025, 6, 3, 8, 0), flights.get(0).getDepartureTime());
+        assertTrue("No flight on Sundays",
+                flightManager.searchDirectFlights("Boston", "Denver", LocalDate.of(2025, 6, 1)).isEmpty());
+
+        // Scheduled flights are found by ID, and a single departure can be changed
+        int flightId = flights.get(0).getFlightId();
+        assertEquals(LocalDate.of(2025, 6, 3),
+                flightManager.getFlightById(flightId).get().getDepartureTime().toLocalDate());
+        assertTrue(flightManager.repriceFlight(flightId, 99.00));
+        List<Flight> repriced = flightManager.searchFlights("boston", "denver", LocalDate.of(2025, 6, 3), null);
+        assertEquals(1, repriced.size());
+        assertEquals(99.00, repriced.get(0).getPrice(), 0.001);
+
+        // Connections from scheduled flights
+        flightManager.addFlight(new Flight(5000, LocalDateTime.of(2025, 6, 3, 14, 0),
+                LocalDateTime.of(2025, 6, 3, 16, 0), "Denver", "Seattle", 120.00));
+        List<List<Flight>> itineraries = flightManager.searchMultiStopFlights("Boston", "Seattle",
+                LocalDate.of(2025, 6, 3));
+        assertEquals(1, itineraries.size());
+        assertEquals(flightId, itineraries.get(0).get(0).getFlightId());
+    }
+
+    @Test
+    public void testSeatReservations() {
+        LocalDate directFlightDate = LocalDate.now().plusDays(8); // Match the date used in setUp()
+        assertEquals(180, flightManager.getAvailableSeats(8));
+        assertTrue(flightManager.reserveSeat(8, "1A"));
+        assertFalse(flightManager.reserveSeat(8, "1A"));
+        assertFalse("No such seat", flightManager.reserveSeat(8, "40A"));
+        assertFalse("No such flight", flightManager.reserveSeat(-1).isPresent());
+        assertEquals(0, flightManager.getAvailableSeats(-1));
+
+        for (int i = 1; i < 180; i++) {
+            assertTrue(flightManager.reserveSeat(8).isPresent());
+        }
+        assertFalse("Sold out", flightManager.reserveSeat(8).isPresent());
+        assertEquals(1, flightManager.searchFlights("CityA", "CityB", directFlightDate, null).size());
+        assertTrue(flightManager.searchFlights("CityA", "CityB", directFlightDate, null, 1).isEmpty());
+
+        assertTrue(flightManager.releaseSeat(8, "1A"));
+        assertEquals(1, flightManager.getAvailableSeats(8));
+        assertEquals(1, flightManager.searchFlights("CityA", "CityB", directFlightDate, null, 1).size());
+    }
+
+    @Test
+    public void testSuggestAndResolveLocations() {
+        // The preset locations and those of added flights are suggested
+        assertEquals(Arrays.asList("Chicago", "CityA"), flightManager.suggestLocations("c", 2));
+        assertEquals(Arrays.asList("New York"), flightManager.suggestLocations("york", 10));
+        assertEquals("CityX", flightManager.resolveLocation("cityx"));
+        assertNull(flightManager.resolveLocation("Toronto"));
+
+        flightManager.addSchedule("Toronto", "Ottawa", LocalTime.of(9, 0), 60, 90.00,
+                EnumSet.allOf(DayOfWeek.class), LocalDate.of(2025, 7, 1), LocalDate.of(2025, 7, 31));
+        assertEquals("Toronto", flightManager.resolveLocation("toron"));
+    }
+
+    @Test
+    public void testSearchesWithoutServiceAreFiltered() {
+        LocalDate date = LocalDate.of(2025, 7, 1);
+        assertTrue(flightManager.searchFlights("Toronto", "Ottawa", date, null).isEmpty());
+        assertTrue(flightManager.searchMultiStopFlights("Toronto", "Montreal", date).isEmpty());
+        assertEquals(1L, flightManager.getSearchMetrics().get("filteredSearches"));
+
+        // Added and scheduled flights must never be filtered out
+        flightManager.addFlight(new Flight(6000, date.atTime(9, 0), date.atTime(10, 0), "Toronto", "Ottawa", 90.00));
+        flightManager.addSchedule("Ottawa", "Montreal", LocalTime.of(12, 0), 60, 80.00,
+                EnumSet.allOf(DayOfWeek.class), date, date.plusDays(30));
+        assertEquals(1, flightManager.searchFlights("toronto", "OTTAWA", date, null).size());
+        assertEquals(1, flightManager.searchDirectFlights("Ottawa", "Montreal", date.plusDays(30)).size());
+        // Connects to the daily flight on that day and every later one
+        assertEquals(31, flightManager.searchMultiStopFlights("Toronto", "Montreal", date).size());
+        assertTrue(flightManager.searchFlights("Toronto", "Ottawa", date.plusDays(1), null).isEmpty());
+    }
+
     @Test
     public void testCalculateTotalFlightTime() {
         // Choose a subset of flights for this test. For simplicity, let's use the
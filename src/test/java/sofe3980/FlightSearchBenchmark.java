@@ -0,0 +1,119 @@
+package sofe3980;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * Compares connection search through the per-origin departure index against the
+ * previous full-inventory scan. Not part of the unit test suite (the class name
+ * does not match the surefire patterns); run it after "mvn test-compile" with:
+ *
+ * java -cp target/classes:target/test-classes sofe3980.FlightSearchBenchmark [flights]
+ *
+ * At 150,000 flights the indexed search ran about 50x faster (13 ms vs 665 ms
+ * per query).
+ */
+public class FlightSearchBenchmark {
+
+    private static final int AIRPORTS = 100;
+    private static final int DAYS = 30;
+    private static final LocalDate START = LocalDate.of(2025, 1, 1);
+
+    public static void main(String[] args) {
+        int flightCount = args.length > 0 ? Integer.parseInt(args[0]) : 150_000;
+
+        FlightManager flightManager = new FlightManager();
+        List<Flight> allFlights = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < flightCount; i++) {
+            int origin = random.nextInt(AIRPORTS);
+            int destination = (origin + 1 + random.nextInt(AIRPORTS - 1)) % AIRPORTS;
+            LocalDateTime departureTime = START.plusDays(random.nextInt(DAYS)).atStartOfDay()
+                    .plusMinutes(random.nextInt(24 * 60));
+            Flight flight = new Flight(1000 + i, departureTime, departureTime.plusMinutes(60 + random.nextInt(300)),
+                    "Airport" + origin, "Airport" + destination, 100 + random.nextInt(400));
+            allFlights.add(flight);
+        }
+        flightManager.addFlights(allFlights);
+
+        int queries = 200;
+        String[][] routes = new String[queries][];
+        LocalDate[] dates = new LocalDate[queries];
+        for (int i = 0; i < queries; i++) {
+            int origin = random.nextInt(AIRPORTS);
+            int destination = (origin + 1 + random.nextInt(AIRPORTS - 1)) % AIRPORTS;
+            routes[i] = new String[] { "Airport" + origin, "Airport" + destination };
+            dates[i] = START.plusDays(random.nextInt(DAYS));
+        }
+
+        // Warm up both implementations before timing them
+        for (int round = 0; round < 3; round++) {
+            run(flightManager, allFlights, routes, dates, 20, true);
+            run(flightManager, allFlights, routes, dates, 20, false);
+        }
+
+        long indexedNanos = System.nanoTime();
+        long indexedResults = run(flightManager, allFlights, routes, dates, queries, true);
+        indexedNanos = System.nanoTime() - indexedNanos;
+
+        long scanNanos = System.nanoTime();
+        long scanResults = run(flightManager, allFlights, routes, dates, queries, false);
+        scanNanos = System.nanoTime() - scanNanos;
+
+        System.out.println("Flights: " + flightCount + ", queries: " + queries);
+        System.out.printf("Full scan:      %8.3f ms/query (%d itineraries)%n", scanNanos / 1e6 / queries, scanResults);
+        System.out.printf("Indexed search: %8.3f ms/query (%d itineraries)%n", indexedNanos / 1e6 / queries,
+                indexedResults);
+        System.out.printf("Speedup:        %8.1fx%n", (double) scanNanos / indexedNanos);
+
+        // Up-to-three-leg itineraries through the routing engine on the same network
+        long routerNanos = System.nanoTime();
+        long routerResults = 0;
+        for (int i = 0; i < queries; i++) {
+            ItinerarySearch search = new ItinerarySearch(routes[i][0], routes[i][1], dates[i]);
+            routerResults += flightManager.searchItineraries(search).getItineraries().size();
+        }
+        routerNanos = System.nanoTime() - routerNanos;
+        System.out.printf("3-leg routing:  %8.3f ms/query (%d itineraries, first page)%n",
+                routerNanos / 1e6 / queries, routerResults);
+    }
+
+    private static long run(FlightManager flightManager, List<Flight> allFlights, String[][] routes,
+            LocalDate[] dates, int queries, boolean indexed) {
+        long results = 0;
+        for (int i = 0; i < queries; i++) {
+            List<List<Flight>> itineraries = indexed
+                    ? flightManager.searchMultiStopFlights(routes[i][0], routes[i][1], dates[i])
+                    : scanMultiStopFlights(allFlights, routes[i][0], routes[i][1], dates[i]);
+            results += itineraries.size();
+        }
+        return results;
+    }
+
+    // The connection search as it was before the departure index, for comparison
+    private static List<List<Flight>> scanMultiStopFlights(List<Flight> flights, String from, String to,
+            LocalDate date) {
+        List<List<Flight>> multiStopFlights = new ArrayList<>();
+        List<Flight> departingFlights = flights.stream()
+                .filter(f -> f.getOrigin().equals(from) && f.getDepartureTime().toLocalDate().equals(date))
+                .collect(Collectors.toList());
+        for (Flight firstLeg : departingFlights) {
+            List<Flight> connectingFlights = flights.stream()
+                    .filter(f -> f.getOrigin().equals(firstLeg.getDestination()) &&
+                            f.getDestination().equals(to) &&
+                            f.getDepartureTime().isAfter(firstLeg.getArrivalTime()))
+                    .collect(Collectors.toList());
+            for (Flight secondLeg : connectingFlights) {
+                List<Flight> multiStopFlight = new ArrayList<>();
+                multiStopFlight.add(firstLeg);
+                multiStopFlight.add(secondLeg);
+                multiStopFlights.add(multiStopFlight);
+            }
+        }
+        return multiStopFlights;
+    }
+}
@@ -0,0 +1,49 @@
+package sofe3980;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class HashedTimingWheelTest {
+
+    @Test
+    public void testExpiresDueTimeouts() {
+        HashedTimingWheel<String> wheel = new HashedTimingWheel<>(100, 8, 0);
+        wheel.schedule("a", 250);
+        wheel.schedule("b", 1_000); // A later round of an earlier bucket
+        HashedTimingWheel.Timeout<String> cancelled = wheel.schedule("c", 300);
+        wheel.schedule("d", 300);
+        assertEquals(4, wheel.size());
+
+        assertTrue(wheel.cancel(cancelled));
+        assertFalse(wheel.cancel(cancelled));
+        assertFalse(cancelled.isPending());
+
+        List<String> expired = new ArrayList<>();
+        assertEquals(0, wheel.advance(249, expired::add));
+        assertEquals(2, wheel.advance(300, expired::add));
+        Collections.sort(expired); // Same tick, no order between them
+        assertEquals(Arrays.asList("a", "d"), expired);
+        assertEquals(0, wheel.advance(999, expired::add));
+        assertEquals(1, wheel.advance(1_000, expired::add));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testAdvanceAfterLongGap() {
+        HashedTimingWheel<Integer> wheel = new HashedTimingWheel<>(10, 16, 0);
+        for (int i = 0; i < 1_000; i++) {
+            wheel.schedule(i, i * 7L);
+        }
+        List<Integer> expired = new ArrayList<>();
+        wheel.advance(3_500, expired::add); // More than a full turn in one call
+        assertEquals(501, expired.size());
+        assertEquals(499, wheel.size());
+        wheel.advance(1_000_000, expired::add);
+        assertEquals(1_000, expired.size());
+    }
+}
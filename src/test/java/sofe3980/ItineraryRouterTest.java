@@ -0,0 +1,204 @@
+package sofe3980;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ItineraryRouterTest {
+
+    private static final LocalDate DATE = LocalDate.of(2025, 3, 10);
+
+    private FlightManager flightManager;
+    private List<Flight> flights;
+
+    private void addFlight(int flightId, String from, String to, int departureHour, int durationHours,
+            double price) {
+        LocalDateTime departureTime = DATE.atTime(departureHour, 0);
+        Flight flight = new Flight(flightId, departureTime, departureTime.plusHours(durationHours), from, to, price);
+        flightManager.addFlight(flight);
+        flights.add(flight);
+    }
+
+    @Before
+    public void setUp() {
+        flightManager = new FlightManager();
+        flights = new ArrayList<>();
+
+        // Direct but expensive: CityA -> CityD arriving 20:00
+        addFlight(101, "CityA", "CityD", 14, 6, 900.00);
+        // Two legs: CityA -> CityB -> CityD arriving 16:00
+        addFlight(102, "CityA", "CityB", 8, 2, 150.00);
+        addFlight(103, "CityB", "CityD", 12, 4, 150.00);
+        // Three legs, cheapest: CityA -> CityB -> CityC -> CityD arriving 22:00
+        addFlight(104, "CityB", "CityC", 11, 2, 50.00);
+        addFlight(105, "CityC", "CityD", 18, 4, 50.00);
+        // No connection time after flight 102 (arrives 10:00, departs 10:00)
+        addFlight(106, "CityB", "CityD", 10, 3, 10.00);
+        // Cyclic: CityA -> CityB -> CityA is never a useful connection to CityD
+        addFlight(107, "CityB", "CityA", 11, 1, 10.00);
+    }
+
+    @Test
+    public void testRankByArrivalTime() {
+        ItinerarySearch search = new ItinerarySearch("CityA", "CityD", DATE);
+        List<List<Flight>> results = flightManager.searchItineraries(search).getItineraries();
+
+        assertEquals("Should find the direct, two-leg and three-leg itineraries", 3, results.size());
+        assertEquals("Earliest arrival should come first", 102, results.get(0).get(0).getFlightId());
+        assertEquals("Earliest arrival should come first", 103, results.get(0).get(1).getFlightId());
+        assertEquals("Direct flight arrives second", 101, results.get(1).get(0).getFlightId());
+        assertEquals("Three-leg itinerary arrives last", 3, results.get(2).size());
+
+        for (List<Flight> itinerary : results) {
+            assertFalse("Itineraries should not be cyclic", new BookingManager().isCyclicItinerary(itinerary));
+            for (Flight flight : itinerary) {
+                assertNotEquals("Tight connections should be excluded", 106, flight.getFlightId());
+            }
+        }
+    }
+
+    @Test
+    public void testRankByPrice() {
+        ItinerarySearch search = new ItinerarySearch("CityA", "CityD", DATE);
+        search.setSortBy(ItinerarySortKey.PRICE);
+        List<List<Flight>> results = flightManager.searchItineraries(search).getItineraries();
+
+        assertEquals(3, results.size());
+        assertEquals("Cheapest itinerary should come first", 3, results.get(0).size());
+        assertEquals("Most expensive itinerary should come last", 101, results.get(2).get(0).getFlightId());
+    }
+
+    @Test
+    public void testRankByDurationDepartureAndStops() {
+        ItinerarySearch search = new ItinerarySearch("CityA", "CityD", DATE);
+        search.setSortBy(ItinerarySortKey.DURATION);
+        List<List<Flight>> results = flightManager.searchItineraries(search).getItineraries();
+        assertEquals(3, results.size());
+        assertEquals("Six hour direct flight should come first", 101, results.get(0).get(0).getFlightId());
+        assertEquals("Eight hour two-leg itinerary should come second", 2, results.get(1).size());
+        assertEquals(3, results.get(2).size());
+
+        search.setSortBy(ItinerarySortKey.DEPARTURE_TIME);
+        results = flightManager.searchItineraries(search).getItineraries();
+        assertEquals("Latest departure should come last", 101, results.get(2).get(0).getFlightId());
+
+        search.setSortBy(ItinerarySortKey.STOPS);
+        search.setPageSize(2);
+        results = flightManager.searchItineraries(search).getItineraries();
+        assertEquals(2, results.size());
+        assertEquals(1, results.get(0).size());
+        assertEquals(2, results.get(1).size());
+    }
+
+    @Test
+    public void testLegAndLayoverBounds() {
+        ItinerarySearch search = new ItinerarySearch("CityA", "CityD", DATE);
+        search.setMaxLegs(2);
+        assertEquals("Three-leg itinerary should be excluded", 2, flightManager.searchItineraries(search).getItineraries().size());
+
+        // A one hour maximum layover only leaves the direct flight
+        search.setMaxLayoverMinutes(60);
+        List<List<Flight>> results = flightManager.searchItineraries(search).getItineraries();
+        assertEquals(1, results.size());
+        assertEquals(101, results.get(0).get(0).getFlightId());
+
+        // Without a minimum connection time, 106 becomes the earliest arrival
+        search = new ItinerarySearch("CityA", "CityD", DATE);
+        search.setMinConnectionMinutes(0);
+        results = flightManager.searchItineraries(search).getItineraries();
+        assertEquals(106, results.get(0).get(1).getFlightId());
+    }
+
+    @Test
+    public void testPaging() {
+        ItinerarySearch search = new ItinerarySearch("CityA", "CityD", DATE);
+        search.setPageSize(2);
+        assertEquals("First page should be full", 2, flightManager.searchItineraries(search).getItineraries().size());
+
+        search.setPage(1);
+        List<List<Flight>> results = flightManager.searchItineraries(search).getItineraries();
+        assertEquals("Second page should hold the remaining itinerary", 1, results.size());
+        assertEquals(3, results.get(0).size());
+
+        search.setPage(2);
+        assertTrue("Pages past the end should be empty", flightManager.searchItineraries(search).getItineraries().isEmpty());
+    }
+
+    @Test
+    public void testPagingByPosition() {
+        ItinerarySearch search = new ItinerarySearch("CityA", "CityD", DATE);
+        search.setPageSize(1);
+        List<List<Flight>> pages = new ArrayList<>();
+        ItinerarySearchResult result = flightManager.searchItineraries(search);
+        while (!result.getItineraries().isEmpty()) {
+            pages.addAll(result.getItineraries());
+            search.setAfter(result.getNext());
+            result = flightManager.searchItineraries(search);
+        }
+
+        search = new ItinerarySearch("CityA", "CityD", DATE);
+        assertEquals("Pages should continue where the last one ended",
+                flightManager.searchItineraries(search).getItineraries(), pages);
+    }
+
+    @Test
+    public void testPositionSurvivesInventoryChange() {
+        ItinerarySearch search = new ItinerarySearch("CityA", "CityD", DATE);
+        search.setPageSize(1);
+        ItinerarySearchResult first = flightManager.searchItineraries(search);
+        assertEquals(102, first.getItineraries().get(0).get(0).getFlightId());
+
+        // An earlier arrival added before the next page ranks before the position,
+        // so the next page neither repeats nor skips an itinerary
+        addFlight(108, "CityA", "CityD", 6, 2, 500.00);
+        search.setAfter(first.getNext());
+        List<List<Flight>> second = flightManager.searchItineraries(search).getItineraries();
+        assertEquals(1, second.size());
+        assertEquals(101, second.get(0).get(0).getFlightId());
+    }
+
+    @Test
+    public void testRetriedPositionSeeks() {
+        FlightIndex index = FlightIndex.empty().withFlights(flights);
+        ItineraryRouter router = new ItineraryRouter();
+        ItinerarySearch search = new ItinerarySearch("CityA", "CityD", DATE);
+        search.setPageSize(1);
+        ItinerarySearchResult first = router.search(index, search);
+        assertNotEquals("A full page should leave a continuation", 0, first.getNext().getContinuation());
+
+        // The first request with the position takes the continuation; a retry runs
+        // the search again and seeks past the position to the same page
+        search.setAfter(first.getNext());
+        List<List<Flight>> resumed = router.search(index, search).getItineraries();
+        assertEquals(101, resumed.get(0).get(0).getFlightId());
+        assertEquals(resumed, router.search(index, search).getItineraries());
+    }
+
+    @Test
+    public void testExpansionLimit() {
+        FlightIndex index = FlightIndex.empty().withFlights(flights);
+        ItinerarySearch search = new ItinerarySearch("CityA", "CityD", DATE);
+
+        // Expanding 102 leaves the partial itinerary through CityC next in line
+        ItinerarySearchResult result = new ItineraryRouter(1).search(index, search);
+        assertTrue("Hitting the limit should be reported", result.isTruncated());
+        assertTrue(result.getItineraries().isEmpty());
+
+        result = new ItineraryRouter(2).search(index, search);
+        assertFalse("A search that finishes within the limit is complete", result.isTruncated());
+        assertEquals(3, result.getItineraries().size());
+    }
+
+    @Test
+    public void testNoRoute() {
+        assertTrue(flightManager.searchItineraries(new ItinerarySearch("CityD", "CityA", DATE)).getItineraries().isEmpty());
+        assertTrue(flightManager.searchItineraries(new ItinerarySearch("CityA", "Nowhere", DATE)).getItineraries().isEmpty());
+        assertTrue(flightManager.searchItineraries(new ItinerarySearch("CityA", "CityD", DATE.plusDays(1))).getItineraries()
+                .isEmpty());
+    }
+}
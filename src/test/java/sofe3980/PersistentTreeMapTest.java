@@ -0,0 +1,111 @@
+package sofe3980;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class PersistentTreeMapTest {
+
+    private static <V> Map<Integer, V> toMap(PersistentTreeMap<Integer, V> map) {
+        Map<Integer, V> entries = new TreeMap<>();
+        List<Integer> order = new ArrayList<>();
+        map.forEach((key, value) -> {
+            entries.put(key, value);
+            order.add(key);
+        });
+        List<Integer> sorted = new ArrayList<>(order);
+        sorted.sort(null);
+        assertEquals("Entries should be visited in key order", sorted, order);
+        return entries;
+    }
+
+    @Test
+    public void testMatchesTreeMap() {
+        Random random = new Random(42);
+        PersistentTreeMap<Integer, String> map = PersistentTreeMap.empty();
+        TreeMap<Integer, String> expected = new TreeMap<>();
+        for (int i = 0; i < 5000; i++) {
+            int key = random.nextInt(500);
+            if (random.nextInt(3) == 0) {
+                map = map.without(key);
+                expected.remove(key);
+            } else {
+                map = map.with(key, "v" + i);
+                expected.put(key, "v" + i);
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        assertEquals(expected, toMap(map));
+        assertEquals(expected.firstKey(), map.firstKey());
+        for (int key = -1; key <= 500; key++) {
+            assertEquals(expected.get(key), map.get(key));
+            assertEquals(expected.containsKey(key), map.containsKey(key));
+        }
+    }
+
+    @Test
+    public void testOldVersionsAreUnchanged() {
+        PersistentTreeMap<Integer, String> empty = PersistentTreeMap.empty();
+        PersistentTreeMap.Editor<Integer, String> editor = empty.edit();
+        for (int i = 0; i < 100; i++) {
+            editor.put(i, "a" + i);
+        }
+        PersistentTreeMap<Integer, String> first = editor.done();
+        try {
+            editor.put(100, "a100");
+            fail("A published editor should not be usable");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+
+        PersistentTreeMap.Editor<Integer, String> second = first.edit();
+        for (int i = 0; i < 100; i += 2) {
+            second.remove(i);
+        }
+        second.put(1, "b1");
+        PersistentTreeMap<Integer, String> next = second.done();
+
+        assertTrue(empty.isEmpty());
+        assertNull(empty.firstKey());
+        assertEquals(100, first.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals("a" + i, first.get(i));
+        }
+        assertEquals(50, next.size());
+        assertEquals("b1", next.get(1));
+        assertNull(next.get(0));
+        assertEquals(Integer.valueOf(1), next.firstKey());
+    }
+
+    @Test
+    public void testForEachInRange() {
+        PersistentTreeMap<Integer, Integer> map = PersistentTreeMap.empty();
+        for (int i = 0; i < 50; i += 2) {
+            map = map.with(i, i);
+        }
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        for (int i = 0; i < 50; i += 2) {
+            expected.put(i, i);
+        }
+        int[][] ranges = { { 10, 20 }, { 11, 19 }, { -5, 3 }, { 47, 60 }, { 30, 30 }, { 20, 10 } };
+        for (int[] range : ranges) {
+            for (boolean fromInclusive : new boolean[] { true, false }) {
+                for (boolean toInclusive : new boolean[] { true, false }) {
+                    List<Integer> keys = new ArrayList<>();
+                    map.forEachInRange(range[0], fromInclusive, range[1], toInclusive, (key, value) -> keys.add(key));
+                    List<Integer> expectedKeys = range[0] > range[1] ? new ArrayList<>()
+                            : new ArrayList<>(expected.subMap(range[0], fromInclusive, range[1], toInclusive).keySet());
+                    assertEquals(expectedKeys, keys);
+                }
+            }
+        }
+        List<Integer> tail = new ArrayList<>();
+        map.forEachInRange(40, false, null, false, (key, value) -> tail.add(key));
+        assertEquals(new ArrayList<>(expected.tailMap(40, false).keySet()), tail);
+    }
+}
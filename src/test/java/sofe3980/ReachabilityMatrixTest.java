@@ -0,0 +1,38 @@
+package sofe3980;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+public class ReachabilityMatrixTest {
+
+    @Test
+    public void testReachableWithinLegs() {
+        // a -> b -> c -> d -> e -> f, and c -> a
+        Map<String, Set<String>> originsByDestination = new HashMap<>();
+        originsByDestination.put("b", new HashSet<>(Arrays.asList("a")));
+        originsByDestination.put("c", new HashSet<>(Arrays.asList("b")));
+        originsByDestination.put("d", new HashSet<>(Arrays.asList("c")));
+        originsByDestination.put("e", new HashSet<>(Arrays.asList("d")));
+        originsByDestination.put("f", new HashSet<>(Arrays.asList("e")));
+        originsByDestination.put("a", new HashSet<>(Arrays.asList("c")));
+        ReachabilityMatrix matrix = new ReachabilityMatrix(originsByDestination);
+
+        assertEquals(6, matrix.getAirportCount());
+        assertTrue(matrix.isReachable("a", "b", 1));
+        assertFalse(matrix.isReachable("a", "c", 1));
+        assertTrue(matrix.isReachable("A ", "c", 2)); // Case-insensitive
+        assertFalse(matrix.isReachable("a", "e", 3));
+        assertTrue(matrix.isReachable("a", "e", 4));
+        assertFalse(matrix.isReachable("a", "f", 4));
+        assertTrue(matrix.isReachable("a", "f", 5)); // Beyond MAX_LEGS
+        assertTrue(matrix.isReachable("b", "b", 3)); // Round trip through c and a
+        assertFalse(matrix.isReachable("f", "a", 10));
+        assertFalse(matrix.isReachable("a", "unknown", 10));
+    }
+}
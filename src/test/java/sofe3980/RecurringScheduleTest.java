@@ -0,0 +1,68 @@
+package sofe3980;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+public class RecurringScheduleTest {
+
+    private RecurringSchedule schedule;
+
+    @Before
+    public void setUp() {
+        // Daily at 08:00 except Sunday, April to October
+        schedule = new RecurringSchedule(1000, "New York", "Los Angeles", LocalTime.of(8, 0), 330, 250.00,
+                EnumSet.complementOf(EnumSet.of(DayOfWeek.SUNDAY)), LocalDate.of(2025, 4, 1),
+                LocalDate.of(2025, 10, 31));
+    }
+
+    @Test
+    public void testInstanceOn() {
+        Flight flight = schedule.instanceOn(LocalDate.of(2025, 4, 2));
+        assertNotNull(flight);
+        assertEquals(1001, flight.getFlightId());
+        assertEquals(LocalDateTime.of(2025, 4, 2, 8, 0), flight.getDepartureTime());
+        assertEquals(LocalDateTime.of(2025, 4, 2, 13, 30), flight.getArrivalTime());
+        assertEquals("New York", flight.getOrigin());
+        assertEquals(250.00, flight.getPrice(), 0.001);
+
+        assertNull("No flight on Sundays", schedule.instanceOn(LocalDate.of(2025, 4, 6)));
+        assertNull("No flight before the first date", schedule.instanceOn(LocalDate.of(2025, 3, 31)));
+        assertNull("No flight after the last date", schedule.instanceOn(LocalDate.of(2025, 11, 1)));
+    }
+
+    @Test
+    public void testInstanceById() {
+        assertEquals(214, schedule.getDayCount());
+        assertEquals(1213, schedule.getLastFlightId());
+        assertEquals(LocalDate.of(2025, 10, 31), schedule.instanceById(1213).getDepartureTime().toLocalDate());
+        assertNull("Sunday IDs are reserved but unused", schedule.instanceById(1005));
+        assertNull(schedule.instanceById(999));
+        assertNull(schedule.instanceById(1214));
+    }
+
+    @Test
+    public void testAddInstancesDeparting() {
+        List<Flight> flights = new ArrayList<>();
+        // Mon Apr 7 after 08:00 to Mon Apr 14 08:00 exclusive: Tue to Sat, 5 flights
+        schedule.addInstancesDeparting(LocalDateTime.of(2025, 4, 7, 8, 0), LocalDateTime.of(2025, 4, 14, 8, 0),
+                flights);
+        assertEquals(5, flights.size());
+        assertEquals(LocalDate.of(2025, 4, 8), flights.get(0).getDepartureTime().toLocalDate());
+        assertEquals(LocalDate.of(2025, 4, 12), flights.get(4).getDepartureTime().toLocalDate());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsInvertedDateRange() {
+        new RecurringSchedule(1, "A", "B", LocalTime.NOON, 60, 100, EnumSet.allOf(DayOfWeek.class),
+                LocalDate.of(2025, 5, 1), LocalDate.of(2025, 4, 1));
+    }
+}
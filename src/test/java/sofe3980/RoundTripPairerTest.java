@@ -0,0 +1,87 @@
+package sofe3980;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+public class RoundTripPairerTest {
+
+    private static final LocalDate OUTBOUND_DATE = LocalDate.of(2025, 3, 10);
+    private static final LocalDate RETURN_DATE = LocalDate.of(2025, 3, 14);
+
+    private static Flight flight(int flightId, LocalDateTime departure, int durationMinutes, double price) {
+        return new Flight(flightId, departure, departure.plusMinutes(durationMinutes), "New York", "Chicago", price);
+    }
+
+    @Test
+    public void testRankByPrice() {
+        List<Flight> outbound = Arrays.asList(flight(1, OUTBOUND_DATE.atTime(8, 0), 120, 300.00),
+                flight(2, OUTBOUND_DATE.atTime(12, 0), 180, 100.00),
+                flight(3, OUTBOUND_DATE.atTime(18, 0), 90, 200.00));
+        List<Flight> inbound = Arrays.asList(flight(11, RETURN_DATE.atTime(9, 0), 150, 250.00),
+                flight(12, RETURN_DATE.atTime(15, 0), 100, 50.00));
+
+        List<RoundTripOption> pairs = RoundTripPairer.topPairs(outbound, inbound, ItinerarySortKey.PRICE, 10);
+        assertEquals("Every pair should be produced once", 6, pairs.size());
+        assertEquals(2, pairs.get(0).getOutboundFlight().getFlightId());
+        assertEquals(12, pairs.get(0).getReturnFlight().getFlightId());
+        assertEquals(150.00, pairs.get(0).getTotalPrice(), 0.001);
+        for (int i = 1; i < pairs.size(); i++) {
+            assertTrue("Pairs should be ranked by total price",
+                    pairs.get(i - 1).getTotalPrice() <= pairs.get(i).getTotalPrice());
+        }
+        assertEquals(550.00, pairs.get(5).getTotalPrice(), 0.001);
+    }
+
+    @Test
+    public void testRankByDuration() {
+        List<Flight> outbound = Arrays.asList(flight(1, OUTBOUND_DATE.atTime(8, 0), 120, 300.00),
+                flight(2, OUTBOUND_DATE.atTime(12, 0), 90, 100.00));
+        List<Flight> inbound = Arrays.asList(flight(11, RETURN_DATE.atTime(9, 0), 150, 250.00),
+                flight(12, RETURN_DATE.atTime(15, 0), 100, 50.00));
+
+        RoundTripOption best = RoundTripPairer.topPairs(outbound, inbound, ItinerarySortKey.DURATION, 1).get(0);
+        assertEquals(2, best.getOutboundFlight().getFlightId());
+        assertEquals(12, best.getReturnFlight().getFlightId());
+        assertEquals(190, best.getTotalDurationMinutes());
+    }
+
+    @Test
+    public void testSkipsReturnsBeforeTurnaround() {
+        // A same-day return that leaves 30 minutes after landing cannot be paired
+        List<Flight> outbound = Arrays.asList(flight(1, OUTBOUND_DATE.atTime(8, 0), 120, 100.00));
+        List<Flight> inbound = Arrays.asList(flight(11, OUTBOUND_DATE.atTime(10, 30), 120, 50.00),
+                flight(12, OUTBOUND_DATE.atTime(18, 0), 120, 80.00));
+
+        List<RoundTripOption> pairs = RoundTripPairer.topPairs(outbound, inbound, ItinerarySortKey.PRICE, 10);
+        assertEquals(1, pairs.size());
+        assertEquals(12, pairs.get(0).getReturnFlight().getFlightId());
+    }
+
+    @Test
+    public void testLazyOverLargeLists() {
+        List<Flight> outbound = new ArrayList<>();
+        List<Flight> inbound = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            outbound.add(flight(i, OUTBOUND_DATE.atTime(6, 0).plusMinutes(i % 900), 120, 100.00 + i));
+            inbound.add(flight(10000 + i, RETURN_DATE.atTime(6, 0).plusMinutes(i % 900), 120, 100.00 + i));
+        }
+
+        Iterator<RoundTripOption> ranked = RoundTripPairer.rank(outbound, inbound, ItinerarySortKey.PRICE);
+        RoundTripOption first = ranked.next();
+        RoundTripOption second = ranked.next();
+        assertEquals(200.00, first.getTotalPrice(), 0.001);
+        assertEquals(201.00, second.getTotalPrice(), 0.001);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsUnsupportedSortKey() {
+        RoundTripPairer.rank(new ArrayList<>(), new ArrayList<>(), ItinerarySortKey.STOPS);
+    }
+}
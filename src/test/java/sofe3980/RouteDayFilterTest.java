@@ -0,0 +1,53 @@
+package sofe3980;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.time.LocalDate;
+
+public class RouteDayFilterTest {
+
+    private static final LocalDate START = LocalDate.of(2025, 1, 1);
+
+    private static RouteDayFilter everyOtherDay(int routes, int days) {
+        RouteDayFilter filter = new RouteDayFilter(routes * (days / 2 + 1));
+        for (int route = 0; route < routes; route++) {
+            for (int day = 0; day < days; day += 2) {
+                filter.add("origin" + route + "|destination", START.plusDays(day));
+            }
+        }
+        return filter;
+    }
+
+    @Test
+    public void testNoFalseNegatives() {
+        RouteDayFilter filter = everyOtherDay(100, 200);
+        for (int route = 0; route < 100; route++) {
+            assertTrue(filter.mightContain("origin" + route + "|destination", null));
+            for (int day = 0; day < 200; day += 2) {
+                assertTrue(filter.mightContain("origin" + route + "|destination", START.plusDays(day)));
+            }
+        }
+        assertFalse(filter.mightContain(null, START));
+    }
+
+    @Test
+    public void testFalsePositiveRate() {
+        RouteDayFilter filter = everyOtherDay(100, 200);
+        assertTrue(filter.size() > 10_000); // Approximate when keys collide
+        assertFalse(filter.hasRoomFor(filter.size()));
+
+        int falsePositives = 0;
+        for (int route = 0; route < 100; route++) {
+            for (int day = 1; day < 200; day += 2) {
+                if (filter.mightContain("origin" + route + "|destination", START.plusDays(day))) {
+                    falsePositives++;
+                }
+            }
+            if (filter.mightContain("other" + route + "|destination", null)) {
+                falsePositives++;
+            }
+        }
+        assertTrue("False positives: " + falsePositives, falsePositives < 200); // About 1% expected
+    }
+}
@@ -0,0 +1,142 @@
+package sofe3980;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+public class ScheduleImporterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FlightManager flightManager;
+    private ScheduleImporter importer;
+
+    @Before
+    public void setUp() {
+        flightManager = new FlightManager();
+        importer = new ScheduleImporter(flightManager, "", 4); // Several chunks even for a small file
+    }
+
+    private Path writeCsv() throws IOException {
+        StringBuilder csv = new StringBuilder("flightId,origin,destination,departure,arrival,price,correspondingFlightId\n");
+        for (int i = 0; i < 200; i++) {
+            csv.append(100 + i).append(",Toronto,Vancouver,2025-06-0").append(1 + i % 5).append("T08:30,")
+                    .append("2025-06-0").append(1 + i % 5).append("T13:45,").append(199 + i).append(".5,\r\n");
+        }
+        csv.append("500,Vancouver,Toronto,2025-06-10 09:00,2025-06-10 16:00,250,100\n");
+        csv.append("501,Vancouver,Toronto,not a date,2025-06-10 16:00,250,\n"); // Rejected
+        csv.append("502,Vancouver\n"); // Rejected
+        Path file = folder.newFile("schedule.csv").toPath();
+        Files.write(file, csv.toString().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @Test
+    public void testParseCsv() throws IOException {
+        ScheduleImporter.ImportResult result = importer.parseCsv(writeCsv());
+        assertEquals(201, result.getRows());
+        assertEquals(2, result.getRejectedRows());
+
+        ColumnarFlightStore store = result.getStore();
+        assertEquals(40, store.countFlights("toronto", "VANCOUVER", LocalDate.of(2025, 6, 1)));
+        List<Flight> returns = store.searchFlights("Vancouver", "Toronto", LocalDate.of(2025, 6, 10));
+        assertEquals(1, returns.size());
+        Flight flight = returns.get(0);
+        assertEquals(500, flight.getFlightId());
+        assertEquals(LocalDateTime.of(2025, 6, 10, 9, 0), flight.getDepartureTime());
+        assertEquals(LocalDateTime.of(2025, 6, 10, 16, 0), flight.getArrivalTime());
+        assertEquals(250.0, flight.getPrice(), 0.001);
+        assertEquals(Integer.valueOf(100), flight.getCorrespondingFlightId());
+    }
+
+    @Test
+    public void testBinaryRoundTrip() throws IOException {
+        ColumnarFlightStore parsed = importer.parseCsv(writeCsv()).getStore();
+        Path binary = folder.newFile("schedule.fls").toPath();
+        ScheduleImporter.writeBinary(parsed, binary);
+
+        ColumnarFlightStore reread = importer.parseBinary(binary).getStore();
+        assertEquals(parsed.size(), reread.size());
+        for (int row = 0; row < parsed.size(); row++) {
+            Flight expected = parsed.toFlight(row);
+            Flight actual = reread.toFlight(row);
+            assertEquals(expected.getFlightId(), actual.getFlightId());
+            assertEquals(expected.getOrigin(), actual.getOrigin());
+            assertEquals(expected.getDepartureTime(), actual.getDepartureTime());
+            assertEquals(expected.getPrice(), actual.getPrice(), 0.001);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsUnknownBinaryFormat() throws IOException {
+        Path file = folder.newFile("schedule.bin").toPath();
+        Files.write(file, "not a schedule file".getBytes(StandardCharsets.UTF_8));
+        importer.parseBinary(file);
+    }
+
+    @Test
+    public void testRejectsInvalidCsvRows() throws IOException {
+        Path file = folder.newFile("invalid.csv").toPath();
+        String csv = "1,Toronto,Vancouver,2024-02-29T08:00,2024-02-29T13:00,200\n" // Leap day
+                + "2,Toronto,Vancouver,2025-02-29T08:00,2025-02-29T13:00,200\n" // Not a leap year
+                + "3,Toronto,Vancouver,2025-04-31T08:00,2025-04-31T13:00,200\n" // April has 30 days
+                + "4,Toronto,Vancouver,2025-04-30T13:00,2025-04-30T08:00,200\n" // Arrives before departing
+                + "5,Toronto,Vancouver,2025-04-30T08:00,2025-04-30T13:00,-0.50\n"; // Negative price
+        Files.write(file, csv.getBytes(StandardCharsets.UTF_8));
+
+        ScheduleImporter.ImportResult result = importer.parseCsv(file);
+        assertEquals(1, result.getRows());
+        assertEquals(4, result.getRejectedRows());
+        assertEquals(1, result.getStore().flightId(0));
+    }
+
+    @Test
+    public void testRejectsInvalidBinaryRecords() throws IOException {
+        Path binary = folder.newFile("schedule.fls").toPath();
+        ColumnarFlightStore parsed = importer.parseCsv(writeCsv()).getStore();
+        ScheduleImporter.writeBinary(parsed, binary);
+        byte[] valid = Files.readAllBytes(binary);
+        int lastRecord = valid.length - ScheduleImporter.RECORD_BYTES;
+
+        // Origin airport code, arrival and price of the last record
+        int[][] corruptions = { { 4, 99 }, { 4, -1 }, { 16, 0 }, { 20, -100 } };
+        for (int[] corruption : corruptions) {
+            byte[] bytes = valid.clone();
+            ByteBuffer.wrap(bytes).putInt(lastRecord + corruption[0], corruption[1]);
+            Files.write(binary, bytes);
+            try {
+                importer.parseBinary(binary);
+                fail("Field at offset " + corruption[0] + " set to " + corruption[1] + " should be rejected");
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("Invalid binary flight schedule"));
+            }
+        }
+    }
+
+    @Test
+    public void testImportReplacesInventory() throws IOException {
+        flightManager.searchFlights("New York", "Los Angeles", LocalDate.of(2024, 4, 4), null); // Cached
+
+        ScheduleImporter.ImportResult result = importer.importSchedule(writeCsv());
+        assertEquals(201, result.getRows());
+        assertTrue(result.getRowsPerSecond() > 0);
+
+        assertTrue("Old flights should be gone",
+                flightManager.searchFlights("New York", "Los Angeles", LocalDate.of(2024, 4, 4), null).isEmpty());
+        assertEquals(40, flightManager.searchDirectFlights("Toronto", "Vancouver", LocalDate.of(2025, 6, 2)).size());
+        assertTrue(flightManager.getFlightById(500).isPresent());
+        assertFalse(flightManager.getFlightById(1).isPresent());
+    }
+}
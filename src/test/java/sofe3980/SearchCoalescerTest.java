@@ -0,0 +1,80 @@
+package sofe3980;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SearchCoalescerTest {
+
+    @Test
+    public void testConcurrentIdenticalRequestsShareOneComputation() throws Exception {
+        SearchCoalescer<String, String> coalescer = new SearchCoalescer<>();
+        AtomicInteger computations = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        int callers = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            results.add(executor.submit(() -> coalescer.execute("NYC|LAX", () -> {
+                computations.incrementAndGet();
+                try {
+                    release.await(); // Hold the computation until every caller has arrived
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "flights";
+            })));
+        }
+
+        // Wait until every caller has registered before letting the computation finish
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (coalescer.getRequests() < callers && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        Thread.sleep(50); // Let the last caller reach the in-flight computation
+        release.countDown();
+
+        for (Future<String> result : results) {
+            assertEquals("Every caller should get the shared result", "flights", result.get(10, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+
+        assertEquals("Identical requests should run one computation", 1, computations.get());
+        assertEquals(callers, coalescer.getRequests());
+        assertEquals(callers - 1, coalescer.getCoalescedRequests());
+        assertEquals(callers, coalescer.getCoalescingRatio(), 0.001);
+    }
+
+    @Test
+    public void testSequentialRequestsRecompute() {
+        SearchCoalescer<String, Integer> coalescer = new SearchCoalescer<>();
+        AtomicInteger computations = new AtomicInteger();
+        assertEquals(Integer.valueOf(1), coalescer.execute("key", computations::incrementAndGet));
+        assertEquals("Finished computations should not be reused", Integer.valueOf(2),
+                coalescer.execute("key", computations::incrementAndGet));
+        assertEquals(0, coalescer.getCoalescedRequests());
+    }
+
+    @Test
+    public void testFailuresAreNotRemembered() {
+        SearchCoalescer<String, String> coalescer = new SearchCoalescer<>();
+        try {
+            coalescer.execute("key", () -> {
+                throw new IllegalStateException("search failed");
+            });
+            fail("The failure should reach the caller");
+        } catch (IllegalStateException e) {
+            assertEquals("search failed", e.getMessage());
+        }
+        assertEquals("ok", coalescer.execute("key", () -> "ok"));
+    }
+}
@@ -0,0 +1,84 @@
+package sofe3980;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+public class SearchResultCacheTest {
+
+    private static final LocalDate DAY = LocalDate.of(2024, 4, 4);
+    private static final LocalDate RETURN_DAY = LocalDate.of(2024, 4, 5);
+
+    private long now;
+    private SearchResultCache<String> cache;
+
+    @Before
+    public void setUp() {
+        now = 0;
+        cache = new SearchResultCache<>(2, 1000, () -> now);
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        SearchResultCache.Key key = SearchResultCache.key("New York", "Los Angeles", DAY, null);
+        assertNull("Empty cache should miss", cache.get(key));
+        assertTrue(cache.put(key, "result", 0));
+
+        // Keys are normalized like the route index
+        assertEquals("result", cache.get(SearchResultCache.key(" new york", "LOS ANGELES", DAY, null)));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertNull("Missing locations have no key", SearchResultCache.key(null, "Los Angeles", DAY, null));
+    }
+
+    @Test
+    public void testSizeAndTimeEviction() {
+        SearchResultCache.Key first = SearchResultCache.key("A", "B", DAY, null);
+        SearchResultCache.Key second = SearchResultCache.key("A", "C", DAY, null);
+        SearchResultCache.Key third = SearchResultCache.key("A", "D", DAY, null);
+        cache.put(first, "first", 0);
+        cache.put(second, "second", 0);
+        cache.get(first); // Makes second the least recently used entry
+        cache.put(third, "third", 0);
+
+        assertNull("Least recently used entry should be evicted", cache.get(second));
+        assertEquals("first", cache.get(first));
+        assertEquals(1, cache.getEvictions());
+
+        now += TimeUnit.MILLISECONDS.toNanos(1000);
+        assertNull("Entries should expire after their time to live", cache.get(third));
+        assertEquals(2, cache.getEvictions());
+    }
+
+    @Test
+    public void testPreciseInvalidation() {
+        cache = new SearchResultCache<>(10, 1000, () -> now);
+        SearchResultCache.Key sameDay = SearchResultCache.key("A", "B", DAY, null);
+        SearchResultCache.Key anyDay = SearchResultCache.key("A", "B", null, null);
+        SearchResultCache.Key otherDay = SearchResultCache.key("A", "B", RETURN_DAY, null);
+        SearchResultCache.Key returningThatDay = SearchResultCache.key("B", "A", RETURN_DAY.minusDays(3), DAY);
+        SearchResultCache.Key otherRoute = SearchResultCache.key("A", "C", DAY, null);
+        cache.put(sameDay, "sameDay", 0);
+        cache.put(anyDay, "anyDay", 0);
+        cache.put(otherDay, "otherDay", 0);
+        cache.put(returningThatDay, "returningThatDay", 0);
+        cache.put(otherRoute, "otherRoute", 0);
+
+        // A new A -> B flight on DAY
+        cache.invalidate("a", "b", DAY, 1);
+
+        assertNull(cache.get(sameDay));
+        assertNull(cache.get(anyDay));
+        assertNull("Round trips returning on that day should be invalidated", cache.get(returningThatDay));
+        assertEquals("Other dates should stay cached", "otherDay", cache.get(otherDay));
+        assertEquals("Other routes should stay cached", "otherRoute", cache.get(otherRoute));
+        assertEquals(3, cache.getInvalidations());
+
+        // Results computed before the invalidation must not be stored
+        assertFalse("Stale results should be rejected", cache.put(sameDay, "stale", 0));
+        assertTrue(cache.put(sameDay, "fresh", 1));
+    }
+}
@@ -0,0 +1,82 @@
+package sofe3980;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class SeatMapTest {
+
+    @Test
+    public void testReserveAndRelease() {
+        SeatMap seatMap = new SeatMap();
+        assertEquals(180, seatMap.getCapacity());
+        int seat = seatMap.seatIndex("12c");
+        assertEquals("12C", seatMap.seatNumber(seat));
+        assertTrue(seatMap.reserve(seat));
+        assertFalse("A seat is sold once", seatMap.reserve(seat));
+        assertTrue(seatMap.isReserved(seat));
+        assertEquals(179, seatMap.getAvailableSeats());
+
+        assertTrue(seatMap.release(seat));
+        assertFalse(seatMap.release(seat));
+        assertEquals(180, seatMap.getAvailableSeats());
+
+        assertEquals(-1, seatMap.seatIndex("31A"));
+        assertEquals(-1, seatMap.seatIndex("1G"));
+        assertEquals(-1, seatMap.seatIndex("A"));
+    }
+
+    @Test
+    public void testReserveAnyUntilFull() {
+        SeatMap seatMap = new SeatMap(2, 3);
+        Set<Integer> seats = new HashSet<>();
+        for (int i = 0; i < 6; i++) {
+            assertTrue(seats.add(seatMap.reserveAny()));
+        }
+        assertEquals(-1, seatMap.reserveAny());
+        assertEquals(0, seatMap.getAvailableSeats());
+    }
+
+    @Test
+    public void testConcurrentReservationsOnOneFlight() throws Exception {
+        SeatMap seatMap = new SeatMap();
+        int threads = 32;
+        int attemptsPerThread = 200; // 6,400 attempts for 180 seats
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<Integer>>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                List<Integer> reserved = new ArrayList<>();
+                for (int i = 0; i < attemptsPerThread; i++) {
+                    int seat = seatMap.reserveAny();
+                    if (seat >= 0) {
+                        reserved.add(seat);
+                    }
+                }
+                return reserved;
+            }));
+        }
+        start.countDown();
+
+        Set<Integer> seats = new HashSet<>();
+        for (Future<List<Integer>> result : results) {
+            for (int seat : result.get(60, TimeUnit.SECONDS)) {
+                assertTrue("Seat " + seat + " sold twice", seats.add(seat));
+            }
+        }
+        executor.shutdown();
+        assertEquals("Every seat is sold, none oversold", 180, seats.size());
+        assertEquals(0, seatMap.getAvailableSeats());
+    }
+}
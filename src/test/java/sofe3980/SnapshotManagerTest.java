@@ -0,0 +1,149 @@
+package sofe3980;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class SnapshotManagerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<Flight> flights = Arrays.asList(
+            new Flight(1, LocalDateTime.of(2024, 4, 10, 8, 0), LocalDateTime.of(2024, 4, 10, 10, 0), "CityA",
+                    "CityB", 200.00));
+
+    private BookingJournal journal;
+    private BookingManager bookingManager;
+    private UserManager userManager;
+    private SnapshotManager snapshotManager;
+
+    // Starts the managers the way the application does, recovering from disk
+    private SnapshotManager.Recovery start(Path directory) throws Exception {
+        journal = new BookingJournal(directory.resolve("bookings.journal"), false, 0);
+        bookingManager = new BookingManager(null, Clock.systemDefaultZone(), journal);
+        userManager = new UserManager(journal);
+        snapshotManager = new SnapshotManager(bookingManager, userManager, journal, directory.resolve("snapshots"));
+        return snapshotManager.recover();
+    }
+
+    private List<Path> snapshots(Path directory) throws Exception {
+        try (Stream<Path> files = Files.list(directory.resolve("snapshots"))) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void testRecoverFromSnapshotAndJournalTail() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        start(directory);
+        User user = userManager.registerUser("John Doe", "johndoe@example.com", "password", LocalDate.of(1990, 1, 1),
+                "AB1234567");
+        Booking kept = bookingManager.createBooking(user, flights, "one-way");
+        Booking canceledLater = bookingManager.createBooking(user, flights, "one-way");
+        assertNotNull(snapshotManager.takeSnapshot());
+        assertNull("Nothing changed since the last snapshot", snapshotManager.takeSnapshot());
+
+        // Changes after the snapshot are only in the journal
+        assertTrue(bookingManager.cancelBooking(canceledLater.getBookingId()));
+        Booking afterSnapshot = bookingManager.createBooking(user, flights, "one-way");
+        journal.close();
+
+        SnapshotManager.Recovery recovery = start(directory);
+        assertNotNull(recovery.getSnapshot());
+        assertEquals(1, recovery.getSnapshotUsers());
+        assertEquals(2, recovery.getSnapshotBookings());
+        assertEquals("Only the journal tail is replayed", 2, recovery.getJournalRecords());
+
+        assertEquals(3, bookingManager.getBookingCount());
+        assertEquals("active", bookingManager.getBookingById(kept.getBookingId()).get().getStatus());
+        assertEquals("canceled", bookingManager.getBookingById(canceledLater.getBookingId()).get().getStatus());
+        assertTrue(bookingManager.getBookingById(afterSnapshot.getBookingId()).isPresent());
+        assertEquals(3, bookingManager.getBookingsByUser(user.getUserId()).size());
+        assertEquals(2, bookingManager.getActiveBookingsByFlight(1).size());
+        assertTrue("Users can still log in", userManager.loginUser("johndoe@example.com", "password").isPresent());
+        for (Path file : Arrays.asList(directory.resolve("bookings.journal"), recovery.getSnapshot())) {
+            String contents = new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1);
+            assertFalse("Passwords are only stored hashed", contents.contains("password"));
+        }
+
+        // ID sequences continue
+        assertEquals(afterSnapshot.getBookingId() + 1,
+                bookingManager.createBooking(user, flights, "one-way").getBookingId());
+        assertEquals(user.getUserId() + 1, userManager.registerUser("Jane Roe", "janeroe@example.com", "secret",
+                LocalDate.of(1992, 2, 2), "CD7654321").getUserId());
+        journal.close();
+    }
+
+    @Test
+    public void testCorruptSnapshotFallsBackToOlderOne() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        start(directory);
+        User user = userManager.registerUser("John Doe", "johndoe@example.com", "password", LocalDate.of(1990, 1, 1),
+                "AB1234567");
+        bookingManager.createBooking(user, flights, "one-way");
+        snapshotManager.takeSnapshot();
+        Booking second = bookingManager.createBooking(user, flights, "one-way");
+        snapshotManager.takeSnapshot();
+        bookingManager.cancelBooking(second.getBookingId());
+        snapshotManager.takeSnapshot();
+        journal.close();
+
+        List<Path> snapshots = snapshots(directory);
+        assertEquals("The latest two snapshots are kept", 2, snapshots.size());
+        Path latest = snapshots.get(1);
+        try (FileChannel file = FileChannel.open(latest, StandardOpenOption.WRITE)) {
+            file.write(ByteBuffer.wrap(new byte[] { 42 }), SnapshotManager.HEADER_BYTES
+                    + SnapshotManager.BLOCK_HEADER_BYTES + 3);
+        }
+
+        SnapshotManager.Recovery recovery = start(directory);
+        assertEquals(snapshots.get(0), recovery.getSnapshot());
+        assertEquals(2, bookingManager.getBookingCount());
+        assertEquals("canceled", bookingManager.getBookingById(second.getBookingId()).get().getStatus());
+        journal.close();
+    }
+
+    @Test
+    public void testSnapshotWithManyBlocks() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        start(directory);
+        User user = userManager.registerUser("John Doe", "johndoe@example.com", "password", LocalDate.of(1990, 1, 1),
+                "AB1234567");
+        int bookings = 20_000; // Over 2 MB of records
+        for (int i = 0; i < bookings; i++) {
+            Booking booking = bookingManager.createBooking(user, flights, "one-way");
+            if (i % 3 == 0) {
+                bookingManager.cancelBooking(booking.getBookingId());
+            }
+        }
+        Path snapshot = snapshotManager.takeSnapshot();
+        assertTrue(Files.size(snapshot) > 2L * SnapshotManager.BLOCK_BYTES);
+        journal.close();
+
+        SnapshotManager.Recovery recovery = start(directory);
+        assertEquals(bookings, recovery.getSnapshotBookings());
+        assertEquals(0, recovery.getJournalRecords());
+        assertEquals(bookings, bookingManager.getBookingCount());
+        assertEquals("canceled", bookingManager.getBookingById(1).get().getStatus());
+        assertEquals("active", bookingManager.getBookingById(2).get().getStatus());
+        assertSame("Repeated flights are shared", bookingManager.getBookingById(1).get().getFlights().get(0),
+                bookingManager.getBookingById(2).get().getFlights().get(0));
+        journal.close();
+    }
+}
@@ -48,6 +48,16 @@ public class UserManagerTest {
         assertFalse("User should not be able to log in with incorrect password", wrongPasswordResult.isPresent());
     }
 
+    @Test
+    public void testPasswordIsHashed() {
+        String stored = registeredUser.getPassword();
+        assertNotEquals("The password should not be kept as given", password, stored);
+        assertTrue(stored.startsWith(UserManager.HASH_PREFIX));
+        assertTrue(UserManager.verifyPassword(password, stored));
+        assertFalse(UserManager.verifyPassword("wrongpassword", stored));
+        assertNotEquals("Each hash should have its own salt", stored, UserManager.hashPassword(password));
+    }
+
     @Test
     public void testGetUserById() {
         Optional<User> foundUser = userManager.getUserById(registeredUser.getUserId());